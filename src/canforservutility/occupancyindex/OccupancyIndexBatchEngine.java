@@ -0,0 +1,247 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package canforservutility.occupancyindex;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import repicea.math.Matrix;
+import repicea.math.SymmetricMatrix;
+import repicea.stats.estimates.GaussianEstimate;
+
+/**
+ * The OccupancyIndexBatchEngine class computes the occupancy index of all the plots 
+ * and species in a single sweep.<p>
+ * The plot measurements are indexed once by subject and by date. The spatial query is 
+ * then performed once per subject, whatever the number of measurements of this subject, 
+ * and the occurrences of all the species are counted in the same pass. The estimators are
+ * those of the {@link OccupancyIndexCalculator#getOccupancyIndex(List, OccupancyIndexCalculablePlot, Enum, double)} 
+ * method: the mean and the variance of the mean of the occurrences, where each subject within
+ * the radius counts once and is considered as occupied if at least one of its measurements within 
+ * the time window is occupied.
+ * @author Mathieu Fortin - October 2026
+ */
+public class OccupancyIndexBatchEngine {
+
+	/**
+	 * The Result class holds the occupancy indices of a batch.<p>
+	 * The arrays are indexed by species and by plot, in the order of the plot list 
+	 * of the engine. The mean and the variance are NaN if there is only one plot within
+	 * the radius.
+	 */
+	public static final class Result {
+		
+		private final double[][] means;
+		private final double[][] variances;
+		
+		private Result(int nbSpecies, int nbPlots) {
+			means = new double[nbSpecies][nbPlots];
+			variances = new double[nbSpecies][nbPlots];
+		}
+
+		/**
+		 * Provide the means of the occupancy index for a particular species.<p>
+		 * The array must not be modified by the caller.
+		 * @param speciesIndex the index of the species in the list of species
+		 * @return an array of doubles indexed by plot
+		 */
+		public double[] getMeans(int speciesIndex) {return means[speciesIndex];}
+		
+		/**
+		 * Provide the variances of the occupancy index for a particular species.<p>
+		 * The array must not be modified by the caller.
+		 * @param speciesIndex the index of the species in the list of species
+		 * @return an array of doubles indexed by plot
+		 */
+		public double[] getVariances(int speciesIndex) {return variances[speciesIndex];}
+		
+		/**
+		 * Provide the occupancy index of a plot as a GaussianEstimate instance.
+		 * @param speciesIndex the index of the species in the list of species
+		 * @param plotIndex the index of the plot in the plot list of the engine
+		 * @return a GaussianEstimate instance
+		 */
+		public GaussianEstimate getEstimate(int speciesIndex, int plotIndex) {
+			Matrix mean = new Matrix(1, 1, means[speciesIndex][plotIndex], 0);
+			SymmetricMatrix variance = new SymmetricMatrix(1);
+			variance.setValueAt(0, 0, variances[speciesIndex][plotIndex]);
+			return new GaussianEstimate(mean, variance);
+		}
+	}
+	
+	private final OccupancyIndexCalculator calculator;
+	private final List<OccupancyIndexCalculablePlot> plots;
+	private final int[] measurementsBySubject;	// indices of the plots sorted by subject
+	private final int[] subjectOffsets;			// first measurement of each subject in measurementsBySubject
+	private final int[] dates;
+	
+	/**
+	 * Constructor.
+	 * @param calculator an OccupancyIndexCalculator instance that contains all the subjects of the plot list
+	 * @param plots the list of plots, which includes all the measurements of the subjects
+	 */
+	public OccupancyIndexBatchEngine(OccupancyIndexCalculator calculator, List<OccupancyIndexCalculablePlot> plots) {
+		this.calculator = calculator;
+		this.plots = new ArrayList<OccupancyIndexCalculablePlot>(plots);
+		int nbPlots = plots.size();
+		int nbSubjects = calculator.getNumberOfSubjects();
+		dates = new int[nbPlots];
+		int[] subjects = new int[nbPlots];
+		subjectOffsets = new int[nbSubjects + 1];
+		for (int i = 0; i < nbPlots; i++) {
+			OccupancyIndexCalculablePlot p = plots.get(i);
+			Integer subject = calculator.plotsId.get(p.getSubjectId());
+			if (subject == null) {
+				throw new InvalidParameterException("The plot " + p.getSubjectId() + " is not found in the calculator!");
+			}
+			subjects[i] = subject;
+			dates[i] = p.getDateYr();
+			subjectOffsets[subject + 1]++;
+		}
+		for (int s = 0; s < nbSubjects; s++) {
+			subjectOffsets[s + 1] += subjectOffsets[s];
+		}
+		measurementsBySubject = new int[nbPlots];
+		int[] cursors = Arrays.copyOf(subjectOffsets, nbSubjects);
+		for (int i = 0; i < nbPlots; i++) {		// counting sort keeps the original order of the measurements within each subject
+			measurementsBySubject[cursors[subjects[i]]++] = i;
+		}
+	}
+	
+	/**
+	 * Provide the number of plots in the engine.
+	 * @return an integer
+	 */
+	public int getNumberOfPlots() {return plots.size();}
+	
+	/**
+	 * Compute the occupancy index of all the plots for a list of species.<p>
+	 * The time window is that of the calculator at the time of the call.
+	 * @param speciesList a List of enums standing for the species
+	 * @param radiusKm the radius (km) of the area upon which the occupancy is calculated
+	 * @param nbThreads the number of threads (1 for a sequential computation)
+	 * @return a Result instance
+	 */
+	public Result computeOccupancyIndices(List<? extends Enum<?>> speciesList, double radiusKm, int nbThreads) {
+		int nbSpecies = speciesList.size();
+		int nbPlots = plots.size();
+		boolean[][] occurrences = new boolean[nbPlots][nbSpecies];
+		for (int i = 0; i < nbPlots; i++) {
+			OccupancyIndexCalculablePlot p = plots.get(i);
+			for (int s = 0; s < nbSpecies; s++) {
+				occurrences[i][s] = p.getBasalAreaM2HaForThisSpecies(speciesList.get(s)) > 0d;
+			}
+		}
+		final Result result = new Result(nbSpecies, nbPlots);
+		final int minYearDiff = calculator.getMinimumYearDifference();
+		final int maxYearDiff = calculator.getMaximumYearDifference();
+		int nbSubjects = subjectOffsets.length - 1;
+		if (nbThreads <= 1 || nbSubjects <= 1) {
+			computeForTheseSubjects(0, nbSubjects, occurrences, radiusKm, minYearDiff, maxYearDiff, result);
+		} else {
+			int nbChunks = Math.min(nbSubjects, nbThreads * 4);		// more chunks than threads for load balancing
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int c = 0; c < nbChunks; c++) {
+				final int start = (int) ((long) nbSubjects * c / nbChunks);
+				final int end = (int) ((long) nbSubjects * (c + 1) / nbChunks);
+				tasks.add(() -> {
+					computeForTheseSubjects(start, end, occurrences, radiusKm, minYearDiff, maxYearDiff, result);
+					return null;
+				});
+			}
+			ForkJoinPool pool = new ForkJoinPool(nbThreads);
+			try {
+				for (Future<Void> future : pool.invokeAll(tasks)) {
+					future.get();
+				}
+			} catch (InterruptedException | ExecutionException e) {
+				throw new RuntimeException("The parallel computation of the occupancy indices failed!", e);
+			} finally {
+				pool.shutdown();
+			}
+		}
+		return result;
+	}
+	
+	private void computeForTheseSubjects(int startSubject, 
+			int endSubject, 
+			boolean[][] occurrences, 
+			double radiusKm, 
+			int minYearDiff, 
+			int maxYearDiff, 
+			Result result) {
+		int nbSpecies = result.means.length;
+		int[] counts = new int[nbSpecies];
+		boolean[] occupied = new boolean[nbSpecies];
+		for (int subject = startSubject; subject < endSubject; subject++) {
+			if (subjectOffsets[subject] == subjectOffsets[subject + 1]) {
+				continue;	// this subject has no measurement in the plot list
+			}
+			Set<Integer> neighbors = calculator.getPlotIndicesWithinRadius(subject, radiusKm);
+			for (int m = subjectOffsets[subject]; m < subjectOffsets[subject + 1]; m++) {
+				int plotIndex = measurementsBySubject[m];
+				int dateYr = dates[plotIndex];
+				Arrays.fill(counts, 0);
+				int n = 0;
+				for (int neighbor : neighbors) {
+					boolean isWithinTimeWindow = false;
+					Arrays.fill(occupied, false);
+					for (int k = subjectOffsets[neighbor]; k < subjectOffsets[neighbor + 1]; k++) {
+						int neighborPlotIndex = measurementsBySubject[k];
+						int diff = dateYr - dates[neighborPlotIndex];
+						if (diff >= minYearDiff && diff <= maxYearDiff) {
+							isWithinTimeWindow = true;
+							boolean[] occurrencesOfThisPlot = occurrences[neighborPlotIndex];
+							for (int s = 0; s < nbSpecies; s++) {
+								occupied[s] |= occurrencesOfThisPlot[s];
+							}
+						}
+					}
+					if (isWithinTimeWindow) {
+						n++;
+						for (int s = 0; s < nbSpecies; s++) {
+							if (occupied[s]) {
+								counts[s]++;
+							}
+						}
+					}
+				}
+				for (int s = 0; s < nbSpecies; s++) {
+					if (n <= 1) {
+						result.means[s][plotIndex] = Double.NaN;
+						result.variances[s][plotIndex] = Double.NaN;
+					} else {
+						double mean = (double) counts[s] / n;
+						result.means[s][plotIndex] = mean;
+						result.variances[s][plotIndex] = mean * (1d - mean) / (n - 1);	// sample variance divided by n
+					}
+				}
+			}
+		}
+	}
+	
+}
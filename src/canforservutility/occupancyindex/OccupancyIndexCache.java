@@ -0,0 +1,375 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package canforservutility.occupancyindex;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import repicea.math.Matrix;
+import repicea.math.SymmetricMatrix;
+import repicea.stats.estimates.GaussianEstimate;
+
+/**
+ * The OccupancyIndexCache class provides precomputed occupancy indices from a binary file.<p>
+ * The file is written by the {@link OccupancyIndexCalculator#writeOccupancyIndexCache(File, List, List, double, int)} 
+ * method. It contains a header, the names of the species, the ids of the plots and a table of fixed-size 
+ * records sorted by plot and date. Each record holds the mean and the variance of the occupancy index 
+ * of all the species. The file is memory-mapped read-only, so that the processes that load the same file 
+ * share the same pages. The records are found through a binary search and the instance can be shared 
+ * across threads. <p>
+ * 
+ * The records are keyed by plot id and date only. The occupancy index of a plot depends on the network of 
+ * plots it was calculated from, and the header therefore holds a fingerprint of this network. The 
+ * {@link #isCalculatedFrom(List, Class)} method should be checked before using the cache for plots whose 
+ * network may differ from the one the cache was written from, e.g. simulated plots.
+ * @author Mathieu Fortin - October 2026
+ */
+public final class OccupancyIndexCache {
+
+	private static final int MAGIC_NUMBER = 0x4F434958;	// OCIX
+	private static final int VERSION = 2;
+	private static final int HEADER_SIZE = 7 * 4 + 8 + 8;		// 7 integers, 1 double and the network fingerprint
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+	
+	private final double radiusKm;
+	private final int minYearDiff;
+	private final int maxYearDiff;
+	private final long networkFingerprint;
+	private final List<String> speciesNames;
+	private final Map<String, Integer> speciesIndices;
+	private final Map<String, Integer> plotIndices;
+	private final MappedByteBuffer[] recordBuffers;
+	private final int recordsPerBuffer;
+	private final int recordSize;
+	private final int nbRecords;
+	
+	private OccupancyIndexCache(double radiusKm, 
+			int minYearDiff, 
+			int maxYearDiff, 
+			long networkFingerprint,
+			List<String> speciesNames, 
+			Map<String, Integer> plotIndices, 
+			MappedByteBuffer[] recordBuffers, 
+			int recordsPerBuffer,
+			int nbRecords) {
+		this.radiusKm = radiusKm;
+		this.minYearDiff = minYearDiff;
+		this.maxYearDiff = maxYearDiff;
+		this.networkFingerprint = networkFingerprint;
+		this.speciesNames = Collections.unmodifiableList(speciesNames);
+		speciesIndices = new HashMap<String, Integer>();
+		for (int s = 0; s < speciesNames.size(); s++) {
+			speciesIndices.put(speciesNames.get(s), s);
+		}
+		this.plotIndices = plotIndices;
+		this.recordBuffers = recordBuffers;
+		this.recordsPerBuffer = recordsPerBuffer;
+		this.recordSize = getRecordSize(speciesNames.size());
+		this.nbRecords = nbRecords;
+	}
+	
+	private static int getRecordSize(int nbSpecies) {
+		return 2 * 4 + nbSpecies * 2 * 8;		// plot index, date and the mean and variance of each species
+	}
+	
+	/**
+	 * Write the occupancy indices in a file. <p>
+	 * The content is streamed to a temporary file in the same directory, which then replaces the 
+	 * file atomically. The processes that have the former file mapped keep their pages.
+	 * @param file the file
+	 * @param radiusKm the radius (km) of the occupancy index
+	 * @param minYearDiff the minimum year difference of the calculation
+	 * @param maxYearDiff the maximum year difference of the calculation
+	 * @param networkFingerprint the fingerprint of the plot network (see {@link OccupancyIndexCalculator#getNetworkFingerprint(List, List)})
+	 * @param speciesNames the names of the species
+	 * @param plotIds the ids of the plots
+	 * @param recordPlots the index of the plot of each record (the records must be sorted by plot and date)
+	 * @param recordDates the date of each record
+	 * @param means the means of the occupancy index (species x record)
+	 * @param variances the variances of the occupancy index (species x record)
+	 * @throws IOException if an I/O error occurs
+	 */
+	static void write(File file, 
+			double radiusKm, 
+			int minYearDiff, 
+			int maxYearDiff, 
+			long networkFingerprint,
+			List<String> speciesNames, 
+			List<String> plotIds, 
+			int[] recordPlots, 
+			int[] recordDates, 
+			double[][] means, 
+			double[][] variances) throws IOException {
+		int nbSpecies = speciesNames.size();
+		int nbRecords = recordPlots.length;
+		File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (FileOutputStream fos = new FileOutputStream(tmpFile);
+					FileChannel channel = fos.getChannel()) {
+				ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+				buffer.putInt(MAGIC_NUMBER);
+				buffer.putInt(VERSION);
+				buffer.putDouble(radiusKm);
+				buffer.putInt(minYearDiff);
+				buffer.putInt(maxYearDiff);
+				buffer.putLong(networkFingerprint);
+				buffer.putInt(nbSpecies);
+				buffer.putInt(plotIds.size());
+				buffer.putInt(nbRecords);
+				for (String speciesName : speciesNames) {
+					writeString(channel, buffer, speciesName);
+				}
+				for (String plotId : plotIds) {
+					writeString(channel, buffer, plotId);
+				}
+				for (int r = 0; r < nbRecords; r++) {
+					if (buffer.remaining() < 8) {
+						flush(channel, buffer);
+					}
+					buffer.putInt(recordPlots[r]);
+					buffer.putInt(recordDates[r]);
+					for (int s = 0; s < nbSpecies; s++) {
+						if (buffer.remaining() < 16) {
+							flush(channel, buffer);
+						}
+						buffer.putDouble(means[s][r]);
+						buffer.putDouble(variances[s][r]);
+					}
+				}
+				flush(channel, buffer);
+				channel.force(true);
+			}
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+	}
+
+	private static void writeString(FileChannel channel, ByteBuffer buffer, String str) throws IOException {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		if (buffer.remaining() < 4) {
+			flush(channel, buffer);
+		}
+		buffer.putInt(bytes.length);
+		if (buffer.remaining() < bytes.length) {
+			flush(channel, buffer);
+			if (bytes.length > buffer.capacity()) {
+				ByteBuffer wrapper = ByteBuffer.wrap(bytes);
+				while (wrapper.hasRemaining()) {
+					channel.write(wrapper);
+				}
+				return;
+			}
+		}
+		buffer.put(bytes);
+	}
+	
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Load an occupancy index cache from a file. <p>
+	 * The file is memory-mapped read-only. The records are mapped in several buffers if the 
+	 * file exceeds 2 GB.
+	 * @param file a file written by the OccupancyIndexCalculator class
+	 * @return an OccupancyIndexCache instance
+	 * @throws IOException if an I/O error occurs or if the file is not a valid occupancy index cache
+	 */
+	public static OccupancyIndexCache load(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); 
+				FileChannel channel = raf.getChannel()) {
+			long fileSize = channel.size();
+			if (fileSize < HEADER_SIZE) {
+				throw new IOException("The file " + file.getAbsolutePath() + " is not a valid occupancy index cache!");
+			}
+			ByteBuffer reader = channel.map(MapMode.READ_ONLY, 0, Math.min(fileSize, Integer.MAX_VALUE));
+			if (reader.getInt() != MAGIC_NUMBER || reader.getInt() != VERSION) {
+				throw new IOException("The file " + file.getAbsolutePath() + " is not a valid occupancy index cache!");
+			}
+			double radiusKm = reader.getDouble();
+			int minYearDiff = reader.getInt();
+			int maxYearDiff = reader.getInt();
+			long networkFingerprint = reader.getLong();
+			int nbSpecies = reader.getInt();
+			int nbPlots = reader.getInt();
+			int nbRecords = reader.getInt();
+			List<String> speciesNames = new ArrayList<String>();
+			for (int s = 0; s < nbSpecies; s++) {
+				speciesNames.add(readString(reader));
+			}
+			Map<String, Integer> plotIndices = new HashMap<String, Integer>();
+			for (int p = 0; p < nbPlots; p++) {
+				plotIndices.put(readString(reader), p);
+			}
+			long recordsOffset = reader.position();
+			int recordSize = getRecordSize(nbSpecies);
+			if (recordsOffset + (long) nbRecords * recordSize != fileSize) {
+				throw new IOException("The file " + file.getAbsolutePath() + " is truncated or corrupted!");
+			}
+			int recordsPerBuffer = Integer.MAX_VALUE / recordSize;
+			int nbBuffers = nbRecords == 0 ? 0 : (nbRecords - 1) / recordsPerBuffer + 1;
+			MappedByteBuffer[] recordBuffers = new MappedByteBuffer[nbBuffers];
+			for (int b = 0; b < nbBuffers; b++) {
+				int nbRecordsInBuffer = Math.min(recordsPerBuffer, nbRecords - b * recordsPerBuffer);
+				recordBuffers[b] = channel.map(MapMode.READ_ONLY, 
+						recordsOffset + (long) b * recordsPerBuffer * recordSize, 
+						(long) nbRecordsInBuffer * recordSize);
+			}
+			return new OccupancyIndexCache(radiusKm, minYearDiff, maxYearDiff, networkFingerprint, speciesNames, plotIndices, recordBuffers, recordsPerBuffer, nbRecords);
+		}
+	}
+	
+	private static String readString(ByteBuffer reader) {
+		byte[] bytes = new byte[reader.getInt()];
+		reader.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Provide the radius (km) upon which the occupancy indices were calculated.
+	 * @return a double
+	 */
+	public double getRadiusKm() {return radiusKm;}
+	
+	/**
+	 * Provide the minimum year difference that was used in the calculation.
+	 * @return an integer
+	 */
+	public int getMinimumYearDifference() {return minYearDiff;}
+
+	/**
+	 * Provide the maximum year difference that was used in the calculation.
+	 * @return an integer
+	 */
+	public int getMaximumYearDifference() {return maxYearDiff;}
+	
+	/**
+	 * Provide the number of records, i.e. the number of plot and date combinations.
+	 * @return an integer
+	 */
+	public int getNumberOfRecords() {return nbRecords;}
+	
+	/**
+	 * Provide the fingerprint of the plot network the occupancy indices were calculated from.
+	 * @return a long
+	 */
+	public long getNetworkFingerprint() {return networkFingerprint;}
+	
+	/**
+	 * Check whether the occupancy indices were calculated from this network of plots. <p>
+	 * The fingerprint of the network is computed over the species of the cache and compared 
+	 * with the one in the header. This method iterates over all the plots and its result should 
+	 * be memoized by the caller.
+	 * @param plots the plots of the network
+	 * @param speciesClass the enum class of the species in the cache
+	 * @return true if the network is the one the cache was written from
+	 */
+	public <E extends Enum<E>> boolean isCalculatedFrom(List<? extends OccupancyIndexCalculablePlot> plots, Class<E> speciesClass) {
+		List<E> speciesList = new ArrayList<E>();
+		for (String speciesName : speciesNames) {
+			try {
+				speciesList.add(Enum.valueOf(speciesClass, speciesName));
+			} catch (IllegalArgumentException e) {
+				return false;
+			}
+		}
+		return OccupancyIndexCalculator.getNetworkFingerprint(plots, speciesList) == networkFingerprint;
+	}
+	
+	/*
+	 * Returns the index of the record or -1 if it is not found.
+	 */
+	private int findRecord(String plotId, int dateYr) {
+		Integer plotIndex = plotIndices.get(plotId);
+		if (plotIndex == null) {
+			return -1;
+		}
+		int low = 0;
+		int high = nbRecords - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			MappedByteBuffer buffer = recordBuffers[mid / recordsPerBuffer];
+			int offset = (mid % recordsPerBuffer) * recordSize;
+			int cmp = Integer.compare(buffer.getInt(offset), plotIndex);
+			if (cmp == 0) {
+				cmp = Integer.compare(buffer.getInt(offset + 4), dateYr);
+			}
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -1;
+	}
+	
+	/**
+	 * Provide the occupancy index of a plot at a particular date. <p>
+	 * The lookup relies on the plot id and the date only. It does not check the plot network (see 
+	 * {@link #isCalculatedFrom(List, Class)}).
+	 * @param plotId the id of the plot
+	 * @param dateYr the date (yr)
+	 * @param species an enum standing for the species
+	 * @return a GaussianEstimate instance or null if the plot, the date or the species is not in the cache
+	 */
+	public GaussianEstimate getOccupancyIndex(String plotId, int dateYr, Enum<?> species) {
+		Integer speciesIndex = speciesIndices.get(species.name());
+		if (speciesIndex == null) {
+			return null;
+		}
+		int record = findRecord(plotId, dateYr);
+		if (record == -1) {
+			return null;
+		}
+		MappedByteBuffer buffer = recordBuffers[record / recordsPerBuffer];
+		int valueOffset = (record % recordsPerBuffer) * recordSize + 8 + speciesIndex * 16;
+		Matrix mean = new Matrix(1, 1, buffer.getDouble(valueOffset), 0);
+		SymmetricMatrix variance = new SymmetricMatrix(1);
+		variance.setValueAt(0, 0, buffer.getDouble(valueOffset + 8));
+		return new GaussianEstimate(mean, variance);
+	}
+
+}
@@ -19,12 +19,17 @@
  */
 package canforservutility.occupancyindex;
 
+import java.io.File;
+import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import repicea.math.Matrix;
@@ -37,7 +42,7 @@ import repicea.stats.sampling.PopulationMeanEstimate;
  * A class to calculate the occupancy index. <p>
  * The occupancy index is actually an estimate of the occupancy within a particular radius
  * around each plot. 
- * @author Mathieu Fortin - Sept 2022, October 2025
+ * @author Mathieu Fortin - Sept 2022, October 2025, October 2026
  */
 public class OccupancyIndexCalculator {
 
@@ -85,8 +90,18 @@ public class OccupancyIndexCalculator {
 		
 	}
 	
-	final SymmetricMatrix distances;
+	/**
+	 * The relative tolerance of the distances of the spatial index. Within this tolerance, 
+	 * the distance is recalculated through the GeographicDistanceCalculator class.
+	 */
+	private static final double DISTANCE_TOLERANCE = 0.01;
+	private static final long FINGERPRINT_OFFSET = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_PRIME = 0x100000001b3L;
+	
+	final SphericalKdTree spatialIndex;
 	final Map<String, Integer> plotsId;
+	private final double[] latitudesDeg;
+	private final double[] longitudesDeg;
 	private int minYearDiff = 0;
 	private int maxYearDiff = 10;
 
@@ -95,11 +110,12 @@ public class OccupancyIndexCalculator {
 	/**
 	 * Constructor. <p>
 	 * It is assumed that the plots with the same subjectId have the same
-	 * geographical coordinates. The constructor first sets the distance 
-	 * matrix. Only the first entry of the set of plots with the same subjectId
-	 * is considered in the calculation of the distance matrix.<p>
-	 * The constructor first sets the distances. Then, the occupancy index can be 
-	 * obtained through the {@link OccupancyIndexCalculator#getOccupancyIndex(List, OccupancyIndexCalculablePlot, Enum, double)} 
+	 * geographical coordinates. The constructor first sets a spatial index 
+	 * of the plots. Only the first entry of the set of plots with the same subjectId
+	 * is considered in the spatial index. The memory of the index scales linearly 
+	 * with the number of plots.<p>
+	 * Then, the occupancy index can be obtained through the 
+	 * {@link OccupancyIndexCalculator#getOccupancyIndex(List, OccupancyIndexCalculablePlot, Enum, double)} 
 	 * method.
 	 * 
 	 * @param plots a List of OccupancyIndexCalculablePlot instances
@@ -116,32 +132,72 @@ public class OccupancyIndexCalculator {
 			} 
 		}		
 		// construct the latitude and longitude vectors
-		Matrix latitudes = new Matrix(firstEntryPlots.size(), 1);
-		Matrix longitudes = new Matrix(firstEntryPlots.size(), 1);
+		latitudesDeg = new double[firstEntryPlots.size()];
+		longitudesDeg = new double[firstEntryPlots.size()];
 		for (int i = 0; i < firstEntryPlots.size(); i++) {
 			OccupancyIndexCalculablePlot p = firstEntryPlots.get(i);
-			latitudes.setValueAt(i, 0, p.getLatitudeDeg());
-			longitudes.setValueAt(i, 0, p.getLongitudeDeg());
+			latitudesDeg[i] = p.getLatitudeDeg();
+			longitudesDeg[i] = p.getLongitudeDeg();
 		}
-		// calculate the distance matrix
-		distances = GeographicDistanceCalculator.getDistanceBetweenTheseCoordinates(latitudes, longitudes);
+		// construct the spatial index
+		spatialIndex = new SphericalKdTree(latitudesDeg, longitudesDeg);
 
 		nearestNeighbors = new NearestNeighborEntryList();
 		for (int i = 0; i < firstEntryPlots.size(); i++) {
 			OccupancyIndexCalculablePlot p = firstEntryPlots.get(i);
-			double minForThisPlot = Double.POSITIVE_INFINITY;
-			for (int j = 0; j < distances.m_iCols; j++) {
-				double d = distances.getValueAt(i, j);
-				if (j != i && d < minForThisPlot) {
-					minForThisPlot = d;
-				}
-			}
-			
+			int j = spatialIndex.findNearestNeighbor(i);
+			double minForThisPlot = j == -1 ? Double.POSITIVE_INFINITY : getDistanceKm(i, j);
 			nearestNeighbors.add(new NearestNeighborEntry(p.getSubjectId(), minForThisPlot));
 		}
 		Collections.sort(nearestNeighbors);
 	}
 
+	/**
+	 * Compute the distance between two plots through the GeographicDistanceCalculator class.
+	 * @param index1 the index of the first plot
+	 * @param index2 the index of the second plot
+	 * @return the distance (km)
+	 */
+	private double getDistanceKm(int index1, int index2) {
+		if (index1 == index2) {
+			Matrix latitude = new Matrix(1, 1, latitudesDeg[index1], 0);
+			Matrix longitude = new Matrix(1, 1, longitudesDeg[index1], 0);
+			return GeographicDistanceCalculator.getDistanceBetweenTheseCoordinates(latitude, longitude).getValueAt(0, 0);
+		} else {
+			Matrix latitudes = new Matrix(2, 1);
+			Matrix longitudes = new Matrix(2, 1);
+			latitudes.setValueAt(0, 0, latitudesDeg[index1]);
+			latitudes.setValueAt(1, 0, latitudesDeg[index2]);
+			longitudes.setValueAt(0, 0, longitudesDeg[index1]);
+			longitudes.setValueAt(1, 0, longitudesDeg[index2]);
+			return GeographicDistanceCalculator.getDistanceBetweenTheseCoordinates(latitudes, longitudes).getValueAt(0, 1);
+		}
+	}
+	
+	/**
+	 * Provide the indices of the plots that are strictly within a particular radius of a plot.<p>
+	 * The candidates are first retrieved from the spatial index. The distance is recalculated 
+	 * through the GeographicDistanceCalculator class only for the candidates that are close 
+	 * to the radius.
+	 * @param index the index of the plot of interest
+	 * @param radiusKm the radius (km)
+	 * @return a Set of integers
+	 */
+	Set<Integer> getPlotIndicesWithinRadius(int index, double radiusKm) {
+		List<Integer> candidates = new ArrayList<Integer>();
+		spatialIndex.addPointsWithinDistance(index, radiusKm * (1d + DISTANCE_TOLERANCE), candidates);
+		Set<Integer> indices = new HashSet<Integer>();
+		double lowerBoundKm = radiusKm * (1d - DISTANCE_TOLERANCE);
+		for (Integer j : candidates) {
+			if (j != index && spatialIndex.getDistanceKm(index, j) < lowerBoundKm) {
+				indices.add(j);
+			} else if (getDistanceKm(index, j) < radiusKm) {
+				indices.add(j);
+			}
+		}
+		return indices;
+	}
+	
 	/**
 	 * Provide the number of subjects.
 	 * @return an integer 
@@ -167,18 +223,17 @@ public class OccupancyIndexCalculator {
 	 * @return the distance (km)
 	 */
 	protected double getDistanceKmBetweenThesePlots(OccupancyIndexCalculablePlot plot1, OccupancyIndexCalculablePlot plot2) {
-		int index1 = plotsId.get(plot1.getSubjectId());
-		if (index1 == -1) {
-			throw new InvalidParameterException("The plot1 argument is not found in the plot list!");
-		}
-		int index2 = plotsId.get(plot2.getSubjectId());
-		if (index2 == -1) {
-			throw new InvalidParameterException("The plot2 argument is not found in the plot list!");
-		}
-		double distanceKm = distances.getValueAt(index1, index2);
-		return distanceKm;
+		return getDistanceKm(getPlotIndex(plot1, "plot1"), getPlotIndex(plot2, "plot2"));
 	}
 
+	private int getPlotIndex(OccupancyIndexCalculablePlot plot, String argumentName) {
+		Integer index = plotsId.get(plot.getSubjectId());
+		if (index == null) {
+			throw new InvalidParameterException("The " + argumentName + " argument is not found in the plot list!");
+		}
+		return index;
+	}
+	
 	private int getOccurrence(OccupancyIndexCalculablePlot plot, Enum<?> species) {
 		boolean occurred = plot.getBasalAreaM2HaForThisSpecies(species) > 0;
 		return occurred ? 1 : 0;
@@ -217,8 +272,9 @@ public class OccupancyIndexCalculator {
 					collect(Collectors.toList());
 		}
 		
+		Set<Integer> plotIndicesWithinDistance = getPlotIndicesWithinRadius(getPlotIndex(thisPlot, "thisPlot"), radiusKm);
 		List<OccupancyIndexCalculablePlot> plotsWithinDistanceWithinLast10Yrs = plotsWithinLast10Yrs.stream().
-				filter(p -> getDistanceKmBetweenThesePlots(thisPlot, p) < radiusKm).
+				filter(p -> plotIndicesWithinDistance.contains(getPlotIndex(p, "plots"))).
 				collect(Collectors.toList());
 		
 		Map<String, OccupancyIndexCalculablePlot> singletonMap = new HashMap<String, OccupancyIndexCalculablePlot>();
@@ -271,6 +327,117 @@ public class OccupancyIndexCalculator {
 		return getOccupancyIndex(plots, thisPlot, species, radiusKm, null);
 	}
 
+	/**
+	 * Compute the occupancy indices of all the plots and write them in a binary file.<p>
+	 * The file can then be loaded through the {@link OccupancyIndexCache#load(File)} method. The 
+	 * indices are computed with the OccupancyIndexBatchEngine class and the time window of this 
+	 * calculator. There is one record for each combination of plot and date.
+	 * @param file the file
+	 * @param plots the list of plots, which includes all the measurements of the plots
+	 * @param speciesList a List of enums standing for the species
+	 * @param radiusKm the radius (km) of the area upon which the occupancy is calculated
+	 * @param nbThreads the number of threads (1 for a sequential computation)
+	 * @throws IOException if an I/O error occurs
+	 */
+	public void writeOccupancyIndexCache(File file, 
+			List<OccupancyIndexCalculablePlot> plots, 
+			List<? extends Enum<?>> speciesList, 
+			double radiusKm, 
+			int nbThreads) throws IOException {
+		OccupancyIndexBatchEngine engine = new OccupancyIndexBatchEngine(this, plots);
+		OccupancyIndexBatchEngine.Result result = engine.computeOccupancyIndices(speciesList, radiusKm, nbThreads);
+		List<Integer> order = new ArrayList<Integer>();
+		for (int i = 0; i < plots.size(); i++) {
+			order.add(i);
+		}
+		order.sort((i1, i2) -> {
+			int cmp = Integer.compare(plotsId.get(plots.get(i1).getSubjectId()), plotsId.get(plots.get(i2).getSubjectId()));
+			return cmp != 0 ? cmp : Integer.compare(plots.get(i1).getDateYr(), plots.get(i2).getDateYr());
+		});
+		List<Integer> recordPlotIndices = new ArrayList<Integer>();	// the first measurement of each plot and date
+		int lastSubject = -1;
+		int lastDateYr = 0;
+		for (int i : order) {
+			int subject = plotsId.get(plots.get(i).getSubjectId());
+			int dateYr = plots.get(i).getDateYr();
+			if (subject != lastSubject || dateYr != lastDateYr) {
+				recordPlotIndices.add(i);
+				lastSubject = subject;
+				lastDateYr = dateYr;
+			}
+		}
+		int nbRecords = recordPlotIndices.size();
+		int[] recordPlots = new int[nbRecords];
+		int[] recordDates = new int[nbRecords];
+		double[][] means = new double[speciesList.size()][nbRecords];
+		double[][] variances = new double[speciesList.size()][nbRecords];
+		for (int r = 0; r < nbRecords; r++) {
+			int i = recordPlotIndices.get(r);
+			recordPlots[r] = plotsId.get(plots.get(i).getSubjectId());
+			recordDates[r] = plots.get(i).getDateYr();
+			for (int s = 0; s < speciesList.size(); s++) {
+				means[s][r] = result.getMeans(s)[i];
+				variances[s][r] = result.getVariances(s)[i];
+			}
+		}
+		String[] plotIds = new String[plotsId.size()];
+		for (Map.Entry<String, Integer> entry : plotsId.entrySet()) {
+			plotIds[entry.getValue()] = entry.getKey();
+		}
+		List<String> speciesNames = new ArrayList<String>();
+		for (Enum<?> species : speciesList) {
+			speciesNames.add(species.name());
+		}
+		OccupancyIndexCache.write(file, 
+				radiusKm, 
+				minYearDiff, 
+				maxYearDiff, 
+				getNetworkFingerprint(plots, speciesList), 
+				speciesNames, 
+				Arrays.asList(plotIds), 
+				recordPlots, 
+				recordDates, 
+				means, 
+				variances);
+	}
+
+	/**
+	 * Compute the fingerprint of a network of plots. <p>
+	 * The fingerprint is a FNV-1a hash of the ids, the coordinates, the dates, the areas and the 
+	 * basal areas of the species of all the plots. It is stored in the header of the occupancy 
+	 * index cache so that a cache written from another network can be detected.
+	 * @param plots the plots of the network
+	 * @param speciesList the species
+	 * @return a long
+	 */
+	static long getNetworkFingerprint(List<? extends OccupancyIndexCalculablePlot> plots, List<? extends Enum<?>> speciesList) {
+		long fingerprint = FINGERPRINT_OFFSET;
+		fingerprint = addToFingerprint(fingerprint, plots.size());
+		for (OccupancyIndexCalculablePlot p : plots) {
+			String subjectId = p.getSubjectId();
+			for (int i = 0; i < subjectId.length(); i++) {
+				fingerprint = addToFingerprint(fingerprint, subjectId.charAt(i));
+			}
+			fingerprint = addToFingerprint(fingerprint, subjectId.length());
+			fingerprint = addToFingerprint(fingerprint, Double.doubleToLongBits(p.getLatitudeDeg()));
+			fingerprint = addToFingerprint(fingerprint, Double.doubleToLongBits(p.getLongitudeDeg()));
+			fingerprint = addToFingerprint(fingerprint, p.getDateYr());
+			fingerprint = addToFingerprint(fingerprint, Double.doubleToLongBits(p.getAreaHa()));
+			for (Enum<?> species : speciesList) {
+				fingerprint = addToFingerprint(fingerprint, Double.doubleToLongBits(p.getBasalAreaM2HaForThisSpecies(species)));
+			}
+		}
+		return fingerprint;
+	}
+
+	private static long addToFingerprint(long fingerprint, long value) {
+		for (int i = 0; i < 8; i++) {		// FNV-1a hashing byte by byte
+			fingerprint ^= (value >>> (i * 8)) & 0xFF;
+			fingerprint *= FINGERPRINT_PRIME;
+		}
+		return fingerprint;
+	}
+	
 	/**
 	 * Set the minimum year difference for a plot measurement to be considered 
 	 * in the calculation. <p>
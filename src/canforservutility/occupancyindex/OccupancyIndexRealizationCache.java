@@ -0,0 +1,265 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package canforservutility.occupancyindex;
+
+import java.security.InvalidParameterException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The OccupancyIndexRealizationCache class stores values that depend on the plot, the 
+ * Monte Carlo realization and the date, typically the mean and variance of the occupancy 
+ * index or its random deviate.<p>
+ * The plot ids are interned once as integers. The plot index and the date are then packed into 
+ * a long key of a primitive open-addressing hash table with linear probing, while the realization 
+ * id is stored in a parallel array of integers. Any date and any realization id can therefore be 
+ * stored. The values are stored in a parallel array of doubles. The values can be NaN: the contains 
+ * method tells whether an entry is in the cache. The entries of a realization can be evicted once 
+ * this realization is completed.<p>
+ * The reads are lock-free and the writes are serialized. A new entry is published by setting its 
+ * key after its realization id and its values, while a rehash, an eviction or the replacement of an 
+ * existing entry publishes a new table. A reader therefore never sees partially written values.
+ * @author Mathieu Fortin - October 2026
+ */
+public final class OccupancyIndexRealizationCache {
+
+	private static final long EMPTY = -1L;		// the plot indices are never negative so that a key cannot be -1
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private static final class Table {
+		private final AtomicLongArray keys;
+		private final int[] realizationIds;
+		private final double[] values;
+		
+		private Table(int capacity, int width) {
+			keys = new AtomicLongArray(capacity);
+			for (int i = 0; i < capacity; i++) {
+				keys.lazySet(i, EMPTY);
+			}
+			realizationIds = new int[capacity];
+			values = new double[capacity * width];
+		}
+
+		private int findSlot(long key, int realizationId) {
+			int mask = keys.length() - 1;
+			int slot = hash(key, realizationId) & mask;
+			long currentKey;
+			while ((currentKey = keys.get(slot)) != EMPTY && (currentKey != key || realizationIds[slot] != realizationId)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		/*
+		 * The slot may have been empty in findSlot and published by a writer since. The realization id 
+		 * is read after the key, so that it belongs to the entry that was published.
+		 */
+		private boolean isFound(int slot, long key, int realizationId) {
+			return keys.get(slot) == key && realizationIds[slot] == realizationId;
+		}
+	}
+	
+	private final int width;
+	private final Map<String, Integer> plotIndices;
+	private volatile Table table;
+	private volatile int size;
+	
+	/**
+	 * Constructor.
+	 * @param width the number of values per entry
+	 */
+	public OccupancyIndexRealizationCache(int width) {
+		if (width < 1) {
+			throw new InvalidParameterException("The width argument must be equal to or greater than 1!");
+		}
+		this.width = width;
+		plotIndices = new ConcurrentHashMap<String, Integer>();
+		table = new Table(INITIAL_CAPACITY, width);
+	}
+	
+	private long getKey(String plotId, int dateYr, boolean internIfNeeded) {
+		Integer plotIndex = plotIndices.get(plotId);
+		if (plotIndex == null) {
+			if (!internIfNeeded) {
+				return EMPTY;
+			}
+			plotIndex = plotIndices.size();		// only called by the writers, which are serialized
+			plotIndices.put(plotId, plotIndex);
+		}
+		return ((long) plotIndex << 32) | (dateYr & 0xFFFFFFFFL);
+	}
+	
+	private static int hash(long key, int realizationId) {
+		key ^= realizationId * 0x9e3779b97f4a7c15L;
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		return (int) key;
+	}
+
+	/**
+	 * Check whether an entry is in the cache.
+	 * @param plotId the plot id
+	 * @param realizationId the Monte Carlo realization id
+	 * @param dateYr the date (yr)
+	 * @return a boolean
+	 */
+	public boolean contains(String plotId, int realizationId, int dateYr) {
+		long key = getKey(plotId, dateYr, false);
+		if (key == EMPTY) {
+			return false;
+		}
+		Table t = table;
+		return t.isFound(t.findSlot(key, realizationId), key, realizationId);
+	}
+	
+	/**
+	 * Provide a value of an entry.<p>
+	 * A stored value can be NaN. The contains method should be used to check whether the entry is in the cache.
+	 * @param plotId the plot id
+	 * @param realizationId the Monte Carlo realization id
+	 * @param dateYr the date (yr)
+	 * @param valueIndex the index of the value in the entry
+	 * @return the value or NaN if the entry is not in the cache
+	 */
+	public double getValue(String plotId, int realizationId, int dateYr, int valueIndex) {
+		long key = getKey(plotId, dateYr, false);
+		if (key == EMPTY) {
+			return Double.NaN;
+		}
+		Table t = table;
+		int slot = t.findSlot(key, realizationId);
+		return t.isFound(slot, key, realizationId) ? t.values[slot * width + valueIndex] : Double.NaN;
+	}
+	
+	/**
+	 * Store the values of an entry. Existing values are replaced.
+	 * @param plotId the plot id
+	 * @param realizationId the Monte Carlo realization id
+	 * @param dateYr the date (yr)
+	 * @param entryValues the values (their number must be the width of the cache)
+	 */
+	public synchronized void put(String plotId, int realizationId, int dateYr, double... entryValues) {
+		store(plotId, realizationId, dateYr, entryValues, true);
+	}
+
+	/**
+	 * Store the values of an entry if this entry is not already in the cache. <p>
+	 * This method should be preferred when concurrent threads may compute the same entry, 
+	 * typically a random deviate, so that all of them end up using the same values.
+	 * @param plotId the plot id
+	 * @param realizationId the Monte Carlo realization id
+	 * @param dateYr the date (yr)
+	 * @param entryValues the values (their number must be the width of the cache)
+	 * @return true if the values were stored or false if the entry was already in the cache
+	 */
+	public synchronized boolean putIfAbsent(String plotId, int realizationId, int dateYr, double... entryValues) {
+		return store(plotId, realizationId, dateYr, entryValues, false);
+	}
+
+	private boolean store(String plotId, int realizationId, int dateYr, double[] entryValues, boolean replaceIfPresent) {
+		if (entryValues.length != width) {
+			throw new InvalidParameterException("The number of values must be " + width + "!");
+		}
+		long key = getKey(plotId, dateYr, true);
+		Table t = table;
+		int slot = t.findSlot(key, realizationId);
+		if (t.isFound(slot, key, realizationId)) {
+			if (!replaceIfPresent) {
+				return false;
+			}
+			Table newTable = copy(t, t.keys.length(), false, 0);	// the values that are being read must not be overwritten
+			System.arraycopy(entryValues, 0, newTable.values, newTable.findSlot(key, realizationId) * width, width);
+			table = newTable;
+			return true;
+		}
+		if ((size + 1) * 2 > t.keys.length()) {
+			t = copy(t, t.keys.length() * 2, false, 0);
+			slot = t.findSlot(key, realizationId);
+			t.realizationIds[slot] = realizationId;
+			System.arraycopy(entryValues, 0, t.values, slot * width, width);
+			t.keys.set(slot, key);
+			table = t;
+		} else {
+			t.realizationIds[slot] = realizationId;
+			System.arraycopy(entryValues, 0, t.values, slot * width, width);
+			t.keys.set(slot, key);		// the entry is published once its realization id and its values are written
+		}
+		size++;
+		return true;
+	}
+
+	/*
+	 * Copies the entries in a new table, except those of the excluded realization if isExcluding is true. 
+	 */
+	private Table copy(Table oldTable, int capacity, boolean isExcluding, int excludedRealizationId) {
+		Table newTable = new Table(capacity, width);
+		for (int i = 0; i < oldTable.keys.length(); i++) {
+			long key = oldTable.keys.get(i);
+			int realizationId = oldTable.realizationIds[i];
+			if (key != EMPTY && (!isExcluding || realizationId != excludedRealizationId)) {
+				int slot = newTable.findSlot(key, realizationId);
+				newTable.realizationIds[slot] = realizationId;
+				System.arraycopy(oldTable.values, i * width, newTable.values, slot * width, width);
+				newTable.keys.lazySet(slot, key);		// published with the table
+			}
+		}
+		return newTable;
+	}
+	
+	/**
+	 * Remove all the entries of a Monte Carlo realization.<p>
+	 * The plot ids remain interned.
+	 * @param realizationId the Monte Carlo realization id
+	 */
+	public synchronized void evictRealization(int realizationId) {
+		Table oldTable = table;
+		int remaining = 0;
+		for (int i = 0; i < oldTable.keys.length(); i++) {
+			long key = oldTable.keys.get(i);
+			if (key != EMPTY && oldTable.realizationIds[i] != realizationId) {
+				remaining++;
+			}
+		}
+		int capacity = INITIAL_CAPACITY;
+		while (remaining * 2 >= capacity) {
+			capacity *= 2;
+		}
+		table = copy(oldTable, capacity, true, realizationId);
+		size = remaining;
+	}
+	
+	/**
+	 * Remove all the entries and the interned plot ids.
+	 */
+	public synchronized void clear() {
+		table = new Table(INITIAL_CAPACITY, width);
+		size = 0;
+		plotIndices.clear();
+	}
+
+	/**
+	 * Provide the number of entries in the cache.
+	 * @return an integer
+	 */
+	public int size() {return size;}
+	
+}
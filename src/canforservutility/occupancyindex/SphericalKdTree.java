@@ -0,0 +1,251 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package canforservutility.occupancyindex;
+
+import java.util.List;
+
+/**
+ * The SphericalKdTree class is a spatial index of geographic coordinates.<p>
+ * The coordinates are projected on the unit sphere and stored in a balanced
+ * three-dimensional k-d tree. The tree is implicit: it is a permutation of the
+ * point indices in which the median of each range is the node of that range. The 
+ * memory therefore scales linearly with the number of points. The range and 
+ * nearest-neighbour queries are based on the chord length, which is a monotonic 
+ * function of the great-circle distance.
+ * @author Mathieu Fortin - October 2026
+ */
+final class SphericalKdTree {
+
+	/**
+	 * The mean radius of the Earth (km).
+	 */
+	static final double EARTH_RADIUS_KM = 6371d;
+	
+	private final double[][] coordinates;	// [axis][point]
+	private final int[] order;
+	private final byte[] splitAxes;
+	
+	/**
+	 * Constructor.
+	 * @param latitudesDeg the latitudes of the points (degrees)
+	 * @param longitudesDeg the longitudes of the points (degrees)
+	 */
+	SphericalKdTree(double[] latitudesDeg, double[] longitudesDeg) {
+		int n = latitudesDeg.length;
+		coordinates = new double[3][n];
+		order = new int[n];
+		splitAxes = new byte[n];
+		for (int i = 0; i < n; i++) {
+			double latRad = Math.toRadians(latitudesDeg[i]);
+			double lonRad = Math.toRadians(longitudesDeg[i]);
+			coordinates[0][i] = Math.cos(latRad) * Math.cos(lonRad);
+			coordinates[1][i] = Math.cos(latRad) * Math.sin(lonRad);
+			coordinates[2][i] = Math.sin(latRad);
+			order[i] = i;
+		}
+		build(0, n);
+	}
+	
+	private void build(int lo, int hi) {
+		if (hi - lo <= 1) {
+			return;
+		}
+		int axis = getAxisOfLargestSpread(lo, hi);
+		int mid = (lo + hi) >>> 1;
+		select(lo, hi - 1, mid, coordinates[axis]);
+		splitAxes[mid] = (byte) axis;
+		build(lo, mid);
+		build(mid + 1, hi);
+	}
+	
+	private int getAxisOfLargestSpread(int lo, int hi) {
+		int bestAxis = 0;
+		double bestSpread = -1d;
+		for (int axis = 0; axis < 3; axis++) {
+			double[] c = coordinates[axis];
+			double min = Double.POSITIVE_INFINITY;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int k = lo; k < hi; k++) {
+				double value = c[order[k]];
+				if (value < min) {
+					min = value;
+				}
+				if (value > max) {
+					max = value;
+				}
+			}
+			if (max - min > bestSpread) {
+				bestSpread = max - min;
+				bestAxis = axis;
+			}
+		}
+		return bestAxis;
+	}
+	
+	/*
+	 * Quickselect: rearranges order[left..right] so that the k-th element is in its sorted position. 
+	 */
+	private void select(int left, int right, int k, double[] c) {
+		while (right > left) {
+			double pivot = c[order[(left + right) >>> 1]];
+			int i = left;
+			int j = right;
+			while (i <= j) {
+				while (c[order[i]] < pivot) {
+					i++;
+				}
+				while (c[order[j]] > pivot) {
+					j--;
+				}
+				if (i <= j) {
+					int tmp = order[i];
+					order[i] = order[j];
+					order[j] = tmp;
+					i++;
+					j--;
+				}
+			}
+			if (k <= j) {
+				right = j;
+			} else if (k >= i) {
+				left = i;
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Provide the number of points in the index.
+	 * @return an integer
+	 */
+	int size() {return order.length;}
+	
+	/**
+	 * Convert a great-circle distance into a chord length on the unit sphere.
+	 * @param distanceKm the great-circle distance (km)
+	 * @return the chord length
+	 */
+	static double getChordLength(double distanceKm) {
+		double angle = distanceKm / EARTH_RADIUS_KM;
+		if (angle >= Math.PI) {
+			return 2d;
+		}
+		return 2d * Math.sin(angle * .5);
+	}
+	
+	private double getSquaredChordLength(int i, int j) {
+		double dx = coordinates[0][i] - coordinates[0][j];
+		double dy = coordinates[1][i] - coordinates[1][j];
+		double dz = coordinates[2][i] - coordinates[2][j];
+		return dx * dx + dy * dy + dz * dz;
+	}
+	
+	/**
+	 * Provide the great-circle distance between two points of the index. 
+	 * @param i the index of the first point
+	 * @param j the index of the second point
+	 * @return the distance (km)
+	 */
+	double getDistanceKm(int i, int j) {
+		double halfChord = Math.sqrt(getSquaredChordLength(i, j)) * .5;
+		return 2d * EARTH_RADIUS_KM * Math.asin(Math.min(1d, halfChord));
+	}
+	
+	/**
+	 * Add the indices of the points within a given great-circle distance of a point of the index.<p>
+	 * The point itself is included.
+	 * @param queryIndex the index of the point of interest
+	 * @param distanceKm the great-circle distance (km)
+	 * @param output the list in which the indices are added
+	 */
+	void addPointsWithinDistance(int queryIndex, double distanceKm, List<Integer> output) {
+		double chord = getChordLength(distanceKm);
+		addPointsWithinChordLength(0, order.length, queryIndex, chord, chord * chord, output);
+	}
+	
+	private void addPointsWithinChordLength(int lo, int hi, int queryIndex, double chord, double squaredChord, List<Integer> output) {
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			int p = order[mid];
+			if (getSquaredChordLength(queryIndex, p) <= squaredChord) {
+				output.add(p);
+			}
+			if (hi - lo == 1) {
+				return;
+			}
+			int axis = splitAxes[mid];
+			double diff = coordinates[axis][queryIndex] - coordinates[axis][p];
+			boolean searchLeft = diff <= chord;
+			boolean searchRight = diff >= -chord;
+			if (searchLeft && searchRight) {
+				addPointsWithinChordLength(lo, mid, queryIndex, chord, squaredChord, output);
+				lo = mid + 1;
+			} else if (searchLeft) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+	}
+	
+	/**
+	 * Find the nearest neighbour of a point of the index. The point itself is excluded.
+	 * @param queryIndex the index of the point of interest
+	 * @return the index of the nearest neighbour or -1 if there is a single point in the index
+	 */
+	int findNearestNeighbor(int queryIndex) {
+		double[] best = new double[] {-1d, Double.POSITIVE_INFINITY};	// index and squared chord length
+		findNearestNeighbor(0, order.length, queryIndex, best);
+		return (int) best[0];
+	}
+	
+	private void findNearestNeighbor(int lo, int hi, int queryIndex, double[] best) {
+		if (lo >= hi) {
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		int p = order[mid];
+		if (p != queryIndex) {
+			double squaredChord = getSquaredChordLength(queryIndex, p);
+			if (squaredChord < best[1]) {
+				best[0] = p;
+				best[1] = squaredChord;
+			}
+		}
+		if (hi - lo == 1) {
+			return;
+		}
+		int axis = splitAxes[mid];
+		double diff = coordinates[axis][queryIndex] - coordinates[axis][p];
+		if (diff <= 0) {
+			findNearestNeighbor(lo, mid, queryIndex, best);
+			if (diff * diff < best[1]) {
+				findNearestNeighbor(mid + 1, hi, queryIndex, best);
+			}
+		} else {
+			findNearestNeighbor(mid + 1, hi, queryIndex, best);
+			if (diff * diff < best[1]) {
+				findNearestNeighbor(lo, mid, queryIndex, best);
+			}
+		}
+	}
+	
+}
@@ -0,0 +1,272 @@
+/*
+ * This file is part of the CFSForesttools library
+ *
+ * Copyright (C) 2026 His Majesty the King in right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ * 
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place, Suite 330, Boston, MA  02111-1307  USA
+ */
+package canforservutility.predictor.biomass.lambert2005;
+
+import java.security.InvalidParameterException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import canforservutility.predictor.biomass.lambert2005.Lambert2005BiomassPredictor.BiomassCompartment;
+import canforservutility.predictor.biomass.lambert2005.Lambert2005BiomassPredictor.ModelVersion;
+import repicea.math.Matrix;
+import repicea.math.SymmetricMatrix;
+import repicea.simulation.covariateproviders.treelevel.HeightMProvider;
+import repicea.simulation.species.REpiceaSpecies.Species;
+
+/**
+ * The Lambert2005BiomassAggregator class sums the biomass of many trees and provides 
+ * the variance of the totals in a single pass.<p>
+ * The trees are added one at a time. For each version and species, the aggregator accumulates the 
+ * expanded predictions, the first-order derivatives of these predictions with respect to the 
+ * parameters and the products of the residual weights. The variance of the totals is then 
+ * obtained through the delta method, without any Monte Carlo realization. The parameters 
+ * of the different species are assumed to be independent, and so are the residual errors of the 
+ * different trees. The truncation of the negative values in the stochastic mode of the 
+ * predictor is ignored.<p>
+ * This class is not thread-safe.
+ * @author Mathieu Fortin - October 2026
+ */
+public final class Lambert2005BiomassAggregator {
+
+	private static final int NB_COMPARTMENTS = BiomassCompartment.values().length;
+	private static final int NB_BASIC_COMPARTMENTS = Lambert2005BiomassInternalPredictor.BASIC_ORDINALS.length;
+	
+	/*
+	 * The contribution of each basic compartment (columns) to each compartment (rows).
+	 */
+	private static final double[][] AGGREGATION_MATRIX = new double[NB_COMPARTMENTS][NB_BASIC_COMPARTMENTS];
+	static {
+		List<BiomassCompartment> basicCompartments = BiomassCompartment.getBasicBiomassCompartments();
+		int wood = basicCompartments.indexOf(BiomassCompartment.WOOD);
+		int bark = basicCompartments.indexOf(BiomassCompartment.BARK);
+		int branches = basicCompartments.indexOf(BiomassCompartment.BRANCHES);
+		int foliage = basicCompartments.indexOf(BiomassCompartment.FOLIAGE);
+		for (int k = 0; k < NB_BASIC_COMPARTMENTS; k++) {
+			AGGREGATION_MATRIX[basicCompartments.get(k).ordinal()][k] = 1d;
+			AGGREGATION_MATRIX[BiomassCompartment.TOTAL.ordinal()][k] = 1d;
+		}
+		AGGREGATION_MATRIX[BiomassCompartment.STEM.ordinal()][wood] = 1d;
+		AGGREGATION_MATRIX[BiomassCompartment.STEM.ordinal()][bark] = 1d;
+		AGGREGATION_MATRIX[BiomassCompartment.CROWN.ordinal()][branches] = 1d;
+		AGGREGATION_MATRIX[BiomassCompartment.CROWN.ordinal()][foliage] = 1d;
+	}
+	
+	/**
+	 * The partial sums of a particular version and species.
+	 */
+	private static final class PartialSums {
+		
+		final Lambert2005BiomassInternalPredictor predictor;
+		final int nbParmsPerCompartment;
+		final double[][] gradientSums;		// basic compartments x parameters
+		final double[][] weightProductSums;	// basic compartments x basic compartments (lower triangle only)
+		
+		PartialSums(Lambert2005BiomassInternalPredictor predictor) {
+			this.predictor = predictor;
+			nbParmsPerCompartment = predictor.version == ModelVersion.Complete ? 3 : 2;
+			gradientSums = new double[NB_BASIC_COMPARTMENTS][predictor.meanBeta.length];
+			weightProductSums = new double[NB_BASIC_COMPARTMENTS][NB_BASIC_COMPARTMENTS];
+		}
+	}
+	
+	private final Lambert2005BiomassPredictor predictor;
+	private final boolean isParameterUncertaintyIncluded;
+	private final boolean isResidualUncertaintyIncluded;
+	private final Map<Lambert2005BiomassInternalPredictor, PartialSums> partialSums;
+	private final double[] basicTotals;
+	private final double[] weights;
+	private int nbTrees;
+
+	/**
+	 * Constructor.<p>
+	 * The variance accounts for both the uncertainty in the parameter estimates and the residual errors.
+	 * @param predictor a Lambert2005BiomassPredictor instance
+	 */
+	public Lambert2005BiomassAggregator(Lambert2005BiomassPredictor predictor) {
+		this(predictor, true, true);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param predictor a Lambert2005BiomassPredictor instance
+	 * @param isParameterUncertaintyIncluded true to account for the uncertainty in the parameter estimates
+	 * @param isResidualUncertaintyIncluded true to account for the residual errors
+	 */
+	public Lambert2005BiomassAggregator(Lambert2005BiomassPredictor predictor, 
+			boolean isParameterUncertaintyIncluded, 
+			boolean isResidualUncertaintyIncluded) {
+		if (predictor == null) {
+			throw new InvalidParameterException("The predictor argument cannot be null!");
+		}
+		this.predictor = predictor;
+		this.isParameterUncertaintyIncluded = isParameterUncertaintyIncluded;
+		this.isResidualUncertaintyIncluded = isResidualUncertaintyIncluded;
+		partialSums = new LinkedHashMap<Lambert2005BiomassInternalPredictor, PartialSums>();
+		basicTotals = new double[NB_BASIC_COMPARTMENTS];
+		weights = new double[NB_BASIC_COMPARTMENTS];
+	}
+	
+	/**
+	 * Add a tree to the totals.<p>
+	 * The complete version is used if the tree implements the HeightMProvider interface. Otherwise, 
+	 * the reduced version is used.
+	 * @param tree a Lambert2005Tree instance
+	 * @param expansionFactor the number of trees represented by this tree (e.g. the plot weight)
+	 */
+	public void addTree(Lambert2005Tree tree, double expansionFactor) {
+		Double heightM = tree.implementHeighMProvider() ? ((HeightMProvider) tree).getHeightM() : null;
+		addTree(tree.getLambert2005Species(), tree.getDbhCm(), heightM, expansionFactor);
+	}
+	
+	/**
+	 * Add a tree to the totals.<p>
+	 * If heightM is not null, the complete version is used. Otherwise, it uses the reduced version.
+	 * @param species a Species enum
+	 * @param dbhCm tree diameter (cm)
+	 * @param heightM tree height (m)
+	 * @param expansionFactor the number of trees represented by this tree (e.g. the plot weight)
+	 */
+	public void addTree(Species species, double dbhCm, Double heightM, double expansionFactor) {
+		if (!Lambert2005BiomassPredictor.Species_LookupMap.containsValue(species)) {
+			throw new UnsupportedOperationException("The species " + species.getLatinName() + " is not supported in Lambert et al.'s biomass model!");
+		}
+		if (dbhCm <= 0d) {
+			throw new InvalidParameterException("The dbhCm argument must be positive!");
+		}
+		if (heightM != null && heightM <= 0) {
+			throw new InvalidParameterException("If not null, the heightM argument must be positive!");
+		}
+		ModelVersion v = heightM != null ? ModelVersion.Complete : ModelVersion.Reduced;
+		Lambert2005BiomassInternalPredictor internalPredictor = predictor.internalPredictors.get(v).get(species);
+		PartialSums sums = partialSums.get(internalPredictor);
+		if (sums == null) {
+			sums = new PartialSums(internalPredictor);
+			partialSums.put(internalPredictor, sums);
+		}
+		
+		double[] beta = internalPredictor.meanBeta;
+		double lnDbh = Math.log(dbhCm);
+		double lnHeight = heightM != null ? Math.log(heightM) : 0d;
+		for (int k = 0; k < NB_BASIC_COMPARTMENTS; k++) {
+			int baseIndex = Lambert2005BiomassInternalPredictor.BASIC_RANKS[k] * sums.nbParmsPerCompartment;
+			double powerTerms = Math.pow(dbhCm, beta[baseIndex + 1]);
+			if (heightM != null) {
+				powerTerms *= Math.pow(heightM, beta[baseIndex + 2]);
+			}
+			double expandedPrediction = expansionFactor * beta[baseIndex] * powerTerms;
+			basicTotals[k] += expandedPrediction;
+			double[] gradient = sums.gradientSums[k];
+			gradient[baseIndex] += expansionFactor * powerTerms;
+			gradient[baseIndex + 1] += expandedPrediction * lnDbh;
+			if (heightM != null) {
+				gradient[baseIndex + 2] += expandedPrediction * lnHeight;
+			}
+			int ordinal = Lambert2005BiomassInternalPredictor.BASIC_ORDINALS[k];
+			weights[k] = expansionFactor * Math.sqrt(Math.pow(dbhCm, internalPredictor.weightExponents[ordinal]));
+		}
+		for (int k = 0; k < NB_BASIC_COMPARTMENTS; k++) {
+			for (int l = 0; l <= k; l++) {
+				sums.weightProductSums[k][l] += weights[k] * weights[l];
+			}
+		}
+		nbTrees++;
+	}
+
+	/**
+	 * Provide the number of trees added so far.
+	 * @return an integer
+	 */
+	public int getNumberOfTrees() {return nbTrees;}
+	
+	/**
+	 * Provide the total biomass in the different compartments.<p>
+	 * The output is a column vector whose elements can be accessed using the BiomassCompartment enum 
+	 * (e.g., myTotal.getValueAt(BiomassCompartment.WOOD.ordinal(), 0);).
+	 * @return a Matrix instance (kg)
+	 */
+	public Matrix getTotalBiomassKg() {
+		Matrix total = new Matrix(NB_COMPARTMENTS, 1);
+		for (int i = 0; i < NB_COMPARTMENTS; i++) {
+			double sum = 0d;
+			for (int k = 0; k < NB_BASIC_COMPARTMENTS; k++) {
+				sum += AGGREGATION_MATRIX[i][k] * basicTotals[k];
+			}
+			total.setValueAt(i, 0, sum);
+		}
+		return total;
+	}
+	
+	/**
+	 * Provide the first-order approximation of the variance-covariance of the total biomass.<p>
+	 * The rows and columns follow the BiomassCompartment enum.
+	 * @return a SymmetricMatrix instance (kg2)
+	 */
+	public SymmetricMatrix getVarianceKg2() {
+		double[][] basicVariance = new double[NB_BASIC_COMPARTMENTS][NB_BASIC_COMPARTMENTS];
+		for (PartialSums sums : partialSums.values()) {
+			Lambert2005BiomassInternalPredictor p = sums.predictor;
+			for (int k = 0; k < NB_BASIC_COMPARTMENTS; k++) {
+				for (int l = 0; l <= k; l++) {
+					double value = 0d;
+					if (isParameterUncertaintyIncluded) {
+						double[] gradientK = sums.gradientSums[k];
+						double[] gradientL = sums.gradientSums[l];
+						for (int i = 0; i < p.validIndices.length; i++) {
+							double gi = gradientK[p.validIndices[i]];
+							if (gi != 0d) {
+								for (int j = 0; j < p.validIndices.length; j++) {
+									value += gi * p.parameterVariance.getValueAt(i, j) * gradientL[p.validIndices[j]];
+								}
+							}
+						}
+					}
+					if (isResidualUncertaintyIncluded) {
+						value += p.errorCovariance.getValueAt(Lambert2005BiomassInternalPredictor.BASIC_ORDINALS[k], 
+								Lambert2005BiomassInternalPredictor.BASIC_ORDINALS[l]) * sums.weightProductSums[k][l];
+					}
+					basicVariance[k][l] += value;
+					if (l != k) {
+						basicVariance[l][k] += value;
+					}
+				}
+			}
+		}
+		
+		SymmetricMatrix variance = new SymmetricMatrix(NB_COMPARTMENTS);
+		for (int i = 0; i < NB_COMPARTMENTS; i++) {
+			for (int j = i; j < NB_COMPARTMENTS; j++) {
+				double value = 0d;
+				for (int k = 0; k < NB_BASIC_COMPARTMENTS; k++) {
+					if (AGGREGATION_MATRIX[i][k] != 0d) {
+						for (int l = 0; l < NB_BASIC_COMPARTMENTS; l++) {
+							value += AGGREGATION_MATRIX[i][k] * basicVariance[k][l] * AGGREGATION_MATRIX[j][l];
+						}
+					}
+				}
+				variance.setValueAt(i, j, value);
+			}
+		}
+		return variance;
+	}
+	
+}
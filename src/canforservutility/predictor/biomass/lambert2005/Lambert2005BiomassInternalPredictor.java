@@ -22,6 +22,7 @@
 package canforservutility.predictor.biomass.lambert2005;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -29,6 +30,8 @@ import canforservutility.predictor.biomass.lambert2005.Lambert2005BiomassPredict
 import canforservutility.predictor.biomass.lambert2005.Lambert2005BiomassPredictor.ModelVersion;
 import repicea.math.Matrix;
 import repicea.math.SymmetricMatrix;
+import repicea.simulation.HierarchicalLevel;
+import repicea.simulation.MonteCarloSimulationCompliantObject;
 import repicea.simulation.REpiceaPredictor;
 import repicea.simulation.SASParameterEstimates;
 import repicea.simulation.covariateproviders.treelevel.HeightMProvider;
@@ -46,12 +49,52 @@ import repicea.stats.StatisticalUtility;
 @SuppressWarnings("serial")
 final class Lambert2005BiomassInternalPredictor extends REpiceaPredictor {
 	
+	static final int[] BASIC_ORDINALS;
+	static final int[] BASIC_RANKS;
+	static {
+		List<BiomassCompartment> basicCompartments = BiomassCompartment.getBasicBiomassCompartments();
+		BASIC_ORDINALS = new int[basicCompartments.size()];
+		BASIC_RANKS = new int[basicCompartments.size()];
+		for (int k = 0; k < BASIC_ORDINALS.length; k++) {
+			BASIC_ORDINALS[k] = basicCompartments.get(k).ordinal();
+			BASIC_RANKS[k] = basicCompartments.get(k).rank;
+		}
+	}
+	
+	/*
+	 * A subject that only carries the id of a Monte Carlo realization. The parameters do not depend on 
+	 * the tree, so that this subject retrieves the same parameters as any tree of this realization.
+	 */
+	private static final class RealizationSubject implements MonteCarloSimulationCompliantObject {
+		
+		private final int monteCarloRealizationId;
+		
+		private RealizationSubject(int monteCarloRealizationId) {
+			this.monteCarloRealizationId = monteCarloRealizationId;
+		}
+		
+		@Override
+		public String getSubjectId() {return null;}
+
+		@Override
+		public HierarchicalLevel getHierarchicalLevel() {return HierarchicalLevel.TREE;}
+
+		@Override
+		public int getMonteCarloRealizationId() {return monteCarloRealizationId;}
+	}
+	
 	final SymmetricMatrix errorCovariance;	
 	final Matrix c;	// column vector
 	final Species species;
 	final Matrix cholesky; 
 	final ModelVersion version;
 	
+	final double[] meanBeta;
+	final int[] validIndices;		// the indices of the parameters that are not 0
+	final SymmetricMatrix parameterVariance;
+	final double[] weightExponents;
+	private final double[][] errorCholesky;
+	
 	Lambert2005BiomassInternalPredictor(ModelVersion v, 
 			Species species, 
 			boolean isParametersVariabilityEnabled, 
@@ -76,6 +119,29 @@ final class Lambert2005BiomassInternalPredictor extends REpiceaPredictor {
 		SymmetricMatrix variance = SymmetricMatrix.convertToSymmetricIfPossible(parameterCovariance.getSubMatrix(validIndices, validIndices));
 		setParameterEstimates(new SASParameterEstimates(parameterEstimates, variance));
 		cholesky = errorCovariance.getLowerCholTriangle();
+		
+		meanBeta = toArray(parameterEstimates);
+		this.validIndices = new int[validIndices.size()];
+		for (int i = 0; i < this.validIndices.length; i++) {
+			this.validIndices[i] = validIndices.get(i);
+		}
+		parameterVariance = variance;
+		weightExponents = toArray(c);
+		errorCholesky = new double[cholesky.m_iRows][];
+		for (int i = 0; i < cholesky.m_iRows; i++) {
+			errorCholesky[i] = new double[i + 1];
+			for (int j = 0; j <= i; j++) {
+				errorCholesky[i][j] = cholesky.getValueAt(i, j);
+			}
+		}
+	}
+	
+	private static double[] toArray(Matrix columnVector) {
+		double[] array = new double[columnVector.m_iRows];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = columnVector.getValueAt(i, 0);
+		}
+		return array;
 	}
 	
 
@@ -161,6 +227,111 @@ final class Lambert2005BiomassInternalPredictor extends REpiceaPredictor {
 		return term1 * term2 * term3;
 	}
 
+	/**
+	 * Provide the parameters of the first Monte Carlo realizations.<p>
+	 * The parameters of realization r are those that the predictBiomass(Lambert2005Tree) method uses 
+	 * for a tree whose getMonteCarloRealizationId method returns r. They are drawn on the first request 
+	 * and then retrieved from the same stream as the getParametersForThisRealization method. In 
+	 * deterministic mode, all the realizations share the array of the mean parameters.
+	 * @param nbRealizations the number of realizations
+	 * @return an array of nbRealizations x nbParameters
+	 */
+	double[][] drawParameters(int nbRealizations) {
+		double[][] betas = new double[nbRealizations][];
+		if (!isParametersVariabilityEnabled) {
+			Arrays.fill(betas, meanBeta);
+			return betas;
+		}
+		for (int r = 0; r < nbRealizations; r++) {
+			betas[r] = toArray(getParametersForThisRealization(new RealizationSubject(r)));
+		}
+		return betas;
+	}
+
+	/**
+	 * Predict the biomass of several trees for several Monte Carlo realizations at once.<p>
+	 * Realization r uses the parameters of Monte Carlo realization r, whereas the residual errors are 
+	 * drawn for each call as in the predictBiomass(Lambert2005Tree) method. The biomass of tree t in 
+	 * compartment c is stored at index t * BiomassCompartment.values().length + c.ordinal() of 
+	 * each realization.
+	 * @param dbhCm the diameters at breast height (cm)
+	 * @param heightM the heights (m), which are ignored in the reduced version
+	 * @param nbRealizations the number of realizations
+	 * @return an array of nbRealizations x (nbTrees * nbCompartments)
+	 */
+	double[][] predictBiomassKg(double[] dbhCm, double[] heightM, int nbRealizations) {
+		int nbCompartments = BiomassCompartment.values().length;
+		int nbParmsPerCompartment = version == ModelVersion.Complete ? 3 : 2;
+		int nbResiduals = BASIC_ORDINALS[BASIC_ORDINALS.length - 1] + 1;
+		double[][] betas = drawParameters(nbRealizations);
+		double[][] output = new double[nbRealizations][dbhCm.length * nbCompartments];
+		double[] meanPred = isParametersVariabilityEnabled ? null : new double[BASIC_ORDINALS.length];
+		double[] weights = new double[nbCompartments];
+		double[] z = new double[nbResiduals];
+		for (int t = 0; t < dbhCm.length; t++) {
+			double dbh = dbhCm[t];
+			double lnDbh = Math.log(dbh);
+			double lnHeight = version == ModelVersion.Complete ? Math.log(heightM[t]) : 0d;
+			if (meanPred != null) {
+				for (int k = 0; k < BASIC_ORDINALS.length; k++) {
+					meanPred[k] = predictSingleBiomass(meanBeta, BASIC_RANKS[k] * nbParmsPerCompartment, dbh, heightM == null ? 0d : heightM[t]);
+				}
+			}
+			if (isResidualVariabilityEnabled) {
+				for (int k = 0; k < nbCompartments; k++) {
+					weights[k] = Math.sqrt(Math.pow(dbh, weightExponents[k]));
+				}
+			}
+			int offset = t * nbCompartments;
+			for (int r = 0; r < nbRealizations; r++) {
+				double[] pred = output[r];
+				double[] beta = betas[r];
+				for (int k = 0; k < BASIC_ORDINALS.length; k++) {
+					if (meanPred != null) {
+						pred[offset + BASIC_ORDINALS[k]] = meanPred[k];
+					} else {
+						int baseIndex = BASIC_RANKS[k] * nbParmsPerCompartment;
+						double lnPred = beta[baseIndex + 1] * lnDbh;
+						if (version == ModelVersion.Complete) {
+							lnPred += beta[baseIndex + 2] * lnHeight;
+						}
+						pred[offset + BASIC_ORDINALS[k]] = beta[baseIndex] * Math.exp(lnPred);
+					}
+				}
+				if (isResidualVariabilityEnabled) {
+					for (int j = 0; j < nbResiduals; j++) {
+						z[j] = StatisticalUtility.getRandom().nextGaussian();
+					}
+					for (int k = 0; k < BASIC_ORDINALS.length; k++) {
+						int i = BASIC_ORDINALS[k];
+						double residual = 0d;
+						for (int j = 0; j <= i; j++) {
+							residual += errorCholesky[i][j] * z[j];
+						}
+						double value = pred[offset + i] + weights[i] * residual;
+						pred[offset + i] = value < 0d ? 0d : value;	// ensure that no negative values are returned
+					}
+				}
+				pred[offset + BiomassCompartment.STEM.ordinal()] = pred[offset + BiomassCompartment.WOOD.ordinal()] + pred[offset + BiomassCompartment.BARK.ordinal()];
+				pred[offset + BiomassCompartment.CROWN.ordinal()] = pred[offset + BiomassCompartment.BRANCHES.ordinal()] + pred[offset + BiomassCompartment.FOLIAGE.ordinal()];
+				pred[offset + BiomassCompartment.TOTAL.ordinal()] = pred[offset + BiomassCompartment.STEM.ordinal()] + pred[offset + BiomassCompartment.CROWN.ordinal()];
+			}
+		}
+		return output;
+	}
+	
+	/*
+	 * Same as predictSingleBiomass(Matrix, BiomassCompartment, double, double) but with primitive arguments.
+	 */
+	private double predictSingleBiomass(double[] beta, int baseIndex, double dbhcm, double hm) {
+		double term1 = beta[baseIndex];
+		double term2 = Math.pow(dbhcm, beta[baseIndex + 1]);
+		double term3 = version == ModelVersion.Complete ? 
+				Math.pow(hm, beta[baseIndex + 2]) :
+					1d;
+		return term1 * term2 * term3;
+	}
+	
 	/*
 	 * For test purposes only.
 	 */
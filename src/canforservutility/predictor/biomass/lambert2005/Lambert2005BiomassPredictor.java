@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.stream.Collectors;
 
 import repicea.math.Matrix;
+import repicea.simulation.covariateproviders.treelevel.HeightMProvider;
 import repicea.simulation.REpiceaPredictor;
 import repicea.simulation.species.REpiceaSpecies.Species;
 import repicea.simulation.species.REpiceaSpecies.SpeciesLocale;
@@ -285,6 +286,50 @@ public class Lambert2005BiomassPredictor extends REpiceaPredictor implements REp
 		return predictor.predictBiomass(tree);
 	}
 
+	/**
+	 * Provide the biomass in different compartments of a particular tree for several Monte Carlo realizations at once.<p>
+	 * Row r of the output holds Monte Carlo realization r, as in the predictBiomassKg(Species, double[], double[], int) method.
+	 * The output is an array of nbRealizations x BiomassCompartment.values().length elements. The values of the 
+	 * different compartments can be accessed using the BiomassCompartment enum (e.g., myBiomass[r][BiomassCompartment.WOOD.ordinal()]). 
+	 * @param tree a Lambert2005Tree instance
+	 * @param nbRealizations the number of realizations
+	 * @return an array of doubles
+	 * @see Lambert2005BiomassPredictor#predictBiomassKg(Species, double[], double[], int)
+	 */
+	public double[][] predictBiomassKg(Lambert2005Tree tree, int nbRealizations) {
+		double[] heightM = tree.implementHeighMProvider() ? new double[] {((HeightMProvider) tree).getHeightM()} : null;
+		return predictBiomassKg(tree.getLambert2005Species(), new double[] {tree.getDbhCm()}, heightM, nbRealizations);
+	}
+
+	/**
+	 * Provide the biomass in different compartments of several trees of the same species for several Monte 
+	 * Carlo realizations at once.<p>
+	 * Row r of the output holds Monte Carlo realization r. Its parameters are those that the predictBiomassKg(Lambert2005Tree) 
+	 * method uses for a tree whose getMonteCarloRealizationId method returns r, and they are shared by all the trees. The 
+	 * residual errors are drawn for each tree and each call. The output is an array of nbRealizations x (nbTrees * BiomassCompartment.values().length) elements. The biomass
+	 * of tree t in compartment c is found at index t * BiomassCompartment.values().length + c.ordinal(). If heightM is not null, 
+	 * the complete version is used. Otherwise, it uses the reduced version. 
+	 * @param species a Species enum
+	 * @param dbhCm the diameters at breast height (cm)
+	 * @param heightM the heights (m) or null
+	 * @param nbRealizations the number of realizations (should be 1 in deterministic mode)
+	 * @return an array of doubles (kg, NO EXPANSION FACTOR)
+	 */
+	public double[][] predictBiomassKg(Species species, double[] dbhCm, double[] heightM, int nbRealizations) {
+		if (!Species_LookupMap.containsValue(species)) {
+			throw new UnsupportedOperationException("The species " + species.getLatinName() + " is not supported in Lambert et al.'s biomass model!");
+		}
+		if (heightM != null && heightM.length != dbhCm.length) {
+			throw new InvalidParameterException("The heightM argument must have the same length as the dbhCm argument!");
+		}
+		if (nbRealizations < 1) {
+			throw new InvalidParameterException("The nbRealizations argument must be strictly positive!");
+		}
+		ModelVersion v = heightM != null ? ModelVersion.Complete : ModelVersion.Reduced;
+		Lambert2005BiomassInternalPredictor predictor = internalPredictors.get(v).get(species);
+		return predictor.predictBiomassKg(dbhCm, heightM, nbRealizations);
+	}
+
 	/**
 	 * Fast track for deterministic predictions with either models.<p>
 	 * If heightM is not null, the complete version is used. Otherwise, it 
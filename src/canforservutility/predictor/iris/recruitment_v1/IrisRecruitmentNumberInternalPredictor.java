@@ -34,20 +34,15 @@ import repicea.math.integral.GaussHermiteQuadrature;
 import repicea.math.integral.GaussHermiteQuadrature.GaussHermiteQuadratureCompatibleFunction;
 import repicea.simulation.ModelParameterEstimates;
 import repicea.simulation.REpiceaPredictor;
-import repicea.simulation.climate.REpiceaClimateManager.ClimateVariableTemporalResolution;
 import repicea.simulation.covariateproviders.plotlevel.DrainageGroupProvider.DrainageGroup;
-import repicea.simulation.covariateproviders.treelevel.SpeciesTypeProvider.SpeciesType;
 import repicea.stats.LinearStatisticalExpression;
 import repicea.stats.StatisticalUtility;
-import repicea.stats.estimates.GaussianEstimate;
 import repicea.stats.model.glm.LinkFunction;
 import repicea.stats.model.glm.LinkFunction.Type;
 
 @SuppressWarnings("serial")
 class IrisRecruitmentNumberInternalPredictor extends REpiceaPredictor {
 
-	private final static ClimateVariableTemporalResolution IntervalBeforeStartResolution = ClimateVariableTemporalResolution.IntervalAveragedStartingBeforeInitialMeasurement;
-
 	/**
 	 * A nested class for Gauss-Hermite quadrature in case the random variability around occupancy index is
 	 * disabled.
@@ -123,9 +118,9 @@ class IrisRecruitmentNumberInternalPredictor extends REpiceaPredictor {
 	@Override
 	protected void init() {}
 
-	private void setOccupancyInXVector(IrisRecruitmentPlot plot, IrisSpecies species, double occupancyIndex10km) {
+	private void setOccupancyInXVector(IrisRecruitmentPlotCovariates covariates, IrisSpecies species, double occupancyIndex10km) {
 		for (int effectId : occupancyIndexVarIndices) {
-			setValueInXVector(effectId, plot, species, occupancyIndex10km); 
+			setValueInXVector(effectId, covariates, species, occupancyIndex10km); 
 		}
 	}
 
@@ -139,24 +134,33 @@ class IrisRecruitmentNumberInternalPredictor extends REpiceaPredictor {
 		}
 	}
 	
-	public synchronized double predictNumberOfRecruits(IrisRecruitmentPlot plot, IrisSpecies species) {
+	public double predictNumberOfRecruits(IrisRecruitmentPlot plot, IrisSpecies species) {
+		return predictNumberOfRecruits(new IrisRecruitmentPlotCovariates(plot), species);
+	}
+	
+	/*
+	 * The plot-level covariates are provided by the caller so that they can be shared across 
+	 * the species.
+	 */
+	synchronized double predictNumberOfRecruits(IrisRecruitmentPlotCovariates covariates, IrisSpecies species) {
+		IrisRecruitmentPlot plot = covariates.plot;
 		Matrix beta = getParametersForThisRealization(plot);
-		constructXVector(plot, species);
+		constructXVector(covariates, species);
 		
 		if (isUsingOccupancyIndex()) {
 			if (plot instanceof IrisRecruitmentPlotWithKnownOccupancy) { // occupancy is assumed to be known
 				double occupancyIndex10kmRandomDeviate = ((IrisRecruitmentPlotWithKnownOccupancy) plot).getOccupancyIndex10km(species);
-				setOccupancyInXVector(plot, species, occupancyIndex10kmRandomDeviate);
+				setOccupancyInXVector(covariates, species, occupancyIndex10kmRandomDeviate);
 				return getNumber(beta);
 			}
 			if (isRandomEffectsVariabilityEnabled) {
 				double occupancyIndex10kmRandomDeviate = owner.occurrencePredictor.getInternalPredictor(species).getOccupancyRandomDeviate(plot, species);
-				setOccupancyInXVector(plot, species, occupancyIndex10kmRandomDeviate);
+				setOccupancyInXVector(covariates, species, occupancyIndex10kmRandomDeviate);
 				return getNumber(beta);
 			} else {
-				GaussianEstimate estimate = owner.occurrencePredictor.getInternalPredictor(species).getOccupancyIndex(plot, species);
-				setOccupancyInXVector(plot, species, estimate.getMean().getValueAt(0, 0)); // we set the variable to its mean before performing the quadrature
-				GaussHermiteImpl ghi = new GaussHermiteImpl(oXVector, beta, estimate.getVariance().getValueAt(0, 0));
+				IrisRecruitmentOccurrenceInternalPredictor occurrenceInternalPredictor = owner.occurrencePredictor.getInternalPredictor(species);
+				setOccupancyInXVector(covariates, species, occurrenceInternalPredictor.getOccupancyIndexMean(plot, species)); // we set the variable to its mean before performing the quadrature
+				GaussHermiteImpl ghi = new GaussHermiteImpl(oXVector, beta, occurrenceInternalPredictor.getOccupancyIndexVariance(plot, species));
 				double ghqApproximation = ghq.getIntegralApproximation(ghi, effectList.indexOf(IrisRecruitmentNumberPredictor.OccupancyIndexEffects.get(0)), false);
 				return ghqApproximation;
 			}
@@ -168,7 +172,7 @@ class IrisRecruitmentNumberInternalPredictor extends REpiceaPredictor {
 	
 	private boolean isUsingOccupancyIndex() {return !occupancyIndexVarIndices.isEmpty();}
 	
-	private void setValueInXVector(int effectId, IrisRecruitmentPlot plot, IrisSpecies species, double occupancyIndex10km) {
+	private void setValueInXVector(int effectId, IrisRecruitmentPlotCovariates covariates, IrisSpecies species, double occupancyIndex10km) {
 		int index = effectList.indexOf(effectId);
 		if (index == -1) {
 			throw new InvalidParameterException("The effect id " + effectId + " is not part of this model!");
@@ -179,128 +183,128 @@ class IrisRecruitmentNumberInternalPredictor extends REpiceaPredictor {
 			oXVector.setValueAt(0, index, 1d);
 			break;
 		case 2: // DD
-			oXVector.setValueAt(0, index, plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getGrowingDegreeDays());
 			break;
 		case 3: // DD2
-			oXVector.setValueAt(0, index, plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution) * 
-					plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getGrowingDegreeDays() * 
+					covariates.getGrowingDegreeDays());
 			break;
 		case 4: // dt
-			oXVector.setValueAt(0, index, plot.getGrowthStepLengthYr());
+			oXVector.setValueAt(0, index, covariates.getGrowthStepLengthYr());
 			break;
 		case 5: // 
-			if (plot.getSoilDepth() == SoilDepth.VeryShallow) {
+			if (covariates.getSoilDepth() == SoilDepth.VeryShallow) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 6: // 
-			if (plot.getDrainageGroup() == DrainageGroup.Subhydric) {
+			if (covariates.getDrainageGroup() == DrainageGroup.Subhydric) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 7: // 
-			if (plot.getDrainageGroup() == DrainageGroup.Hydric) {
+			if (covariates.getDrainageGroup() == DrainageGroup.Hydric) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 8: // 
-			if (plot.getPastDisturbance() == DisturbanceType.Fire) {
+			if (covariates.getPastDisturbance() == DisturbanceType.Fire) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 9: // 
-			if (plot.getPastDisturbance() == DisturbanceType.OtherNatural) {
+			if (covariates.getPastDisturbance() == DisturbanceType.OtherNatural) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 10: // 
-			if (plot.getPastDisturbance() == DisturbanceType.Harvest) {
+			if (covariates.getPastDisturbance() == DisturbanceType.Harvest) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 11: // 
-			if (plot.getSoilTexture() == SoilTexture.Crude) {
+			if (covariates.getSoilTexture() == SoilTexture.Crude) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 12: // 
-			if (plot.getSoilTexture() == SoilTexture.Fine) {
+			if (covariates.getSoilTexture() == SoilTexture.Fine) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 13: // 
-			if (plot.getUpcomingDisturbance() == DisturbanceType.Fire) {
+			if (covariates.getUpcomingDisturbance() == DisturbanceType.Fire) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 14: // 
-			if (plot.getUpcomingDisturbance() == DisturbanceType.OtherNatural) {
+			if (covariates.getUpcomingDisturbance() == DisturbanceType.OtherNatural) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 15: // 
-			if (plot.getUpcomingDisturbance() == DisturbanceType.Harvest) {
+			if (covariates.getUpcomingDisturbance() == DisturbanceType.Harvest) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 16: // FrostDay
-			oXVector.setValueAt(0, index, plot.getAnnualNbFrostFreeDays(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getFrostFreeDays());
 			break;
 		case 17: // G_F
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.BroadleavedSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaBroadleavedM2Ha());
 			break;
 		case 18: // G_R
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaConiferousM2Ha());
 			break;
 		case 19: // G_R2
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies) * 
-					plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaConiferousM2Ha() * 
+					covariates.getBasalAreaConiferousM2Ha());
 			break;
 		case 20: // G_SpGr
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpecies(species));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaM2HaForThisSpecies(species));
 			break;
 		case 21: // G_SpGr2
-			double g_spgr = plot.getBasalAreaM2HaForThisSpecies(species);
+			double g_spgr = covariates.getBasalAreaM2HaForThisSpecies(species);
 			oXVector.setValueAt(0, index, g_spgr * g_spgr);
 			break;
 		case 23: // lnDt
-			oXVector.setValueAt(0, index, Math.log(plot.getGrowthStepLengthYr()));
+			oXVector.setValueAt(0, index, covariates.getLnGrowthStepLengthYr());
 			break;
 		case 24: // LowestTmin
-			oXVector.setValueAt(0, index, plot.getLowestAnnualTemperatureCelsius(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getLowestTemperatureCelsius());
 			break;
 		case 25: // occIndex10km
 			oXVector.setValueAt(0, index, occupancyIndex10km);
 			break;
 		case 26: // pentePerc
-			oXVector.setValueAt(0, index, plot.getSlopeInclinationPercent());
+			oXVector.setValueAt(0, index, covariates.getSlopeInclinationPercent());
 			break;
 		case 27: // speciesThere
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpecies(species) > 0 ? 1d : 0d);
+			oXVector.setValueAt(0, index, covariates.getBasalAreaM2HaForThisSpecies(species) > 0 ? 1d : 0d);
 			break;
 		case 29: // timeSince1970
-			oXVector.setValueAt(0, index, plot.getDateYr() + plot.getGrowthStepLengthYr() - 1970);
+			oXVector.setValueAt(0, index, covariates.getTimeSince1970());
 			break;
 		case 30: // TotalPrcp
-			oXVector.setValueAt(0, index, plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getTotalPrecipitationMm());
 			break;
 		case 31: // TotalPrcp * TotalPrcp
-			oXVector.setValueAt(0, index, plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution) * 
-					plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getTotalPrecipitationMm() * 
+					covariates.getTotalPrecipitationMm());
 			break;
 		default:
 			throw new InvalidParameterException("The effect id " + effectId + " is unknown!");
 		}
 	}
 	
-	private void constructXVector(IrisRecruitmentPlot plot, IrisSpecies species) {
+	private void constructXVector(IrisRecruitmentPlotCovariates covariates, IrisSpecies species) {
 		oXVector.resetMatrix();
 		
 		List<Integer> effectListWithoutOccIndex = new ArrayList<Integer>();
 		effectListWithoutOccIndex.addAll(effectList);
 		effectListWithoutOccIndex.removeAll(occupancyIndexVarIndices);
 		for (int effectId : effectListWithoutOccIndex) {
-			setValueInXVector(effectId, plot, species, 0d); // occupancy index set to 0 for now
+			setValueInXVector(effectId, covariates, species, 0d); // occupancy index set to 0 for now
 		}
 	}
 
@@ -118,6 +118,22 @@ public class IrisRecruitmentNumberPredictor extends REpiceaPredictor {
 	public double predictNumberOfRecruits(IrisRecruitmentPlot plot, IrisSpecies species) {
 		return internalPredictors.get(species).predictNumberOfRecruits(plot, species);
 	}
+
+	/**
+	 * Returns the numbers of recruits of all the species in a plot conditional on the occurrence of recruitment.<p>
+	 * The plot-level covariates are retrieved only once and then shared across the species. 
+	 * @param plot an IrisRecruitmentPlot instance
+	 * @return an array of numbers of recruits indexed by the ordinal of the IrisSpecies enum
+	 */
+	public double[] predictAllSpecies(IrisRecruitmentPlot plot) {
+		IrisRecruitmentPlotCovariates covariates = new IrisRecruitmentPlotCovariates(plot);
+		IrisSpecies[] species = IrisSpecies.values();
+		double[] numbers = new double[species.length];
+		for (IrisSpecies sp : species) {
+			numbers[sp.ordinal()] = internalPredictors.get(sp).predictNumberOfRecruits(covariates, sp);
+		}
+		return numbers;
+	}
 	
 
 	/*
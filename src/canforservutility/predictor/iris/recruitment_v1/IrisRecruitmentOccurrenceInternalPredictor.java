@@ -21,10 +21,10 @@ package canforservutility.predictor.iris.recruitment_v1;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import canforservutility.occupancyindex.OccupancyIndexRealizationCache;
 import canforservutility.predictor.iris.recruitment_v1.IrisRecruitmentPlot.DisturbanceType;
 import canforservutility.predictor.iris.recruitment_v1.IrisRecruitmentPlot.SoilDepth;
 import canforservutility.predictor.iris.recruitment_v1.IrisRecruitmentPlot.SoilTexture;
@@ -37,16 +37,56 @@ import repicea.math.integral.GaussLegendreQuadrature;
 import repicea.math.utility.GaussianUtility;
 import repicea.simulation.ModelParameterEstimates;
 import repicea.simulation.REpiceaBinaryEventPredictor;
-import repicea.simulation.climate.REpiceaClimateManager.ClimateVariableTemporalResolution;
 import repicea.simulation.covariateproviders.plotlevel.DrainageGroupProvider.DrainageGroup;
-import repicea.simulation.covariateproviders.treelevel.SpeciesTypeProvider.SpeciesType;
 import repicea.stats.estimates.GaussianEstimate;
 import repicea.stats.model.glm.LinkFunction;
 
 @SuppressWarnings("serial")
 class IrisRecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredictor<IrisRecruitmentPlot, IrisTree> {
 
-	private final static ClimateVariableTemporalResolution IntervalBeforeStartResolution = ClimateVariableTemporalResolution.IntervalAveragedStartingBeforeInitialMeasurement;
+	/**
+	 * The number of standard deviations on each side of the mean occupancy index in the quadrature.
+	 */
+	private final static double OCCUPANCY_INDEX_RANGE = 3d;
+	
+	private final static double[] LEGENDRE_NODES = new double[10];
+	private final static double[] LEGENDRE_WEIGHTS = new double[10];
+	static {
+		computeGaussLegendreNodesAndWeights(LEGENDRE_NODES, LEGENDRE_WEIGHTS);
+	}
+	
+	/**
+	 * Compute the nodes and weights of the Gauss-Legendre quadrature on [-1,1].<p>
+	 * The nodes are the roots of the Legendre polynomial, which are found through Newton's method.
+	 * @param nodes an array whose length is the number of points 
+	 * @param weights an array of the same length
+	 */
+	static void computeGaussLegendreNodesAndWeights(double[] nodes, double[] weights) {
+		int n = nodes.length;
+		for (int i = 0; i < (n + 1) / 2; i++) {
+			double z = Math.cos(Math.PI * (i + .75) / (n + .5));
+			double derivative;
+			double previousZ;
+			int iter = 0;
+			do {
+				double p1 = 1d;
+				double p2 = 0d;
+				for (int j = 1; j <= n; j++) {
+					double p3 = p2;
+					p2 = p1;
+					p1 = ((2d * j - 1d) * z * p2 - (j - 1d) * p3) / j;
+				}
+				derivative = n * (z * p1 - p2) / (z * z - 1d);
+				previousZ = z;
+				z = previousZ - p1 / derivative;
+			} while (Math.abs(z - previousZ) > 1E-15 && ++iter < 100);
+			nodes[i] = -z;
+			nodes[n - 1 - i] = z;
+			weights[i] = 2d / ((1d - z * z) * derivative * derivative);
+			weights[n - 1 - i] = weights[i];
+		}
+	}
+	
 	
 	/**
 	 * A nested class for Trapezoidal integration in case random variability around the occupancy index is
@@ -102,7 +142,7 @@ class IrisRecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredi
 		
 		@Override
 		public void setVariableValue(int variableIndex, double variableValue) {
-			IrisRecruitmentOccurrenceInternalPredictor.this.setOccupancyInXVector(plot, IrisRecruitmentOccurrenceInternalPredictor.this.species, variableValue);
+			IrisRecruitmentOccurrenceInternalPredictor.this.setOccupancyInXVector(variableValue);
 		}		
 
 		@Override
@@ -120,9 +160,12 @@ class IrisRecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredi
 	private final IrisRecruitmentOccurrencePredictor owner;
 	private final List<Integer> effectList;
 	private final boolean offsetEnabled;
-	private final Map<String, Map<Integer, Map<Integer, GaussianEstimate>>> occupancyIndices; // 1st key plot id, 2nd key realization id, 3rd key dateYr
-	private final Map<String, Map<Integer, Map<Integer, Double>>> occupancyIndicesDeviates; // 1st key plot id, 2nd key realization id, 3rd key dateYr
+	private final OccupancyIndexRealizationCache occupancyIndices; // mean and variance by plot id, realization id and dateYr
+	private final OccupancyIndexRealizationCache occupancyIndicesDeviates; // deviate by plot id, realization id and dateYr
 	private final List<Integer> occupancyIndexVarIndices; // effect Ids that include the occupancy index
+	private final List<Integer> effectListWithoutOccIndex;
+	private final int occIndexPosition;		// position of the occupancy index in the x-vector (-1 if not in the model)
+	private final int occIndexSquaredPosition;	// position of the squared occupancy index in the x-vector (-1 if not in the model)
 //	private final TrapezoidalRule tr;
 	private final IrisSpecies species;
 	
@@ -153,116 +196,205 @@ class IrisRecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredi
 				occupancyIndexVarIndices.add(effectId);
 			}
 		}
-		occupancyIndices = new HashMap<String, Map<Integer, Map<Integer, GaussianEstimate>>>();
-		occupancyIndicesDeviates = new HashMap<String, Map<Integer, Map<Integer, Double>>>();
+		effectListWithoutOccIndex = new ArrayList<Integer>(effectList);
+		effectListWithoutOccIndex.removeAll(occupancyIndexVarIndices);
+		occIndexPosition = effectList.indexOf(IrisRecruitmentOccurrencePredictor.OccupancyIndexEffects.get(0));
+		occIndexSquaredPosition = effectList.indexOf(IrisRecruitmentOccurrencePredictor.OccupancyIndexEffects.get(1));
+		occupancyIndices = new OccupancyIndexRealizationCache(2);
+		occupancyIndicesDeviates = new OccupancyIndexRealizationCache(1);
 	}
 
 	@Override
 	protected void init() {}
 	
-	private void setOccupancyInXVector(IrisRecruitmentPlot plot, IrisSpecies species, double occupancyIndex10km) {
-		for (int effectId : occupancyIndexVarIndices) {
-			setValueInXVector(effectId, plot, species, occupancyIndex10km); 
+	private void setOccupancyInXVector(double occupancyIndex10km) {
+		if (occIndexPosition != -1) {
+			oXVector.setValueAt(0, occIndexPosition, occupancyIndex10km);
+		}
+		if (occIndexSquaredPosition != -1) {
+			oXVector.setValueAt(0, occIndexSquaredPosition, occupancyIndex10km * occupancyIndex10km);
 		}
 	}
 
-	private double getProb(Matrix beta, IrisRecruitmentPlot plot) {
+	private double getProb(Matrix beta, IrisRecruitmentPlotCovariates covariates) {
 		double xBeta = oXVector.multiply(beta).getValueAt(0, 0);
 		if (offsetEnabled) {
-			xBeta += Math.log(plot.getGrowthStepLengthYr());
+			xBeta += covariates.getLnGrowthStepLengthYr();
 		}
 		double recruitmentProbability = 1d - Math.exp(-Math.exp(xBeta));
 		return recruitmentProbability;
 	}
 	
+	/*
+	 * Integrate the probability over the distribution of the occupancy index with a 
+	 * Gauss-Legendre quadrature. The x-vector must have been constructed without the occupancy 
+	 * index. Since only the occupancy index changes across the nodes, the linear predictor is 
+	 * evaluated once and the nodes only require scalar operations. A null variance, which occurs 
+	 * when the mean occupancy index is exactly 0 or 1, yields the probability at the mean.
+	 */
+	private double getMarginalProb(Matrix beta, IrisRecruitmentPlotCovariates covariates, double meanOccIndex, double varOccIndex) {
+		double fixedXBeta = 0d;
+		for (int j = 0; j < oXVector.m_iCols; j++) {
+			fixedXBeta += oXVector.getValueAt(0, j) * beta.getValueAt(j, 0);
+		}
+		if (offsetEnabled) {
+			fixedXBeta += covariates.getLnGrowthStepLengthYr();
+		}
+		double betaOccIndex = occIndexPosition != -1 ? beta.getValueAt(occIndexPosition, 0) : 0d;
+		double betaOccIndexSquared = occIndexSquaredPosition != -1 ? beta.getValueAt(occIndexSquaredPosition, 0) : 0d;
+		if (varOccIndex <= 0d) {	// the distribution is degenerate and the density factor would be infinite
+			double xBeta = fixedXBeta + betaOccIndex * meanOccIndex + betaOccIndexSquared * meanOccIndex * meanOccIndex;
+			return 1d - Math.exp(-Math.exp(xBeta));
+		}
+		double halfRange = OCCUPANCY_INDEX_RANGE * Math.sqrt(varOccIndex);
+		double densityFactor = 1d / Math.sqrt(2d * Math.PI * varOccIndex);
+		double sum = 0d;
+		for (int i = 0; i < LEGENDRE_NODES.length; i++) {
+			double deviation = halfRange * LEGENDRE_NODES[i];
+			double occIndex = meanOccIndex + deviation;
+			double xBeta = fixedXBeta + betaOccIndex * occIndex + betaOccIndexSquared * occIndex * occIndex;
+			double prob = 1d - Math.exp(-Math.exp(xBeta));
+			double density = densityFactor * Math.exp(-deviation * deviation / (2d * varOccIndex));
+			sum += LEGENDRE_WEIGHTS[i] * prob * density;
+		}
+		return sum * halfRange;
+	}
+
+	/*
+	 * For testing purposes. The mean and the variance of the occupancy index are provided by the caller.
+	 */
+	synchronized double calculateMarginalEventProbability(IrisRecruitmentPlot plot, IrisSpecies species, double meanOccIndex, double varOccIndex) {
+		IrisRecruitmentPlotCovariates covariates = new IrisRecruitmentPlotCovariates(plot);
+		Matrix beta = getParametersForThisRealization(plot);
+		constructXVector(covariates, species);
+		return getMarginalProb(beta, covariates, meanOccIndex, varOccIndex);
+	}
+
+	/*
+	 * For testing purposes. This is the former implementation of the quadrature, which relies on
+	 * the GaussLegendreQuadrature class.
+	 */
+	synchronized double calculateEventProbabilityWithGaussLegendreQuadrature(IrisRecruitmentPlot plot, IrisSpecies species) {
+		if (!isUsingOccupancyIndex()) {
+			return calculateEventProbability(plot, species);
+		}
+		Matrix beta = getParametersForThisRealization(plot);
+		constructXVector(new IrisRecruitmentPlotCovariates(plot), species);
+		int indexVar = effectList.lastIndexOf(IrisRecruitmentOccurrencePredictor.OccupancyIndexEffects.get(0)); 
+		double meanOccIndex = getOccupancyIndexMean(plot, species);
+		double varOccIndex = getOccupancyIndexVariance(plot, species);
+		InternalMathFunction imf = new InternalMathFunction(oXVector, beta, plot, indexVar, meanOccIndex, varOccIndex);
+		
+		double std = Math.sqrt(varOccIndex);
+		double lowerBound = meanOccIndex - OCCUPANCY_INDEX_RANGE * std;
+		double upperBound = meanOccIndex + OCCUPANCY_INDEX_RANGE * std;
+		
+		GaussLegendreQuadrature glq = new GaussLegendreQuadrature(NumberOfPoints.N10);
+		glq.setLowerBound(lowerBound);
+		glq.setUpperBound(upperBound);
+		
+		return glq.getIntegralApproximation(imf, indexVar, false);
+	}
+	
 	@Override
 	public double predictEventProbability(IrisRecruitmentPlot plot, IrisTree tree, Map<String, Object> parms) {
 		return calculateEventProbability(plot, tree.getSpecies());
 	}
 
-	protected synchronized double calculateEventProbability(IrisRecruitmentPlot plot, IrisSpecies species) {
+	protected double calculateEventProbability(IrisRecruitmentPlot plot, IrisSpecies species) {
+		return calculateEventProbability(new IrisRecruitmentPlotCovariates(plot), species);
+	}
+
+	/*
+	 * The plot-level covariates are provided by the caller so that they can be shared across 
+	 * the species.
+	 */
+	synchronized double calculateEventProbability(IrisRecruitmentPlotCovariates covariates, IrisSpecies species) {
+		IrisRecruitmentPlot plot = covariates.plot;
 		Matrix beta = getParametersForThisRealization(plot);
-		constructXVector(plot, species);
+		constructXVector(covariates, species);
 		if (isUsingOccupancyIndex()) {
 			if (plot instanceof IrisRecruitmentPlotWithKnownOccupancy) { // occupancy is assumed to be known
 				double occupancyIndex10kmRandomDeviate = ((IrisRecruitmentPlotWithKnownOccupancy) plot).getOccupancyIndex10km(species);
-				setOccupancyInXVector(plot, species, occupancyIndex10kmRandomDeviate);
-				return getProb(beta, plot);
+				setOccupancyInXVector(occupancyIndex10kmRandomDeviate);
+				return getProb(beta, covariates);
 			}
 			if (isRandomEffectsVariabilityEnabled) {
 				double occupancyIndex10kmRandomDeviate = getOccupancyRandomDeviate(plot, species);
-				setOccupancyInXVector(plot, species, occupancyIndex10kmRandomDeviate);
-				return getProb(beta, plot);
+				setOccupancyInXVector(occupancyIndex10kmRandomDeviate);
+				return getProb(beta, covariates);
 			} else {
-				double range = 3;
-				GaussianEstimate estimate = getOccupancyIndex(plot, species);
-				int indexVar = effectList.lastIndexOf(owner.OccupancyIndexEffects.get(0)); 
-				double meanOccIndex = estimate.getMean().getValueAt(0, 0);
-				double varOccIndex = estimate.getVariance().getValueAt(0, 0);
-				InternalMathFunction imf = new InternalMathFunction(oXVector, beta, plot, indexVar, meanOccIndex, varOccIndex);
-				
-				double std = Math.sqrt(varOccIndex);
-				double lowerBound = meanOccIndex - range * std;
-				double upperBound = meanOccIndex + range * std;
-				
-				GaussLegendreQuadrature glq = new GaussLegendreQuadrature(NumberOfPoints.N10);
-				glq.setLowerBound(lowerBound);
-				glq.setUpperBound(upperBound);
-				
-				double prob = glq.getIntegralApproximation(imf, indexVar, false);
-				return prob;
+				double meanOccIndex = getOccupancyIndexMean(plot, species);
+				double varOccIndex = getOccupancyIndexVariance(plot, species);
+				return getMarginalProb(beta, covariates, meanOccIndex, varOccIndex);
 			}
 		} else { // not using occupancy index
-			return getProb(beta, plot);
+			return getProb(beta, covariates);
 		}
 	}
 	
-	static List<Double> deviates = new ArrayList<Double>();
-	
+	/*
+	 * The deviate is drawn on the first call and read from the cache afterwards. The read is lock-free. 
+	 * If two threads draw the deviate of the same entry concurrently, the first one that is stored 
+	 * is returned to both. The presence of the entry is checked with the contains method because the 
+	 * deviate is NaN when the occupancy index cannot be estimated.
+	 */
 	double getOccupancyRandomDeviate(IrisRecruitmentPlot plot, IrisSpecies species) {
-		@SuppressWarnings({ "rawtypes", "unchecked" })
-		Map<Integer, Double> innerMap2 = getInnerMap2(plot, (Map) occupancyIndicesDeviates);
-		if (!innerMap2.containsKey(plot.getDateYr())) {
-			GaussianEstimate estimate = getOccupancyIndex(plot, species);
-			double deviate = estimate.getRandomDeviate().getValueAt(0, 0);
-			deviates.add(deviate);
-			innerMap2.put(plot.getDateYr(), deviate);	
+		String plotId = plot.getSubjectId();
+		int realizationId = plot.getMonteCarloRealizationId();
+		int dateYr = plot.getDateYr();
+		if (!occupancyIndicesDeviates.contains(plotId, realizationId, dateYr)) {
+			Matrix mean = new Matrix(1, 1, getOccupancyIndexMean(plot, species), 0);
+			SymmetricMatrix variance = new SymmetricMatrix(1);
+			variance.setValueAt(0, 0, getOccupancyIndexVariance(plot, species));
+			occupancyIndicesDeviates.putIfAbsent(plotId, realizationId, dateYr, new GaussianEstimate(mean, variance).getRandomDeviate().getValueAt(0, 0));
 		}
-		return innerMap2.get(plot.getDateYr());
+		return occupancyIndicesDeviates.getValue(plotId, realizationId, dateYr, 0);
+	}
+	
+	/*
+	 * The mean and the variance of the occupancy index are calculated on the first call and read 
+	 * from the cache afterwards. The read is lock-free and does not allocate. The mean or the variance 
+	 * is NaN when none or only one of the plots lies within the radius. These estimates are cached as well.
+	 */
+	double getOccupancyIndexMean(IrisRecruitmentPlot plot, IrisSpecies species) {
+		return getOccupancyIndexValue(plot, species, 0);
+	}
 
+	double getOccupancyIndexVariance(IrisRecruitmentPlot plot, IrisSpecies species) {
+		return getOccupancyIndexValue(plot, species, 1);
 	}
 	
-	private Map<Integer, ?> getInnerMap2(IrisRecruitmentPlot plot, Map<String, Map<Integer, Map<Integer, ?>>> oMap) {
-		if (isUsingOccupancyIndex()) {
-			if (!oMap.containsKey(plot.getSubjectId())) {
-				oMap.put(plot.getSubjectId(), new HashMap<Integer, Map<Integer, ?>>());
-			}
-			Map<Integer, Map<Integer, ?>> innerMap = oMap.get(plot.getSubjectId());
-			if (!innerMap.containsKey(plot.getMonteCarloRealizationId())) {
-				innerMap.put(plot.getMonteCarloRealizationId(), new HashMap<Integer, Object>());
+	private double getOccupancyIndexValue(IrisRecruitmentPlot plot, IrisSpecies species, int valueIndex) {
+		String plotId = plot.getSubjectId();
+		int realizationId = plot.getMonteCarloRealizationId();
+		int dateYr = plot.getDateYr();
+		if (!occupancyIndices.contains(plotId, realizationId, dateYr)) {
+			GaussianEstimate occIndex10kmEstimate = owner.getOccupancyIndexFromCache(plot, species);
+			if (occIndex10kmEstimate == null) {
+				occIndex10kmEstimate = owner.occIndexCalculator.getOccupancyIndex(plot.getPlotsForOccupancyIndexCalculation(), plot, species, IrisRecruitmentOccurrencePredictor.OCCUPANCY_INDEX_RADIUS_KM); // max distance is 10 km for occupancy index
 			}
-			Map<Integer, ?> innerMap2 = innerMap.get(plot.getMonteCarloRealizationId());
-			return innerMap2;
-		} else {
-			return null;
+			occupancyIndices.putIfAbsent(plotId, 
+					realizationId, 
+					dateYr, 
+					occIndex10kmEstimate.getMean().getValueAt(0, 0), 
+					occIndex10kmEstimate.getVariance().getValueAt(0, 0));
 		}
-		
+		return occupancyIndices.getValue(plotId, realizationId, dateYr, valueIndex);
 	}
 	
-	GaussianEstimate getOccupancyIndex(IrisRecruitmentPlot plot, IrisSpecies species) {
-		@SuppressWarnings({ "rawtypes", "unchecked" })
-		Map<Integer, GaussianEstimate> innerMap2 = getInnerMap2(plot, (Map) occupancyIndices);
-		if (!innerMap2.containsKey(plot.getDateYr())) {
-			GaussianEstimate occIndex10kmEstimate = owner.occIndexCalculator.getOccupancyIndex(plot.getPlotsForOccupancyIndexCalculation(), plot, species, 10d); // max distance is 10 km for occupancy index  
-			innerMap2.put(plot.getDateYr(), occIndex10kmEstimate);	
-		}
-		return innerMap2.get(plot.getDateYr());
+	/**
+	 * Remove the occupancy indices and their deviates of a Monte Carlo realization from the caches.
+	 * @param realizationId the Monte Carlo realization id
+	 */
+	void evictRealization(int realizationId) {
+		occupancyIndices.evictRealization(realizationId);
+		occupancyIndicesDeviates.evictRealization(realizationId);
 	}
 	
 	private boolean isUsingOccupancyIndex() {return !occupancyIndexVarIndices.isEmpty();}
 
-	// TODO MF20260209 That could be improved by internalizing the loop on the effects and avoiding calculating over and over again the same variables.
-	private void setValueInXVector(int effectId, IrisRecruitmentPlot plot, IrisSpecies species, double occupancyIndex10km) {
+	private void setValueInXVector(int effectId, IrisRecruitmentPlotCovariates covariates, IrisSpecies species, double occupancyIndex10km) {
 		int index = effectList.indexOf(effectId);
 		if (index == -1) {
 			throw new InvalidParameterException("The effect id " + effectId + " is not part of this model!");
@@ -273,137 +405,137 @@ class IrisRecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredi
 			oXVector.setValueAt(0, index, 1d);
 			break;
 		case 2: // DD
-			oXVector.setValueAt(0, index, plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getGrowingDegreeDays());
 			break;
 		case 3: // DD:TotalPrcp
-			oXVector.setValueAt(0, index, plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution) * 
-					plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getGrowingDegreeDays() * 
+					covariates.getTotalPrecipitationMm());
 			break;
 		case 4: // DD2
-			oXVector.setValueAt(0, index, plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution) * 
-					plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getGrowingDegreeDays() * 
+					covariates.getGrowingDegreeDays());
 			break;
 		case 5: // 
-			if (plot.getSoilDepth() == SoilDepth.Thick) {
+			if (covariates.getSoilDepth() == SoilDepth.Thick) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 6: // 
-			if (plot.getSoilDepth() == SoilDepth.Shallow) {
+			if (covariates.getSoilDepth() == SoilDepth.Shallow) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 7: // 
-			if (plot.getSoilDepth() == SoilDepth.VeryShallow) {
+			if (covariates.getSoilDepth() == SoilDepth.VeryShallow) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 8: // 
-			if (plot.getDrainageGroup() == DrainageGroup.Xeric) {
+			if (covariates.getDrainageGroup() == DrainageGroup.Xeric) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 9: // 
-			if (plot.getDrainageGroup() == DrainageGroup.Subhydric) {
+			if (covariates.getDrainageGroup() == DrainageGroup.Subhydric) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 10: // 
-			if (plot.getDrainageGroup() == DrainageGroup.Hydric) {
+			if (covariates.getDrainageGroup() == DrainageGroup.Hydric) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 11: // 
-			if (plot.getPastDisturbance() == DisturbanceType.Fire) {
+			if (covariates.getPastDisturbance() == DisturbanceType.Fire) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 12: // 
-			if (plot.getPastDisturbance() == DisturbanceType.OtherNatural) {
+			if (covariates.getPastDisturbance() == DisturbanceType.OtherNatural) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 13: // 
-			if (plot.getPastDisturbance() == DisturbanceType.Harvest) {
+			if (covariates.getPastDisturbance() == DisturbanceType.Harvest) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 14: // 
-			if (plot.getSoilTexture() == SoilTexture.Crude) {
+			if (covariates.getSoilTexture() == SoilTexture.Crude) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 15: // 
-			if (plot.getSoilTexture() == SoilTexture.Fine) {
+			if (covariates.getSoilTexture() == SoilTexture.Fine) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 16: // 
-			if (plot.getUpcomingDisturbance() == DisturbanceType.Fire) {
+			if (covariates.getUpcomingDisturbance() == DisturbanceType.Fire) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 17: // 
-			if (plot.getUpcomingDisturbance() == DisturbanceType.OtherNatural) {
+			if (covariates.getUpcomingDisturbance() == DisturbanceType.OtherNatural) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 18: // 
-			if (plot.getUpcomingDisturbance() == DisturbanceType.Harvest) {
+			if (covariates.getUpcomingDisturbance() == DisturbanceType.Harvest) {
 				oXVector.setValueAt(0, index, 1d);
 			}
 			break;
 		case 19: // 
-			oXVector.setValueAt(0, index, plot.getAnnualNbFrostFreeDays(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getFrostFreeDays());
 			break;
 		case 20: // G_F
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.BroadleavedSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaBroadleavedM2Ha());
 			break;
 		case 21: // G_F2
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.BroadleavedSpecies) *
-					plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.BroadleavedSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaBroadleavedM2Ha() *
+					covariates.getBasalAreaBroadleavedM2Ha());
 			break;
 		case 22: // G_R
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaConiferousM2Ha());
 			break;
 		case 23: // G_R2
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies) * 
-					plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaConiferousM2Ha() * 
+					covariates.getBasalAreaConiferousM2Ha());
 			break;
 		case 24: // G_SpGr
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpecies(species));
+			oXVector.setValueAt(0, index, covariates.getBasalAreaM2HaForThisSpecies(species));
 			break;
 		case 25: // G_SpGr2
-			double g_spgr = plot.getBasalAreaM2HaForThisSpecies(species);
+			double g_spgr = covariates.getBasalAreaM2HaForThisSpecies(species);
 			oXVector.setValueAt(0, index, g_spgr * g_spgr);
 			break;
 		case 27: // lnDt
-			oXVector.setValueAt(0, index, Math.log(plot.getGrowthStepLengthYr()));
+			oXVector.setValueAt(0, index, covariates.getLnGrowthStepLengthYr());
 			break;
 		case 28: // lowest t min
-			oXVector.setValueAt(0, index, plot.getLowestAnnualTemperatureCelsius(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getLowestTemperatureCelsius());
 			break;
 		case 29: // occIndex10km
 			oXVector.setValueAt(0, index, occupancyIndex10km);
 			break;
 		case 30: // pente
-			oXVector.setValueAt(0, index, plot.getSlopeInclinationPercent());
+			oXVector.setValueAt(0, index, covariates.getSlopeInclinationPercent());
 			break;
 		case 31: // speciesThere
-			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpecies(species) > 0 ? 1d : 0d);
+			oXVector.setValueAt(0, index, covariates.getBasalAreaM2HaForThisSpecies(species) > 0 ? 1d : 0d);
 			break;
 		case 32: // occIndex10km2
 			oXVector.setValueAt(0, index, occupancyIndex10km * occupancyIndex10km);
 			break;
 		case 33: // timeSince1970
-			oXVector.setValueAt(0, index, plot.getDateYr() + plot.getGrowthStepLengthYr() - 1970);
+			oXVector.setValueAt(0, index, covariates.getTimeSince1970());
 			break;
 		case 34: // TotalPrcp
-			oXVector.setValueAt(0, index, plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getTotalPrecipitationMm());
 			break;
 		case 35: // TotalPrcp2
-			oXVector.setValueAt(0, index, plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution) * 
-					plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution));
+			oXVector.setValueAt(0, index, covariates.getTotalPrecipitationMm() * 
+					covariates.getTotalPrecipitationMm());
 			break;
 		default:
 			throw new InvalidParameterException("The effect id " + effectId + " is unknown!");
@@ -413,14 +545,10 @@ class IrisRecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredi
 	/*
 	 * Construct the xVector without the occupancy index.
 	 */
-	private void constructXVector(IrisRecruitmentPlot plot, IrisSpecies species) {
+	private void constructXVector(IrisRecruitmentPlotCovariates covariates, IrisSpecies species) {
 		oXVector.resetMatrix();
-		
-		List<Integer> effectListWithoutOccIndex = new ArrayList<Integer>();
-		effectListWithoutOccIndex.addAll(effectList);
-		effectListWithoutOccIndex.removeAll(occupancyIndexVarIndices);
 		for (int effectId : effectListWithoutOccIndex) {
-			setValueInXVector(effectId, plot, species, 0d); // occupancy index set to 0 for now
+			setValueInXVector(effectId, covariates, species, 0d); // occupancy index set to 0 for now
 		}
 	}
 
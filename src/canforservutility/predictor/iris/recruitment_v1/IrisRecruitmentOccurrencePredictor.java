@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import canforservutility.occupancyindex.OccupancyIndexCache;
 import canforservutility.occupancyindex.OccupancyIndexCalculator;
 import canforservutility.occupancyindex.OccupancyIndexCalculablePlot;
 import canforservutility.predictor.iris.recruitment_v1.IrisTree.IrisSpecies;
@@ -33,6 +34,7 @@ import repicea.math.SymmetricMatrix;
 import repicea.simulation.ParameterLoader;
 import repicea.simulation.ParameterMap;
 import repicea.simulation.REpiceaBinaryEventPredictor;
+import repicea.stats.estimates.GaussianEstimate;
 import repicea.util.ObjectUtility;
 
 /**
@@ -42,6 +44,11 @@ import repicea.util.ObjectUtility;
 @SuppressWarnings("serial")
 public class IrisRecruitmentOccurrencePredictor extends REpiceaBinaryEventPredictor<IrisRecruitmentPlot, IrisTree> {
 
+	/**
+	 * The radius (km) of the occupancy index.
+	 */
+	static final double OCCUPANCY_INDEX_RADIUS_KM = 10d;
+	
 	static List<Integer> OccupancyIndexEffects = new ArrayList<Integer>();
 	static {
 		OccupancyIndexEffects.add(29);
@@ -52,6 +59,27 @@ public class IrisRecruitmentOccurrencePredictor extends REpiceaBinaryEventPredic
 
 	final OccupancyIndexCalculator occIndexCalculator;
 	
+	/*
+	 * The cache and the memoized network check are not serialized. The cache must be set again
+	 * after deserialization.
+	 */
+	private transient volatile OccupancyIndexCache occIndexCache;
+	private transient volatile CheckedNetwork lastCheckedNetwork;
+	
+	/*
+	 * Result of the comparison between a plot network and the network the cache was written from.
+	 */
+	private static final class CheckedNetwork {
+		private final OccupancyIndexCache cache;
+		private final List<OccupancyIndexCalculablePlot> network;
+		private final boolean isCacheValid;
+		
+		private CheckedNetwork(OccupancyIndexCache cache, List<OccupancyIndexCalculablePlot> network) {
+			this.cache = cache;
+			this.network = network;
+			isCacheValid = network != null && cache.isCalculatedFrom(network, IrisSpecies.class);
+		}
+	}
 	
 	/**
 	 * Constructor.
@@ -121,6 +149,68 @@ public class IrisRecruitmentOccurrencePredictor extends REpiceaBinaryEventPredic
 		}
 	}
 
+	/**
+	 * Set a cache of precomputed occupancy indices.<p>
+	 * The occupancy indices are first looked up in the cache. They are calculated only if the
+	 * plot, the date or the species is not found in the cache. <p>
+	 * The cache is keyed by plot id and date only. It is therefore used only for the plots whose network, 
+	 * as returned by the {@link IrisRecruitmentPlot#getPlotsForOccupancyIndexCalculation()} method, has 
+	 * the same fingerprint as the network the cache was written from. The occupancy indices of the other 
+	 * plots, e.g. simulated plots with a simulated network, are calculated. The result of the comparison 
+	 * is memoized for the last network instance, which should therefore not be modified in place. <p>
+	 * The cache is not serialized and must be set again after deserialization.
+	 * @param cache an OccupancyIndexCache instance or null to disable the cache
+	 * @see OccupancyIndexCalculator#writeOccupancyIndexCache(java.io.File, List, List, double, int)
+	 */
+	public void setOccupancyIndexCache(OccupancyIndexCache cache) {
+		if (cache != null) {
+			if (cache.getRadiusKm() != OCCUPANCY_INDEX_RADIUS_KM) {
+				throw new InvalidParameterException("The occupancy indices of the cache must be calculated with a radius of " + OCCUPANCY_INDEX_RADIUS_KM + " km!");
+			}
+			if (occIndexCalculator != null && 
+					(cache.getMinimumYearDifference() != occIndexCalculator.getMinimumYearDifference() ||
+					cache.getMaximumYearDifference() != occIndexCalculator.getMaximumYearDifference())) {
+				throw new InvalidParameterException("The time window of the cache is inconsistent with that of the occupancy index calculator!");
+			}
+		}
+		occIndexCache = cache;
+	}
+	
+	/**
+	 * Provide the occupancy index of this plot from the cache.
+	 * @param plot an IrisRecruitmentPlot instance
+	 * @param species an IrisSpecies enum
+	 * @return a GaussianEstimate or null if there is no cache, if the network of the plot differs from 
+	 * that of the cache or if the plot is not found in the cache
+	 */
+	GaussianEstimate getOccupancyIndexFromCache(IrisRecruitmentPlot plot, IrisSpecies species) {
+		OccupancyIndexCache cache = occIndexCache;
+		if (cache == null) {
+			return null;
+		}
+		List<OccupancyIndexCalculablePlot> network = plot.getPlotsForOccupancyIndexCalculation();
+		CheckedNetwork checkedNetwork = lastCheckedNetwork;
+		if (checkedNetwork == null || checkedNetwork.cache != cache || checkedNetwork.network != network) {
+			checkedNetwork = new CheckedNetwork(cache, network);
+			lastCheckedNetwork = checkedNetwork;
+		}
+		return checkedNetwork.isCacheValid ? 
+				cache.getOccupancyIndex(plot.getSubjectId(), plot.getDateYr(), species) :
+					null;
+	}
+	
+	/**
+	 * Remove the cached occupancy indices and their random deviates of a Monte Carlo realization.<p>
+	 * This method should be called once the realization is completed. Otherwise, the caches
+	 * grow with the number of realizations.
+	 * @param realizationId the Monte Carlo realization id
+	 */
+	public void evictRealization(int realizationId) {
+		for (IrisRecruitmentOccurrenceInternalPredictor p : internalPredictors.values()) {
+			p.evictRealization(realizationId);
+		}
+	}
+	
 	IrisRecruitmentOccurrenceInternalPredictor getInternalPredictor(IrisSpecies species) {
 		return internalPredictors.get(species);
 	}
@@ -129,6 +219,22 @@ public class IrisRecruitmentOccurrencePredictor extends REpiceaBinaryEventPredic
 	public double predictEventProbability(IrisRecruitmentPlot stand, IrisTree tree, Map<String, Object> parms) {
 		return getInternalPredictor(tree.getSpecies()).predictEventProbability(stand, tree, parms);
 	}
+
+	/**
+	 * Provide the probabilities of recruitment occurrence of all the species in a plot.<p>
+	 * The plot-level covariates are retrieved only once and then shared across the species. 
+	 * @param plot an IrisRecruitmentPlot instance
+	 * @return an array of probabilities indexed by the ordinal of the IrisSpecies enum
+	 */
+	public double[] predictAllSpecies(IrisRecruitmentPlot plot) {
+		IrisRecruitmentPlotCovariates covariates = new IrisRecruitmentPlotCovariates(plot);
+		IrisSpecies[] species = IrisSpecies.values();
+		double[] probabilities = new double[species.length];
+		for (IrisSpecies sp : species) {
+			probabilities[sp.ordinal()] = getInternalPredictor(sp).calculateEventProbability(covariates, sp);
+		}
+		return probabilities;
+	}
 	
 	
 }
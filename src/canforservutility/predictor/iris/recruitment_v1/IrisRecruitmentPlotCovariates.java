@@ -0,0 +1,186 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package canforservutility.predictor.iris.recruitment_v1;
+
+import java.util.Arrays;
+
+import canforservutility.predictor.iris.recruitment_v1.IrisRecruitmentPlot.DisturbanceType;
+import canforservutility.predictor.iris.recruitment_v1.IrisRecruitmentPlot.SoilDepth;
+import canforservutility.predictor.iris.recruitment_v1.IrisRecruitmentPlot.SoilTexture;
+import canforservutility.predictor.iris.recruitment_v1.IrisTree.IrisSpecies;
+import repicea.simulation.climate.REpiceaClimateManager.ClimateVariableTemporalResolution;
+import repicea.simulation.covariateproviders.plotlevel.DrainageGroupProvider.DrainageGroup;
+import repicea.simulation.covariateproviders.treelevel.SpeciesTypeProvider.SpeciesType;
+
+/**
+ * The IrisRecruitmentPlotCovariates class holds the plot-level covariates of the recruitment 
+ * modules.<p>
+ * These covariates do not depend on the species. Each covariate is retrieved from the plot on 
+ * the first call to its getter and kept for subsequent calls, so that only the covariates of the 
+ * effects in use are retrieved and they are then shared by the internal predictors of all the species.
+ * An instance is not meant to be shared across threads.
+ * @author Mathieu Fortin - October 2026
+ */
+final class IrisRecruitmentPlotCovariates {
+
+	private final static ClimateVariableTemporalResolution IntervalBeforeStartResolution = ClimateVariableTemporalResolution.IntervalAveragedStartingBeforeInitialMeasurement;
+
+	final IrisRecruitmentPlot plot;
+	private double growingDegreeDays = Double.NaN;
+	private double totalPrecipitationMm = Double.NaN;
+	private double frostFreeDays = Double.NaN;
+	private double lowestTemperatureCelsius = Double.NaN;
+	private double basalAreaBroadleavedM2Ha = Double.NaN;
+	private double basalAreaConiferousM2Ha = Double.NaN;
+	private double slopeInclinationPercent = Double.NaN;
+	private double growthStepLengthYr = Double.NaN;
+	private double lnGrowthStepLengthYr = Double.NaN;
+	private double timeSince1970 = Double.NaN;
+	private SoilDepth soilDepth;
+	private SoilTexture soilTexture;
+	private DrainageGroup drainageGroup;
+	private DisturbanceType pastDisturbance;
+	private DisturbanceType upcomingDisturbance;
+	private final double[] basalAreaBySpecies;
+	
+	IrisRecruitmentPlotCovariates(IrisRecruitmentPlot plot) {
+		this.plot = plot;
+		basalAreaBySpecies = new double[IrisSpecies.values().length];
+		Arrays.fill(basalAreaBySpecies, Double.NaN);
+	}
+	
+	double getGrowingDegreeDays() {
+		if (Double.isNaN(growingDegreeDays)) {
+			growingDegreeDays = plot.getGrowingDegreeDaysCelsius(IntervalBeforeStartResolution);
+		}
+		return growingDegreeDays;
+	}
+
+	double getTotalPrecipitationMm() {
+		if (Double.isNaN(totalPrecipitationMm)) {
+			totalPrecipitationMm = plot.getTotalAnnualPrecipitationMm(IntervalBeforeStartResolution);
+		}
+		return totalPrecipitationMm;
+	}
+
+	double getFrostFreeDays() {
+		if (Double.isNaN(frostFreeDays)) {
+			frostFreeDays = plot.getAnnualNbFrostFreeDays(IntervalBeforeStartResolution);
+		}
+		return frostFreeDays;
+	}
+
+	double getLowestTemperatureCelsius() {
+		if (Double.isNaN(lowestTemperatureCelsius)) {
+			lowestTemperatureCelsius = plot.getLowestAnnualTemperatureCelsius(IntervalBeforeStartResolution);
+		}
+		return lowestTemperatureCelsius;
+	}
+
+	double getBasalAreaBroadleavedM2Ha() {
+		if (Double.isNaN(basalAreaBroadleavedM2Ha)) {
+			basalAreaBroadleavedM2Ha = plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.BroadleavedSpecies);
+		}
+		return basalAreaBroadleavedM2Ha;
+	}
+
+	double getBasalAreaConiferousM2Ha() {
+		if (Double.isNaN(basalAreaConiferousM2Ha)) {
+			basalAreaConiferousM2Ha = plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.ConiferousSpecies);
+		}
+		return basalAreaConiferousM2Ha;
+	}
+
+	double getSlopeInclinationPercent() {
+		if (Double.isNaN(slopeInclinationPercent)) {
+			slopeInclinationPercent = plot.getSlopeInclinationPercent();
+		}
+		return slopeInclinationPercent;
+	}
+
+	double getGrowthStepLengthYr() {
+		if (Double.isNaN(growthStepLengthYr)) {
+			growthStepLengthYr = plot.getGrowthStepLengthYr();
+		}
+		return growthStepLengthYr;
+	}
+
+	double getLnGrowthStepLengthYr() {
+		if (Double.isNaN(lnGrowthStepLengthYr)) {
+			lnGrowthStepLengthYr = Math.log(getGrowthStepLengthYr());
+		}
+		return lnGrowthStepLengthYr;
+	}
+
+	double getTimeSince1970() {
+		if (Double.isNaN(timeSince1970)) {
+			timeSince1970 = plot.getDateYr() + getGrowthStepLengthYr() - 1970;
+		}
+		return timeSince1970;
+	}
+
+	SoilDepth getSoilDepth() {
+		if (soilDepth == null) {
+			soilDepth = plot.getSoilDepth();
+		}
+		return soilDepth;
+	}
+
+	SoilTexture getSoilTexture() {
+		if (soilTexture == null) {
+			soilTexture = plot.getSoilTexture();
+		}
+		return soilTexture;
+	}
+
+	DrainageGroup getDrainageGroup() {
+		if (drainageGroup == null) {
+			drainageGroup = plot.getDrainageGroup();
+		}
+		return drainageGroup;
+	}
+
+	DisturbanceType getPastDisturbance() {
+		if (pastDisturbance == null) {
+			pastDisturbance = plot.getPastDisturbance();
+		}
+		return pastDisturbance;
+	}
+
+	DisturbanceType getUpcomingDisturbance() {
+		if (upcomingDisturbance == null) {
+			upcomingDisturbance = plot.getUpcomingDisturbance();
+		}
+		return upcomingDisturbance;
+	}
+
+	/**
+	 * Provide the basal area of a particular species in the plot.
+	 * @param species an IrisSpecies enum
+	 * @return the basal area (m2/ha)
+	 */
+	double getBasalAreaM2HaForThisSpecies(IrisSpecies species) {
+		int i = species.ordinal();
+		if (Double.isNaN(basalAreaBySpecies[i])) {
+			basalAreaBySpecies[i] = plot.getBasalAreaM2HaForThisSpecies(species);
+		}
+		return basalAreaBySpecies[i];
+	}
+}
@@ -24,6 +24,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import ontariomnrf.predictor.trillium2026.Trillium2026PlotClimate.ClimateVariable;
 import repicea.math.Matrix;
 import repicea.simulation.ModelParameterEstimates;
 import repicea.simulation.REpiceaPredictor;
@@ -118,7 +119,6 @@ final class Trillium2026DiameterIncrementInternalPredictor extends REpiceaPredic
 	@Override
 	protected void setParameterEstimates(ModelParameterEstimates gaussianEstimate) {
 		super.setParameterEstimates(gaussianEstimate);
-		oXVector = new Matrix(1, getParameterEstimates().getMean().m_iRows);
 	}
 	
 	protected void setEffects(List<Effect> effects) {
@@ -131,91 +131,145 @@ final class Trillium2026DiameterIncrementInternalPredictor extends REpiceaPredic
 		this.sigma2 = sigma * sigma;
 	}
 
-	private void setXVector(Trillium2026DiameterIncrementPlot plot, Trillium2026Tree tree) {
-		oXVector.resetMatrix();
-		int index = 0;
-		for (Effect effect : effects) {
-			switch(effect) {
+	/*
+	 * Compute the part of the linear predictor that depends only on the plot. The climate variables
+	 * are provided by the Trillium2026PlotClimate instance.
+	 */
+	private double getPlotLevelPrediction(Matrix beta, Trillium2026DiameterIncrementPlot plot, Trillium2026PlotClimate climate) {
+		double pred = 0d;
+		for (int index = 0; index < effects.size(); index++) {
+			double value;
+			switch(effects.get(index)) {
 			case Intercept:
-				oXVector.setValueAt(0, index++, 1d);
+				value = 1d;
 				break;
 			case DBH:
-				oXVector.setValueAt(0, index++, tree.getDbhCm());
-				break;
 			case BAL:
-				oXVector.setValueAt(0, index++, tree.getBasalAreaLargerThanSubjectM2Ha());
-				break;
+			case DBH_x_BAL:
+				continue;	// tree-level effects
 			case dt:
-				oXVector.setValueAt(0, index++, plot.getGrowthStepLengthYr());
+				value = plot.getGrowthStepLengthYr();
 				break;
 			case MeanTminJanuary:
-				oXVector.setValueAt(0, index++, plot.getMeanMinimumJanuaryTemperatureCelsius(IntervalResolution));
+				value = climate.get(ClimateVariable.MeanTminJanuary, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getMeanMinimumJanuaryTemperatureCelsius);
 				break;
 			case TotalPrecMarchToMay:
-				oXVector.setValueAt(0, index++, plot.getTotalPrecipitationFromMarchToMayMm(IntervalResolution));
+				value = climate.get(ClimateVariable.TotalPrecMarchToMay, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getTotalPrecipitationFromMarchToMayMm);
 				break;
 			case MeanTempJuneToAugust: 
-				oXVector.setValueAt(0, index++, plot.getMeanTemperatureFromJuneToAugustCelsius(IntervalResolution));
+				value = climate.get(ClimateVariable.MeanTempJuneToAugust, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getMeanTemperatureFromJuneToAugustCelsius);
 				break;
 			case MeanTempAnomaly:
-				oXVector.setValueAt(0, index++, plot.getMeanTempAnomalyCelsius());
-				break;
-			case DBH_x_BAL:
-				oXVector.setValueAt(0, index++, tree.getBasalAreaLargerThanSubjectM2Ha() * tree.getDbhCm());
+				value = climate.get(ClimateVariable.MeanTempAnomaly, plot, Trillium2026DiameterIncrementPlot::getMeanTempAnomalyCelsius);
 				break;
 			case TotalRadiation:
-				oXVector.setValueAt(0, index++, plot.getTotalRadiation());
+				value = climate.get(ClimateVariable.TotalRadiation, plot, Trillium2026DiameterIncrementPlot::getTotalRadiation);
 				break;
 			case MeanSummerVPD:
-				oXVector.setValueAt(0, index++, plot.getMeanSummerVPD());
+				value = climate.get(ClimateVariable.MeanSummerVPD, plot, Trillium2026DiameterIncrementPlot::getMeanSummerVPD);
 				break;
 			case FrostFreeDay:
-				oXVector.setValueAt(0, index++, plot.getAnnualNbFrostFreeDays(IntervalResolution));
+				value = climate.get(ClimateVariable.FrostFreeDays, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getAnnualNbFrostFreeDays);
 				break;
 			case MeanTmaxJuly:
-				oXVector.setValueAt(0, index++, plot.getMeanMaximumJulyTemperatureCelsius(IntervalResolution));
+				value = climate.get(ClimateVariable.MeanTmaxJuly, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getMeanMaximumJulyTemperatureCelsius);
 				break;
 			case SMImean:
-				oXVector.setValueAt(0, index++, plot.getSMImean());
+				value = climate.get(ClimateVariable.SMImean, plot, Trillium2026DiameterIncrementPlot::getSMImean);
 				break;
 			case MaxTempAnomaly:
-				oXVector.setValueAt(0, index++, plot.getMaxTempAnomalyCelsius());
+				value = climate.get(ClimateVariable.MaxTempAnomaly, plot, Trillium2026DiameterIncrementPlot::getMaxTempAnomalyCelsius);
 				break;
 			case MeanSummerVPDDaylight:
-				oXVector.setValueAt(0, index++, plot.getMeanSummerVPDDaylight());
+				value = climate.get(ClimateVariable.MeanSummerVPDDaylight, plot, Trillium2026DiameterIncrementPlot::getMeanSummerVPDDaylight);
 				break;
 			case TotalPrecJuneToAugust:
-				oXVector.setValueAt(0, index++, plot.getTotalPrecipitationFromJuneToAugustMm(IntervalResolution));
+				value = climate.get(ClimateVariable.TotalPrecJuneToAugust, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getTotalPrecipitationFromJuneToAugustMm);
 				break; 
 			case PrecAnomaly:
-				oXVector.setValueAt(0, index++, plot.getTotalPrecipitationAnomalyMm());
+				value = climate.get(ClimateVariable.PrecAnomaly, plot, Trillium2026DiameterIncrementPlot::getTotalPrecipitationAnomalyMm);
 				break;
 			case CMI:
-				oXVector.setValueAt(0, index++, plot.getCMI());
+				value = climate.get(ClimateVariable.CMI, plot, Trillium2026DiameterIncrementPlot::getCMI);
 				break;
 			case HighestTmax:
-				oXVector.setValueAt(0, index++, plot.getHighestTmaxCelsius());
+				value = climate.get(ClimateVariable.HighestTmax, plot, Trillium2026DiameterIncrementPlot::getHighestTmaxCelsius);
 				break;
 			case TotalPrcp:
-				oXVector.setValueAt(0, index++, plot.getTotalAnnualPrecipitationMm(IntervalResolution));
+				value = climate.get(ClimateVariable.TotalPrcp, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getTotalAnnualPrecipitationMm);
 				break;
 			case MeanTair:
-				oXVector.setValueAt(0, index++, plot.getMeanAnnualTemperatureCelsius(IntervalResolution));
+				value = climate.get(ClimateVariable.MeanTair, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getMeanAnnualTemperatureCelsius);
 				break;
 			case DD:
-				oXVector.setValueAt(0, index++, plot.getGrowingDegreeDaysCelsius(IntervalResolution));
+				value = climate.get(ClimateVariable.DD, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getGrowingDegreeDaysCelsius);
 				break;
 			case LowestTmin:
-				oXVector.setValueAt(0, index++, plot.getLowestAnnualTemperatureCelsius(IntervalResolution));
+				value = climate.get(ClimateVariable.LowestTmin, IntervalResolution, plot, Trillium2026DiameterIncrementPlot::getLowestAnnualTemperatureCelsius);
+				break;
+			default:
+				continue;
+			}
+			pred += value * beta.getValueAt(index, 0);
+		}
+		return pred;
+	}
+	
+	/*
+	 * Compute the part of the linear predictor that depends on the tree.
+	 */
+	private double getTreeLevelPrediction(Matrix beta, Trillium2026Tree tree) {
+		double pred = 0d;
+		for (int index = 0; index < effects.size(); index++) {
+			double value;
+			switch(effects.get(index)) {
+			case DBH:
+				value = tree.getDbhCm();
+				break;
+			case BAL:
+				value = tree.getBasalAreaLargerThanSubjectM2Ha();
 				break;
+			case DBH_x_BAL:
+				value = tree.getBasalAreaLargerThanSubjectM2Ha() * tree.getDbhCm();
+				break;
+			default:
+				continue;	// plot-level effects
 			}
+			pred += value * beta.getValueAt(index, 0);
 		}
+		return pred;
 	}
 	
 	synchronized double predictGrowth(Trillium2026DiameterIncrementPlot plot, Trillium2026Tree tree) {
 		Matrix beta = getParametersForThisRealization(plot);
-		setXVector(plot, tree);
-		double pred = oXVector.multiply(beta).getValueAt(0, 0);
+		double xBeta = getPlotLevelPrediction(beta, plot, Trillium2026PlotClimate.UNCACHED) + getTreeLevelPrediction(beta, tree);
+		return getIncrement(xBeta, plot.getGrowthStepLengthYr());
+	}
+
+	/**
+	 * Provide the diameter increments of several trees of the same plot.<p>
+	 * The plot-level part of the linear predictor is computed only once. 
+	 * @param plot a Trillium2026DiameterIncrementPlot instance
+	 * @param trees a List of Trillium2026Tree instances
+	 * @param indices the indices of the trees of this species in the list
+	 * @param increments the array in which the increments are stored at the same indices
+	 * @param climate the Trillium2026PlotClimate instance of this plot and growth step
+	 */
+	synchronized void predictGrowth(Trillium2026DiameterIncrementPlot plot, 
+			List<? extends Trillium2026Tree> trees, 
+			List<Integer> indices, 
+			double[] increments,
+			Trillium2026PlotClimate climate) {
+		Matrix beta = getParametersForThisRealization(plot);
+		double plotLevelPred = getPlotLevelPrediction(beta, plot, climate);
+		double stepLengthYr = plot.getGrowthStepLengthYr();
+		for (int i : indices) {
+			increments[i] = getIncrement(plotLevelPred + getTreeLevelPrediction(beta, trees.get(i)), stepLengthYr);
+		}
+	}
+	
+	private double getIncrement(double xBeta, double stepLengthYr) {
+		double pred = xBeta;
 		if (isResidualVariabilityEnabled) {
 			pred += StatisticalUtility.getRandom().nextGaussian() * sigma;
 		} 
@@ -228,7 +282,6 @@ final class Trillium2026DiameterIncrementInternalPredictor extends REpiceaPredic
 			}
 		}
 		
-		double stepLengthYr = plot.getGrowthStepLengthYr();
 		if (pred > 1.8 * stepLengthYr) { //  a cap, 1.8 is the 0.9995 percentile of observed periodical diameter increment 
 			pred = 1.8 * stepLengthYr;
 		}
@@ -238,11 +238,41 @@ public class Trillium2026DiameterIncrementPredictor extends REpiceaPredictor
 	 * @return the diameter increment (mm)
 	 */
 	public double predictGrowth(Trillium2026DiameterIncrementPlot plot, Trillium2026Tree tree) {
-		Species species = tree.getTrillium2026TreeSpecies();
+		return getInternalPredictor(tree.getTrillium2026TreeSpecies()).predictGrowth(plot, tree);
+	}
+
+	/**
+	 * Provide the diameter increments of all the trees of a plot.<p>
+	 * The plot-level covariates are retrieved only once per species instead of once per tree.
+	 * 
+	 * @param plot a Trillium2026DiameterIncrementPlot instance
+	 * @param trees a List of Trillium2026Tree instances that belong to this plot
+	 * @return an array of diameter increments (mm) in the same order as the trees
+	 */
+	public double[] predictGrowth(Trillium2026DiameterIncrementPlot plot, List<? extends Trillium2026Tree> trees) {
+		return predictGrowth(plot, trees, Trillium2026Utility.getTreeIndicesBySpecies(trees), new Trillium2026PlotClimate());
+	}
+
+	/*
+	 * The tree indices by species and the climate of the plot are provided by the caller so that they can be 
+	 * shared with the other modules.
+	 */
+	double[] predictGrowth(Trillium2026DiameterIncrementPlot plot, 
+			List<? extends Trillium2026Tree> trees, 
+			Map<Species, List<Integer>> indicesBySpecies, 
+			Trillium2026PlotClimate climate) {
+		double[] increments = new double[trees.size()];
+		for (Species species : indicesBySpecies.keySet()) {
+			getInternalPredictor(species).predictGrowth(plot, trees, indicesBySpecies.get(species), increments, climate);
+		}
+		return increments;
+	}
+
+	private Trillium2026DiameterIncrementInternalPredictor getInternalPredictor(Species species) {
 		if (!SpeciesLookupMap.values().contains(species)) {
 			throw new UnsupportedOperationException("The diameter increment model of Trillium 2026 does not support species: " + species.getLatinName());
 		}
-		return internalPredictorMap.get(species).predictGrowth(plot, tree);
+		return internalPredictorMap.get(species);
 	}
 
 	/**
@@ -19,10 +19,10 @@
  */
 package ontariomnrf.predictor.trillium2026;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
+import ontariomnrf.predictor.trillium2026.Trillium2026PlotClimate.ClimateVariable;
 import repicea.math.Matrix;
 import repicea.math.SymmetricMatrix;
 import repicea.math.integral.GaussHermiteQuadrature;
@@ -59,8 +59,62 @@ class Trillium2026MortalityInternalPredictor extends REpiceaBinaryEventPredictor
 		DutchElmDiseaseOutbreak
 	}
 	
-	private final List<Integer> effectList;
+	private final static double[] HERMITE_NODES = new double[5];
+	private final static double[] HERMITE_WEIGHTS = new double[5];
+	static {
+		computeGaussHermiteNodesAndWeights(HERMITE_NODES, HERMITE_WEIGHTS);
+	}
+	
+	/**
+	 * Compute the nodes and weights of the Gauss-Hermite quadrature.<p>
+	 * The nodes are the roots of the Hermite polynomial, which are found through Newton's method. The
+	 * weights are those of the weight function exp(-x^2).
+	 * @param nodes an array whose length is the number of points 
+	 * @param weights an array of the same length
+	 */
+	static void computeGaussHermiteNodesAndWeights(double[] nodes, double[] weights) {
+		int n = nodes.length;
+		double piToTheMinusOneFourth = Math.pow(Math.PI, -.25);
+		double z = 0d;
+		for (int i = 0; i < (n + 1) / 2; i++) {
+			if (i == 0) {
+				z = Math.sqrt(2d * n + 1d) - 1.85575 * Math.pow(2d * n + 1d, -0.16667);
+			} else if (i == 1) {
+				z -= 1.14 * Math.pow(n, 0.426) / z;
+			} else if (i == 2) {
+				z = 1.86 * z - 0.86 * nodes[0];
+			} else if (i == 3) {
+				z = 1.91 * z - 0.91 * nodes[1];
+			} else {
+				z = 2d * z - nodes[i - 2];
+			}
+			double derivative;
+			double previousZ;
+			int iter = 0;
+			do {
+				double p1 = piToTheMinusOneFourth;
+				double p2 = 0d;
+				for (int j = 0; j < n; j++) {
+					double p3 = p2;
+					p2 = p1;
+					p1 = z * Math.sqrt(2d / (j + 1)) * p2 - Math.sqrt((double) j / (j + 1)) * p3;
+				}
+				derivative = Math.sqrt(2d * n) * p2;
+				previousZ = z;
+				z = previousZ - p1 / derivative;
+			} while (Math.abs(z - previousZ) > 1E-15 && ++iter < 100);
+			nodes[i] = z;
+			nodes[n - 1 - i] = -z;
+			weights[i] = 2d / (derivative * derivative);
+			weights[n - 1 - i] = weights[i];
+		}
+	}
+	
+	private final EffectID[] effects;
 	private final boolean hasPlotRandomEffect;
+	private final Matrix meanBeta;
+	private final double[] scaledNodes;		// the Gauss-Hermite nodes scaled by the standard deviation of the plot random effect
+	private final double[] scaledWeights;	// the Gauss-Hermite weights divided by the square root of pi
 	private final EmbeddedLinkFunction linkFunction;
 	private final GaussHermiteQuadrature ghq;
 	
@@ -75,22 +129,30 @@ class Trillium2026MortalityInternalPredictor extends REpiceaBinaryEventPredictor
 				ranefVar != null && isRandomEffectsVariabilityEnabled, // random effect variability cannot be enabled in the model has no random effects
 				isResidualVariabilityEnabled);
 		hasPlotRandomEffect = ranefVar != null;
-		this.effectList = new ArrayList<Integer>();
-		for (Double effect : effectList) {
-			this.effectList.add(effect.intValue());
+		EffectID[] effectIDs = EffectID.values();
+		effects = new EffectID[effectList.size()];
+		for (int i = 0; i < effects.length; i++) {
+			effects[i] = effectIDs[effectList.get(i).intValue()];
 		}
-		Matrix beta = new Matrix(coefList);
+		meanBeta = new Matrix(coefList);
 		SymmetricMatrix omega = new Matrix(vcovList).squareSym();
-		setParameterEstimates(new ModelParameterEstimates(beta, omega));
-		this.oXVector = new Matrix(1, beta.m_iRows);
+		setParameterEstimates(new ModelParameterEstimates(meanBeta, omega));
 		
+		double ranefVarianceValue = 0d;
 		if (ranefVar != null) {
 			SymmetricMatrix ranefVariance = new Matrix(ranefVar).squareSym();
 			GaussianEstimate randomEffect = new GaussianEstimate(new Matrix(ranefVariance.m_iRows,1), ranefVariance);
 			setDefaultRandomEffects(HierarchicalLevel.PLOT, randomEffect);
-			linkFunction = new EmbeddedLinkFunction(Type.CLogLog, ranefVariance.getValueAt(0, 0));
-		} else {
-			linkFunction = new EmbeddedLinkFunction(Type.CLogLog, 0d);
+			ranefVarianceValue = ranefVariance.getValueAt(0, 0);
+		}
+		linkFunction = new EmbeddedLinkFunction(Type.CLogLog, ranefVarianceValue);
+		scaledNodes = new double[HERMITE_NODES.length];
+		scaledWeights = new double[HERMITE_WEIGHTS.length];
+		double sqrtTwiceVariance = Math.sqrt(2d * ranefVarianceValue);
+		double sqrtPi = Math.sqrt(Math.PI);
+		for (int i = 0; i < HERMITE_NODES.length; i++) {
+			scaledNodes[i] = sqrtTwiceVariance * HERMITE_NODES[i];
+			scaledWeights[i] = HERMITE_WEIGHTS[i] / sqrtPi;
 		}
 		linkFunction.setParameterValue(0, 0d);		// random parameter
 		linkFunction.setVariableValue(0, 1d);		// variable that multiplies the random parameter
@@ -98,88 +160,183 @@ class Trillium2026MortalityInternalPredictor extends REpiceaBinaryEventPredictor
 		ghq = new GaussHermiteQuadrature();
 	}
 	
+	/*
+	 * This method can be called concurrently. The lock is only acquired to retrieve the parameters 
+	 * and the random effects of the realization in stochastic mode.
+	 */
 	@Override
-	public synchronized double predictEventProbability(Trillium2026MortalityPlot plot, Trillium2026Tree tree, Map<String, Object> parms) {
-		Matrix beta = getParametersForThisRealization(tree); 
-		double xBeta = getFixedEffectPrediction(beta, plot, tree);
-		linkFunction.setVariableValue(1, xBeta);
-		double prob;
-		if (isRandomEffectsVariabilityEnabled) {
-			linkFunction.setParameterValue(0, getRandomEffectsForThisSubject(plot).getValueAt(0, 0));
-			prob = linkFunction.getValue();
+	public double predictEventProbability(Trillium2026MortalityPlot plot, Trillium2026Tree tree, Map<String, Object> parms) {
+		Matrix beta;
+		double randomEffect = 0d;
+		if (isParametersVariabilityEnabled || isRandomEffectsVariabilityEnabled) {
+			synchronized (this) {
+				beta = getParametersForThisRealization(tree);
+				if (isRandomEffectsVariabilityEnabled) {
+					randomEffect = getRandomEffectsForThisSubject(plot).getValueAt(0, 0);
+				}
+			}
 		} else {
-			linkFunction.setParameterValue(0, 0d);
-			if (hasPlotRandomEffect) {
-				prob = ghq.getIntegralApproximation(linkFunction, 
-						0, 
-						true);
-			} else {
-				prob = linkFunction.getValue();
+			beta = meanBeta;
+		}
+		return getProbability(getFixedEffectPrediction(beta, plot, tree), randomEffect);
+	}
+
+	/**
+	 * Provide the mortality probabilities of several trees of the same plot.<p>
+	 * The plot-level part of the linear predictor is computed only once. The trees are
+	 * expected to be in the same Monte Carlo realization as the plot.
+	 * @param plot a Trillium2026MortalityPlot instance
+	 * @param trees a List of Trillium2026Tree instances
+	 * @param indices the indices of the trees of this species in the list
+	 * @param probabilities the array in which the probabilities are stored at the same indices
+	 * @param climate the Trillium2026PlotClimate instance of this plot and growth step
+	 */
+	void predictEventProbabilities(Trillium2026MortalityPlot plot, 
+			List<? extends Trillium2026Tree> trees, 
+			List<Integer> indices, 
+			double[] probabilities, 
+			Trillium2026PlotClimate climate) {
+		Matrix beta;
+		double randomEffect = 0d;
+		if (isParametersVariabilityEnabled || isRandomEffectsVariabilityEnabled) {
+			synchronized (this) {
+				beta = getParametersForThisRealization(plot);
+				if (isRandomEffectsVariabilityEnabled) {
+					randomEffect = getRandomEffectsForThisSubject(plot).getValueAt(0, 0);
+				}
 			}
+		} else {
+			beta = meanBeta;
+		}
+		double plotLevelPred = getPlotLevelPrediction(beta, plot, climate);
+		for (int i : indices) {
+			probabilities[i] = getProbability(plotLevelPred + getTreeLevelPrediction(beta, trees.get(i)), randomEffect);
+		}
+	}
+	
+	private double getProbability(double xBeta, double randomEffect) {
+		if (hasPlotRandomEffect && !isRandomEffectsVariabilityEnabled) {
+			return getMarginalProbability(xBeta);
+		} else {
+			return getConditionalProbability(xBeta + randomEffect);
 		}
-		return prob;
 	}
 
+	private static double getConditionalProbability(double xBeta) {
+		return 1d - Math.exp(-Math.exp(xBeta));
+	}
+	
+	/*
+	 * Integrate the probability over the distribution of the plot random effect with 
+	 * a Gauss-Hermite quadrature. 
+	 */
+	private double getMarginalProbability(double xBeta) {
+		double prob = 0d;
+		for (int i = 0; i < scaledNodes.length; i++) {
+			prob += scaledWeights[i] * getConditionalProbability(xBeta + scaledNodes[i]);
+		}
+		return prob;
+	}
+	
+	/*
+	 * For testing purposes. This is the former implementation of the deterministic prediction, 
+	 * which relies on the GaussHermiteQuadrature class.
+	 */
+	synchronized double predictEventProbabilityWithGaussHermiteQuadrature(Trillium2026MortalityPlot plot, Trillium2026Tree tree) {
+		double xBeta = getFixedEffectPrediction(meanBeta, plot, tree);
+		linkFunction.setVariableValue(1, xBeta);
+		linkFunction.setParameterValue(0, 0d);
+		if (hasPlotRandomEffect) {
+			return ghq.getIntegralApproximation(linkFunction, 0, true);
+		} else {
+			return linkFunction.getValue();
+		}
+	}
+	
 	double getFixedEffectPrediction(Matrix beta, Trillium2026MortalityPlot plot, Trillium2026Tree tree) {
-		oXVector.resetMatrix();
-		int index = 0;
-		double dbhCm = tree.getDbhCm();
-		double balM2Ha = tree.getBasalAreaLargerThanSubjectM2Ha();
-		double meanTminJanuary = plot.getMeanMinimumJanuaryTemperatureCelsius(IntervalResolution);
-		for (Integer effectId : effectList) {
-			EffectID eff = EffectID.values()[effectId];
-			switch(eff) {
+		return getPlotLevelPrediction(beta, plot, Trillium2026PlotClimate.UNCACHED) + getTreeLevelPrediction(beta, tree);
+	}
+
+	/*
+	 * Compute the part of the linear predictor that depends only on the plot, including the offset. The 
+	 * climate variables are provided by the Trillium2026PlotClimate instance.
+	 */
+	private double getPlotLevelPrediction(Matrix beta, Trillium2026MortalityPlot plot, Trillium2026PlotClimate climate) {
+		double meanTminJanuary = climate.get(ClimateVariable.MeanTminJanuary, IntervalResolution, plot, Trillium2026MortalityPlot::getMeanMinimumJanuaryTemperatureCelsius);
+		double pred = 0d;
+		for (int index = 0; index < effects.length; index++) {
+			double value;
+			switch(effects[index]) {
 			case Intercept:
-				oXVector.setValueAt(0, index++, 1d);
-				break;
-			case DBH_x:
-				oXVector.setValueAt(0, index++, dbhCm);
-				break;
-			case BAL:
-				oXVector.setValueAt(0, index++, balM2Ha);
+				value = 1d;
 				break;
 			case dummyHarvest:
-				oXVector.setValueAt(0, index++, plot.isGoingToBeHarvested() ? 1d : 0d);
-				break;
-			case IDBH_xBAL:
-				oXVector.setValueAt(0, index++, dbhCm * balM2Ha);
+				value = plot.isGoingToBeHarvested() ? 1d : 0d;
 				break;
 			case plantedTRUE:
-				oXVector.setValueAt(0, index++, plot.isFromPlantation() ? 1d : 0d);
+				value = plot.isFromPlantation() ? 1d : 0d;
 				break;
 			case beyondMinus25:
 				double beyondMinus25 = -25-meanTminJanuary;
-				oXVector.setValueAt(0, index++, beyondMinus25 < 0 ? 0 : beyondMinus25);
+				value = beyondMinus25 < 0 ? 0 : beyondMinus25;
 				break;
 			case MeanTminJanuary:
-				oXVector.setValueAt(0, index++, meanTminJanuary);
+				value = meanTminJanuary;
 				break;
 			case MeanTempJuneToAugust:
-				oXVector.setValueAt(0, index++, plot.getMeanTemperatureFromJuneToAugustCelsius(IntervalResolution));
-				break;
-			case IDBH_x2:
-				oXVector.setValueAt(0, index++, tree.getSquaredDbhCm());
+				value = climate.get(ClimateVariable.MeanTempJuneToAugust, IntervalResolution, plot, Trillium2026MortalityPlot::getMeanTemperatureFromJuneToAugustCelsius);
 				break;
 			case TotalPrecMarchToMay:
-				oXVector.setValueAt(0, index++, plot.getTotalPrecipitationFromMarchToMayMm(IntervalResolution));
+				value = climate.get(ClimateVariable.TotalPrecMarchToMay, IntervalResolution, plot, Trillium2026MortalityPlot::getTotalPrecipitationFromMarchToMayMm);
 				break;
 			case TotalPrecJuneToAugust:
-				oXVector.setValueAt(0, index++, plot.getTotalPrecipitationFromJuneToAugustMm(IntervalResolution));
+				value = climate.get(ClimateVariable.TotalPrecJuneToAugust, IntervalResolution, plot, Trillium2026MortalityPlot::getTotalPrecipitationFromJuneToAugustMm);
+				break;
+			case DutchElmDiseaseOutbreak:
+				value = getNbYearsWithDutchElmDisease(plot.getDateYr(), plot.getGrowthStepLengthYr());
+				break;
+			default:
+				continue;	// tree-level effects
+			}
+			pred += value * beta.getValueAt(index, 0);
+		}
+		return pred + Math.log(plot.getGrowthStepLengthYr());
+	}
+
+	/*
+	 * Compute the part of the linear predictor that depends on the tree.
+	 */
+	private double getTreeLevelPrediction(Matrix beta, Trillium2026Tree tree) {
+		double dbhCm = tree.getDbhCm();
+		double balM2Ha = tree.getBasalAreaLargerThanSubjectM2Ha();
+		double pred = 0d;
+		for (int index = 0; index < effects.length; index++) {
+			double value;
+			switch(effects[index]) {
+			case DBH_x:
+				value = dbhCm;
+				break;
+			case BAL:
+				value = balM2Ha;
+				break;
+			case IDBH_xBAL:
+				value = dbhCm * balM2Ha;
+				break;
+			case IDBH_x2:
+				value = tree.getSquaredDbhCm();
 				break;
 			case logDBH_x:
-				oXVector.setValueAt(0, index++, tree.getLnDbhCm());
+				value = tree.getLnDbhCm();
 				break;
 			case IBAL2:
-				oXVector.setValueAt(0, index++, balM2Ha * balM2Ha);
-				break;
-			case DutchElmDiseaseOutbreak:
-				double nbYearsWithDutchElmDisease = getNbYearsWithDutchElmDisease(plot.getDateYr(), plot.getGrowthStepLengthYr());
-				oXVector.setValueAt(0, index++, nbYearsWithDutchElmDisease);
+				value = balM2Ha * balM2Ha;
 				break;
+			default:
+				continue;	// plot-level effects
 			}
+			pred += value * beta.getValueAt(index, 0);
 		}
-		double pred = oXVector.multiply(beta).getValueAt(0, 0);
-		return pred + Math.log(plot.getGrowthStepLengthYr());
+		return pred;
 	}
 		
 	private double getNbYearsWithDutchElmDisease(int dateYr, double growthStepLengthYr) {
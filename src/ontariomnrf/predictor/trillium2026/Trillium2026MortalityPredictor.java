@@ -94,11 +94,41 @@ public class Trillium2026MortalityPredictor extends REpiceaBinaryEventPredictor<
 
 	@Override
 	public double predictEventProbability(Trillium2026MortalityPlot plot, Trillium2026Tree tree, Map<String, Object> parms) {
-		Species species = tree.getTrillium2026TreeSpecies();
+		return getInternalPredictor(tree.getTrillium2026TreeSpecies()).predictEventProbability(plot, tree);
+	}
+
+	/**
+	 * Provide the mortality probabilities of all the trees of a plot.<p>
+	 * The plot-level covariates are retrieved only once per species instead of once per tree.
+	 * 
+	 * @param plot a Trillium2026MortalityPlot instance
+	 * @param trees a List of Trillium2026Tree instances that belong to this plot
+	 * @return an array of probabilities in the same order as the trees
+	 */
+	public double[] predictEventProbabilities(Trillium2026MortalityPlot plot, List<? extends Trillium2026Tree> trees) {
+		return predictEventProbabilities(plot, trees, Trillium2026Utility.getTreeIndicesBySpecies(trees), new Trillium2026PlotClimate());
+	}
+
+	/*
+	 * The tree indices by species and the climate of the plot are provided by the caller so that they can be 
+	 * shared with the other modules.
+	 */
+	double[] predictEventProbabilities(Trillium2026MortalityPlot plot, 
+			List<? extends Trillium2026Tree> trees, 
+			Map<Species, List<Integer>> indicesBySpecies, 
+			Trillium2026PlotClimate climate) {
+		double[] probabilities = new double[trees.size()];
+		for (Species species : indicesBySpecies.keySet()) {
+			getInternalPredictor(species).predictEventProbabilities(plot, trees, indicesBySpecies.get(species), probabilities, climate);
+		}
+		return probabilities;
+	}
+	
+	Trillium2026MortalityInternalPredictor getInternalPredictor(Species species) {
 		if (!SpeciesLookupMap.values().contains(species)) {
 			throw new UnsupportedOperationException("The mortality model of Trillium 2026 does not support species: " + species.getLatinName());
 		}
-		return internalPredictorMap.get(species).predictEventProbability(plot, tree);
+		return internalPredictorMap.get(species);
 	}
 	
 	public List<Species> getEligibleSpecies() {
@@ -0,0 +1,30 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package ontariomnrf.predictor.trillium2026;
+
+/**
+ * The Trillium2026Plot interface ensures the plot can be processed by all the modules
+ * of Trillium 2026 in a single step.
+ * @author Mathieu Fortin - October 2026
+ * @see Trillium2026PlotStepEvaluator
+ */
+public interface Trillium2026Plot extends Trillium2026DiameterIncrementPlot, 
+											Trillium2026MortalityPlot, 
+											Trillium2026RecruitmentPlot {}
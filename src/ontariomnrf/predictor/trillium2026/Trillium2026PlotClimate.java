@@ -0,0 +1,122 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package ontariomnrf.predictor.trillium2026;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleBiFunction;
+import java.util.function.ToDoubleFunction;
+
+import repicea.simulation.climate.REpiceaClimateManager.ClimateVariableTemporalResolution;
+
+/**
+ * The Trillium2026PlotClimate class holds the climate variables of a plot for one growth step.<p>
+ * Each variable is retrieved from the plot on the first request and kept for the subsequent ones, 
+ * so that the modules and their species share a single retrieval. The variables that depend on the 
+ * temporal resolution are kept by resolution. An instance applies to a single plot and a single 
+ * growth step and it is not meant to be shared across threads.
+ * @author Mathieu Fortin - October 2026
+ * @see Trillium2026PlotStepEvaluator
+ */
+final class Trillium2026PlotClimate {
+
+	static enum ClimateVariable {
+		MeanTminJanuary,
+		TotalPrecMarchToMay,
+		MeanTempJuneToAugust,
+		TotalPrecJuneToAugust,
+		FrostFreeDays,
+		MeanTmaxJuly,
+		TotalPrcp,
+		MeanTair,
+		DD,
+		LowestTmin,
+		MeanTempAnomaly,
+		TotalRadiation,
+		MeanSummerVPD,
+		SMImean,
+		MaxTempAnomaly,
+		MeanSummerVPDDaylight,
+		PrecAnomaly,
+		CMI,
+		HighestTmax;
+	}
+	
+	/**
+	 * An instance that does not keep the variables. It is used by the tree-level predictions.
+	 */
+	static final Trillium2026PlotClimate UNCACHED = new Trillium2026PlotClimate(false);
+	
+	private static final int NB_SLOTS = ClimateVariableTemporalResolution.values().length + 1;	// the last slot is for the variables that do not depend on the resolution
+	
+	private final double[] values;
+	
+	Trillium2026PlotClimate() {
+		this(true);
+	}
+	
+	private Trillium2026PlotClimate(boolean isCaching) {
+		if (isCaching) {
+			values = new double[ClimateVariable.values().length * NB_SLOTS];
+			Arrays.fill(values, Double.NaN);
+		} else {
+			values = null;
+		}
+	}
+	
+	/**
+	 * Provide a climate variable that does not depend on the temporal resolution.
+	 * @param variable a ClimateVariable enum
+	 * @param plot the plot
+	 * @param getter the method of the plot that provides the variable
+	 * @return the value of the variable
+	 */
+	<P> double get(ClimateVariable variable, P plot, ToDoubleFunction<P> getter) {
+		if (values == null) {
+			return getter.applyAsDouble(plot);
+		}
+		int i = variable.ordinal() * NB_SLOTS + NB_SLOTS - 1;
+		if (Double.isNaN(values[i])) {
+			values[i] = getter.applyAsDouble(plot);
+		}
+		return values[i];
+	}
+
+	/**
+	 * Provide a climate variable for a particular temporal resolution.
+	 * @param variable a ClimateVariable enum
+	 * @param resolution a ClimateVariableTemporalResolution enum
+	 * @param plot the plot
+	 * @param getter the method of the plot that provides the variable
+	 * @return the value of the variable
+	 */
+	<P> double get(ClimateVariable variable, 
+			ClimateVariableTemporalResolution resolution, 
+			P plot, 
+			ToDoubleBiFunction<P, ClimateVariableTemporalResolution> getter) {
+		if (values == null) {
+			return getter.applyAsDouble(plot, resolution);
+		}
+		int i = variable.ordinal() * NB_SLOTS + resolution.ordinal();
+		if (Double.isNaN(values[i])) {
+			values[i] = getter.applyAsDouble(plot, resolution);
+		}
+		return values[i];
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package ontariomnrf.predictor.trillium2026;
+
+import java.util.List;
+import java.util.Map;
+
+import repicea.simulation.species.REpiceaSpecies.Species;
+
+/**
+ * The Trillium2026PlotStepEvaluator class runs the diameter increment, mortality and 
+ * recruitment modules of Trillium 2026 on a plot for one growth step.<p>
+ * The trees are grouped by species and the plot-level part of each linear predictor is computed 
+ * only once per species. The tree-level part is then evaluated in a single pass over the trees of 
+ * this species. The climate variables are retrieved once per plot step and shared by the modules. 
+ * The predictions are returned as arrays indexed by tree.
+ * @author Mathieu Fortin - October 2026
+ */
+public class Trillium2026PlotStepEvaluator {
+
+	/**
+	 * The Result class contains the predictions of the modules for one plot and one growth step.<p>
+	 * The arrays of the diameter increments and mortality probabilities follow the order of the 
+	 * tree list. Those of a disabled module are null.
+	 */
+	public static final class Result {
+
+		private final double[] diameterIncrements;
+		private final double[] mortalityProbabilities;
+		private final double[] recruitmentProbabilities;
+		private final List<Species> recruitmentSpecies;
+		
+		private Result(double[] diameterIncrements, 
+				double[] mortalityProbabilities, 
+				double[] recruitmentProbabilities, 
+				List<Species> recruitmentSpecies) {
+			this.diameterIncrements = diameterIncrements;
+			this.mortalityProbabilities = mortalityProbabilities;
+			this.recruitmentProbabilities = recruitmentProbabilities;
+			this.recruitmentSpecies = recruitmentSpecies;
+		}
+
+		/**
+		 * Provide the diameter increments.<p>
+		 * The array must not be modified by the caller.
+		 * @return an array of diameter increments (mm) indexed by tree
+		 */
+		public double[] getDiameterIncrements() {return diameterIncrements;}
+		
+		/**
+		 * Provide the mortality probabilities.<p>
+		 * The array must not be modified by the caller.
+		 * @return an array of probabilities indexed by tree
+		 */
+		public double[] getMortalityProbabilities() {return mortalityProbabilities;}
+
+		/**
+		 * Provide the recruitment occurrence probabilities.<p>
+		 * The array must not be modified by the caller.
+		 * @return an array of probabilities indexed by species
+		 * @see Result#getRecruitmentSpecies()
+		 */
+		public double[] getRecruitmentProbabilities() {return recruitmentProbabilities;}
+
+		/**
+		 * Provide the species of the recruitment occurrence probabilities.
+		 * @return a List of Species enums
+		 */
+		public List<Species> getRecruitmentSpecies() {return recruitmentSpecies;}
+	}
+	
+	private final Trillium2026DiameterIncrementPredictor diameterIncrementPredictor;
+	private final Trillium2026MortalityPredictor mortalityPredictor;
+	private final Trillium2026RecruitmentOccurrencePredictor recruitmentPredictor;
+	
+	/**
+	 * Constructor.<p>
+	 * Any of the predictors can be null, in which case the module is skipped.
+	 * @param diameterIncrementPredictor a Trillium2026DiameterIncrementPredictor instance
+	 * @param mortalityPredictor a Trillium2026MortalityPredictor instance
+	 * @param recruitmentPredictor a Trillium2026RecruitmentOccurrencePredictor instance
+	 */
+	public Trillium2026PlotStepEvaluator(Trillium2026DiameterIncrementPredictor diameterIncrementPredictor,
+			Trillium2026MortalityPredictor mortalityPredictor,
+			Trillium2026RecruitmentOccurrencePredictor recruitmentPredictor) {
+		this.diameterIncrementPredictor = diameterIncrementPredictor;
+		this.mortalityPredictor = mortalityPredictor;
+		this.recruitmentPredictor = recruitmentPredictor;
+	}
+	
+	/**
+	 * Evaluate the modules on a plot for one growth step.<p>
+	 * The trees are grouped by species and the climate variables are retrieved from the plot only 
+	 * once for all the modules.
+	 * @param plot a Trillium2026Plot instance
+	 * @param trees the List of Trillium2026Tree instances in this plot
+	 * @return a Result instance
+	 */
+	public Result evaluate(Trillium2026Plot plot, List<? extends Trillium2026Tree> trees) {
+		Trillium2026PlotClimate climate = new Trillium2026PlotClimate();
+		Map<Species, List<Integer>> indicesBySpecies = diameterIncrementPredictor != null || mortalityPredictor != null ?
+				Trillium2026Utility.getTreeIndicesBySpecies(trees) :
+					null;
+		double[] diameterIncrements = diameterIncrementPredictor != null ?
+				diameterIncrementPredictor.predictGrowth(plot, trees, indicesBySpecies, climate) :
+					null;
+		double[] mortalityProbabilities = mortalityPredictor != null ?
+				mortalityPredictor.predictEventProbabilities(plot, trees, indicesBySpecies, climate) :
+					null;
+		double[] recruitmentProbabilities = recruitmentPredictor != null ?
+				recruitmentPredictor.predictAllSpecies(plot, climate) :
+					null;
+		List<Species> recruitmentSpecies = recruitmentPredictor != null ?
+				recruitmentPredictor.getEligibleSpecies() :
+					null;
+		return new Result(diameterIncrements, mortalityProbabilities, recruitmentProbabilities, recruitmentSpecies);
+	}
+}
@@ -25,6 +25,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import ontariomnrf.predictor.trillium2026.Trillium2026PlotClimate.ClimateVariable;
 import repicea.math.AbstractMathematicalFunction;
 import repicea.math.Matrix;
 import repicea.math.SymmetricMatrix;
@@ -117,6 +118,7 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 	private final Map<String, Map<Integer, Map<Integer, GaussianEstimate>>> occupancyIndices; // 1st key plot id, 2nd key realization id, 3rd key dateYr
 	private final Map<String, Map<Integer, Map<Integer, Double>>> occupancyIndicesDeviates; // 1st key plot id, 2nd key realization id, 3rd key dateYr
 	private final List<Integer> occupancyIndexVarIndices; // effect Ids that include the occupancy index
+	private final List<Integer> effectListWithoutOccIndex;
 	private final Species species;
 	
 	protected Trillium2026RecruitmentOccurrenceInternalPredictor(Trillium2026RecruitmentOccurrencePredictor owner,
@@ -146,6 +148,8 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 				occupancyIndexVarIndices.add(effectId);
 			}
 		}
+		effectListWithoutOccIndex = new ArrayList<Integer>(effectList);
+		effectListWithoutOccIndex.removeAll(occupancyIndexVarIndices);
 		occupancyIndices = new HashMap<String, Map<Integer, Map<Integer, GaussianEstimate>>>();
 		occupancyIndicesDeviates = new HashMap<String, Map<Integer, Map<Integer, Double>>>();
 	}
@@ -155,7 +159,7 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 	
 	private void setOccupancyInXVector(Trillium2026RecruitmentPlot plot, Species species, double occupancyIndex25km) {
 		for (int effectId : occupancyIndexVarIndices) {
-			setValueInXVector(effectId, plot, species, occupancyIndex25km); 
+			setValueInXVector(effectId, plot, species, occupancyIndex25km, Trillium2026PlotClimate.UNCACHED);	// only the occupancy index effects 
 		}
 	}
 
@@ -170,12 +174,15 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 	
 	@Override
 	public double predictEventProbability(Trillium2026RecruitmentPlot plot, Trillium2026Tree tree, Map<String, Object> parms) {
-		return calculateEventProbability(plot, tree.getTrillium2026TreeSpecies());
+		return calculateEventProbability(plot, tree.getTrillium2026TreeSpecies(), Trillium2026PlotClimate.UNCACHED);
 	}
 
-	protected synchronized double calculateEventProbability(Trillium2026RecruitmentPlot plot, Species species) {
+	/*
+	 * The climate of the plot is provided by the caller so that it can be shared across the species.
+	 */
+	protected synchronized double calculateEventProbability(Trillium2026RecruitmentPlot plot, Species species, Trillium2026PlotClimate climate) {
 		Matrix beta = getParametersForThisRealization(plot);
-		constructXVector(plot, species);
+		constructXVector(plot, species, climate);
 		if (isUsingOccupancyIndex()) {
 			if (plot instanceof Trillium2026RecruitmentPlotWithKnownOccupancy) { // occupancy is assumed to be known
 				double occupancyIndex25kmRandomDeviate = ((Trillium2026RecruitmentPlotWithKnownOccupancy) plot).getOccupancyIndex25km(species);
@@ -258,7 +265,7 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 	
 	private boolean isUsingOccupancyIndex() {return !occupancyIndexVarIndices.isEmpty();}
 
-	private void setValueInXVector(int effectId, Trillium2026RecruitmentPlot plot, Species species, double occupancyIndex10km) {
+	private void setValueInXVector(int effectId, Trillium2026RecruitmentPlot plot, Species species, double occupancyIndex10km, Trillium2026PlotClimate climate) {
 		int index = effectList.indexOf(effectId);
 		if (index == -1) {
 			throw new InvalidParameterException("The effect id " + effectId + " is not part of this model!");
@@ -268,10 +275,10 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 			oXVector.setValueAt(0, index, 1d);
 			break;
 		case 2: // DD
-			oXVector.setValueAt(0, index, plot.getGrowingDegreeDaysCelsius(IntervalStartingBeforeInitialMeas));
+			oXVector.setValueAt(0, index, climate.get(ClimateVariable.DD, IntervalStartingBeforeInitialMeas, plot, Trillium2026RecruitmentPlot::getGrowingDegreeDaysCelsius));
 			break;
 		case 3: // Frost free days
-			oXVector.setValueAt(0, index, plot.getAnnualNbFrostFreeDays(IntervalStartingBeforeInitialMeas));
+			oXVector.setValueAt(0, index, climate.get(ClimateVariable.FrostFreeDays, IntervalStartingBeforeInitialMeas, plot, Trillium2026RecruitmentPlot::getAnnualNbFrostFreeDays));
 			break;
 		case 4: // G_F
 			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpeciesType(SpeciesType.BroadleavedSpecies));
@@ -298,10 +305,10 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 			oXVector.setValueAt(0, index, Math.log(plot.getGrowthStepLengthYr()));
 			break;
 		case 11: // lowest t min
-			oXVector.setValueAt(0, index, plot.getLowestAnnualTemperatureCelsius(IntervalStartingBeforeInitialMeas));
+			oXVector.setValueAt(0, index, climate.get(ClimateVariable.LowestTmin, IntervalStartingBeforeInitialMeas, plot, Trillium2026RecruitmentPlot::getLowestAnnualTemperatureCelsius));
 			break;
 		case 12: // MeanTminJanuary
-			oXVector.setValueAt(0, index, plot.getMeanMinimumJanuaryTemperatureCelsius(IntervalStartingBeforeInitialMeas));
+			oXVector.setValueAt(0, index, climate.get(ClimateVariable.MeanTminJanuary, IntervalStartingBeforeInitialMeas, plot, Trillium2026RecruitmentPlot::getMeanMinimumJanuaryTemperatureCelsius));
 			break;
 		case 13: // occIndex25km
 			oXVector.setValueAt(0, index, occupancyIndex10km);
@@ -313,10 +320,10 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 			oXVector.setValueAt(0, index, plot.getBasalAreaM2HaForThisSpecies(species) > 0 ? 1d : 0d);
 			break;
 		case 16: // TotalPrcp
-			oXVector.setValueAt(0, index, plot.getTotalAnnualPrecipitationMm(IntervalStartingBeforeInitialMeas));
+			oXVector.setValueAt(0, index, climate.get(ClimateVariable.TotalPrcp, IntervalStartingBeforeInitialMeas, plot, Trillium2026RecruitmentPlot::getTotalAnnualPrecipitationMm));
 			break;
 		case 17: // TotalPrecMarchToMay
-			oXVector.setValueAt(0, index, plot.getTotalPrecipitationFromMarchToMayMm(IntervalStartingBeforeInitialMeas));
+			oXVector.setValueAt(0, index, climate.get(ClimateVariable.TotalPrecMarchToMay, IntervalStartingBeforeInitialMeas, plot, Trillium2026RecruitmentPlot::getTotalPrecipitationFromMarchToMayMm));
 			break;
 		default:
 			throw new InvalidParameterException("The effect id " + effectId + " is unknown!");
@@ -326,14 +333,10 @@ class Trillium2026RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEv
 	/*
 	 * Construct the xVector without the occupancy index.
 	 */
-	private void constructXVector(Trillium2026RecruitmentPlot plot, Species species) {
+	private void constructXVector(Trillium2026RecruitmentPlot plot, Species species, Trillium2026PlotClimate climate) {
 		oXVector.resetMatrix();
-		
-		List<Integer> effectListWithoutOccIndex = new ArrayList<Integer>();
-		effectListWithoutOccIndex.addAll(effectList);
-		effectListWithoutOccIndex.removeAll(occupancyIndexVarIndices);
 		for (int effectId : effectListWithoutOccIndex) {
-			setValueInXVector(effectId, plot, species, 0d); // occupancy index set to 0 for now
+			setValueInXVector(effectId, plot, species, 0d, climate); // occupancy index set to 0 for now
 		}
 	}
 
@@ -163,6 +163,26 @@ public class Trillium2026RecruitmentOccurrencePredictor extends REpiceaBinaryEve
 		return getInternalPredictor(tree.getTrillium2026TreeSpecies()).predictEventProbability(stand, tree, parms);
 	}
 
+	/**
+	 * Provide the recruitment occurrence probabilities of all the eligible species for a plot.
+	 * @param plot a Trillium2026RecruitmentPlot instance
+	 * @return an array of probabilities in the same order as the list returned by the getEligibleSpecies method
+	 */
+	public double[] predictAllSpecies(Trillium2026RecruitmentPlot plot) {
+		return predictAllSpecies(plot, new Trillium2026PlotClimate());
+	}
+
+	/*
+	 * The climate of the plot is provided by the caller so that it can be shared with the other modules.
+	 */
+	double[] predictAllSpecies(Trillium2026RecruitmentPlot plot, Trillium2026PlotClimate climate) {
+		double[] probabilities = new double[SpeciesList.size()];
+		for (int i = 0; i < probabilities.length; i++) {
+			probabilities[i] = internalPredictors.get(SpeciesList.get(i)).calculateEventProbability(plot, SpeciesList.get(i), climate);
+		}
+		return probabilities;
+	}
+
 	@Override
 	public List<Species> getEligibleSpecies() {return SpeciesList;}
 
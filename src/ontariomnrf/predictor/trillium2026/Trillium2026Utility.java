@@ -0,0 +1,53 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package ontariomnrf.predictor.trillium2026;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import repicea.simulation.species.REpiceaSpecies.Species;
+
+/**
+ * The Trillium2026Utility class provides static methods shared by the modules of Trillium 2026.
+ * @author Mathieu Fortin - October 2026
+ */
+final class Trillium2026Utility {
+
+	private Trillium2026Utility() {}
+	
+	/**
+	 * Group the indices of the trees by species.
+	 * @param trees a List of Trillium2026Tree instances
+	 * @return a Map with species as keys and lists of indices as values
+	 */
+	static Map<Species, List<Integer>> getTreeIndicesBySpecies(List<? extends Trillium2026Tree> trees) {
+		Map<Species, List<Integer>> indicesBySpecies = new LinkedHashMap<Species, List<Integer>>();
+		for (int i = 0; i < trees.size(); i++) {
+			Species species = trees.get(i).getTrillium2026TreeSpecies();
+			if (!indicesBySpecies.containsKey(species)) {
+				indicesBySpecies.put(species, new ArrayList<Integer>());
+			}
+			indicesBySpecies.get(species).add(i);
+		}
+		return indicesBySpecies;
+	}
+}
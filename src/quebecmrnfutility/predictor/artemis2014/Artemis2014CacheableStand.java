@@ -0,0 +1,42 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.lang.ref.WeakReference;
+/**
+ * The Artemis2014CacheableStand interface lets a stand opt in to the caching of the stand-level part 
+ * of the linear predictors.<p>
+ * By default, the predictors compute the complete linear predictor for each tree. If the stand implements 
+ * this interface, the stand-level part is computed once per stand instance, date, modification count and parameter 
+ * realization and reused for the other trees. The implementation is then responsible for incrementing the 
+ * modification count whenever a stand-level covariate changes in the course of a growth step (e.g. a harvest or 
+ * an update of the basal area before mortality). 
+ * @author Mathieu Fortin - October 2026
+ * @see ParameterDispatcher#invalidateStandLevelProducts()
+ */
+public interface Artemis2014CacheableStand extends Artemis2014CompatibleStand {
+
+	/**
+	 * Provide a counter of the modifications of the stand-level covariates.<p>
+	 * The cached stand-level part of the linear predictors is recomputed whenever this counter changes.
+	 * @return an integer
+	 */
+	public int getModificationCount();
+}
@@ -21,6 +21,7 @@
  */
 package quebecmrnfutility.predictor.artemis2014;
 
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -38,6 +39,12 @@ import repicea.stats.estimates.GaussianEstimate;
 class Artemis2014DiameterIncrementInternalPredictor extends REpiceaPredictor { 
 
 	private final List<Integer> effectList;
+	private final Artemis2014ExecutionContext.Provider contextProvider = new Artemis2014ExecutionContext.Provider(this) {
+		@Override
+		Matrix getParameters(Artemis2014CompatibleStand stand) {
+			return getParametersForThisRealization(stand);
+		}
+	};
 	
 	protected Artemis2014DiameterIncrementInternalPredictor(boolean isParametersVariabilityEnabled,	boolean isOtherRandomEffectsVariabilityEnabled) {
 		super(isParametersVariabilityEnabled, isOtherRandomEffectsVariabilityEnabled, isOtherRandomEffectsVariabilityEnabled);
@@ -47,30 +54,37 @@ class Artemis2014DiameterIncrementInternalPredictor extends REpiceaPredictor {
 	protected void setBeta(Matrix beta, SymmetricMatrix omega) {
 		ModelParameterEstimates estimate = new SASParameterEstimates(beta, omega);
 		setParameterEstimates(estimate);
-		oXVector = new Matrix(1, estimate.getMean().m_iRows);
 	}
-	
-	protected void setEffectList(Matrix effectList) {
+
+	protected void setEffectList(Matrix effectList, String vegpotName) {
 		for (int i = 0; i < effectList.m_iRows; i++) {
 			this.effectList.add((int) effectList.getValueAt(i, 0));
 		}
+		contextProvider.setEffectPlan(getParameterEstimates().getMean().m_iRows, 
+				ParameterDispatcher.getInstance().compileEffectPlan(Artemis2014DiameterIncrementPredictor.ModuleName, vegpotName, this.effectList));
 	}
 
-	protected synchronized double[] predictGrowth(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
-		Matrix beta = getParametersForThisRealization(stand);
-		ParameterDispatcher.getInstance().constructXVector(oXVector, stand, tree, Artemis2014DiameterIncrementPredictor.ModuleName, effectList);
-//		double xBeta = oXVector.multiply(beta).getValueAt(0, 0);
-		double xBeta = ParameterDispatcher.getInstance().getProduct(oXVector, beta);
+	/*
+	 * This method is reentrant. The x-vector and the parameters are stored in the context of 
+	 * the calling thread. Only the random effects and the residual errors, which are stored in
+	 * the predictor, are drawn under a lock in stochastic mode.
+	 */
+	protected double[] predictGrowth(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
+		Artemis2014ExecutionContext context = contextProvider.getContext(stand, isParametersVariabilityEnabled);
+		double[] beta = context.getBeta();
+		double xBeta = context.getLinearPredictor(beta.length, stand, tree);
 		double pred;
 		double dVarianceUn = 0d;
 		if (isRandomEffectsVariabilityEnabled) {
-			double plotRandomEffect = getRandomEffectsForThisSubject(stand).getValueAt(0, 0);
-			IntervalNestedInPlotDefinition intervalDefinition = getIntervalNestedInPlotDefinition(stand, stand.getDateYr());
-			double stepRandomEffect = getRandomEffectsForThisSubject(intervalDefinition).getValueAt(0, 0);
-			Matrix errorTerm = getResidualErrorForThisSubject(tree, ErrorTermGroup.Default);
-			int index = this.getGaussianErrorTerms(tree).getDistanceIndex().indexOf(tree.getErrorTermIndex());
-			double residualErrorTerm = errorTerm.getValueAt(index, 0);		// last element
-			pred = xBeta + plotRandomEffect + stepRandomEffect + residualErrorTerm;
+			synchronized (this) {
+				double plotRandomEffect = getRandomEffectsForThisSubject(stand).getValueAt(0, 0);
+				IntervalNestedInPlotDefinition intervalDefinition = getIntervalNestedInPlotDefinition(stand, stand.getDateYr());
+				double stepRandomEffect = getRandomEffectsForThisSubject(intervalDefinition).getValueAt(0, 0);
+				Matrix errorTerm = getResidualErrorForThisSubject(tree, ErrorTermGroup.Default);
+				int index = this.getGaussianErrorTerms(tree).getDistanceIndex().indexOf(tree.getErrorTermIndex());
+				double residualErrorTerm = errorTerm.getValueAt(index, 0);		// last element
+				pred = xBeta + plotRandomEffect + stepRandomEffect + residualErrorTerm;
+			}
 		} else {
 			double plotVariance = getDefaultRandomEffects(HierarchicalLevel.PLOT).getVariance().getValueAt(0, 0);
 			double stepVariance = getDefaultRandomEffects(HierarchicalLevel.INTERVAL_NESTED_IN_PLOT).getVariance().getValueAt(0, 0);
@@ -88,6 +102,67 @@ class Artemis2014DiameterIncrementInternalPredictor extends REpiceaPredictor {
 		return output;
 	}
 
+	/*
+	 * Batch implementation. The stand-level part of the linear predictor and the variances are computed 
+	 * once for all the trees. In stochastic mode, the random effects and the residual errors of all the 
+	 * trees are drawn under a single lock and stored temporarily in the growth array.
+	 */
+	protected void predictGrowth(Artemis2014CompatibleStand stand, 
+			List<? extends Artemis2014CompatibleTree> trees,
+			double[] dbhCm, 
+			double[] squaredDbhCm, 
+			double[] balM2Ha, 
+			int[] speciesGroupIndices, 
+			int nbTrees, 
+			double[] growth, 
+			double[] variance) {
+		Artemis2014ExecutionContext context = contextProvider.getContext(stand, isParametersVariabilityEnabled);
+		double[] beta = context.getBeta();
+		int nbSpeciesGroups = contextProvider.getEffectPlan().getNumberOfSpeciesGroups();
+		double fVarianceLog;
+		double varianceFactor;
+		if (isRandomEffectsVariabilityEnabled) {
+			if (trees == null || trees.size() < nbTrees) {
+				throw new InvalidParameterException("The trees must be provided in stochastic mode!");
+			}
+			synchronized (this) {
+				double plotRandomEffect = getRandomEffectsForThisSubject(stand).getValueAt(0, 0);
+				IntervalNestedInPlotDefinition intervalDefinition = getIntervalNestedInPlotDefinition(stand, stand.getDateYr());
+				double stepRandomEffect = getRandomEffectsForThisSubject(intervalDefinition).getValueAt(0, 0);
+				for (int i = 0; i < nbTrees; i++) {
+					Artemis2014CompatibleTree tree = trees.get(i);
+					Matrix errorTerm = getResidualErrorForThisSubject(tree, ErrorTermGroup.Default);
+					int index = getGaussianErrorTerms(tree).getDistanceIndex().indexOf(tree.getErrorTermIndex());
+					growth[i] = plotRandomEffect + stepRandomEffect + errorTerm.getValueAt(index, 0);
+				}
+			}
+			fVarianceLog = 0d;
+			varianceFactor = 0d;
+		} else {
+			double plotVariance = getDefaultRandomEffects(HierarchicalLevel.PLOT).getVariance().getValueAt(0, 0);
+			double stepVariance = getDefaultRandomEffects(HierarchicalLevel.INTERVAL_NESTED_IN_PLOT).getVariance().getValueAt(0, 0);
+			double residualVariance = getDefaultResidualError(ErrorTermGroup.Default).getVariance().getValueAt(0, 0);
+			fVarianceLog = plotVariance + stepVariance+ residualVariance;
+			varianceFactor = Math.exp(fVarianceLog) - 1;
+		}
+		context.prepareBatch(beta.length, stand);
+		for (int i = 0; i < nbTrees; i++) {
+			int g = speciesGroupIndices[i];
+			if (g < 0 || g >= nbSpeciesGroups) {
+				throw new InvalidParameterException("The species group index " + g + " is not valid for potential vegetation " + stand.getPotentialVegetation() + "!");
+			}
+			double xBeta = context.getLinearPredictor(beta.length, stand, dbhCm[i], squaredDbhCm[i], balM2Ha[i], g);
+			double pred = isRandomEffectsVariabilityEnabled ? 
+					xBeta + growth[i] : 
+						xBeta + fVarianceLog * .5;
+			double fGrowth = Math.exp(pred) - 1d;
+			growth[i] = fGrowth < 0d ? 0d : fGrowth;
+			variance[i] = isRandomEffectsVariabilityEnabled ? 
+					0d : 
+						varianceFactor * Math.exp(2d * xBeta + fVarianceLog);
+		}
+	}
+	
 	protected void setRandomEffect(HierarchicalLevel level, SymmetricMatrix randomEffectVariance) {
 		Matrix mean = new Matrix(randomEffectVariance.m_iRows, 1);
 		setDefaultRandomEffects(level, new GaussianEstimate(mean, randomEffectVariance));
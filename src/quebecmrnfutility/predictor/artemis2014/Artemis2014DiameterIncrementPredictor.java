@@ -23,6 +23,7 @@ package quebecmrnfutility.predictor.artemis2014;
 
 import java.security.InvalidParameterException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import repicea.math.Matrix;
@@ -67,7 +68,7 @@ public class Artemis2014DiameterIncrementPredictor extends REpiceaPredictor {
 				internalPredictor = new Artemis2014DiameterIncrementInternalPredictor(isParametersVariabilityEnabled, isRandomEffectsVariabilityEnabled);
 				internalPredictors.put(vegpotName, internalPredictor);
 				internalPredictor.setBeta(beta, omegaVectorForm.squareSym());
-				internalPredictor.setEffectList(effectList);
+				internalPredictor.setEffectList(effectList, vegpotName);
 				
 				internalPredictor.setRandomEffect(HierarchicalLevel.PLOT, 
 						SymmetricMatrix.convertToSymmetricIfPossible(covparms.getSubMatrix(0, 0, 0, 0)));
@@ -91,4 +92,45 @@ public class Artemis2014DiameterIncrementPredictor extends REpiceaPredictor {
 		return predictedGrowth;
 	}
 
+	/**
+	 * Predict the diameter increment of all the trees of a plot in a single call.<p>
+	 * The tree variables are provided as arrays, the i-th element of each array being related to
+	 * the i-th tree. The predictions are written into the arrays provided by the caller, so that no
+	 * object is created for each tree. Because the tree quality is not provided, the trees are considered 
+	 * to be of unknown quality. In stochastic mode, the tree instances are required to draw the residual 
+	 * errors and the variances are set to 0, as in the {@link #predictGrowth(Artemis2014CompatibleStand, Artemis2014CompatibleTree)} 
+	 * method.
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @param trees the tree instances in the same order as the arrays (can be null in deterministic mode)
+	 * @param dbhCm the diameters at breast height (cm)
+	 * @param squaredDbhCm the squared diameters at breast height (cm2)
+	 * @param balM2Ha the basal areas of the trees larger than the subjects (m2/ha)
+	 * @param speciesGroupIndices the indices of the species groups in the list returned by 
+	 * the {@link ParameterDispatcher#getSpeciesGroups(Artemis2014CompatibleStand)} method
+	 * @param nbTrees the number of trees
+	 * @param growth an array that receives the predicted diameter increments (cm)
+	 * @param variance an array that receives the variances of the predicted increments
+	 */
+	public void predictGrowth(Artemis2014CompatibleStand stand, 
+			List<? extends Artemis2014CompatibleTree> trees,
+			double[] dbhCm, 
+			double[] squaredDbhCm, 
+			double[] balM2Ha, 
+			int[] speciesGroupIndices, 
+			int nbTrees, 
+			double[] growth, 
+			double[] variance) {
+		String potentialVegetationCode = stand.getPotentialVegetation();
+		if (potentialVegetationCode == null || !internalPredictors.containsKey(potentialVegetationCode)) {
+			throw new InvalidParameterException("The potential vegetation of this plot is either missing or not considered in the diameter increment submodel!");
+		}
+		internalPredictors.get(potentialVegetationCode).predictGrowth(stand, trees, dbhCm, squaredDbhCm, balM2Ha, speciesGroupIndices, nbTrees, growth, variance);
+		double maxIncrement = MAX_ANNUAL_INCREMENT * stand.getGrowthStepLengthYr();
+		for (int i = 0; i < nbTrees; i++) {
+			if (growth[i] > maxIncrement) {	// if the tree grows at more than 3cm/yr than the increment is truncated to 3cm/yr
+				growth[i] = maxIncrement;
+			}
+		}
+	}
+
 }
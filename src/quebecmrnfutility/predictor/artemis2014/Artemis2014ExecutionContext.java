@@ -0,0 +1,240 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.io.Serializable;
+
+import repicea.math.Matrix;
+
+/**
+ * The Artemis2014ExecutionContext class holds the scratch space of an internal predictor.<p>
+ * Each internal predictor keeps one instance per thread. The x-vector, the parameters of
+ * the current realization and the stand-level part of the linear predictor are therefore 
+ * never shared across threads, which makes the internal predictors reentrant. The internal 
+ * predictors retrieve their context through a Provider instance.
+ * @author Mathieu Fortin - October 2026
+ */
+final class Artemis2014ExecutionContext {
+
+	/**
+	 * The Provider class gives each thread its own context for an internal predictor.<p>
+	 * The parameters are copied into the context of the calling thread. The lock of the internal 
+	 * predictor is only acquired when the context does not hold the parameters of the current 
+	 * realization yet. The contexts are transient. They are recreated on first use after deserialization.
+	 */
+	@SuppressWarnings("serial")
+	abstract static class Provider implements Serializable {
+		
+		private final Object lock;
+		private int nbParameters;
+		private EffectPlan plan;
+		private transient volatile ThreadLocal<Artemis2014ExecutionContext> contexts;
+		
+		/**
+		 * Constructor.
+		 * @param lock the internal predictor, which guards its parameter realizations
+		 */
+		Provider(Object lock) {
+			this.lock = lock;
+		}
+		
+		/**
+		 * Set the effect plan of the internal predictor and discard the current contexts.
+		 * @param nbParameters the number of parameters in the model
+		 * @param plan the EffectPlan instance of the internal predictor
+		 */
+		void setEffectPlan(int nbParameters, EffectPlan plan) {
+			this.nbParameters = nbParameters;
+			this.plan = plan;
+			contexts = createThreadLocalContexts(nbParameters, plan);
+		}
+
+		/**
+		 * Provide the effect plan of the internal predictor.
+		 * @return an EffectPlan instance
+		 */
+		EffectPlan getEffectPlan() {return plan;}
+		
+		/**
+		 * Provide the parameters of the realization of this stand.<p>
+		 * This method is called under the lock of the internal predictor.
+		 * @param stand an Artemis2014CompatibleStand instance
+		 * @return a column vector
+		 */
+		abstract Matrix getParameters(Artemis2014CompatibleStand stand);
+		
+		/**
+		 * Adjust the parameters once they are copied into the context. By default, the parameters 
+		 * are left unchanged.
+		 * @param beta the parameters of the context
+		 */
+		void adjustParameters(double[] beta) {}
+		
+		/**
+		 * Provide the context of the calling thread with the parameters of the realization of this stand.
+		 * @param stand an Artemis2014CompatibleStand instance
+		 * @param isParametersVariabilityEnabled true if the parameters vary from one realization to another 
+		 * @return an Artemis2014ExecutionContext instance
+		 */
+		Artemis2014ExecutionContext getContext(Artemis2014CompatibleStand stand, boolean isParametersVariabilityEnabled) {
+			ThreadLocal<Artemis2014ExecutionContext> threadContexts = contexts;
+			if (threadContexts == null) {
+				synchronized (lock) {
+					if (contexts == null) {
+						contexts = createThreadLocalContexts(nbParameters, plan);
+					}
+					threadContexts = contexts;
+				}
+			}
+			Artemis2014ExecutionContext context = threadContexts.get();
+			int realizationId = isParametersVariabilityEnabled ? stand.getMonteCarloRealizationId() : 0;
+			if (!context.isBetaAvailableFor(realizationId)) {
+				Matrix beta;
+				synchronized (lock) {
+					beta = getParameters(stand);
+				}
+				context.setBeta(realizationId, beta);
+				adjustParameters(context.beta);
+			}
+			return context;
+		}
+	}
+	
+	private static ThreadLocal<Artemis2014ExecutionContext> createThreadLocalContexts(final int nbParameters, final EffectPlan plan) {
+		return ThreadLocal.withInitial(() -> new Artemis2014ExecutionContext(nbParameters, plan));
+	}
+
+	final double[] xVector;
+	private final double[] beta;
+	private final EffectPlan plan;
+	private final Artemis2014StandContext standContext;
+	private int realizationId;
+	private boolean isBetaSet;
+
+	private Artemis2014ExecutionContext(int nbParameters, EffectPlan plan) {
+		xVector = new double[nbParameters];
+		beta = new double[nbParameters];
+		this.plan = plan;
+		standContext = new Artemis2014StandContext(plan.getNumberOfSpeciesGroups());
+	}
+
+	/**
+	 * Check whether the parameters of this realization are already stored in the context.
+	 * @param realizationId the id of the Monte Carlo realization (should be 0 in deterministic mode)
+	 * @return a boolean
+	 */
+	boolean isBetaAvailableFor(int realizationId) {
+		return isBetaSet && this.realizationId == realizationId;
+	}
+
+	/**
+	 * Store a copy of the parameters of this realization.
+	 * @param realizationId the id of the Monte Carlo realization (should be 0 in deterministic mode)
+	 * @param betaMatrix a column vector
+	 */
+	void setBeta(int realizationId, Matrix betaMatrix) {
+		for (int i = 0; i < beta.length; i++) {
+			beta[i] = betaMatrix.getValueAt(i, 0);
+		}
+		this.realizationId = realizationId;
+		isBetaSet = true;
+		standContext.invalidate();
+	}
+
+	/**
+	 * Provide the parameters of the current realization.<p>
+	 * The array must not be modified by the caller.
+	 * @return an array of doubles
+	 */
+	double[] getBeta() {return beta;}
+
+	/**
+	 * Compute the linear predictor of a tree with the parameters currently stored in the context.<p>
+	 * If the stand implements the Artemis2014CacheableStand interface, the stand-level part of the 
+	 * linear predictor is computed only once per stand and species group and only the tree-level 
+	 * effects are evaluated for each tree. Otherwise, the complete linear predictor is computed.
+	 * @param nbTerms the number of terms in the linear predictor
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @param tree an Artemis2014CompatibleTree instance
+	 * @return a double
+	 */
+	double getLinearPredictor(int nbTerms, Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
+		ParameterDispatcher pd = ParameterDispatcher.getInstance();
+		int g = plan.getSpeciesGroupIndex(tree.getSpeciesGroupName());
+		if (g < 0 || !(stand instanceof Artemis2014CacheableStand)) {	// the species group is not part of this potential vegetation or the stand is not cached: falling back on the complete x-vector 
+			pd.constructXVector(xVector, plan, stand, tree);
+			return ParameterDispatcher.getProduct(xVector, beta, nbTerms);
+		}
+		updateStandContextIfNeeded(nbTerms, (Artemis2014CacheableStand) stand);
+		return standContext.standLevelProducts[g] + pd.getTreeLevelProduct(plan, beta, nbTerms, stand, tree, g);
+	}
+
+	/**
+	 * Prepare the stand-level part of the linear predictor for a batch of trees.<p>
+	 * This method must be called before the batch. The stand-level part is retrieved from the cache 
+	 * if the stand implements the Artemis2014CacheableStand interface. Otherwise, it is computed for 
+	 * this batch only.
+	 * @param nbTerms the number of terms in the linear predictor
+	 * @param stand an Artemis2014CompatibleStand instance
+	 */
+	void prepareBatch(int nbTerms, Artemis2014CompatibleStand stand) {
+		if (stand instanceof Artemis2014CacheableStand) {
+			updateStandContextIfNeeded(nbTerms, (Artemis2014CacheableStand) stand);
+		} else {
+			standContext.invalidate();
+			ParameterDispatcher.getInstance().computeStandLevelProducts(standContext.standLevelProducts, xVector, plan, beta, nbTerms, stand);
+		}
+	}
+	
+	/**
+	 * Compute the linear predictor of a tree from its primitive variables.<p>
+	 * This method is meant for the batch implementations. The quality of the tree is 
+	 * considered to be unknown. The prepareBatch method must have been called for this stand.
+	 * @param nbTerms the number of terms in the linear predictor
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @param dbhCm the diameter at breast height (cm)
+	 * @param squaredDbhCm the squared diameter at breast height (cm2)
+	 * @param balM2Ha the basal area of the trees larger than the subject (m2/ha)
+	 * @param g the index of the species group in this potential vegetation
+	 * @return a double
+	 */
+	double getLinearPredictor(int nbTerms, Artemis2014CompatibleStand stand, double dbhCm, double squaredDbhCm, double balM2Ha, int g) {
+		return standContext.standLevelProducts[g] + ParameterDispatcher.getInstance().getTreeLevelProduct(plan, 
+				beta, 
+				nbTerms, 
+				stand, 
+				dbhCm, 
+				squaredDbhCm, 
+				Math.log(dbhCm), 
+				balM2Ha, 
+				null, 
+				plan.getSpeciesGroupName(g), 
+				g);
+	}
+	
+	private void updateStandContextIfNeeded(int nbTerms, Artemis2014CacheableStand stand) {
+		if (!standContext.isValidFor(stand)) {
+			int generation = Artemis2014StandContext.getGeneration();
+			ParameterDispatcher.getInstance().computeStandLevelProducts(standContext.standLevelProducts, xVector, plan, beta, nbTerms, stand);
+			standContext.setStand(stand, generation);
+		}
+	}
+
+}
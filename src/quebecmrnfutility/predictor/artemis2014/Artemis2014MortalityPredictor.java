@@ -65,7 +65,7 @@ public final class Artemis2014MortalityPredictor extends REpiceaBinaryEventPredi
 				internalPredictor = new Artemis2014MortalityInternalPredictor(isParametersVariabilityEnabled, isResidualVariabilityEnabled);
 				internalPredictors.put(vegpotName, internalPredictor);
 				internalPredictor.setBeta(beta, omegaVectorForm.squareSym());
-				internalPredictor.setEffectList(effectList);
+				internalPredictor.setEffectList(effectList, vegpotName);
 			}
 		}
 	}
@@ -39,6 +39,12 @@ import repicea.stats.StatisticalUtility;
 class Artemis2014RecruitDiameterInternalPredictor extends REpiceaPredictor {
 
 	private List<Integer> effectList;
+	private final Artemis2014ExecutionContext.Provider contextProvider = new Artemis2014ExecutionContext.Provider(this) {
+		@Override
+		Matrix getParameters(Artemis2014CompatibleStand stand) {
+			return getParametersForThisRealization(stand);
+		}
+	};
 
 	protected Artemis2014RecruitDiameterInternalPredictor(boolean isParametersVariabilityEnabled, boolean isResidualVariabilityEnabled) {
 		super(isParametersVariabilityEnabled, false, isResidualVariabilityEnabled);		// no random effect in this model
@@ -53,24 +59,23 @@ class Artemis2014RecruitDiameterInternalPredictor extends REpiceaPredictor {
 	protected void setBeta(Matrix beta, SymmetricMatrix omega) {
 		ModelParameterEstimates estimate = new SASParameterEstimates(beta, omega);
 		setParameterEstimates(estimate);
-		oXVector = new Matrix(1, estimate.getMean().m_iRows);
 	}
-	
-	protected void setEffectList(Matrix effectList) {
+
+	protected void setEffectList(Matrix effectList, String vegpotName) {
 		for (int i = 0; i < effectList.m_iRows; i++) {
 			this.effectList.add((int) effectList.getValueAt(i, 0));
 		}
+		contextProvider.setEffectPlan(getParameterEstimates().getMean().m_iRows, 
+				ParameterDispatcher.getInstance().compileEffectPlan(Artemis2014RecruitDiameterPredictor.ModuleName, vegpotName, this.effectList));
 	}
 	
-	protected synchronized double[] predictRecruitDiameter(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
-		Matrix beta = getParametersForThisRealization(stand);
+	protected double[] predictRecruitDiameter(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
+		Artemis2014ExecutionContext context = contextProvider.getContext(stand, isParametersVariabilityEnabled);
+		double[] beta = context.getBeta();
 		
-		final double dispersion = beta.getValueAt(beta.m_iRows-1, 0);	// last element (dispersion) is taken out of the vector
-		beta = beta.getSubMatrix(0, beta.m_iRows - 2, 0, 0); 	// vector is resized to omit the last element (dispersion)
+		final double dispersion = beta[beta.length - 1];	// last element (dispersion) is taken out of the product
 
-		ParameterDispatcher.getInstance().constructXVector(oXVector, stand, tree, Artemis2014MortalityPredictor.ModuleName, effectList);
-//		double xBeta = oXVector.multiply(beta).getValueAt(0, 0);
-		final double xBeta = ParameterDispatcher.getInstance().getProduct(oXVector, beta);
+		final double xBeta = context.getLinearPredictor(beta.length - 1, stand, tree);	// the last element (dispersion) is omitted
 		
 		final double fGammaMean = Math.exp(xBeta);
 
@@ -71,7 +71,7 @@ public class Artemis2014RecruitDiameterPredictor extends REpiceaPredictor {
 				internalPredictor = new Artemis2014RecruitDiameterInternalPredictor(isParametersVariabilityEnabled, isResidualVariabilityEnabled);
 				internalPredictors.put(vegpotName, internalPredictor);
 				internalPredictor.setBeta(beta, omegaVectorForm.squareSym());
-				internalPredictor.setEffectList(effectList);
+				internalPredictor.setEffectList(effectList, vegpotName);
 			}
 		}
 	}
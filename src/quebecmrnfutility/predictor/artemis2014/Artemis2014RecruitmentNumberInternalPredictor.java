@@ -35,6 +35,17 @@ import repicea.stats.StatisticalUtility;
 class Artemis2014RecruitmentNumberInternalPredictor extends REpiceaPredictor {
 
 	private List<Integer> effectList;
+	private final Artemis2014ExecutionContext.Provider contextProvider = new Artemis2014ExecutionContext.Provider(this) {
+		@Override
+		Matrix getParameters(Artemis2014CompatibleStand stand) {
+			return getParametersForThisRealization(stand);
+		}
+
+		@Override
+		void adjustParameters(double[] beta) {
+			beta[beta.length - 1] = 1d;    // last element is replaced by 1 to account for the offset variable	
+		}
+	};
 	
 	protected Artemis2014RecruitmentNumberInternalPredictor(boolean isParametersVariabilityEnabled, boolean isResidualVariabilityEnabled) {
 		super(isParametersVariabilityEnabled, false, isResidualVariabilityEnabled);		// no random effect in this model
@@ -48,24 +59,23 @@ class Artemis2014RecruitmentNumberInternalPredictor extends REpiceaPredictor {
 	protected void setBeta(Matrix beta, SymmetricMatrix omega) {
 		ModelParameterEstimates estimate = new SASParameterEstimates(beta, omega);
 		setParameterEstimates(estimate);
-		oXVector = new Matrix(1, estimate.getMean().m_iRows);
 	}
-	
-	protected void setEffectList(Matrix effectList) {
+
+	protected void setEffectList(Matrix effectList, String vegpotName) {
 		for (int i = 0; i < effectList.m_iRows; i++) {
 			this.effectList.add((int) effectList.getValueAt(i, 0));
 		}
+		contextProvider.setEffectPlan(getParameterEstimates().getMean().m_iRows, 
+				ParameterDispatcher.getInstance().compileEffectPlan(Artemis2014RecruitmentNumberPredictor.ModuleName, vegpotName, this.effectList));
 	}
 	
-	protected synchronized double predictNumberOfRecruits(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
-		Matrix beta = getParametersForThisRealization(stand).getDeepClone();
+	protected double predictNumberOfRecruits(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree) {
+		Artemis2014ExecutionContext context = contextProvider.getContext(stand, isParametersVariabilityEnabled);
+		double[] beta = context.getBeta();
 //		double dispersion = beta.m_afData[beta.m_iRows - 1][0];		// MF20190627 This line could cause a bug. In stochastic mode the dispersion could be negative 
-		double dispersion = getParameterEstimates().getMean().getValueAt(beta.m_iRows - 1, 0);		// MF20190627 This line could cause a bug. In stochastic mode the dispersion could be negative 
-		beta.setValueAt(beta.m_iRows - 1, 0, 1d);    // last element is replaced by 1 to account for the offset variable	
+		double dispersion = getParameterEstimates().getMean().getValueAt(beta.length - 1, 0);		// MF20190627 This line could cause a bug. In stochastic mode the dispersion could be negative 
 	
-		ParameterDispatcher.getInstance().constructXVector(oXVector, stand, tree, Artemis2014RecruitmentNumberPredictor.ModuleName, effectList);
-//		double xBeta = oXVector.multiply(beta).getValueAt(0, 0);
-		double xBeta = ParameterDispatcher.getInstance().getProduct(oXVector, beta);
+		double xBeta = context.getLinearPredictor(beta.length, stand, tree);
 		double predictedValue = Math.exp(xBeta);
 		
 		if (isResidualVariabilityEnabled) {
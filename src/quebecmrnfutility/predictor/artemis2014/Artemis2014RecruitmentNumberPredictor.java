@@ -71,7 +71,7 @@ public class Artemis2014RecruitmentNumberPredictor extends REpiceaPredictor {
 				internalPredictor = new Artemis2014RecruitmentNumberInternalPredictor(isParametersVariabilityEnabled, isResidualVariabilityEnabled);
 				internalPredictors.put(vegpotName, internalPredictor);
 				internalPredictor.setBeta(beta, omegaVectorForm.squareSym());
-				internalPredictor.setEffectList(effectList);
+				internalPredictor.setEffectList(effectList, vegpotName);
 			}
 		}
 	}
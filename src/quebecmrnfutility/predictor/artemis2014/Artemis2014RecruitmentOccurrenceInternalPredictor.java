@@ -35,6 +35,12 @@ import repicea.simulation.SASParameterEstimates;
 class Artemis2014RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEventPredictor<Artemis2014CompatibleStand, Artemis2014CompatibleTree> {
 
 	private List<Integer> effectList;
+	private final Artemis2014ExecutionContext.Provider contextProvider = new Artemis2014ExecutionContext.Provider(this) {
+		@Override
+		Matrix getParameters(Artemis2014CompatibleStand stand) {
+			return getParametersForThisRealization(stand);
+		}
+	};
 	
 	protected Artemis2014RecruitmentOccurrenceInternalPredictor(boolean isParametersVariabilityEnabled, boolean isResidualVariabilityEnabled) {
 		super(isParametersVariabilityEnabled, false, isResidualVariabilityEnabled);		// no random effect in this model
@@ -48,21 +54,21 @@ class Artemis2014RecruitmentOccurrenceInternalPredictor extends REpiceaBinaryEve
 	protected void setBeta(Matrix beta, SymmetricMatrix omega) {
 		ModelParameterEstimates estimate = new SASParameterEstimates(beta, omega);
 		setParameterEstimates(estimate);
-		oXVector = new Matrix(1, estimate.getMean().m_iRows);
 	}
-	
-	protected void setEffectList(Matrix effectList) {
+
+	protected void setEffectList(Matrix effectList, String vegpotName) {
 		for (int i = 0; i < effectList.m_iRows; i++) {
 			this.effectList.add((int) effectList.getValueAt(i, 0));
 		}
+		contextProvider.setEffectPlan(getParameterEstimates().getMean().m_iRows, 
+				ParameterDispatcher.getInstance().compileEffectPlan(Artemis2014RecruitmentOccurrencePredictor.ModuleName, vegpotName, this.effectList));
 	}
 	
 	@Override
-	public synchronized double predictEventProbability(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree, Map<String, Object> parms) {
-		Matrix beta = getParametersForThisRealization(stand);
-		ParameterDispatcher.getInstance().constructXVector(oXVector, stand, tree, Artemis2014RecruitmentOccurrencePredictor.ModuleName, effectList);
-//		double xBeta = oXVector.multiply(beta).getValueAt(0, 0);
-		double xBeta = ParameterDispatcher.getInstance().getProduct(oXVector, beta);
+	public double predictEventProbability(Artemis2014CompatibleStand stand, Artemis2014CompatibleTree tree, Map<String, Object> parms) {
+		Artemis2014ExecutionContext context = contextProvider.getContext(stand, isParametersVariabilityEnabled);
+		double[] beta = context.getBeta();
+		double xBeta = context.getLinearPredictor(beta.length, stand, tree);
 		double recruitmentProbability = Math.exp(xBeta)/(1.0 + Math.exp(xBeta));
 		return recruitmentProbability;
 	}
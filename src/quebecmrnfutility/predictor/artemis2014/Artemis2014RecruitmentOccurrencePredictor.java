@@ -64,7 +64,7 @@ public class Artemis2014RecruitmentOccurrencePredictor extends REpiceaBinaryEven
 				internalPredictor = new Artemis2014RecruitmentOccurrenceInternalPredictor(isParametersVariabilityEnabled, isResidualVariabilityEnabled);
 				internalPredictors.put(vegpotName, internalPredictor);
 				internalPredictor.setBeta(beta, omegaVectorForm.squareSym());
-				internalPredictor.setEffectList(effectList);
+				internalPredictor.setEffectList(effectList, vegpotName);
 			}
 		}
 	}
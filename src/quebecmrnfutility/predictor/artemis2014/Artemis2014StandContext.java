@@ -0,0 +1,99 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The Artemis2014StandContext class holds the stand-level part of the linear predictor.<p>
+ * The stand-level part is computed once for each species group of the potential vegetation. 
+ * It is only kept for the stands that implement the Artemis2014CacheableStand interface. It remains valid 
+ * as long as the stand instance, its date, its modification count and the parameter realization do not change. A global generation number makes it possible to invalidate the contexts of 
+ * all the threads at once.
+ * @author Mathieu Fortin - October 2026
+ * @see ParameterDispatcher#computeStandLevelProducts(double[], double[], EffectPlan, double[], int, Artemis2014CompatibleStand)
+ */
+final class Artemis2014StandContext {
+
+	private static final AtomicInteger GENERATION = new AtomicInteger();
+	
+	/**
+	 * Invalidate the stand-level products of all the contexts.
+	 */
+	static void invalidateAll() {
+		GENERATION.incrementAndGet();
+	}
+	
+	/**
+	 * Provide the current generation number.<p>
+	 * It must be read before computing the stand-level products, so that an invalidation 
+	 * that occurs during the computation is not missed.
+	 * @return an integer
+	 */
+	static int getGeneration() {
+		return GENERATION.get();
+	}
+	
+	private WeakReference<Artemis2014CacheableStand> standReference;
+	private int dateYr;
+	private int modificationCount;
+	private int generation;
+	double[] standLevelProducts;
+	
+	Artemis2014StandContext(int nbSpeciesGroups) {
+		standLevelProducts = new double[nbSpeciesGroups];
+	}
+	
+	/**
+	 * Check whether the stand-level products were computed for this stand.
+	 * @param stand an Artemis2014CacheableStand instance
+	 * @return a boolean
+	 */
+	boolean isValidFor(Artemis2014CacheableStand stand) {
+		return standReference != null && 
+				standReference.get() == stand && 
+				dateYr == stand.getDateYr() && 
+				modificationCount == stand.getModificationCount() && 
+				generation == GENERATION.get();
+	}
+
+	/**
+	 * Record that the stand-level products were computed for this stand.
+	 * @param stand an Artemis2014CacheableStand instance
+	 * @param generation the generation number read before the computation
+	 */
+	void setStand(Artemis2014CacheableStand stand, int generation) {
+		if (standReference == null || standReference.get() != stand) {
+			standReference = new WeakReference<Artemis2014CacheableStand>(stand);
+		}
+		dateYr = stand.getDateYr();
+		modificationCount = stand.getModificationCount();
+		this.generation = generation;
+	}
+	
+	/**
+	 * Invalidate the stand-level products, typically because the parameters have changed or 
+	 * because the products were computed for a stand that is not cached.
+	 */
+	void invalidate() {
+		standReference = null;
+	}
+}
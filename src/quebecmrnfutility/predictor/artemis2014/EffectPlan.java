@@ -0,0 +1,96 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The EffectPlan class is the compiled form of the effect list of a module for a
+ * particular potential vegetation.<p>
+ * The opcodes are the effect ids of the 0_effects.txt file. Effects that are not
+ * implemented in the ParameterDispatcher class are dropped at compilation. The offsets
+ * are the index of the first column of each effect in the x-vector. An effect is stand-level
+ * if it depends only on the stand and the species group of the tree. The plan is immutable
+ * and can be shared across threads.
+ * @author Mathieu Fortin - October 2026
+ * @see ParameterDispatcher#compileEffectPlan(String, String, java.util.List)
+ */
+@SuppressWarnings("serial")
+final class EffectPlan implements Serializable {
+
+	final String vegpotName;
+	final boolean isDiameterGrowthModule;
+	final int[] opcodes;
+	final int[] offsets;
+	final boolean[] isStandLevel;
+	final int nbColumns;
+	final boolean requiresSpeciesGroup;
+	private final String[] speciesGroupNames;
+	private final Map<String, Integer> speciesGroupIndices;
+
+	EffectPlan(String vegpotName,
+			boolean isDiameterGrowthModule,
+			int[] opcodes,
+			int[] offsets,
+			boolean[] isStandLevel,
+			int nbColumns,
+			boolean requiresSpeciesGroup,
+			List<String> speciesGroups) {
+		this.vegpotName = vegpotName;
+		this.isDiameterGrowthModule = isDiameterGrowthModule;
+		this.opcodes = opcodes;
+		this.offsets = offsets;
+		this.isStandLevel = isStandLevel;
+		this.nbColumns = nbColumns;
+		this.requiresSpeciesGroup = requiresSpeciesGroup;
+		speciesGroupNames = speciesGroups.toArray(new String[speciesGroups.size()]);
+		speciesGroupIndices = new HashMap<String, Integer>();
+		for (int i = 0; i < speciesGroupNames.length; i++) {
+			speciesGroupIndices.put(speciesGroupNames[i], i);
+		}
+	}
+
+	/**
+	 * Provide the index of a species group in the dummy variables of this potential vegetation.
+	 * @param speciesGroupName the name of the species group
+	 * @return an integer (-1 if the species group is not found)
+	 */
+	int getSpeciesGroupIndex(String speciesGroupName) {
+		Integer index = speciesGroupName == null ? null : speciesGroupIndices.get(speciesGroupName);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * Provide the number of species groups in this potential vegetation.
+	 * @return an integer
+	 */
+	int getNumberOfSpeciesGroups() {return speciesGroupNames.length;}
+
+	/**
+	 * Provide the name of a species group of this potential vegetation.
+	 * @param index the index of the species group
+	 * @return a String
+	 */
+	String getSpeciesGroupName(int index) {return speciesGroupNames[index];}
+
+}
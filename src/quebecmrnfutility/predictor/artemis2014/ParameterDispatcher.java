@@ -22,6 +22,7 @@ package quebecmrnfutility.predictor.artemis2014;
 import java.io.IOException;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -52,7 +53,7 @@ public class ParameterDispatcher {
 		SPECIES_FOR_TBE.add("EPX");
 	}
 
-	private static ParameterDispatcher instance;
+	private static volatile ParameterDispatcher instance;
 	
 	private final ParameterMap beta;
 	private final ParameterMap omega;
@@ -137,11 +138,26 @@ public class ParameterDispatcher {
 	
 	public static ParameterDispatcher getInstance() {
 		if (instance == null) {
-			instance = new ParameterDispatcher();
+			synchronized (ParameterDispatcher.class) {
+				if (instance == null) {
+					instance = new ParameterDispatcher();
+				}
+			}
 		}
 		return instance;
 	}
 	
+	/**
+	 * Invalidate the stand-level part of the linear predictors cached by the Artemis2014 predictors.<p>
+	 * Only the stands that implement the Artemis2014CacheableStand interface are cached. This method 
+	 * should be called whenever such stands are modified within a growth step without incrementing 
+	 * their modification count. 
+	 * @see Artemis2014CacheableStand#getModificationCount()
+	 */
+	public void invalidateStandLevelProducts() {
+		Artemis2014StandContext.invalidateAll();
+	}
+	
 	private Index<Integer, String> getIndex(String filename) throws IOException {
 		Index<Integer, String> index = new Index<Integer, String>();
 		CSVReader reader = new CSVReader(filename);
@@ -222,6 +238,7 @@ public class ParameterDispatcher {
 		}
 		return product;
 	}
+
 	
 	protected static enum ModuleID {
 		MORTALITY, DBH_GROWTH, RECRUITMENT_PRESENCE, RECRUITMENT_NUMBER, RECRUITMENT_DBH;
@@ -251,6 +268,11 @@ public class ParameterDispatcher {
 		return SPECIES_FOR_TBE.contains(t.getSpeciesGroupName());
 	}
 	
+	/**
+	 * Legacy construction of the x-vector.<p>
+	 * The internal predictors now rely on compiled effect plans. This implementation serves as a reference. 
+	 * @see #constructXVector(double[], EffectPlan, Artemis2014CompatibleStand, Artemis2014CompatibleTree)
+	 */
 	protected void constructXVector (Matrix oXVector, Artemis2014CompatibleStand stand, Artemis2014CompatibleTree t, String moduleName, List<Integer> oEffectsVector) {
 //			final Matrix oXVector, final ArtStand stand, final ArtTree t,
 //			final ModuleID moduleID, final List<Integer> oEffectsVector) {
@@ -266,8 +288,8 @@ public class ParameterDispatcher {
 //		int dummyTBE = 0;
 //		Matrix dummyEssence = null;
 		Matrix dummyEssence = dummySpeciesGroup.get(stand.getPotentialVegetation()).get(t.getSpeciesGroupName());
-		int dummySAB = t.getSpeciesGroupName() == "SAB" ? 1 : 0; 
-		int dummyHEG = t.getSpeciesGroupName() == "HEG" ? 1 : 0; 
+		int dummySAB = "SAB".equals(t.getSpeciesGroupName()) ? 1 : 0; 
+		int dummyHEG = "HEG".equals(t.getSpeciesGroupName()) ? 1 : 0; 
 		int moduleID = moduleIndex.getKeyForThisValue(moduleName);
 		oXVector.setValueAt(0, 0, 1d);
 		pointer = 1;
@@ -795,6 +817,593 @@ public class ParameterDispatcher {
 		}
 	}
 
+	private static final Set<Integer> SPECIES_GROUP_EFFECTS = new HashSet<Integer>();
+	static {
+		for (int effectID : new int[] {1, 4, 12, 14, 18, 33, 34, 38, 42, 44, 47, 51, 53, 54, 59, 61, 65, 67, 68, 70, 72, 74, 76, 79, 82, 86, 90, 97, 98}) {
+			SPECIES_GROUP_EFFECTS.add(effectID);
+		}
+	}
+	
+	private static final Set<Integer> SINGLE_COLUMN_EFFECTS = new HashSet<Integer>();
+	static {
+		for (int effectID : new int[] {2, 3, 10, 11, 13, 17, 31, 32, 35, 36, 37, 39, 40, 41, 43, 45, 48, 49, 50, 52, 57, 60, 63, 64, 66, 69, 
+				71, 73, 75, 78, 80, 81, 83, 84, 85, 87, 88, 89, 91, 92, 93, 94, 95, 96, 99}) {
+			SINGLE_COLUMN_EFFECTS.add(effectID);
+		}
+	}
+
+	/*
+	 * Single-column effects that nonetheless rely on the species group of the tree.
+	 */
+	private static final Set<Integer> SPECIES_GROUP_DEPENDENT_EFFECTS = new HashSet<Integer>();
+	static {
+		for (int effectID : new int[] {37, 39, 48, 71, 73, 78, 80, 85}) {
+			SPECIES_GROUP_DEPENDENT_EFFECTS.add(effectID);
+		}
+	}
+	
+	/*
+	 * Effects that depend on the tree itself and not only on its species group.
+	 */
+	private static final Set<Integer> TREE_LEVEL_EFFECTS = new HashSet<Integer>();
+	static {
+		for (int effectID : new int[] {10, 11, 12, 13, 17, 18, 43, 44, 59, 77, 87, 88, 89, 91, 92, 93, 94}) {
+			TREE_LEVEL_EFFECTS.add(effectID);
+		}
+	}
+
+	private static final int DRAINAGE_EFFECT = 62;
+	private static final int QUALITY_EFFECT = 77;
+	
+	/**
+	 * Compile the effect list of a module for a particular potential vegetation.<p>
+	 * The compilation resolves the module id and the width of each effect once and for all, so that the 
+	 * {@link #constructXVector(double[], EffectPlan, Artemis2014CompatibleStand, Artemis2014CompatibleTree)}
+	 * method does not need to perform any lookup by name or to allocate any Matrix instance.
+	 * @param moduleName the name of the module (e.g. "accroissement")
+	 * @param vegpotName the potential vegetation (e.g. "MS2")
+	 * @param oEffectsVector the list of effect ids
+	 * @return an EffectPlan instance
+	 */
+	protected EffectPlan compileEffectPlan(String moduleName, String vegpotName, List<Integer> oEffectsVector) {
+		List<String> speciesGroups = speciesGroupByVegPot.get(vegpotName);
+		if (speciesGroups == null) {
+			throw new InvalidParameterException("The potential vegetation " + vegpotName + " is not recognized!");
+		}
+		int nbSpeciesGroups = speciesGroups.size();
+		boolean isDiameterGrowthModule = moduleIndex.getKeyForThisValue(moduleName) == ModuleID.DBH_GROWTH.getId();
+		
+		List<Integer> opcodes = new ArrayList<Integer>();
+		List<Integer> offsets = new ArrayList<Integer>();
+		boolean requiresSpeciesGroup = false;
+		int pointer = 1;	// the intercept is always in the first column
+		for (int effectID : oEffectsVector) {
+			int width;
+			if (SPECIES_GROUP_EFFECTS.contains(effectID)) {
+				width = nbSpeciesGroups;
+				requiresSpeciesGroup = true;
+			} else if (SINGLE_COLUMN_EFFECTS.contains(effectID)) {
+				width = 1;
+				if (SPECIES_GROUP_DEPENDENT_EFFECTS.contains(effectID)) {
+					requiresSpeciesGroup = true;
+				}
+			} else if (effectID == DRAINAGE_EFFECT) {
+				width = DrainageGroup.Mesic.getDrainageDummy().m_iCols;
+			} else if (effectID == QUALITY_EFFECT) {
+				width = QualityClass.values().length;
+			} else {
+				continue;	// the legacy implementation ignores this effect
+			}
+			opcodes.add(effectID);
+			offsets.add(pointer);
+			pointer += width;
+		}
+		
+		int[] opcodeArray = new int[opcodes.size()];
+		int[] offsetArray = new int[offsets.size()];
+		boolean[] isStandLevel = new boolean[opcodes.size()];
+		for (int i = 0; i < opcodeArray.length; i++) {
+			opcodeArray[i] = opcodes.get(i);
+			offsetArray[i] = offsets.get(i);
+			isStandLevel[i] = !TREE_LEVEL_EFFECTS.contains(opcodeArray[i]);
+		}
+		return new EffectPlan(vegpotName, isDiameterGrowthModule, opcodeArray, offsetArray, isStandLevel, pointer, requiresSpeciesGroup, speciesGroups);
+	}
+	
+	/**
+	 * Fill the x-vector using a compiled effect plan.<p>
+	 * This method produces the same values as the legacy implementation 
+	 * {@link #constructXVector(Matrix, Artemis2014CompatibleStand, Artemis2014CompatibleTree, String, List)}.
+	 * It does not allocate and it is thread safe as long as each thread uses its own array.
+	 * @param xVector an array whose length is at least the number of columns of the plan
+	 * @param plan an EffectPlan instance
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @param t an Artemis2014CompatibleTree instance
+	 */
+	protected void constructXVector(double[] xVector, EffectPlan plan, Artemis2014CompatibleStand stand, Artemis2014CompatibleTree t) {
+		String speciesGroupName = t.getSpeciesGroupName();
+		int g = plan.getSpeciesGroupIndex(speciesGroupName);
+		if (g < 0 && plan.requiresSpeciesGroup) {
+			throw new InvalidParameterException("The species group " + speciesGroupName + " is not recognized in potential vegetation " + plan.vegpotName + "!");
+		}
+		Arrays.fill(xVector, 0d);
+		xVector[0] = 1d;
+		fillXVector(xVector, plan, false, stand, t, g, speciesGroupName);
+	}
+	
+	/**
+	 * Compute the stand-level part of the linear predictor for each species group of the potential vegetation.<p>
+	 * The stand-level part includes the intercept and all the effects that depend on the stand and the 
+	 * species group only.
+	 * @param standLevelProducts an array whose length is at least the number of species groups
+	 * @param xVector an array used as scratch space
+	 * @param plan an EffectPlan instance
+	 * @param beta the parameters
+	 * @param nbTerms the number of terms in the linear predictor
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @see #getTreeLevelProduct(EffectPlan, double[], int, Artemis2014CompatibleStand, Artemis2014CompatibleTree, int)
+	 */
+	protected void computeStandLevelProducts(double[] standLevelProducts, 
+			double[] xVector, 
+			EffectPlan plan, 
+			double[] beta, 
+			int nbTerms, 
+			Artemis2014CompatibleStand stand) {
+		List<String> speciesGroups = speciesGroupByVegPot.get(plan.vegpotName);
+		for (int g = 0; g < speciesGroups.size(); g++) {
+			Arrays.fill(xVector, 0d);
+			xVector[0] = 1d;
+			fillXVector(xVector, plan, true, stand, null, g, speciesGroups.get(g));
+			standLevelProducts[g] = getProduct(xVector, beta, nbTerms);
+		}
+	}
+	
+	/**
+	 * Compute the tree-level part of the linear predictor.<p>
+	 * The linear predictor is the sum of this product and the stand-level product of the species group.
+	 * @param plan an EffectPlan instance
+	 * @param beta the parameters
+	 * @param nbTerms the number of terms in the linear predictor
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @param t an Artemis2014CompatibleTree instance
+	 * @param g the index of the species group of the tree
+	 * @return a double
+	 * @see #computeStandLevelProducts(double[], double[], EffectPlan, double[], int, Artemis2014CompatibleStand)
+	 */
+	protected double getTreeLevelProduct(EffectPlan plan, 
+			double[] beta, 
+			int nbTerms, 
+			Artemis2014CompatibleStand stand, 
+			Artemis2014CompatibleTree t, 
+			int g) {
+		return getTreeLevelProduct(plan, beta, nbTerms, stand, 
+				t.getDbhCm(), 
+				t.getSquaredDbhCm(), 
+				t.getLnDbhCm(), 
+				t.getBasalAreaLargerThanSubjectM2Ha(), 
+				t.getTreeQuality(), 
+				t.getSpeciesGroupName(), 
+				g);
+	}
+
+	/**
+	 * Compute the tree-level part of the linear predictor from primitive tree variables.
+	 * @param plan an EffectPlan instance
+	 * @param beta the parameters
+	 * @param nbTerms the number of terms in the linear predictor
+	 * @param stand an Artemis2014CompatibleStand instance
+	 * @param dbhCm the diameter at breast height (cm)
+	 * @param squaredDbhCm the squared diameter at breast height (cm2)
+	 * @param lnDbhCm the log of the diameter at breast height
+	 * @param balM2Ha the basal area of the trees larger than the subject (m2/ha)
+	 * @param quality the quality of the tree (can be null)
+	 * @param speciesGroupName the name of the species group
+	 * @param g the index of the species group
+	 * @return a double
+	 */
+	protected double getTreeLevelProduct(EffectPlan plan, 
+			double[] beta, 
+			int nbTerms, 
+			Artemis2014CompatibleStand stand, 
+			double dbhCm,
+			double squaredDbhCm,
+			double lnDbhCm,
+			double balM2Ha,
+			QcTreeQuality quality,
+			String speciesGroupName,
+			int g) {
+		int dummySAB = "SAB".equals(speciesGroupName) ? 1 : 0; 
+		int dummyHEG = "HEG".equals(speciesGroupName) ? 1 : 0; 
+		final int[] opcodes = plan.opcodes;
+		final int[] offsets = plan.offsets;
+		double product = 0d;
+		int column;
+		double value;
+		for (int k = 0; k < opcodes.length; k++) {
+			if (plan.isStandLevel[k]) {
+				continue;
+			}
+			column = offsets[k];
+			value = 0d;
+			switch (opcodes[k]) {
+			case 10: 
+				value = dbhCm;
+				break;
+			case 11: 
+				value = squaredDbhCm;
+				break;
+			case 12: 
+				column += g;
+				value = dbhCm;
+				break;
+			case 13: 
+				value = dummySAB * stand.getTotalAnnualPrecipitationMm(Artemis2014CompatibleStand.Normals30YearTemporalResolution);
+				break;
+			case 17: 
+				value = lnDbhCm;
+				break;
+			case 18: 
+				column += g;
+				value = lnDbhCm;
+				break;
+			case 43: 
+				value = balM2Ha;
+				break;
+			case 44: 
+				column += g;
+				value = balM2Ha;
+				break;
+			case 59:
+				column += g;
+				value = squaredDbhCm;
+				break;
+			case QUALITY_EFFECT:
+				column += getQualityClass(quality).ordinal();
+				value = 1d;
+				break;
+			case 87:
+			case 88:
+				value = dummySAB * squaredDbhCm;
+				break;
+			case 89:
+				value = stand.isInterventionResult() ? dummySAB : 0d;
+				break;
+			case 91:
+				value = dummySAB * balM2Ha;
+				break;
+			case 92:
+				value = stand.isInterventionResult() ? dummyHEG : 0d;
+				break;
+			case 93:
+				value = stand.wasHarvestedInPreviousStep() ? dummyHEG : 0d;
+				break;
+			case 94:
+				value = stand.wasHarvestedInPreviousStep() ? dummySAB : 0d;
+				break;
+			}
+			if (column < nbTerms) {
+				product += value * beta[column];
+			}
+		}
+		return product;
+	}
+	
+	/*
+	 * The tree can be null if the standLevelOnly argument is true.
+	 */
+	private void fillXVector(double[] xVector, 
+			EffectPlan plan, 
+			boolean standLevelOnly, 
+			Artemis2014CompatibleStand stand, 
+			Artemis2014CompatibleTree t, 
+			int g, 
+			String speciesGroupName) {
+		int dummySAB = "SAB".equals(speciesGroupName) ? 1 : 0; 
+		int dummyHEG = "HEG".equals(speciesGroupName) ? 1 : 0; 
+		boolean isDiameterGrowthModule = plan.isDiameterGrowthModule;
+		boolean isSpruceBudwormHostSpecies = SPECIES_FOR_TBE.contains(speciesGroupName);
+
+		int dummyTBE = 0; //default value
+		if (stand.isGoingToBeDefoliated()) {
+			if (isDiameterGrowthModule) {
+				dummyTBE = 1;
+			} else {
+				dummyTBE = isSpruceBudwormHostSpecies ? 1 : 0;
+			}
+		}
+		
+		final int[] opcodes = plan.opcodes;
+		final int[] offsets = plan.offsets;
+		int pointer;
+		double fTmp;
+		for (int k = 0; k < opcodes.length; k++) {
+			if (standLevelOnly && !plan.isStandLevel[k]) {
+				continue;
+			}
+			pointer = offsets[k];
+			switch (opcodes[k]) {
+			case 1: 
+				xVector[pointer + g] = stand.getElevationM();
+				break;
+			case 2: 
+				if (stand.wasHarvestedInPreviousStep()) {
+					xVector[pointer] = 1d;
+				}
+				break;
+			case 3: 
+				if (stand.isInterventionResult() && (!stand.isInitialStand() || !isDiameterGrowthModule)) {
+					xVector[pointer] = 1d;
+				}
+				break;
+			case 4: 
+				if (stand.isInterventionResult() && (!stand.isInitialStand() || !isDiameterGrowthModule)) {
+					xVector[pointer + g] = 1d;
+				}
+				break;
+			case 10: 
+				xVector[pointer] = t.getDbhCm();
+				break;
+			case 11: 
+				xVector[pointer] = t.getSquaredDbhCm();
+				break;
+			case 12: 
+				xVector[pointer + g] = t.getDbhCm();
+				break;
+			case 13: 
+				xVector[pointer] = dummySAB * stand.getTotalAnnualPrecipitationMm(Artemis2014CompatibleStand.Normals30YearTemporalResolution);
+				break;
+			case 14: 
+				xVector[pointer + g] = 1d;
+				break;
+			case 17: 
+				xVector[pointer] = t.getLnDbhCm();
+				break;
+			case 18: 
+				xVector[pointer + g] = t.getLnDbhCm();
+				break;
+			case 31: 
+				xVector[pointer] = Math.log(stand.getGrowthStepLengthYr());
+				break;
+			case 32: 
+				xVector[pointer] = Math.log(stand.getGrowthStepLengthYr()) * dummyTBE;
+				break;
+			case 33: 
+				xVector[pointer + g] = Math.log(stand.getGrowthStepLengthYr()) * dummyTBE;
+				break;
+			case 34: 
+				if (stand.getDateYr() <= 1994) {
+					xVector[pointer + g] = Math.log(1995 - stand.getDateYr()); 
+				}
+				break;
+			case 35: 
+				xVector[pointer] = stand.getMeanQuadraticDiameterCm();
+				break;
+			case 36: 
+				xVector[pointer] = stand.getNumberOfStemsHa() * stand.getAreaHa();
+				break;
+			case 37: 
+				xVector[pointer] = stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g);
+				break;
+			case 38: 
+				xVector[pointer + g] = stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g);
+				break;
+			case 39: 
+			case 48: 
+				xVector[pointer] = stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g) * stand.getBasalAreaM2Ha();
+				break;
+			case 40:
+				xVector[pointer] = stand.getSeasonalPrecipitationMm();
+				break;
+			case 41: 
+				xVector[pointer] = stand.getTotalAnnualPrecipitationMm(Artemis2014CompatibleStand.Normals30YearTemporalResolution);
+				break;
+			case 42: 
+				xVector[pointer + g] = stand.getTotalAnnualPrecipitationMm(Artemis2014CompatibleStand.Normals30YearTemporalResolution);
+				break;
+			case 43: 
+				xVector[pointer] = t.getBasalAreaLargerThanSubjectM2Ha();
+				break;
+			case 44: 
+				xVector[pointer + g] = t.getBasalAreaLargerThanSubjectM2Ha();
+				break;
+			case 45: 
+				xVector[pointer] = stand.getBasalAreaM2Ha();
+				break;
+			case 47: 
+				xVector[pointer + g] = stand.getBasalAreaM2Ha();
+				break;
+			case 49: 
+				xVector[pointer] = dummyTBE;
+				break;
+			case 50: 
+				xVector[pointer] = stand.getMeanAnnualTemperatureCelsius(Artemis2014CompatibleStand.Normals30YearTemporalResolution);
+				break;
+			case 51: 
+				xVector[pointer + g] = stand.getMeanAnnualTemperatureCelsius(Artemis2014CompatibleStand.Normals30YearTemporalResolution);
+				break;
+			case 52: 
+				xVector[pointer] = stand.getLatitudeDeg();
+				break;
+			case 53: 
+				xVector[pointer + g] = stand.getLatitudeDeg();
+				break;
+			case 54: 
+				xVector[pointer + g] = stand.getBasalAreaBySpeciesGroup().getValueAt(0, g);
+				break;
+			case 57:
+				xVector[pointer] = stand.getElevationM();
+				break;
+			case 59:
+				xVector[pointer + g] = t.getSquaredDbhCm();
+				break;
+			case 60:
+				xVector[pointer] = stand.getVaporPressureDeficit();
+				break;
+			case 61:
+				xVector[pointer + g] = stand.getVaporPressureDeficit();
+				break;
+			case DRAINAGE_EFFECT:
+				Matrix drainageDummy = stand.getDrainageGroup().getDrainageDummy();
+				for (int ii = 0; ii < drainageDummy.m_iCols; ii++) {
+					xVector[pointer + ii] = drainageDummy.getValueAt(0, ii);
+				}
+				break;
+			case 63:
+				xVector[pointer] = Math.log(stand.getMeanQuadraticDiameterCm() + 1);
+				break;
+			case 64:
+				xVector[pointer] = Math.log(stand.getNumberOfStemsHa() + 1);
+				break;
+			case 65:
+				xVector[pointer + g] = Math.log(stand.getNumberOfStemsHa() + 1);
+				break;
+			case 66:
+				xVector[pointer] = Math.log(stand.getBasalAreaM2Ha() + 1);
+				break;
+			case 67:
+				xVector[pointer + g] = Math.log(stand.getBasalAreaM2Ha() + 1);
+				break;
+			case 68:
+				xVector[pointer + g] = stand.getNumberOfStemsHa() * stand.getAreaHa();
+				break;
+			case 69:
+				xVector[pointer] = stand.getNumberOfStemsHa();
+				break;
+			case 70:
+				xVector[pointer + g] = stand.getNumberOfStemsHa();
+				break;
+			case 71:
+				xVector[pointer] = stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g) * (1 / stand.getAreaHa());
+				break;
+			case 72:
+				xVector[pointer + g] = stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g) * (1 / stand.getAreaHa());
+				break;
+			case 73:
+				fTmp = stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g) * (1d / stand.getAreaHa());
+				xVector[pointer] = (fTmp / stand.getNumberOfStemsHa()) * 100;
+				break;
+			case 74:
+				xVector[pointer + g] = stand.getSeasonalPrecipitationMm();
+				break;
+			case 75:
+				xVector[pointer] = stand.getUtilPrecipitation();
+				break;
+			case 76:
+				xVector[pointer + g] = stand.getUtilPrecipitation();
+				break;
+			case QUALITY_EFFECT:
+				xVector[pointer + getQualityClass(t).ordinal()] = 1d;
+				break;
+			case 78:
+				xVector[pointer] = stand.getBasalAreaBySpeciesGroup().getValueAt(0, g) * (1d / stand.getAreaHa());
+				break;
+			case 79:
+				xVector[pointer + g] = stand.getBasalAreaBySpeciesGroup().getValueAt(0, g) * (1d / stand.getAreaHa());
+				break;
+			case 80:
+				fTmp = stand.getBasalAreaBySpeciesGroup().getValueAt(0, g) * (1d / stand.getAreaHa());
+				xVector[pointer] = (fTmp / stand.getBasalAreaM2Ha()) * 100;
+				break;
+			case 81:
+				xVector[pointer] = stand.getBasalAreaM2Ha() * stand.getBasalAreaM2Ha();
+				break;
+			case 82:
+				xVector[pointer + g] = dummyTBE;
+				break;
+			case 83:
+				if (stand.wasSpruceBudwormDefoliatedInPreviousStep()) {
+					xVector[pointer] = isDiameterGrowthModule || isSpruceBudwormHostSpecies ? 1d : 0d;
+				}
+				break;
+			case 84:
+				if (stand.wasSpruceBudwormDefoliatedTwoStepsAgo()) {
+					xVector[pointer] = isDiameterGrowthModule || isSpruceBudwormHostSpecies ? 1d : 0d;
+				}
+				break;
+			case 85:
+				if (stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g) <= 0) {
+					xVector[pointer] = 1d;
+				}
+				break;
+			case 86:
+				if (stand.getNumberOfStemsBySpeciesGroup().getValueAt(0, g) <= 0) {
+					xVector[pointer + g] = 1d;
+				}
+				break;
+			case 87:	// dhpcm*dhpcm*dummy_sab
+			case 88:	// dhpcm*dummy_sab (the legacy implementation relies on the squared dbh)
+				xVector[pointer] = dummySAB * t.getSquaredDbhCm();
+				break;
+			case 89:	// dummy_sab*coupe0
+				if (stand.isInterventionResult()) {
+					xVector[pointer] = dummySAB;
+				}
+				break;
+			case 90:	// mq_dhpcm*ess_groupe
+				xVector[pointer + g] = stand.getMeanQuadraticDiameterCm();
+				break;
+			case 91:	// st_ha_cumul_gt*dummy_sab
+				xVector[pointer] = dummySAB * t.getBasalAreaLargerThanSubjectM2Ha();
+				break;
+			case 92:	// coupe0*dummy_heg
+				if (stand.isInterventionResult()) {
+					xVector[pointer] = dummyHEG;
+				}
+				break;	
+			case 93:	// coupe*dummy_heg
+				if (stand.wasHarvestedInPreviousStep()) {
+					xVector[pointer] = dummyHEG;
+				}
+				break;
+			case 94:	// coupe*dummy_sab
+				if (stand.wasHarvestedInPreviousStep()) {
+					xVector[pointer] = dummySAB;
+				}
+				break;
+			case 95:	// regionouest
+				if (!LIST_ECOREGION.contains(stand.getEcoRegion())) {
+					xVector[pointer] = 1d;
+				} 								
+				break;
+			case 96:	// anc
+				if (1998 > stand.getDateYr()) {
+					xVector[pointer] = 1d;
+				}
+				break;
+			case 97:	// anc*ess_groupe
+				if (1998 > stand.getDateYr()) {
+					xVector[pointer + g] = 1d;
+				}
+				break;
+			case 98:	// coupe*ess_groupe
+				if (stand.wasHarvestedInPreviousStep()) {
+					xVector[pointer + g] = 1d;
+				}
+				break;	
+			case 99:	// coupe1
+				if (stand.wasHarvestedTwoStepsAgo()) {
+					xVector[pointer] = 1d;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Compute the product of the x-vector and the first nbTerms elements of beta.
+	 * @param xVector an array
+	 * @param beta an array of parameters
+	 * @param nbTerms the number of terms in the product
+	 * @return a double
+	 */
+	protected static double getProduct(double[] xVector, double[] beta, int nbTerms) {
+		double product = 0;
+		for (int i = 0; i < nbTerms; i++) {
+			product += xVector[i] * beta[i];
+		}
+		return product;
+	}
+
 	private static enum QualityClass {
 		D, 
 		N,
@@ -812,13 +1421,17 @@ public class ParameterDispatcher {
 
 	
 	private QualityClass getQualityClass(Artemis2014CompatibleTree t) {
+		return getQualityClass(t.getTreeQuality());
+	}
+
+	private QualityClass getQualityClass(QcTreeQuality quality) {
 		QualityClass qc = QualityClass.N;
-		if (t.getTreeQuality() != null) {
-			if (t.getTreeQuality() == QcTreeQuality.D) {
+		if (quality != null) {
+			if (quality == QcTreeQuality.D) {
 				qc = QualityClass.D;
-			} else if ((t.getTreeQuality() == QcTreeQuality.C)
-					|| (t.getTreeQuality() == QcTreeQuality.B)
-					|| (t.getTreeQuality() == QcTreeQuality.A)) {
+			} else if ((quality == QcTreeQuality.C)
+					|| (quality == QcTreeQuality.B)
+					|| (quality == QcTreeQuality.A)) {
 				qc = QualityClass.Q;
 			}
 		}
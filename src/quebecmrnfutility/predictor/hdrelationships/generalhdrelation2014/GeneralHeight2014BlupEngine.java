@@ -0,0 +1,272 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014.Heightable2014Tree.Hd2014Species;
+import repicea.simulation.covariateproviders.plotlevel.DateYrProvider;
+
+/**
+ * The GeneralHeight2014BlupEngine class estimates the plot random effects of the 
+ * GeneralHeight2014Predictor class for many plots at once.<p>
+ * The BLUPs and their variances are computed in closed form for each plot and species with 
+ * measured heights. The plots are processed in a parallel stream.<p>
+ * The results are cached by plot, Monte Carlo realization and date, if the stand implements the 
+ * DateYrProvider interface. A cached result is reused only if all the inputs of the closed form, 
+ * namely the stand covariates and the species, dbh and height of the measured trees, are unchanged. 
+ * The cache keeps the most recently used plots up to a maximum size. Callers can also empty it 
+ * at the end of each growth step through the clearCache method.
+ * @author Mathieu Fortin - October 2026
+ * @see GeneralHeight2014InternalPredictor#getClosedFormBlup(Heightable2014Stand, List)
+ */
+public final class GeneralHeight2014BlupEngine {
+
+	/**
+	 * The PlotBlups class contains the BLUPs of a plot for all the species.
+	 */
+	public static final class PlotBlups {
+		
+		private final BlupInputs inputs;
+		private final double[] means;
+		private final double[] variances;
+		private final int[] nbMeasuredHeights;
+		
+		private PlotBlups(BlupInputs inputs) {
+			this.inputs = inputs;
+			int nbSpecies = Hd2014Species.values().length;
+			means = new double[nbSpecies];
+			variances = new double[nbSpecies];
+			nbMeasuredHeights = new int[nbSpecies];
+		}
+		
+		/**
+		 * Check whether the random effect of this species could be estimated.
+		 * @param species an Hd2014Species enum
+		 * @return true if at least one height was measured for this species
+		 */
+		public boolean hasBlup(Hd2014Species species) {return nbMeasuredHeights[species.ordinal()] > 0;}
+		
+		/**
+		 * Provide the BLUP of the plot random effect.
+		 * @param species an Hd2014Species enum
+		 * @return a double (0 if no height was measured for this species)
+		 */
+		public double getMean(Hd2014Species species) {return means[species.ordinal()];}
+
+		/**
+		 * Provide the variance of the BLUP of the plot random effect.
+		 * @param species an Hd2014Species enum
+		 * @return a double (0 if no height was measured for this species)
+		 */
+		public double getVariance(Hd2014Species species) {return variances[species.ordinal()];}
+		
+		/**
+		 * Provide the number of measured heights used to estimate the random effect.
+		 * @param species an Hd2014Species enum
+		 * @return an integer
+		 */
+		public int getNumberOfMeasuredHeights(Hd2014Species species) {return nbMeasuredHeights[species.ordinal()];}
+	}
+	
+	/*
+	 * The inputs of the closed form. The stand covariates are followed by the species, the dbh, 
+	 * the two transformations of the dbh and the height of each measured tree.
+	 */
+	private static final class BlupInputs {
+		
+		private static final int NB_STAND_VALUES = 7;
+		private static final int NB_TREE_VALUES = 5;
+		
+		private final double[] values;
+		private final String ecoRegion;
+		private final String ecologicalType;
+		
+		private BlupInputs(Heightable2014Stand stand, List<Heightable2014Tree> measuredTrees) {
+			values = new double[NB_STAND_VALUES + NB_TREE_VALUES * measuredTrees.size()];
+			values[0] = stand.getBasalAreaM2Ha();
+			values[1] = stand.getMeanAnnualTemperatureCelsius(GeneralHeight2014Predictor.Normals30YearTemporalResolution);
+			values[2] = stand.getTotalAnnualPrecipitationMm(GeneralHeight2014Predictor.Normals30YearTemporalResolution);
+			values[3] = stand.getMeanQuadraticDiameterCm();
+			values[4] = stand.getElevationM();
+			values[5] = stand.isInterventionResult() ? 1d : 0d;
+			values[6] = stand.isSBWDefoliated() ? 1d : 0d;
+			int k = NB_STAND_VALUES;
+			for (Heightable2014Tree t : measuredTrees) {
+				values[k++] = t.getHeightable2014TreeSpecies().ordinal();
+				values[k++] = t.getDbhCm();
+				values[k++] = t.getLnDbhCmPlus1();
+				values[k++] = t.getSquaredLnDbhCmPlus1();
+				values[k++] = t.getHeightM();
+			}
+			ecoRegion = stand.getEcoRegion();
+			ecologicalType = stand.getEcologicalType();
+		}
+		
+		private boolean isEqualTo(BlupInputs inputs) {
+			return Arrays.equals(values, inputs.values) && 
+					Objects.equals(ecoRegion, inputs.ecoRegion) && 
+					Objects.equals(ecologicalType, inputs.ecologicalType);
+		}
+	}
+	
+	/**
+	 * The default maximum number of plots in the cache.
+	 */
+	public static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+	
+	private final GeneralHeight2014Predictor predictor;
+	private final int maxCacheSize;
+	private final Map<String, PlotBlups> cache;
+	
+	/**
+	 * Constructor with a cache of DEFAULT_MAX_CACHE_SIZE plots.
+	 * @param predictor a GeneralHeight2014Predictor instance
+	 */
+	public GeneralHeight2014BlupEngine(GeneralHeight2014Predictor predictor) {
+		this(predictor, DEFAULT_MAX_CACHE_SIZE);
+	}
+	
+	/**
+	 * Constructor.
+	 * @param predictor a GeneralHeight2014Predictor instance
+	 * @param maxCacheSize the maximum number of plots in the cache (must be greater than 0)
+	 */
+	public GeneralHeight2014BlupEngine(GeneralHeight2014Predictor predictor, int maxCacheSize) {
+		if (maxCacheSize < 1) {
+			throw new InvalidParameterException("The maxCacheSize argument must be greater than 0!");
+		}
+		this.predictor = predictor;
+		this.maxCacheSize = maxCacheSize;
+		cache = new LinkedHashMap<String, PlotBlups>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PlotBlups> eldest) {
+				return size() > GeneralHeight2014BlupEngine.this.maxCacheSize;
+			}
+		};
+	}
+	
+	/**
+	 * Estimate the BLUPs of many plots.<p>
+	 * The plots are processed in parallel.
+	 * @param stands a List of Heightable2014Stand instances
+	 * @return a List of PlotBlups instances in the same order as the stands
+	 */
+	public List<PlotBlups> getBlups(List<? extends Heightable2014Stand> stands) {
+		return stands.parallelStream().map(this::getBlups).collect(Collectors.toList());
+	}
+	
+	/*
+	 * The BLUPs are retrieved from the cache unless one of the inputs of the closed form has changed. 
+	 * The lock on the cache is only held to get and put the results so that the plots are still 
+	 * computed in parallel.
+	 */
+	PlotBlups getBlups(Heightable2014Stand stand) {
+		List<Heightable2014Tree> measuredTrees = getMeasuredTrees(stand);
+		BlupInputs inputs = new BlupInputs(stand, measuredTrees);
+		String key = getCacheKey(stand);
+		PlotBlups blups;
+		synchronized (cache) {
+			blups = cache.get(key);
+		}
+		if (blups == null || !blups.inputs.isEqualTo(inputs)) {
+			blups = computeBlups(stand, measuredTrees, inputs);
+			synchronized (cache) {
+				cache.put(key, blups);
+			}
+		}
+		return blups;
+	}
+	
+	private static String getCacheKey(Heightable2014Stand stand) {
+		String key = stand.getSubjectId() + "_" + stand.getMonteCarloRealizationId();
+		if (stand instanceof DateYrProvider) {
+			key += "_" + ((DateYrProvider) stand).getDateYr();
+		}
+		return key;
+	}
+	
+	/**
+	 * Remove all the BLUPs from the cache.<p>
+	 * This method should be called at the end of each growth step if the plots are not 
+	 * processed again.
+	 */
+	public void clearCache() {
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+	
+	/*
+	 * For testing purposes.
+	 */
+	int getCacheSize() {
+		synchronized (cache) {
+			return cache.size();
+		}
+	}
+	
+	private PlotBlups computeBlups(Heightable2014Stand stand, List<Heightable2014Tree> measuredTrees, BlupInputs inputs) {
+		PlotBlups blups = new PlotBlups(inputs);
+		List<List<Heightable2014Tree>> treesBySpecies = new ArrayList<List<Heightable2014Tree>>();
+		for (int i = 0; i < Hd2014Species.values().length; i++) {
+			treesBySpecies.add(new ArrayList<Heightable2014Tree>());
+		}
+		for (Heightable2014Tree t : measuredTrees) {
+			treesBySpecies.get(t.getHeightable2014TreeSpecies().ordinal()).add(t);
+		}
+		for (Hd2014Species species : Hd2014Species.values()) {
+			List<Heightable2014Tree> trees = treesBySpecies.get(species.ordinal());
+			if (!trees.isEmpty()) {
+				double[] blup = predictor.getInternalPredictor(species).getClosedFormBlup(stand, trees);
+				blups.means[species.ordinal()] = blup[0];
+				blups.variances[species.ordinal()] = blup[1];
+				blups.nbMeasuredHeights[species.ordinal()] = trees.size();
+			}
+		}
+		return blups;
+	}
+	
+	/*
+	 * Only the trees with heights greater than 1.3 m are considered as measured.
+	 */
+	private static List<Heightable2014Tree> getMeasuredTrees(Heightable2014Stand stand) {
+		List<Heightable2014Tree> measuredTrees = new ArrayList<Heightable2014Tree>();
+		Collection<?> trees = stand.getTrees();
+		if (trees != null) {
+			for (Object tree : trees) {
+				if (tree instanceof Heightable2014Tree && ((Heightable2014Tree) tree).getHeightM() > 1.3) {
+					measuredTrees.add((Heightable2014Tree) tree);
+				}
+			}
+		}
+		return measuredTrees;
+	}
+}
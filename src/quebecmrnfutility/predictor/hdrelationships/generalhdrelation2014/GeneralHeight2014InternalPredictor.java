@@ -21,10 +21,10 @@ package quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import quebecmrnfutility.predictor.QuebecGeneralSettings;
 import quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014.GeneralHeight2014Predictor.DisturbanceType;
 import quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014.GeneralHeight2014Predictor.Effect;
 import quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014.Heightable2014Tree.Hd2014Species;
@@ -41,11 +41,19 @@ import repicea.stats.estimates.GaussianErrorTermEstimate;
 class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heightable2014Stand, Heightable2014Tree> {
 
 	private final Hd2014Species species;
-	private Map<String, Matrix> subDomainDummyMap;
-	private Map<String, Matrix> vegPotDummyMap;
-	private Map<String, Matrix> ecoTypeDummyMap;
-	private Map<String, Matrix> disturbanceDummyMap;
-	private List<Effect> effectList;
+	private Map<String, Integer> subDomainColumns;
+	private Map<String, Integer> vegPotColumns;
+	private Map<String, Integer> ecoTypeColumns;
+	private int[] disturbanceColumns;	// indexed by the ordinal of DisturbanceType
+	private int subDomainWidth;
+	private int vegPotWidth;
+	private int ecoTypeWidth;
+	private int disturbanceWidth;
+	private Effect[] effects;
+	private int[] effectOffsets;	// the index of the first parameter of each effect
+	private volatile GeneralHeight2014ResolvedStand lastResolvedStand;
+	private double randomEffectVariance;
+	private double residualVariance;
 	
 	protected GeneralHeight2014InternalPredictor(Hd2014Species species, boolean isVariabilityEnabled) {
 		super(isVariabilityEnabled);
@@ -62,6 +70,9 @@ class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heighta
 	@Override
 	protected void setDefaultRandomEffects(HierarchicalLevel level, Estimate<Matrix, SymmetricMatrix, ? extends StandardGaussianDistribution> estimate) {
 		super.setDefaultRandomEffects(level, estimate);
+		if (level == HierarchicalLevel.PLOT) {
+			randomEffectVariance = estimate.getVariance().getValueAt(0, 0);
+		}
 	}
 	
 	/*
@@ -70,7 +81,6 @@ class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heighta
 	@Override
 	protected void setParameterEstimates(ModelParameterEstimates defaultBeta) {
 		super.setParameterEstimates(defaultBeta);
-		oXVector = new Matrix(1, getParameterEstimates().getMean().m_iRows);
 	}
 	
 	/*
@@ -79,26 +89,124 @@ class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heighta
 	@Override
 	protected void setDefaultResidualError(Enum<?> enumVar, GaussianErrorTermEstimate estimate) {
 		super.setDefaultResidualError(enumVar, estimate);
+		residualVariance = estimate.getVariance().getValueAt(0, 0);
 	}
 	
 	protected void setSubDomainDummyMap(Map<String, Matrix> oMap) {
-		subDomainDummyMap = oMap;
+		subDomainColumns = getDummyColumns(oMap);
+		subDomainWidth = getDummyWidth(oMap);
 	}
 
 	protected void setVegPotDummyMap(Map<String, Matrix> oMap) {
-		vegPotDummyMap = oMap;
+		vegPotColumns = getDummyColumns(oMap);
+		vegPotWidth = getDummyWidth(oMap);
 	}
 
 	protected void setEcoTypeDummyMap(Map<String, Matrix> oMap) {
-		ecoTypeDummyMap = oMap;
+		ecoTypeColumns = getDummyColumns(oMap);
+		ecoTypeWidth = getDummyWidth(oMap);
 	}
 
 	protected void setDisturbanceDummyMap(Map<String, Matrix> oMap) {
-		disturbanceDummyMap = oMap;
+		Map<String, Integer> columns = getDummyColumns(oMap);
+		disturbanceColumns = new int[DisturbanceType.values().length];
+		for (DisturbanceType type : DisturbanceType.values()) {
+			Integer column = columns.get(type.toString());
+			disturbanceColumns[type.ordinal()] = column == null ? GeneralHeight2014ResolvedStand.UNKNOWN_LEVEL : column;
+		}
+		disturbanceWidth = getDummyWidth(oMap);
 	}
 	
+	/**
+	 * Set the list of effects and compute the offset of each effect in the parameter vector.<p>
+	 * The dummy maps must be set before calling this method.
+	 * @param list a List of Effect enums
+	 */
 	protected void setEffectList(List<Effect> list) {
-		effectList = list;
+		effects = list.toArray(new Effect[list.size()]);
+		effectOffsets = new int[effects.length];
+		int pointeur = 0;
+		for (int k = 0; k < effects.length; k++) {
+			effectOffsets[k] = pointeur;
+			switch (effects[k]) {
+			case LogDbh:
+			case LogDbh2:
+			case LogDbh_basalArea:
+			case LogDbh_ratioDbh:
+			case LogDbh2_ratioDbh:
+			case LogDbh_Elevation:
+			case LogDbh_meanT:
+			case LogDbh_pTot:
+			case LogDbh_NotOuest:
+				pointeur++;
+				break;
+			case LogDbh_SubDom:
+				pointeur += subDomainWidth;
+				break;
+			case LogDbh_PotVeg:
+				pointeur += vegPotWidth;
+				break;
+			case LogDbh_EcoType:
+				pointeur += ecoTypeWidth;
+				break;
+			case LogDbh_Disturb:
+				pointeur += disturbanceWidth;
+				break;
+			default:
+				System.out.println("BetaHeightPredictor Class : Unable to apply effect " + effects[k]);
+				break;
+			}
+		}
+	}
+	
+	/*
+	 * Convert the dummy vectors into the column of the level. The column is set 
+	 * to REFERENCE_LEVEL if all the dummy variables are 0.
+	 */
+	private static Map<String, Integer> getDummyColumns(Map<String, Matrix> oMap) {
+		Map<String, Integer> columns = new HashMap<String, Integer>();
+		for (String level : oMap.keySet()) {
+			Matrix dummy = oMap.get(level);
+			int column = GeneralHeight2014ResolvedStand.REFERENCE_LEVEL;
+			for (int j = 0; j < dummy.m_iCols; j++) {
+				if (dummy.getValueAt(0, j) == 1d) {
+					column = j;
+					break;
+				}
+			}
+			columns.put(level, column);
+		}
+		return columns;
+	}
+	
+	private static int getDummyWidth(Map<String, Matrix> oMap) {
+		return oMap.isEmpty() ? 0 : oMap.values().iterator().next().m_iCols;
+	}
+
+	/*
+	 * Resolve the string-based covariates of the stand. The last resolved stand is
+	 * kept since the trees are usually processed stand by stand. 
+	 */
+	private GeneralHeight2014ResolvedStand getResolvedStand(Heightable2014Stand stand) {
+		GeneralHeight2014ResolvedStand resolvedStand = lastResolvedStand;
+		if (resolvedStand == null || !resolvedStand.isValidFor(stand)) {
+			resolvedStand = new GeneralHeight2014ResolvedStand(stand, subDomainColumns, vegPotColumns, ecoTypeColumns);
+			lastResolvedStand = resolvedStand;
+		}
+		return resolvedStand;
+	}
+	
+	/*
+	 * Provide the product of a dummy variable interacting with the log of dbh and its parameter.
+	 */
+	private double getDummyProduct(Matrix beta, int offset, int column, double lnDbh, Effect effect) {
+		if (column == GeneralHeight2014ResolvedStand.UNKNOWN_LEVEL) {
+			throw new InvalidParameterException("The level of effect " + effect.name() + " is not found for species " + species.name() + "!");
+		} else if (column == GeneralHeight2014ResolvedStand.REFERENCE_LEVEL) {
+			return 0d;
+		} else {
+			return lnDbh * beta.getValueAt(offset + column, 0);
+		}
 	}
 	
 	/**
@@ -106,13 +214,15 @@ class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heighta
 	 * the Z vector,
 	 * and the species name into m_oRegressionOutput member. The method applies
 	 * in any cases no matter
-	 * it is deterministic or stochastic.
+	 * it is deterministic or stochastic. The string-based covariates of the stand are resolved
+	 * once per stand and the products of the x-vector and the parameters are accumulated 
+	 * directly, without creating the x-vector.
 	 * 
 	 * @param stand a HeightableStand instance
 	 * @param t a HeightableTree instance
 	 */
 	@Override
-	protected synchronized RegressionElements fixedEffectsPrediction(Heightable2014Stand stand, Heightable2014Tree t, Matrix beta) {
+	protected RegressionElements fixedEffectsPrediction(Heightable2014Stand stand, Heightable2014Tree t, Matrix beta) {
 //		Matrix modelParameters = getParametersForThisRealization(new BetaHeightableStandMonteCarlo(stand, t.getBetaHeightableTreeSpecies()));
 
 		double basalArea = stand.getBasalAreaM2Ha();
@@ -121,112 +231,78 @@ class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heighta
 			throw new InvalidParameterException("The basal area of the plot has not been calculated yet!");
 		}
 		double averageTemp = stand.getMeanAnnualTemperatureCelsius(GeneralHeight2014Predictor.Normals30YearTemporalResolution);	
-		String ecoRegion = stand.getEcoRegion();
 		boolean isInterventionResult = stand.isInterventionResult();
 		boolean isDefoliated = stand.isSBWDefoliated();
 		double averageQDiam  = stand.getMeanQuadraticDiameterCm();
 		double elevation = stand.getElevationM();	
 
-		String subDomain = QuebecGeneralSettings.ECO_REGION_MAP.get(ecoRegion);
-//		Map<String, Matrix> oMap = subDomainDummyReferenceMap.get(t.getBetaHeightableTreeSpecies());
-		Matrix dummySubDomain = subDomainDummyMap.get(subDomain.toUpperCase());
-		
-		String potentialVegetation = stand.getEcologicalType().substring(0,3).toUpperCase();	
-		Matrix dummyPotVeg = vegPotDummyMap.get(potentialVegetation.toUpperCase());
-
-		String environmentType = stand.getEcologicalType().substring(3, 4);
-		Matrix dummyEcoType = ecoTypeDummyMap.get(environmentType.toUpperCase());
+		GeneralHeight2014ResolvedStand resolvedStand = getResolvedStand(stand);
 		
-		Matrix dummyDisturbance;
+		int disturbanceColumn;
 		if (isInterventionResult) {
-			dummyDisturbance = disturbanceDummyMap.get(DisturbanceType.INT.toString());
+			disturbanceColumn = disturbanceColumns[DisturbanceType.INT.ordinal()];
 		} else if (isDefoliated) {
-			dummyDisturbance = disturbanceDummyMap.get(DisturbanceType.MOY.toString());
+			disturbanceColumn = disturbanceColumns[DisturbanceType.MOY.ordinal()];
 		} else {
-			dummyDisturbance = disturbanceDummyMap.get(DisturbanceType.NON.toString());
+			disturbanceColumn = disturbanceColumns[DisturbanceType.NON.ordinal()];
 		}
 
-		oXVector.resetMatrix();
-		
-		int pointeur = 0;
 		Hd2014Species species = t.getHeightable2014TreeSpecies();
 		double lnDbh = t.getLnDbhCmPlus1();		
 		double lnDbh2 = t.getSquaredLnDbhCmPlus1();
 		
-
-//		List<Effect> effects = listEffectReferenceMap.get(t.getBetaHeightableTreeSpecies());
-		for (Effect effect : effectList) {
-			switch (effect) {
+		double xBeta = 0d;
+		for (int k = 0; k < effects.length; k++) {
+			int offset = effectOffsets[k];
+			switch (effects[k]) {
 			case LogDbh:
-				oXVector.setValueAt(0, pointeur++, lnDbh);
+				xBeta += lnDbh * beta.getValueAt(offset, 0);
 				break;
 			case LogDbh2:
-				oXVector.setValueAt(0, pointeur++, lnDbh2);
+				xBeta += lnDbh2 * beta.getValueAt(offset, 0);
 				break;
 			case LogDbh_basalArea:
-				oXVector.setValueAt(0, pointeur++, lnDbh * basalArea);
+				xBeta += lnDbh * basalArea * beta.getValueAt(offset, 0);
 				break;
 			case LogDbh_ratioDbh:
-				oXVector.setValueAt(0, pointeur++, lnDbh * (t.getDbhCm()/averageQDiam));
+				xBeta += lnDbh * (t.getDbhCm()/averageQDiam) * beta.getValueAt(offset, 0);
 				break;
-//			case LogDbh_basalAreaGreaterThan:
-//				oXVector.m_afData[0][pointeur++] = lnDbh * t.getBasalAreaLargerThanSubjectM2Ha();
-//				break;
-//			case LogDbh2_basalAreaGreaterThan:
-//				oXVector.m_afData[0][pointeur++] = lnDbh2 * t.getBasalAreaLargerThanSubjectM2Ha();
-//				break;
 			case LogDbh2_ratioDbh:
-				oXVector.setValueAt(0, pointeur++, lnDbh2 * (t.getDbhCm()/averageQDiam));
+				xBeta += lnDbh2 * (t.getDbhCm()/averageQDiam) * beta.getValueAt(offset, 0);
 				break;
 			case LogDbh_SubDom:
-				oXVector.setSubMatrix(dummySubDomain.scalarMultiply(lnDbh), 0, pointeur);
-				pointeur += dummySubDomain.m_iCols;
+				xBeta += getDummyProduct(beta, offset, resolvedStand.subDomainColumn, lnDbh, effects[k]);
 				break;
 			case LogDbh_PotVeg:
-				oXVector.setSubMatrix(dummyPotVeg.scalarMultiply(lnDbh), 0, pointeur);
-				pointeur += dummyPotVeg.m_iCols;
+				xBeta += getDummyProduct(beta, offset, resolvedStand.potentialVegetationColumn, lnDbh, effects[k]);
 				break;
 			case LogDbh_Elevation:
-				oXVector.setValueAt(0, pointeur++, lnDbh * elevation);
+				xBeta += lnDbh * elevation * beta.getValueAt(offset, 0);
 				break;
 			case LogDbh_EcoType:
-				oXVector.setSubMatrix(dummyEcoType.scalarMultiply(lnDbh), 0, pointeur);
-				pointeur += dummyEcoType.m_iCols;
+				xBeta += getDummyProduct(beta, offset, resolvedStand.ecoTypeColumn, lnDbh, effects[k]);
 				break;
 			case LogDbh_Disturb:
-				oXVector.setSubMatrix(dummyDisturbance.scalarMultiply(lnDbh), 0, pointeur);
-				pointeur += dummyDisturbance.m_iCols;
+				xBeta += getDummyProduct(beta, offset, disturbanceColumn, lnDbh, effects[k]);
 				break;
 			case LogDbh_meanT:
-				oXVector.setValueAt(0, pointeur++, lnDbh * averageTemp);
+				xBeta += lnDbh * averageTemp * beta.getValueAt(offset, 0);
 				break;
 			case LogDbh_pTot:
-				oXVector.setValueAt(0, pointeur++, lnDbh * stand.getTotalAnnualPrecipitationMm(GeneralHeight2014Predictor.Normals30YearTemporalResolution));
+				xBeta += lnDbh * stand.getTotalAnnualPrecipitationMm(GeneralHeight2014Predictor.Normals30YearTemporalResolution) * beta.getValueAt(offset, 0);
 				break;
-//			case LogDbh_Dens:
-//				oXVector.m_afData[0][pointeur++] = lnDbh * stand.getNumberOfStemsHa();
-//				break;
 			case LogDbh_NotOuest:
-				int isNotOuest = 0;
-				String ouest = subDomain.substring(1, subDomain.length()).toUpperCase();
-				if(!ouest.equals("OUEST")){
-					isNotOuest = 1;
-				}
-				oXVector.setValueAt(0, pointeur++, lnDbh * isNotOuest);
+				xBeta += lnDbh * resolvedStand.isNotOuest * beta.getValueAt(offset, 0);
 				break;
-//			case LogDbh_Is:
-//				oXVector.m_afData[0][pointeur++] = lnDbh * t.getSocialStatusIndex();
-//				break;
 			default:
-				System.out.println("BetaHeightPredictor Class : Unable to apply effect "+effect);
-				break;
+				break;	// unsupported effects are reported in the setEffectList method
 			}
 		}
 
 		Matrix Z_i = new Matrix(1,1);
 		Z_i.setValueAt(0, 0, lnDbh2);	// design vector for the plot random effect
 
-		double fResult = 1.3 + oXVector.multiply(beta).getValueAt(0, 0);
+		double fResult = 1.3 + xBeta;
 
 		RegressionElements regElements = new RegressionElements();
 
@@ -238,6 +314,44 @@ class GeneralHeight2014InternalPredictor extends HDRelationshipPredictor<Heighta
 	}
 
 	
+	/**
+	 * Compute the BLUP of the plot random effect and its variance in closed form.<p>
+	 * The model has a single plot random effect whose design variable z is the squared log 
+	 * of dbh + 1. The POWER structure only correlates the residual errors of the same tree, so that 
+	 * the residual errors of different trees are independent. The BLUP then reduces to 
+	 * g z'r / (s2 + g z'z) and its variance to g s2 / (s2 + g z'z), where g is the variance of 
+	 * the random effect, s2 is the residual variance and r is the vector of residuals. The mean 
+	 * of the parameter estimates is used to compute the residuals. This method is reentrant.
+	 * @param stand a Heightable2014Stand instance
+	 * @param measuredTrees the trees of this species with measured heights 
+	 * @return an array with the BLUP and its variance
+	 */
+	double[] getClosedFormBlup(Heightable2014Stand stand, List<Heightable2014Tree> measuredTrees) {
+		Matrix beta = getParameterEstimates().getMean();
+		double zz = 0d;
+		double zr = 0d;
+		for (Heightable2014Tree t : measuredTrees) {
+			RegressionElements regElements = fixedEffectsPrediction(stand, t, beta);
+			double z = regElements.vectorZ.getValueAt(0, 0);
+			zz += z * z;
+			zr += z * (t.getHeightM() - regElements.fixedPred);
+		}
+		double denominator = residualVariance + randomEffectVariance * zz;
+		return new double[] {randomEffectVariance * zr / denominator, randomEffectVariance * residualVariance / denominator};
+	}
+
+	/*
+	 * For testing purposes.
+	 */
+	double[] getBlups(Heightable2014Stand stand) {
+		if (doBlupsExistForThisSubject(stand)) {
+			return new double[] {getBlupsForThisSubject(stand).getMean().getValueAt(0, 0),
+					getBlupsForThisSubject(stand).getVariance().getValueAt(0, 0)};
+		} else {
+			return null;
+		}
+	}
+	
 	@Override
 	protected Collection<Heightable2014Tree> getTreesFromStand(Heightable2014Stand stand) {
 		Collection<Heightable2014Tree> treesToBeReturned = new ArrayList<Heightable2014Tree>();
@@ -275,11 +275,23 @@ public class GeneralHeight2014Predictor extends REpiceaPredictor implements Heig
 		}
 	}
 
+	GeneralHeight2014InternalPredictor getInternalPredictor(Hd2014Species species) {
+		return internalPredictors.get(species);
+	}
+	
+	/*
+	 * The lock is held on the internal predictor only. Each internal predictor keeps the random effects 
+	 * and the residual errors of its own species so that predictions for different species can run 
+	 * concurrently.
+	 */
 	@Override
-	public synchronized double predictHeightM(Heightable2014Stand stand, Heightable2014Tree tree) {
+	public double predictHeightM(Heightable2014Stand stand, Heightable2014Tree tree) {
 		Hd2014Species species = tree.getHeightable2014TreeSpecies();
 		GeneralHeight2014InternalPredictor internalPredictor = internalPredictors.get(species); 
-		double height = internalPredictor.predictHeightM(stand, tree);
+		double height;
+		synchronized (internalPredictor) {
+			height = internalPredictor.predictHeightM(stand, tree);
+		}
 		if(height < 3.0d) {
 			height = 3.0d;
 		}
@@ -0,0 +1,85 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.hdrelationships.generalhdrelation2014;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+
+import quebecmrnfutility.predictor.QuebecGeneralSettings;
+
+/**
+ * The GeneralHeight2014ResolvedStand class holds the string-based covariates of a stand
+ * once they have been converted into columns of the dummy variables.<p>
+ * The ecological region and the ecological type are resolved only once per stand and species. 
+ * The instance is immutable and remains valid as long as the stand instance and these two 
+ * covariates do not change.
+ * @author Mathieu Fortin - October 2026
+ */
+final class GeneralHeight2014ResolvedStand {
+
+	/**
+	 * The column of a level that is not found in the dummy variables of this species.
+	 */
+	static final int UNKNOWN_LEVEL = -2;
+	
+	/**
+	 * The column of the reference level, whose dummy variables are all set to 0.
+	 */
+	static final int REFERENCE_LEVEL = -1;
+	
+	private final WeakReference<Heightable2014Stand> standReference;
+	private final String ecoRegion;
+	private final String ecologicalType;
+	final int subDomainColumn;
+	final int potentialVegetationColumn;
+	final int ecoTypeColumn;
+	final double isNotOuest;
+	
+	GeneralHeight2014ResolvedStand(Heightable2014Stand stand,
+			Map<String, Integer> subDomainColumns,
+			Map<String, Integer> vegPotColumns,
+			Map<String, Integer> ecoTypeColumns) {
+		standReference = new WeakReference<Heightable2014Stand>(stand);
+		ecoRegion = stand.getEcoRegion();
+		ecologicalType = stand.getEcologicalType();
+		
+		String subDomain = QuebecGeneralSettings.ECO_REGION_MAP.get(ecoRegion).toUpperCase();
+		subDomainColumn = getColumn(subDomainColumns, subDomain);
+		potentialVegetationColumn = getColumn(vegPotColumns, ecologicalType.substring(0,3).toUpperCase());
+		ecoTypeColumn = getColumn(ecoTypeColumns, ecologicalType.substring(3, 4).toUpperCase());
+		isNotOuest = subDomain.substring(1, subDomain.length()).equals("OUEST") ? 0d : 1d;
+	}
+	
+	private static int getColumn(Map<String, Integer> columns, String level) {
+		Integer column = columns.get(level);
+		return column == null ? UNKNOWN_LEVEL : column;
+	}
+	
+	/**
+	 * Check whether this instance can be used for this stand.
+	 * @param stand a Heightable2014Stand instance
+	 * @return a boolean
+	 */
+	boolean isValidFor(Heightable2014Stand stand) {
+		return standReference.get() == stand && 
+				ecoRegion.equals(stand.getEcoRegion()) && 
+				ecologicalType.equals(stand.getEcologicalType());
+	}
+}
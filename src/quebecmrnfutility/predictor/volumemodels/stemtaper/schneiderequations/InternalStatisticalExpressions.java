@@ -19,6 +19,7 @@
 package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -45,6 +46,26 @@ class InternalStatisticalExpressions {
 	
 	private List<Integer> indexOfChangingEffects = new ArrayList<Integer>();
 
+	/*
+	 * Primitive workspaces for the mean-only fast path. They are reused from one tree to another.
+	 */
+	private final StemTaperTreeSpecies species;
+	private double[] parameters;
+	private double[] variables;
+	private int nbVariables;
+	private Effect[] sectionLevelEffects;
+	private int[] sectionLevelEffectIndices;
+	private int nbSectionLevelEffects;
+
+	/*
+	 * Columnar buffers. The gradients are stored row-major (one row per section) and the hessians are
+	 * stored as full row-major matrices one after the other.
+	 */
+	private double[] secondTermGradient;
+	private double[] secondTermHessian;
+	private double[] gradientBuffer;
+	private double[] hessianBuffer;
+
 
 	/**
 	 * This class extends the LinearStatisticalExpression in order to add a nonlinear term that is required 
@@ -182,6 +203,7 @@ class InternalStatisticalExpressions {
 	 */
 	InternalStatisticalExpressions(StemTaperSubModule stemTaperSubModule, StemTaperTreeSpecies species) {
 		this.stemTaperPredictor = stemTaperSubModule;
+		this.species = species;
 
 		firstLinearTerm = new LinearStatisticalExpression();
 		firstLinearTerm.setVariableValue(0, 1d);		// only an intercept for the first term
@@ -334,10 +356,285 @@ class InternalStatisticalExpressions {
 		for (int i = 1; i < beta.m_iRows; i++) {
 			secondLinearTerm.setParameterValue(i - 1, beta.getValueAt(i, 0));
 		}
+		if (parameters == null || parameters.length != beta.m_iRows) {
+			parameters = new double[beta.m_iRows];
+			variables = new double[beta.m_iRows];
+		}
+		for (int i = 0; i < beta.m_iRows; i++) {
+			parameters[i] = beta.getValueAt(i, 0);
+		}
+	}
+
+	/**
+	 * This method sets the variables of the second term that are constant across the tree. It is
+	 * part of the mean-only fast path and it does not rely on the LinearStatisticalExpression instances.
+	 * @param currentTree a StemTaperTree instance
+	 */
+	void setTreeLevelVariables(StemTaperTree currentTree) {
+		List<Effect> effects = StemTaperEquationSettings.EFFECTS_MAP.get(stemTaperPredictor.modelType).get(species);
+		if (sectionLevelEffects == null) {
+			sectionLevelEffects = new Effect[effects.size()];
+			sectionLevelEffectIndices = new int[effects.size()];
+		}
+		StemTaperStand currentStand = currentTree.getStand();
+		Matrix oMat;
+		int variableIndex = 0;
+		nbSectionLevelEffects = 0;
+		for (Effect effect : effects) {
+			switch (effect) {
+			case Intercept:
+				variables[variableIndex++] = 1d;
+				break;
+			case SubDomain:
+				String subDomain = QuebecGeneralSettings.ECO_REGION_MAP.get(currentStand.getEcoRegion());
+				oMat = StemTaperEquationSettings.SUBDOMAIN_DUMMY_MAP.get(species).get(subDomain);
+				for (int i = 0; i < oMat.m_iCols; i++) {
+					variables[variableIndex++] = oMat.getValueAt(0, i);
+				}
+				break;
+			case Drainage:
+				oMat = StemTaperEquationSettings.DRAINAGE_GROUP_DUMMY_MAP.get(species).get(currentStand.getDrainageClass());
+				for (int i = 0; i < oMat.m_iCols; i++) {
+					variables[variableIndex++] = oMat.getValueAt(0, i);
+				}
+				break;
+			case VegPot:
+				String potentialVegetation = currentStand.getEcologicalType().substring(0,3).toUpperCase();
+				oMat = StemTaperEquationSettings.POTENTIAL_VEGETATION_GROUP_DUMMY_MAP.get(species).get(potentialVegetation);
+				for (int i = 0; i < oMat.m_iCols; i++) {
+					variables[variableIndex++] = oMat.getValueAt(0, i);
+				}
+				break;
+			case DbhOB:
+				variables[variableIndex++] = currentTree.getDbhCm() * 10;
+				break;
+			case Height:
+				variables[variableIndex++] = currentTree.getHeightM();
+				break;
+			case BasalAreaPerHa:
+				variables[variableIndex++] = currentStand.getBasalAreaM2Ha();
+				break;
+			case NumberOfStemsPerHa:
+				variables[variableIndex++] = currentStand.getNumberOfStemsHa();
+				break;
+			case Elevation:
+				variables[variableIndex++] = currentStand.getElevationM();
+				break;
+			default:		// the section-level effects are set in the setSectionLevelVariables method 
+				sectionLevelEffects[nbSectionLevelEffects] = effect;
+				sectionLevelEffectIndices[nbSectionLevelEffects++] = variableIndex++;
+				break;
+			}
+		}
+		nbVariables = variableIndex;
+	}
+
+	/**
+	 * This method updates the variables of the second term that depend on the height section. The 
+	 * setTreeLevelVariables method must have been called before.
+	 * @param relativeHeight the height of the section divided by the tree height
+	 * @param coreExpression the core expression at this height section
+	 */
+	void setSectionLevelVariables(double relativeHeight, double coreExpression) {
+		for (int j = 0; j < nbSectionLevelEffects; j++) {
+			double value;
+			switch (sectionLevelEffects[j]) {
+			case ExpSectionRelativeHeight:
+				value = Math.exp(relativeHeight);
+				break;
+			case CoreExpression:
+				value = coreExpression;
+				break;
+			case LogCoreExpression:
+				value = Math.log(coreExpression);
+				break;
+			case SectionRelativeHeight_x_CoreExpression:
+				value = relativeHeight * coreExpression;
+				break;
+			case SectionRelativeHeight:
+				value = relativeHeight;
+				break;
+			case LogSectionRelativeHeight:
+				value = Math.log(relativeHeight);
+				break;
+			case OneMinusSectionRelativeHeight:
+				value = 1 - relativeHeight;
+				break;
+			default:
+				throw new RuntimeException("No effect was caught in this switch loop"); 
+			}
+			variables[sectionLevelEffectIndices[j]] = value;
+		}
+	}
+
+	/**
+	 * This method returns the value of the first term with the current parameters.
+	 * @return a double
+	 */
+	double getFirstTermValue() {
+		return parameters[0];		// the first term has an intercept only
+	}
+
+	/**
+	 * This method returns the value of the second term with the current variables and parameters. It
+	 * reproduces the getValue methods of the expressions above without boxing.
+	 * @return a double
+	 */
+	double getSecondTermValue() {
+		double productResult = 0;
+		if (species == StemTaperTreeSpecies.PEG) {
+			productResult +=  - Math.exp(- parameters[1] * Math.pow(variables[0], parameters[2]));
+			for (int i = 1; i < nbVariables; i++) {
+				productResult += variables[i] * parameters[i + 2];
+			}
+		} else if (species == StemTaperTreeSpecies.PIB) {
+			productResult += Math.pow(variables[1], parameters[2]) * Math.pow(variables[2], parameters[3]);
+			productResult += variables[1] * parameters[2];
+			productResult += variables[3] * parameters[4];
+		} else {
+			for (int i = 0; i < nbVariables; i++) {
+				productResult += variables[i] * parameters[i + 1];
+			}
+		}
+		return productResult;
+	}
+
+	/**
+	 * This method returns the number of parameters in the second term.
+	 * @return an integer
+	 */
+	int getNumberOfSecondTermParameters() {
+		return parameters.length - 1;
+	}
+
+	/**
+	 * This method fills the gradient and the hessian of the second term with respect to its parameters. It 
+	 * reproduces the getGradient and getHessian methods of the expressions above.
+	 * @param gradient an array whose length is at least the number of parameters in the second term
+	 * @param hessian a row-major array whose length is at least the squared number of parameters in the second term
+	 */
+	void fillSecondTermDerivatives(double[] gradient, double[] hessian) {
+		int nbParms = getNumberOfSecondTermParameters();
+		Arrays.fill(hessian, 0, nbParms * nbParms, 0d);
+		if (species == StemTaperTreeSpecies.PEG) {
+			double powerExpression = Math.pow(variables[0], parameters[2]);
+			double basicExpression = - Math.exp(- parameters[1] * powerExpression);
+			double logx = Math.log(variables[0]);
+			gradient[0] = basicExpression * - powerExpression;
+			gradient[1] = basicExpression * - parameters[1] * powerExpression * logx;
+			for (int i = 2; i < nbParms; i++) {
+				gradient[i] = variables[i - 1];
+			}
+			double tmp = - parameters[1] * powerExpression + 1;
+			double d2y_db0db1 = basicExpression * - powerExpression * logx * tmp;
+			hessian[0] = basicExpression * powerExpression * powerExpression;
+			hessian[1] = d2y_db0db1;
+			hessian[nbParms] = d2y_db0db1;
+			hessian[nbParms + 1] = basicExpression * - parameters[1] * powerExpression * logx * logx * tmp;
+		} else if (species == StemTaperTreeSpecies.PIB) {
+			double powerExpression1 = Math.pow(variables[1], parameters[2]);
+			double powerExpression2 = Math.pow(variables[2], parameters[3]);
+			double log1 = Math.log(variables[1]);
+			double log2 = Math.log(variables[2]);
+			gradient[0] = 0d;
+			gradient[1] = powerExpression1 * powerExpression2 * log1;
+			gradient[2] = powerExpression1 * powerExpression2 * log2;
+			gradient[3] = variables[3];
+			double d2y_db1db2 = powerExpression1 * powerExpression2 * log1 * log2;
+			hessian[nbParms + 1] = powerExpression1 * powerExpression2 * log1 * log1;
+			hessian[nbParms + 2] = d2y_db1db2;
+			hessian[2 * nbParms + 1] = d2y_db1db2;
+			hessian[2 * nbParms + 2] = powerExpression1 * powerExpression2 * log2 * log2;
+		} else {
+			for (int i = 0; i < nbParms; i++) {
+				gradient[i] = variables[i];
+			}
+		}
 	}
 	
+	/**
+	 * This method returns the total number of parameters, that is the dimension of the gradient
+	 * and the hessian at each section.
+	 * @return an integer
+	 */
+	int getTotalNumberOfParameters() {
+		return parameters.length;
+	}
+
+	/**
+	 * This method evaluates the gradients and the hessians of all the height sections in a single pass and stores
+	 * them in reusable buffers. It provides the same derivatives as the getGradients and getHessians methods, but 
+	 * it does not create any Matrix instance. The setParameters method must have been called before.
+	 * @see #getColumnarGradients()
+	 * @see #getColumnarHessians()
+	 */
+	void updateColumnarDerivatives() {
+		int n = stemTaperPredictor.heights.m_iRows;
+		int nbParms = parameters.length;
+		int nbSecondTermParms = nbParms - 1;
+		if (secondTermGradient == null || secondTermGradient.length != nbSecondTermParms) {
+			secondTermGradient = new double[nbSecondTermParms];
+			secondTermHessian = new double[nbSecondTermParms * nbSecondTermParms];
+		}
+		if (gradientBuffer == null || gradientBuffer.length < n * nbParms) {
+			gradientBuffer = new double[n * nbParms];
+			hessianBuffer = new double[n * nbParms * nbParms];
+		}
+		setTreeLevelVariables(stemTaperPredictor.getTree());
+		double dbh2 = stemTaperPredictor.getTree().getSquaredDbhCm() * 100;
+		for (int i = 0; i < n; i++) {
+			double relativeHeight = stemTaperPredictor.relativeHeights.getValueAt(i, 0);
+			double coreExpression = stemTaperPredictor.coreExpression.getValueAt(i, 0);
+			double heightSectionRespectToDbh = stemTaperPredictor.heightsSectionRespectToDbh.getValueAt(i, 0);
+			setSectionLevelVariables(relativeHeight, coreExpression);
+			fillSecondTermDerivatives(secondTermGradient, secondTermHessian);
+			double alpha = getFirstTermValue();
+			double exponent = getSecondTermValue();
+			double logHeightSection = Math.log(heightSectionRespectToDbh);
+			double d0 = dbh2 * coreExpression * Math.pow(heightSectionRespectToDbh, 2 - exponent);		// derivative with respect to alpha
+			double d1 = d0 * logHeightSection * -1d;
+			double dExponent = alpha * d0 * logHeightSection * -1d;										// derivative with respect to the exponent
+			double d2 = alpha * d1 * logHeightSection * -1d;
+
+			int gradientOffset = i * nbParms;
+			gradientBuffer[gradientOffset] = d0;
+			for (int k = 0; k < nbSecondTermParms; k++) {
+				gradientBuffer[gradientOffset + 1 + k] = secondTermGradient[k] * dExponent;
+			}
+
+			int hessianOffset = i * nbParms * nbParms;
+			hessianBuffer[hessianOffset] = 0d;		// the first term is linear
+			for (int k = 0; k < nbSecondTermParms; k++) {
+				double value = secondTermGradient[k] * d1;
+				hessianBuffer[hessianOffset + 1 + k] = value;
+				hessianBuffer[hessianOffset + (1 + k) * nbParms] = value;
+			}
+			for (int j = 0; j < nbSecondTermParms; j++) {
+				int rowOffset = hessianOffset + (1 + j) * nbParms + 1;
+				for (int k = 0; k < nbSecondTermParms; k++) {
+					hessianBuffer[rowOffset + k] = secondTermGradient[j] * secondTermGradient[k] * d2 + secondTermHessian[j * nbSecondTermParms + k] * d2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * This method returns the gradient buffer filled by the updateColumnarDerivatives method. The 
+	 * gradient of section i starts at index i * getTotalNumberOfParameters(). The array must not be modified.
+	 * @return an array of doubles
+	 */
+	double[] getColumnarGradients() {return gradientBuffer;}
+
+	/**
+	 * This method returns the hessian buffer filled by the updateColumnarDerivatives method. The full
+	 * hessian of section i starts at index i * getTotalNumberOfParameters()^2. The array must not be modified.
+	 * @return an array of doubles
+	 */
+	double[] getColumnarHessians() {return hessianBuffer;}
+
 	/**
 	 * This method returns the derivatives of each height with respect to the first linear term (1st column) and the second linear term (2nd column).
+	 * The stem taper variance relies on the updateColumnarDerivatives method. This method is kept as a reference.
 	 * @return a nx2 matrix
 	 */
 	protected Matrix getGradients() {
@@ -371,6 +668,7 @@ class InternalStatisticalExpressions {
 	
 	/**
 	 * This method returns the second derivatives for each height. 
+	 * The stem taper variance relies on the updateColumnarDerivatives method. This method is kept as a reference.
 	 * @return a Matrix instances
 	 */
 	protected Matrix getHessians() {
@@ -0,0 +1,438 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperEquationSettings.ModelType;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor.EstimationMethodInDeterministicMode;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperTree.StemTaperTreeSpecies;
+import quebecmrnfutility.simulation.covariateproviders.plotlevel.QcDrainageClassProvider.QcDrainageClass;
+import repicea.simulation.stemtaper.StemTaperCrossSection;
+
+/**
+ * The StemTaperLookupTable class stores the deterministic taper profiles of a species for the tree model.<p>
+ * The profiles are stored on a regular grid of dbh, tree height and relative section height. The stored value 
+ * is the squared diameter divided by the squared dbh (both in mm2), that is the ratio of the cross-section area 
+ * to the area at breast height. The predictions are obtained through trilinear interpolation.<p>
+ * When the table is built, the interpolated ratios are compared with the exact ones at the centre of each cell 
+ * and the error of each cell is stored along with the ratios. The error of a trilinear interpolation is largest 
+ * at the centre of the cell when the second derivatives of the profile are constant within the cell. The error 
+ * at the centre is therefore a bound up to the variation of the curvature within the cell. The isWithinTolerance 
+ * method makes it possible to interpolate only in the cells whose error does not exceed a tolerance. The errors 
+ * are expressed as a proportion of the area at breast height.<p>
+ * The header of a table file contains the grid, the estimation method and a fingerprint of the parameters of 
+ * the model. A file whose header does not match is rejected and the table is recomputed.
+ * @author Mathieu Fortin - October 2026
+ */
+final class StemTaperLookupTable {
+
+	private static final int MAGIC_NUMBER = 0x53544C54;
+	private static final int VERSION = 3;
+	private static final int HEADER_SIZE = 8 * 4 + 5 * 8 + 8 + 8;	// 8 integers, 5 doubles, the fingerprint and the sampled error
+	private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * A StemTaperStand implementation for the grid. The stand variables are not used by the tree model.
+	 */
+	private static final class GridStand implements StemTaperStand {
+
+		@Override
+		public String getSubjectId() {return "grid";}
+
+		@Override
+		public int getMonteCarloRealizationId() {return 0;}
+
+		@Override
+		public double getBasalAreaM2Ha() {return 0d;}
+
+		@Override
+		public double getNumberOfStemsHa() {return 0d;}
+
+		@Override
+		public String getEcoRegion() {return null;}
+
+		@Override
+		public String getEcologicalType() {return null;}
+
+		@Override
+		public QcDrainageClass getDrainageClass() {return null;}
+
+		@Override
+		public double getElevationM() {return 0d;}
+	}
+
+	/**
+	 * A StemTaperTree implementation for the nodes of the grid. 
+	 */
+	private static final class GridTree implements StemTaperTree {
+
+		private final StemTaperTreeSpecies species;
+		private final GridStand stand;
+		private double dbhCm;
+		private double heightM;
+
+		private GridTree(StemTaperTreeSpecies species) {
+			this.species = species;
+			stand = new GridStand();
+		}
+
+		@Override
+		public String getSubjectId() {return "grid";}
+
+		@Override
+		public int getMonteCarloRealizationId() {return 0;}
+
+		@Override
+		public StemTaperStand getStand() {return stand;}
+
+		@Override
+		public List<StemTaperCrossSection> getCrossSections() {return new ArrayList<StemTaperCrossSection>();}
+
+		@Override
+		public StemTaperTreeSpecies getStemTaperTreeSpecies() {return species;}
+
+		@Override
+		public double getDbhCm() {return dbhCm;}
+
+		@Override
+		public double getSquaredDbhCm() {return dbhCm * dbhCm;}
+
+		@Override
+		public double getHeightM() {return heightM;}
+	}
+
+	final StemTaperTreeSpecies species;
+	final EstimationMethodInDeterministicMode method;
+	final double minDbhCm;
+	final double dbhStepCm;
+	final int nbDbh;
+	final double minHeightM;
+	final double heightStepM;
+	final int nbHeights;
+	final double minRelativeHeight;
+	final int nbRelativeHeights;
+	final long fingerprint;
+	private final double relativeHeightStep;
+	private double sampledInterpolationError;
+	private DoubleBuffer ratios;
+	private FloatBuffer cellErrors;
+
+	StemTaperLookupTable(StemTaperTreeSpecies species, 
+			EstimationMethodInDeterministicMode method,
+			double minDbhCm,
+			double dbhStepCm,
+			int nbDbh,
+			double minHeightM,
+			double heightStepM,
+			int nbHeights,
+			double minRelativeHeight,
+			int nbRelativeHeights,
+			long fingerprint) {
+		if (nbDbh < 2 || nbHeights < 2 || nbRelativeHeights < 2) {
+			throw new IllegalArgumentException("The grid must have at least two nodes in each dimension!");
+		}
+		this.species = species;
+		this.method = method;
+		this.minDbhCm = minDbhCm;
+		this.dbhStepCm = dbhStepCm;
+		this.nbDbh = nbDbh;
+		this.minHeightM = minHeightM;
+		this.heightStepM = heightStepM;
+		this.nbHeights = nbHeights;
+		this.minRelativeHeight = minRelativeHeight;
+		this.nbRelativeHeights = nbRelativeHeights;
+		this.fingerprint = fingerprint;
+		relativeHeightStep = (1d - minRelativeHeight) / (nbRelativeHeights - 1);
+	}
+
+	/**
+	 * Return the largest interpolation error observed at the centre of the cells when the table was built. 
+	 * @return the error as a proportion of the cross-section area at breast height
+	 */
+	double getSampledInterpolationError() {return sampledInterpolationError;}
+
+	/**
+	 * Check whether the interpolation error sampled at the centre of the cell that contains a section does not 
+	 * exceed a tolerance. The covers and coversRelativeHeight methods should have been checked before.
+	 * @param dbhCm the dbh of the tree (cm)
+	 * @param heightM the height of the tree (m)
+	 * @param relativeHeight the section height divided by the tree height
+	 * @param tolerance the tolerance as a proportion of the cross-section area at breast height
+	 * @return a boolean
+	 */
+	boolean isWithinTolerance(double dbhCm, double heightM, double relativeHeight, double tolerance) {
+		int i = Math.min((int) ((dbhCm - minDbhCm) / dbhStepCm), nbDbh - 2);
+		int j = Math.min((int) ((heightM - minHeightM) / heightStepM), nbHeights - 2);
+		int k = Math.min((int) ((relativeHeight - minRelativeHeight) / relativeHeightStep), nbRelativeHeights - 2);
+		return cellErrors.get(getCellIndex(i, j, k)) <= tolerance;
+	}
+
+	/**
+	 * Check whether a tree is within the range of the grid.
+	 * @param dbhCm the dbh of the tree (cm)
+	 * @param heightM the height of the tree (m)
+	 * @return a boolean
+	 */
+	boolean covers(double dbhCm, double heightM) {
+		return dbhCm >= minDbhCm && dbhCm <= minDbhCm + (nbDbh - 1) * dbhStepCm 
+				&& heightM >= minHeightM && heightM <= minHeightM + (nbHeights - 1) * heightStepM;
+	}
+
+	/**
+	 * Check whether a relative height is within the range of the grid.
+	 * @param relativeHeight the section height divided by the tree height
+	 * @return a boolean
+	 */
+	boolean coversRelativeHeight(double relativeHeight) {
+		return relativeHeight >= minRelativeHeight && relativeHeight <= 1d;
+	}
+
+	/**
+	 * Interpolate the ratio of the squared diameter to the squared dbh. The covers and coversRelativeHeight methods
+	 * should have been checked before.
+	 * @param dbhCm the dbh of the tree (cm)
+	 * @param heightM the height of the tree (m)
+	 * @param relativeHeight the section height divided by the tree height
+	 * @return a double
+	 */
+	double getRatio(double dbhCm, double heightM, double relativeHeight) {
+		double u = (dbhCm - minDbhCm) / dbhStepCm;
+		int i = Math.min((int) u, nbDbh - 2);
+		double tu = u - i;
+		double v = (heightM - minHeightM) / heightStepM;
+		int j = Math.min((int) v, nbHeights - 2);
+		double tv = v - j;
+		double w = (relativeHeight - minRelativeHeight) / relativeHeightStep;
+		int k = Math.min((int) w, nbRelativeHeights - 2);
+		double tw = w - k;
+		
+		int i00 = getIndex(i, j, k);
+		int i01 = getIndex(i, j + 1, k);
+		int i10 = getIndex(i + 1, j, k);
+		int i11 = getIndex(i + 1, j + 1, k);
+		double c00 = ratios.get(i00) + (ratios.get(i00 + 1) - ratios.get(i00)) * tw;
+		double c01 = ratios.get(i01) + (ratios.get(i01 + 1) - ratios.get(i01)) * tw;
+		double c10 = ratios.get(i10) + (ratios.get(i10 + 1) - ratios.get(i10)) * tw;
+		double c11 = ratios.get(i11) + (ratios.get(i11 + 1) - ratios.get(i11)) * tw;
+		double c0 = c00 + (c01 - c00) * tv;
+		double c1 = c10 + (c11 - c10) * tv;
+		return c0 + (c1 - c0) * tu;
+	}
+
+	private int getIndex(int dbhIndex, int heightIndex, int relativeHeightIndex) {
+		return (dbhIndex * nbHeights + heightIndex) * nbRelativeHeights + relativeHeightIndex;
+	}
+
+	private int getCellIndex(int dbhIndex, int heightIndex, int relativeHeightIndex) {
+		return (dbhIndex * (nbHeights - 1) + heightIndex) * (nbRelativeHeights - 1) + relativeHeightIndex;
+	}
+
+	private int getNumberOfCells() {
+		return (nbDbh - 1) * (nbHeights - 1) * (nbRelativeHeights - 1);
+	}
+
+	private double getRelativeHeight(double k) {
+		return minRelativeHeight + k * relativeHeightStep;
+	}
+	
+	/**
+	 * Compute the table with the tree model of the species. The interpolation error is sampled at 
+	 * the centre of each cell and stored for this cell.
+	 * @param predictor a deterministic StemTaperPredictor instance
+	 */
+	void build(StemTaperPredictor predictor) {
+		double[] values = new double[nbDbh * nbHeights * nbRelativeHeights];
+		GridTree tree = new GridTree(species);
+		double[] sectionHeights = new double[nbRelativeHeights];
+		double[] output = new double[nbRelativeHeights];
+		for (int i = 0; i < nbDbh; i++) {
+			for (int j = 0; j < nbHeights; j++) {
+				computeRatios(predictor, tree, minDbhCm + i * dbhStepCm, minHeightM + j * heightStepM, 0d, sectionHeights, output);
+				System.arraycopy(output, 0, values, getIndex(i, j, 0), nbRelativeHeights);
+			}
+		}
+		ratios = DoubleBuffer.wrap(values);
+		
+		float[] errors = new float[getNumberOfCells()];
+		sampledInterpolationError = 0d;
+		for (int i = 0; i < nbDbh - 1; i++) {
+			for (int j = 0; j < nbHeights - 1; j++) {
+				double dbhCm = minDbhCm + (i + .5) * dbhStepCm;
+				double heightM = minHeightM + (j + .5) * heightStepM;
+				computeRatios(predictor, tree, dbhCm, heightM, .5, sectionHeights, output);
+				for (int k = 0; k < nbRelativeHeights - 1; k++) {
+					double error = Math.abs(getRatio(dbhCm, heightM, getRelativeHeight(k + .5)) - output[k]);
+					errors[getCellIndex(i, j, k)] = (float) error;
+					if (error > sampledInterpolationError) {
+						sampledInterpolationError = error;
+					}
+				}
+			}
+		}
+		cellErrors = FloatBuffer.wrap(errors);
+	}
+
+	/*
+	 * Compute the exact ratios at relative heights minRelativeHeight + (k + shift) * step. With a shift of .5, the
+	 * last element is outside the stem and it is not used.
+	 */
+	private void computeRatios(StemTaperPredictor predictor, GridTree tree, double dbhCm, double heightM, double shift, double[] sectionHeights, double[] output) {
+		tree.dbhCm = dbhCm;
+		tree.heightM = heightM;
+		int nbSections = shift == 0d ? nbRelativeHeights : nbRelativeHeights - 1;
+		for (int k = 0; k < nbSections; k++) {
+			sectionHeights[k] = getRelativeHeight(k + shift) * heightM;
+		}
+		predictor.getPredictedMeanTaperForTheseHeights(ModelType.TREEMODEL, tree, sectionHeights, nbSections, method, output);
+		double squaredDbhMm2 = tree.getSquaredDbhCm() * 100;
+		for (int k = 0; k < nbSections; k++) {
+			output[k] /= squaredDbhMm2;
+		}
+	}
+
+	/**
+	 * Write the table to a file and map it back into memory.<p>
+	 * The table is written to a temporary file in the same directory, which then replaces the 
+	 * file in an atomic move whenever the file system allows it. The processes that have mapped 
+	 * the former file keep their mapping. 
+	 * @param file the File instance
+	 * @throws IOException if an I/O error occurs
+	 */
+	void save(File file) throws IOException {
+		File tmpFile = File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile().getParentFile());
+		try {
+			try (FileOutputStream fos = new FileOutputStream(tmpFile);
+					FileChannel channel = fos.getChannel()) {
+				ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+				writeHeader(buffer);
+				int nbValues = nbDbh * nbHeights * nbRelativeHeights;
+				for (int i = 0; i < nbValues; i++) {
+					if (buffer.remaining() < 8) {
+						flush(channel, buffer);
+					}
+					buffer.putDouble(ratios.get(i));
+				}
+				int nbCells = getNumberOfCells();
+				for (int i = 0; i < nbCells; i++) {
+					if (buffer.remaining() < 4) {
+						flush(channel, buffer);
+					}
+					buffer.putFloat(cellErrors.get(i));
+				}
+				flush(channel, buffer);
+				channel.force(true);
+			}
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmpFile.toPath());
+		}
+		if (!load(file)) {
+			throw new IOException("The stem taper lookup table cannot be mapped from file " + file.getAbsolutePath());
+		}
+	}
+
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Map a table from a file if the file was produced with the same grid, the same estimation method and 
+	 * the same model parameters. The ratios are followed by the interpolation errors of the cells.
+	 * @param file the File instance
+	 * @return true if the table was loaded or false if the file is missing or incompatible
+	 * @throws IOException if an I/O error occurs
+	 */
+	boolean load(File file) throws IOException {
+		if (!file.exists()) {
+			return false;
+		}
+		int nbValues = nbDbh * nbHeights * nbRelativeHeights;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+				FileChannel channel = raf.getChannel()) {
+			if (channel.size() != HEADER_SIZE + (long) nbValues * 8 + (long) getNumberOfCells() * 4) {
+				return false;
+			}
+			MappedByteBuffer mappedBuffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+			ByteBuffer expectedHeader = ByteBuffer.allocate(HEADER_SIZE);
+			writeHeader(expectedHeader);
+			for (int i = 0; i < HEADER_SIZE - 8; i++) {		// the last double is the sampled interpolation error
+				if (mappedBuffer.get(i) != expectedHeader.get(i)) {
+					return false;
+				}
+			}
+			sampledInterpolationError = mappedBuffer.getDouble(HEADER_SIZE - 8);
+			mappedBuffer.position(HEADER_SIZE);
+			ratios = mappedBuffer.slice().asDoubleBuffer();
+			ratios.limit(nbValues);
+			mappedBuffer.position(HEADER_SIZE + nbValues * 8);
+			cellErrors = mappedBuffer.slice().asFloatBuffer();
+			return true;
+		}
+	}
+
+	private void writeHeader(ByteBuffer buffer) {
+		buffer.putInt(MAGIC_NUMBER);
+		buffer.putInt(VERSION);
+		buffer.putInt(species.ordinal());
+		buffer.putInt(method.ordinal());
+		buffer.putInt(nbDbh);
+		buffer.putInt(nbHeights);
+		buffer.putInt(nbRelativeHeights);
+		buffer.putInt(0);	// reserved so that the doubles are aligned
+		buffer.putDouble(minDbhCm);
+		buffer.putDouble(dbhStepCm);
+		buffer.putDouble(minHeightM);
+		buffer.putDouble(heightStepM);
+		buffer.putDouble(minRelativeHeight);
+		buffer.putLong(fingerprint);
+		buffer.putDouble(sampledInterpolationError);
+	}
+	
+	/**
+	 * Provide the name of the file in which the table is stored.
+	 * @return a String
+	 */
+	String getFilename() {
+		return "schneider_" + ModelType.TREEMODEL.name().toLowerCase() + "_" + species.name().toLowerCase() + "_" + method.name().toLowerCase() + ".taper";
+	}
+}
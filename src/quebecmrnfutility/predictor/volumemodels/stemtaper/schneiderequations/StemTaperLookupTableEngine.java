@@ -0,0 +1,240 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.InvalidParameterException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperEquationSettings.ModelType;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor.EstimationMethodInDeterministicMode;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperTree.StemTaperTreeSpecies;
+
+/**
+ * The StemTaperLookupTableEngine class provides the deterministic mean taper of the Schneider
+ * equations through precomputed lookup tables.<p>
+ * The tables are keyed by species and store the profiles of the tree model on a grid of dbh, 
+ * tree height and relative section height. They are computed on first use and, if a directory is 
+ * provided, they are written to disk and memory-mapped in subsequent runs. A table file is recomputed 
+ * if its grid, its estimation method or the parameters of the model do not match.<p>
+ * The hybrid model depends on stand variables and is not tabulated. The trees that fall under the 
+ * hybrid model, outside the grid or whose sections are below the first relative height of the grid are 
+ * computed exactly through the StemTaperPredictor class.<p>
+ * The accuracy of the interpolation is bounded by a tolerance, which is expressed as a proportion of the 
+ * cross-section area at breast height. When a table is built, the interpolation error is sampled at the centre 
+ * of each cell. A tree is interpolated only if all its sections lie in cells whose sampled error does not exceed 
+ * the tolerance. Otherwise, its taper is computed exactly. Since the interpolation error is largest at the centre 
+ * of a cell when the curvature of the profile is constant within the cell, the interpolated squared diameters 
+ * differ from the exact ones by at most the tolerance times the squared dbh, up to the variation of the curvature 
+ * within the cells. A tolerance of 0 disables the interpolation in practice. The largest error sampled in each 
+ * table is available through the getSampledInterpolationError method.
+ * <pre>
+ * {@code
+ * StemTaperLookupTableEngine engine = new StemTaperLookupTableEngine(new File("taperTables"), EstimationMethodInDeterministicMode.SecondOrderMeanOnly);
+ * double[] squaredDiametersMm2 = engine.getPredictedMeanTaperForTheseHeights(tree, heights, heights.length, null);
+ * }
+ * </pre>
+ * @author Mathieu Fortin - October 2026
+ */
+public final class StemTaperLookupTableEngine {
+
+	static final double DEFAULT_MIN_DBH_CM = 9d;
+	static final double DEFAULT_DBH_STEP_CM = 1d;
+	static final int DEFAULT_NB_DBH = 72;			// 9 to 80 cm
+	static final double DEFAULT_MIN_HEIGHT_M = 2d;
+	static final double DEFAULT_HEIGHT_STEP_M = .5;
+	static final int DEFAULT_NB_HEIGHTS = 67;		// 2 to 35 m
+	static final double DEFAULT_MIN_RELATIVE_HEIGHT = .01;
+	static final int DEFAULT_NB_RELATIVE_HEIGHTS = 100;
+	static final double DEFAULT_TOLERANCE = .001;
+	
+	private final StemTaperPredictor predictor;
+	private final File directory;
+	private final EstimationMethodInDeterministicMode method;
+	private final Map<StemTaperTreeSpecies, StemTaperLookupTable> tables;
+	private final double minDbhCm;
+	private final double dbhStepCm;
+	private final int nbDbh;
+	private final double minHeightM;
+	private final double heightStepM;
+	private final int nbHeights;
+	private final double minRelativeHeight;
+	private final int nbRelativeHeights;
+	private final double tolerance;
+	
+	/**
+	 * Constructor with the default grid, that is dbh from 9 to 80 cm by 1 cm, tree height from 2 to 35 m by 0.5 m 
+	 * and 100 relative heights from 0.01 to 1, and a tolerance of 0.1% of the cross-section area at breast height. 
+	 * @param directory the directory in which the tables are stored (can be null, in which case the tables are kept in memory only)
+	 * @param method either EstimationMethodInDeterministicMode.FirstOrderMeanOnly or EstimationMethodInDeterministicMode.SecondOrderMeanOnly
+	 */
+	public StemTaperLookupTableEngine(File directory, EstimationMethodInDeterministicMode method) {
+		this(directory, method, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Constructor with the default grid, that is dbh from 9 to 80 cm by 1 cm, tree height from 2 to 35 m by 0.5 m 
+	 * and 100 relative heights from 0.01 to 1. 
+	 * @param directory the directory in which the tables are stored (can be null, in which case the tables are kept in memory only)
+	 * @param method either EstimationMethodInDeterministicMode.FirstOrderMeanOnly or EstimationMethodInDeterministicMode.SecondOrderMeanOnly
+	 * @param tolerance the largest interpolation error as a proportion of the cross-section area at breast height
+	 */
+	public StemTaperLookupTableEngine(File directory, EstimationMethodInDeterministicMode method, double tolerance) {
+		this(directory, method, tolerance,
+				DEFAULT_MIN_DBH_CM, DEFAULT_DBH_STEP_CM, DEFAULT_NB_DBH, 
+				DEFAULT_MIN_HEIGHT_M, DEFAULT_HEIGHT_STEP_M, DEFAULT_NB_HEIGHTS, 
+				DEFAULT_MIN_RELATIVE_HEIGHT, DEFAULT_NB_RELATIVE_HEIGHTS);
+	}
+
+	StemTaperLookupTableEngine(File directory, 
+			EstimationMethodInDeterministicMode method,
+			double tolerance,
+			double minDbhCm,
+			double dbhStepCm,
+			int nbDbh,
+			double minHeightM,
+			double heightStepM,
+			int nbHeights,
+			double minRelativeHeight,
+			int nbRelativeHeights) {
+		if (method != EstimationMethodInDeterministicMode.FirstOrderMeanOnly && method != EstimationMethodInDeterministicMode.SecondOrderMeanOnly) {
+			throw new InvalidParameterException("The method argument must be either FirstOrderMeanOnly or SecondOrderMeanOnly!");
+		}
+		if (!(tolerance >= 0d)) {
+			throw new InvalidParameterException("The tolerance argument must be equal to or greater than 0!");
+		}
+		if (directory != null && !directory.isDirectory()) {
+			throw new InvalidParameterException("The directory " + directory.getAbsolutePath() + " does not exist!");
+		}
+		this.directory = directory;
+		this.method = method;
+		this.minDbhCm = minDbhCm;
+		this.dbhStepCm = dbhStepCm;
+		this.nbDbh = nbDbh;
+		this.minHeightM = minHeightM;
+		this.heightStepM = heightStepM;
+		this.nbHeights = nbHeights;
+		this.minRelativeHeight = minRelativeHeight;
+		this.nbRelativeHeights = nbRelativeHeights;
+		this.tolerance = tolerance;
+		predictor = new StemTaperPredictor(false);
+		tables = new ConcurrentHashMap<StemTaperTreeSpecies, StemTaperLookupTable>();
+	}
+
+	/**
+	 * Provide the table of a species. The table is loaded from disk or computed on first use. The 
+	 * tables that are already available are returned without locking.
+	 * @param species a StemTaperTreeSpecies enum
+	 * @return a StemTaperLookupTable instance
+	 */
+	StemTaperLookupTable getTable(StemTaperTreeSpecies species) {
+		StemTaperLookupTable table = tables.get(species);
+		if (table == null) {
+			table = tables.computeIfAbsent(species, this::createTable);
+		}
+		return table;
+	}
+
+	private StemTaperLookupTable createTable(StemTaperTreeSpecies species) {
+		StemTaperLookupTable table = new StemTaperLookupTable(species, method, 
+				minDbhCm, dbhStepCm, nbDbh, 
+				minHeightM, heightStepM, nbHeights, 
+				minRelativeHeight, nbRelativeHeights,
+				predictor.getFingerprint(ModelType.TREEMODEL, species));
+		try {
+			File file = directory != null ? new File(directory, table.getFilename()) : null;
+			if (file == null || !table.load(file)) {
+				table.build(predictor);
+				if (file != null) {
+					table.save(file);
+				}
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Unable to read or write the stem taper lookup table of species " + species.name(), e);
+		}
+		return table;
+	}
+
+	/**
+	 * Provide the largest interpolation error of the table of a species. This error is sampled at the 
+	 * centre of the cells when the table is built. The cells whose error exceeds the tolerance are 
+	 * not interpolated.
+	 * @param species a StemTaperTreeSpecies enum
+	 * @return the error as a proportion of the cross-section area at breast height
+	 */
+	public double getSampledInterpolationError(StemTaperTreeSpecies species) {
+		return getTable(species).getSampledInterpolationError();
+	}
+
+	/**
+	 * Compute the mean underbark stem taper in mm2.<p>
+	 * The squared diameters are interpolated from the table of the species whenever the tree is tabulated and 
+	 * the sampled errors of the cells do not exceed the tolerance. Otherwise, they are computed exactly with the 
+	 * StemTaperPredictor.getPredictedMeanTaperForTheseHeights method.
+	 * @param tree a StemTaperTree instance
+	 * @param heights an array with the heights of the cross sections (m)
+	 * @param nbHeights the number of heights to consider in the array
+	 * @param output an array whose length is at least nbHeights or null
+	 * @return the output array or a new array if the output array was null or too short
+	 */
+	public double[] getPredictedMeanTaperForTheseHeights(StemTaperTree tree, double[] heights, int nbHeights, double[] output) {
+		if (nbHeights > heights.length) {
+			throw new InvalidParameterException("The nbHeights argument is larger than the length of the heights array!");
+		}
+		if (output == null || output.length < nbHeights) {
+			output = new double[nbHeights];
+		}
+		StemTaperLookupTable table = null;
+		if (StemTaperEquationSettings.getModelTypeEquation(tree) == ModelType.TREEMODEL) {
+			table = getTable(tree.getStemTaperTreeSpecies());
+		}
+		if (table != null && isTabulated(table, tree, heights, nbHeights, tolerance)) {
+			double dbhCm = tree.getDbhCm();
+			double heightM = tree.getHeightM();
+			double squaredDbhMm2 = tree.getSquaredDbhCm() * 100;
+			for (int i = 0; i < nbHeights; i++) {
+				output[i] = table.getRatio(dbhCm, heightM, Math.min(heights[i] / heightM, 1d)) * squaredDbhMm2;
+			}
+			return output;
+		} else {
+			return predictor.getPredictedMeanTaperForTheseHeights(tree, heights, nbHeights, method, output);
+		}
+	}
+
+	private static boolean isTabulated(StemTaperLookupTable table, StemTaperTree tree, double[] heights, int nbSections, double tolerance) {
+		double dbhCm = tree.getDbhCm();
+		double heightM = tree.getHeightM();
+		if (!table.covers(dbhCm, heightM)) {
+			return false;
+		}
+		for (int i = 0; i < nbSections; i++) {
+			double relativeHeight = heights[i] / heightM;
+			if (i == nbSections - 1 && relativeHeight > 1d) {	// the last section can be above the top as in the StemTaperPredictor class
+				relativeHeight = 1d;
+			}
+			if (!table.coversRelativeHeight(relativeHeight) || !table.isWithinTolerance(dbhCm, heightM, relativeHeight, tolerance)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -20,6 +20,7 @@ package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
 
 import java.io.IOException;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -237,6 +238,77 @@ public final class StemTaperPredictor extends AbstractStemTaperPredictor {
 	}
 	
 	
+	/*
+	 * Provide the fingerprint of the submodule of a given model type and species. The StemTaperLookupTable class 
+	 * stores it in the header of the table files.
+	 */
+	long getFingerprint(ModelType mType, StemTaperTreeSpecies species) {
+		StemTaperSubModule subModule = subModules.get(mType).get(species);
+		if (subModule == null) {
+			throw new InvalidParameterException("This species is not recognized!");
+		}
+		return subModule.getFingerprint();
+	}
+
+	/*
+	 * For testing purposes.
+	 */
+	StemTaperSubModule getSubModule(ModelType modelType, StemTaperTreeSpecies species) {
+		return subModules.get(modelType).get(species);
+	}
+
+	/**
+	 * Compute the mean underbark stem taper in mm2 using primitive arrays.<p>
+	 * This method is a fast path for the FirstOrderMeanOnly and SecondOrderMeanOnly estimation methods. It
+	 * provides the same predictions as the getPredictedTaperForTheseHeights method, but it does not create any 
+	 * intermediate Matrix instance and it reuses its workspaces from one tree to another. The variance is not 
+	 * computed. In stochastic mode, the method falls back on the getPredictedTaperForTheseHeights method and 
+	 * copies its realized taper into the output array.
+	 * @param tree a StemTaperTree instance
+	 * @param heights an array with the heights of the cross sections (m)
+	 * @param nbHeights the number of heights to consider in the array
+	 * @param method either EstimationMethodInDeterministicMode.FirstOrderMeanOnly or EstimationMethodInDeterministicMode.SecondOrderMeanOnly 
+	 * @param output an array whose length is at least nbHeights or null
+	 * @return the output array or a new array if the output array was null or too short
+	 */
+	public double[] getPredictedMeanTaperForTheseHeights(StemTaperTree tree, double[] heights, int nbHeights, EstimationMethodInDeterministicMode method, double[] output) {
+		if (method != EstimationMethodInDeterministicMode.FirstOrderMeanOnly && method != EstimationMethodInDeterministicMode.SecondOrderMeanOnly) {
+			throw new InvalidParameterException("The method argument must be either FirstOrderMeanOnly or SecondOrderMeanOnly!");
+		}
+		if (nbHeights > heights.length) {
+			throw new InvalidParameterException("The nbHeights argument is larger than the length of the heights array!");
+		}
+		return getPredictedMeanTaperForTheseHeights(StemTaperEquationSettings.getModelTypeEquation(tree), tree, heights, nbHeights, method, output);
+	}
+
+	/*
+	 * Compute the mean taper with the submodule of a given model type. The StemTaperLookupTable class relies on 
+	 * this method to build the tables of the tree model.
+	 */
+	double[] getPredictedMeanTaperForTheseHeights(ModelType mType, StemTaperTree tree, double[] heights, int nbHeights, EstimationMethodInDeterministicMode method, double[] output) {
+		StemTaperTreeSpecies species = tree.getStemTaperTreeSpecies();
+		StemTaperSubModule subModule = subModules.get(mType).get(species);
+		if (subModule == null) {
+			throw new InvalidParameterException("This species is not recognized!");
+		}
+		if (output == null || output.length < nbHeights) {
+			output = new double[nbHeights];
+		}
+		if (isResidualVariabilityEnabled) {
+			List<Double> heightList = new ArrayList<Double>(nbHeights);
+			for (int i = 0; i < nbHeights; i++) {
+				heightList.add(heights[i]);
+			}
+			Matrix mean = subModule.getPredictedTaperForTheseHeights(tree, heightList, method).getMean();
+			for (int i = 0; i < nbHeights; i++) {
+				output[i] = mean.getValueAt(i, 0);
+			}
+		} else {
+			subModule.getPredictedMeanTaperForTheseHeights(tree, heights, nbHeights, method, output);
+		}
+		return output;
+	}
+
 	/**
 	 * Compute the underbark stem taper in mm2. 
 	 * @param tree a StemTaperTree instance
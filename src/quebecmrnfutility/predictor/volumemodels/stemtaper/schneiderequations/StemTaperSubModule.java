@@ -18,7 +18,6 @@
  */
 package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperEquationSettings.ModelType;
@@ -42,6 +41,8 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 
 	private static final Matrix FakeMatrixForMissingRandomEffects = new Matrix(2,1);
 	private static final SymmetricMatrix FakeVarianceMatrixForMissingRandomEffects = new SymmetricMatrix(2);
+	private static final long FINGERPRINT_OFFSET = 0xcbf29ce484222325L;
+	private static final long FINGERPRINT_PRIME = 0x100000001b3L;
 	
 	protected final StemTaperTreeSpecies species;
 	
@@ -66,6 +67,19 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 	private StemTaperTree tree;
 	private Matrix correctionMatrix;
 
+	private double[] heightWorkspace;
+	private double[] stdDevWorkspace;
+	private double[] innovationWorkspace;
+	private int[] orderWorkspace;
+	private Matrix isserlisOmegaSource;
+	private double[] isserlisOmega;
+	private int isserlisOmegaDimension;
+	private double[] isserlisContractionsOmega;
+	private double[] isserlisContractionsZ;
+	private double[] secondTermGradient;
+	private double[] secondTermHessian;
+	private final double[] randomEffectVarianceWorkspace = new double[4];
+
 	/**
 	 * Constructor.
 	 * @param modelType
@@ -100,21 +114,118 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 	}
 	
 	/**
-	 * This method returns the R matrix.
-	 * @return a Matrix instance
+	 * This method sets the R matrix and a square-root factor of it.<p>
+	 * The elements are computed directly as sigma_i * rho^|h_i - h_j| * sigma_j * residual variance. Because 
+	 * the correlation is a power of the distance between the sections, the correlation structure is Markovian
+	 * and the factor has a closed form once the sections are visited in increasing order of height. When 
+	 * the heights are sorted, the factor is the lower Cholesky triangle of the R matrix. Otherwise, its rows 
+	 * are permuted, which does not change the product of the factor by its transpose. Duplicate heights yield 
+	 * a null innovation and identical rows in the factor, that is, the duplicated sections share the same 
+	 * residual error. The buffers are reused as long as the number of heights does not change.
 	 */
 	private void setRMatrix() {
-		Matrix distance = heights.repeat(1, heights.m_iRows).subtract(heights.transpose().repeat(heights.m_iRows, 1)).getAbsoluteValue();
-		Matrix correlations = distance.powMatrix(rho);			
-		Matrix x = heights.scalarAdd(-1.3).scalarMultiply(1d / (tree.getHeightM() - 1.3)).getAbsoluteValue();
-		Matrix l = heights.scalarMultiply(-1d).scalarAdd(tree.getHeightM());
-		Matrix stdDevMatrix = l.elementWiseMultiply(x).elementWiseMultiply(x.scalarMultiply(-1d).scalarAdd(1d).elementWisePower(3d)).getAbsoluteValue()
-				.elementWisePower(varFunctionParm2).scalarAdd(varFunctionParm1).matrixDiagonal();
-		rMatrix = SymmetricMatrix.convertToSymmetricIfPossible(
-				stdDevMatrix.multiply(correlations).multiply(stdDevMatrix).scalarMultiply(residualStdDev * residualStdDev));
-		rMatrixChol = rMatrix.getLowerCholTriangle();
+		int n = heights.m_iRows;
+		double treeHeightM = tree.getHeightM();
+		if (stdDevWorkspace == null || stdDevWorkspace.length < n) {
+			stdDevWorkspace = new double[n];
+			innovationWorkspace = new double[n];
+			orderWorkspace = new int[n];
+		}
+		double invTreeHeightMinusDbhHeight = 1d / (treeHeightM - 1.3);
+		for (int i = 0; i < n; i++) {
+			double height = heights.getValueAt(i, 0);
+			double x = Math.abs((height + -1.3) * invTreeHeightMinusDbhHeight);
+			double l = height * -1d + treeHeightM;
+			stdDevWorkspace[i] = Math.pow(Math.abs(l * x * Math.pow(x * -1d + 1d, 3d)), varFunctionParm2) + varFunctionParm1;
+			int k = i;		// insertion sort of the section indices by height
+			while (k > 0 && heights.getValueAt(orderWorkspace[k - 1], 0) > height) {
+				orderWorkspace[k] = orderWorkspace[k - 1];
+				k--;
+			}
+			orderWorkspace[k] = i;
+		}
+		innovationWorkspace[0] = 1d;
+		for (int k = 1; k < n; k++) {
+			double distance = heights.getValueAt(orderWorkspace[k], 0) - heights.getValueAt(orderWorkspace[k - 1], 0);
+			innovationWorkspace[k] = Math.sqrt(1d - Math.pow(rho, 2d * distance));
+		}
+
+		if (rMatrix == null || rMatrix.m_iRows != n) {
+			rMatrix = new SymmetricMatrix(n);
+		}
+		double residualVariance = residualStdDev * residualStdDev;
+		for (int i = 0; i < n; i++) {
+			double height_i = heights.getValueAt(i, 0);
+			for (int j = 0; j <= i; j++) {
+				double correlation = Math.pow(rho, Math.abs(height_i - heights.getValueAt(j, 0)));
+				rMatrix.setValueAt(i, j, stdDevWorkspace[i] * correlation * stdDevWorkspace[j] * residualVariance);
+			}
+		}
+
+		if (rMatrixChol == null || rMatrixChol.m_iRows != n) {
+			rMatrixChol = new Matrix(n, n);
+		} else {
+			rMatrixChol.resetMatrix();
+		}
+		// F_(o_k, m) = sigma_o_k * residualStdDev * rho^(h_o_k - h_o_m) * sqrt(1 - rho^(2 * (h_o_m - h_o_m-1))) for m <= k
+		for (int m = 0; m < n; m++) {
+			int column = orderWorkspace[m];
+			double factor = innovationWorkspace[m] / (stdDevWorkspace[column] * residualStdDev);
+			for (int k = m; k < n; k++) {
+				int row = orderWorkspace[k];
+				rMatrixChol.setValueAt(row, m, rMatrix.getValueAt(row, column) * factor);
+			}
+		}
 	}
 	
+	/**
+	 * Provide a fingerprint of the submodule. The fingerprint changes whenever the model type, the species, the 
+	 * parameter estimates, the variances of the random effects or the parameters of the residual error change.
+	 * @return a long
+	 */
+	long getFingerprint() {
+		long fingerprint = FINGERPRINT_OFFSET;
+		fingerprint = addToFingerprint(fingerprint, modelType.ordinal());
+		fingerprint = addToFingerprint(fingerprint, species.ordinal());
+		fingerprint = addToFingerprint(fingerprint, getParameterEstimates().getMean());
+		fingerprint = addToFingerprint(fingerprint, getParameterEstimates().getVariance());
+		fingerprint = addToFingerprint(fingerprint, getRandomEffectVariance(HierarchicalLevel.PLOT));
+		fingerprint = addToFingerprint(fingerprint, getRandomEffectVariance(HierarchicalLevel.TREE));
+		fingerprint = addToFingerprint(fingerprint, varFunctionParm1);
+		fingerprint = addToFingerprint(fingerprint, varFunctionParm2);
+		fingerprint = addToFingerprint(fingerprint, rho);
+		return addToFingerprint(fingerprint, residualStdDev != null ? residualStdDev : Double.NaN);
+	}
+
+	private static long addToFingerprint(long fingerprint, Matrix matrix) {
+		fingerprint = addToFingerprint(fingerprint, matrix.m_iRows);
+		fingerprint = addToFingerprint(fingerprint, matrix.m_iCols);
+		for (int i = 0; i < matrix.m_iRows; i++) {
+			for (int j = 0; j < matrix.m_iCols; j++) {
+				fingerprint = addToFingerprint(fingerprint, matrix.getValueAt(i, j));
+			}
+		}
+		return fingerprint;
+	}
+
+	private static long addToFingerprint(long fingerprint, double value) {
+		long bits = Double.doubleToLongBits(value);
+		for (int i = 0; i < 8; i++) {		// FNV-1a hashing byte by byte
+			fingerprint ^= (bits >>> (i * 8)) & 0xFF;
+			fingerprint *= FINGERPRINT_PRIME;
+		}
+		return fingerprint;
+	}
+
+	/*
+	 * For testing purposes.
+	 */
+	SymmetricMatrix getRMatrix() {return rMatrix;}
+
+	/*
+	 * For testing purposes.
+	 */
+	Matrix getRMatrixFactor() {return rMatrixChol;}
 
 	/**
 	 * This method sets the height sections.
@@ -173,6 +284,9 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 		double randomEffects0 = sumOfRandomEffects.getValueAt(0, 0);
 		double randomEffects1 = sumOfRandomEffects.getValueAt(1, 0);
 		if (!isResidualVariabilityEnabled) {
+			if (estimationMethod != EstimationMethodInDeterministicMode.FirstOrderMeanOnly) {
+				linearExpressions.updateColumnarDerivatives();		// the gradients and the hessians of all the sections in a single pass
+			}
 			if (estimationMethod == EstimationMethodInDeterministicMode.SecondOrder || estimationMethod == EstimationMethodInDeterministicMode.SecondOrderMeanOnly) {
 				setCorrectionMatrix();
 			} 
@@ -212,6 +326,127 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 		return prediction;
 	}
 
+	/**
+	 * This method computes the mean squared diameters (mm2) at these heights without creating
+	 * any intermediate Matrix instance. It provides the same predictions as the getPredictedTaperForTheseHeights
+	 * method with the FirstOrderMeanOnly and SecondOrderMeanOnly estimation methods.
+	 * @param t a StemTaperTree instance
+	 * @param heightMeasures an array with the heights of the cross sections (m)
+	 * @param nbHeights the number of heights to consider in the array
+	 * @param estimationMethod either FirstOrderMeanOnly or SecondOrderMeanOnly
+	 * @param output an array whose length is at least nbHeights
+	 */
+	synchronized void getPredictedMeanTaperForTheseHeights(StemTaperTree t, double[] heightMeasures, int nbHeights, EstimationMethodInDeterministicMode estimationMethod, double[] output) {
+		this.tree = t;
+		linearExpressions.setParameters(getParametersForThisRealization(tree));
+		linearExpressions.setTreeLevelVariables(tree);
+		if (heightWorkspace == null || heightWorkspace.length < nbHeights) {
+			heightWorkspace = new double[nbHeights];
+		}
+		double treeHeightM = tree.getHeightM();
+		for (int i = 0; i < nbHeights; i++) {
+			heightWorkspace[i] = Math.round(heightMeasures[i] * 1000) * 0.001;
+		}
+		if (nbHeights > 0 && heightWorkspace[nbHeights - 1] >= treeHeightM) {
+			heightWorkspace[nbHeights - 1] = treeHeightM - 1E-4;
+		}
+
+		Matrix plotRandomEffects = getPlotRandomEffects(tree.getStand());
+		Matrix treeRandomEffects = getTreeRandomEffects(tree);
+		double randomEffects0 = plotRandomEffects.getValueAt(0, 0) + treeRandomEffects.getValueAt(0, 0);
+		double randomEffects1 = plotRandomEffects.getValueAt(1, 0) + treeRandomEffects.getValueAt(1, 0);
+
+		boolean isSecondOrder = estimationMethod == EstimationMethodInDeterministicMode.SecondOrderMeanOnly;
+		Matrix omega = null;
+		int zIndex = 0;
+		if (isSecondOrder) {
+			int nbParms = linearExpressions.getNumberOfSecondTermParameters();
+			if (secondTermGradient == null || secondTermGradient.length != nbParms) {
+				secondTermGradient = new double[nbParms];
+				secondTermHessian = new double[nbParms * nbParms];
+			}
+			zIndex = StemTaperEquationSettings.getInterceptLocation(species, modelType) + (species == StemTaperTreeSpecies.PEG ? 2 : 1);
+			Matrix plotVariance = getRandomEffectVariance(HierarchicalLevel.PLOT);
+			Matrix treeVariance = getRandomEffectVariance(HierarchicalLevel.TREE);
+			for (int a = 0; a < 2; a++) {		// the sum of the variances of the random effects without creating a new Matrix
+				for (int b = 0; b < 2; b++) {
+					randomEffectVarianceWorkspace[a * 2 + b] = plotVariance.getValueAt(a, b) + treeVariance.getValueAt(a, b);
+				}
+			}
+			omega = getParameterEstimates().getVariance();
+		}
+		
+		double dbh2 = tree.getSquaredDbhCm() * 100;
+		double invTreeHeight = 1d / treeHeightM;
+		double invTreeHeightMinusDbhHeight = 1d / (treeHeightM - 1.3);
+		double invDbhHeight = 1d / 1.3;
+		for (int i = 0; i < nbHeights; i++) {
+			double height = heightWorkspace[i];
+			double relativeHeight = height * invTreeHeight;
+			double coreExpression = (treeHeightM - height) * invTreeHeightMinusDbhHeight;
+			double heightSectionRespectToDbh = height * invDbhHeight;
+			linearExpressions.setSectionLevelVariables(relativeHeight, coreExpression);
+			double firstTerm = linearExpressions.getFirstTermValue();
+			double secondTerm = linearExpressions.getSecondTermValue();
+			double correctionFactor = 0d;
+			if (isSecondOrder) {
+				correctionFactor = getSecondOrderCorrection(firstTerm, secondTerm, dbh2, coreExpression, heightSectionRespectToDbh, zIndex, omega);
+			}
+			double alpha = firstTerm + randomEffects0;
+			double exponent = secondTerm + randomEffects1;
+			double crudePrediction = alpha * tree.getSquaredDbhCm() * 100 * coreExpression * Math.pow(heightSectionRespectToDbh, 2 - exponent) 
+					+ correctionFactor;
+			if (crudePrediction < 0) {
+				crudePrediction = 0;
+			}
+			output[i] = crudePrediction;
+		}
+	}
+
+	/*
+	 * Compute the second-order correction of a single height section, that is half the sum of the 
+	 * element-wise product of the hessian with the variances of the random effects and the parameter estimates.
+	 * The sum of the variances of the random effects is read from the randomEffectVarianceWorkspace buffer.
+	 * The hessian is never stored. Its elements are computed on the fly from the gradient and the hessian of the 
+	 * second term as in the InternalStatisticalExpressions.getHessians method.
+	 */
+	private double getSecondOrderCorrection(double alpha, 
+			double exponent, 
+			double dbh2, 
+			double coreExpression, 
+			double heightSectionRespectToDbh, 
+			int zIndex,
+			Matrix omega) {
+		linearExpressions.fillSecondTermDerivatives(secondTermGradient, secondTermHessian);
+		double logHeightSection = Math.log(heightSectionRespectToDbh);
+		double h0 = dbh2 * coreExpression * Math.pow(heightSectionRespectToDbh, 2 - exponent);
+		double h1 = h0 * logHeightSection * -1d;
+		double h2 = alpha * h1 * logHeightSection * -1d;
+		int nbParms = secondTermGradient.length;
+		int dim = nbParms + 1;
+		double sumZ = 0d;
+		double sumX = 0d;
+		for (int a = 0; a < dim; a++) {
+			for (int b = 0; b < dim; b++) {
+				double hessianValue;
+				if (a == 0 && b == 0) {
+					hessianValue = 0d;	// the first term is linear
+				} else if (a == 0) {
+					hessianValue = secondTermGradient[b - 1] * h1;
+				} else if (b == 0) {
+					hessianValue = secondTermGradient[a - 1] * h1;
+				} else {
+					hessianValue = secondTermGradient[a - 1] * secondTermGradient[b - 1] * h2 + secondTermHessian[(a - 1) * nbParms + b - 1] * h2;
+				}
+				sumX += hessianValue * omega.getValueAt(a, b);
+				if ((a == 0 || a == zIndex) && (b == 0 || b == zIndex)) {
+					sumZ += hessianValue * randomEffectVarianceWorkspace[(a == 0 ? 0 : 2) + (b == 0 ? 0 : 1)];
+				}
+			}
+		}
+		return sumZ * .5 + sumX * .5;
+	}
+
 	private Matrix getTreeRandomEffects(StemTaperTree tree) {
 		if (getDefaultRandomEffects(tree.getHierarchicalLevel()) != null) {
 			return getRandomEffectsForThisSubject(tree); 
@@ -227,35 +462,40 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 	}
 
 	/**
-	 * This method sets the correction matrix.
+	 * This method sets the correction matrix from the hessians of the columnar buffers.
 	 */
 	private void setCorrectionMatrix() {
 		Matrix correctionFactor = new Matrix(heights.m_iRows, 1);
-		Matrix hessians = linearExpressions.getHessians();
+		double[] hessians = linearExpressions.getColumnarHessians();
+		int nbParms = linearExpressions.getTotalNumberOfParameters();
 		StemTaperTreeSpecies species = tree.getStemTaperTreeSpecies();
 		int index = StemTaperEquationSettings.getInterceptLocation(species, modelType); // we need to know where is the intercept for the z matrix +1 for the alpha parameter 
-		List<Integer> indices = new ArrayList<Integer>();		// this variable serves to extract the proper zMatrix from the xMatrix
-		indices.add(0);											// for the alpha parameters
+		int[] indices = new int[2];			// this variable serves to extract the proper zMatrix from the xMatrix
+		indices[0] = 0;						// for the alpha parameters
 		if (species == StemTaperTreeSpecies.PEG) {	// species is a little bit different because two parameters applied for a single variable
-			indices.add(index + 2);
+			indices[1] = index + 2;
 		} else {
-			indices.add(index + 1);
+			indices[1] = index + 1;
 		}
-		Matrix zPrime;
-		Matrix xPrime;
-//		Matrix gPlot = getDefaultRandomEffects(HierarchicalLevel.PLOT).getVariance();
-//		Matrix gTree = getDefaultRandomEffects(HierarchicalLevel.TREE).getVariance();
 		Matrix gPlot = getRandomEffectVariance(HierarchicalLevel.PLOT);
 		Matrix gTree = getRandomEffectVariance(HierarchicalLevel.TREE);
 		Matrix variances = gPlot.add(gTree);
+		Matrix omega = getParameterEstimates().getVariance();
 		for (int i = 0; i < correctionFactor.m_iRows; i++) {
-			xPrime = hessians.getSubMatrix(i, i, 0, hessians.m_iCols - 1).transpose().squareSym();
-			zPrime = xPrime.getSubMatrix(indices, indices);
-			
-			zPrime = zPrime.elementWiseMultiply(variances); //  MatrixUtility.elementWiseMultiply(zPrime, variances);
-			xPrime = xPrime.elementWiseMultiply(getParameterEstimates().getVariance()); // MatrixUtility.elementWiseMultiply(xPrime, getParameterEstimates().getVariance());
-			
-			correctionFactor.setValueAt(i, 0, zPrime.getSumOfElements() * .5 + xPrime.getSumOfElements() * .5);
+			int offset = i * nbParms * nbParms;
+			double zSum = 0d;
+			for (int a = 0; a < 2; a++) {
+				for (int b = 0; b < 2; b++) {
+					zSum += hessians[offset + indices[a] * nbParms + indices[b]] * variances.getValueAt(a, b);
+				}
+			}
+			double xSum = 0d;
+			for (int a = 0; a < nbParms; a++) {
+				for (int b = 0; b < nbParms; b++) {
+					xSum += hessians[offset + a * nbParms + b] * omega.getValueAt(a, b);
+				}
+			}
+			correctionFactor.setValueAt(i, 0, zSum * .5 + xSum * .5);
 		}
 		correctionMatrix = correctionFactor;
 	}
@@ -268,12 +508,27 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 		}
 	}
 
+	/*
+	 * The gradients are needed as a Matrix instance for the products with the variances.
+	 */
+	private Matrix getGradientsFromColumnarBuffer() {
+		double[] buffer = linearExpressions.getColumnarGradients();
+		int nbParms = linearExpressions.getTotalNumberOfParameters();
+		Matrix gradients = new Matrix(heights.m_iRows, nbParms);
+		for (int i = 0; i < heights.m_iRows; i++) {
+			for (int j = 0; j < nbParms; j++) {
+				gradients.setValueAt(i, j, buffer[i * nbParms + j]);
+			}
+		}
+		return gradients;
+	}
+
 	/**
 	 * This method computes the analytical variance according to the analytical estimator.
 	 * @return a Matrix instance
 	 */
 	private SymmetricMatrix getStemTaperVariance(EstimationMethodInDeterministicMode estimationMethod) {
-		Matrix gradients = linearExpressions.getGradients(); 
+		Matrix gradients = getGradientsFromColumnarBuffer(); 
 		Matrix gPlot = getRandomEffectVariance(HierarchicalLevel.PLOT);
 		Matrix gTree = getRandomEffectVariance(HierarchicalLevel.TREE);
 		Matrix z = gradients.getSubMatrix(0, gradients.m_iRows - 1, 0, 1);
@@ -305,11 +560,119 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 	
 	/**
 	 * This method returns the variance component that is due to the second term of the Taylor expansion. It
-	 * relies on Isserlis' theorem.
+	 * relies on Isserlis' theorem.<p>
+	 * The Kronecker products of the hessians are never formed. The sum of the element-wise product of kron(H_i, H_j) 
+	 * with the Isserlis matrix is the contraction sum_{c,d} T_i[c,d] * H_j[c,d], where T_i[c,d] = sum_{a,b} H_i[a,b] *
+	 * Isserlis[a*p+c, b*p+d]. The T_i tensors are computed once per height section, so that the cost is linear in the 
+	 * number of pairs of sections. The hessians are read from the columnar buffers of the InternalStatisticalExpressions
+	 * instance.
+	 * @return a Matrix instance
+	 * @see #getIsserlisVarianceComponentsWithKroneckerProducts()
+	 */
+	Matrix getIsserlisVarianceComponents() {
+		int n = heights.m_iRows;
+		Matrix output = new Matrix(n, n);
+		double[] isserlisHessians = linearExpressions.getColumnarHessians();
+		Matrix isserlisCombine = getRandomEffectVariance(HierarchicalLevel.PLOT).getIsserlisMatrix().add(
+				getRandomEffectVariance(HierarchicalLevel.TREE).getIsserlisMatrix());
+		updateIsserlisOmegaIfNeeded();
+		
+		int p = isserlisOmegaDimension;
+		int pp = p * p;
+		if (isserlisContractionsOmega == null || isserlisContractionsOmega.length < n * pp) {
+			isserlisContractionsOmega = new double[n * pp];
+			isserlisContractionsZ = new double[n * 4];
+		}
+		for (int i = 0; i < n; i++) {
+			int offset = i * pp;
+			contractWithIsserlis(isserlisHessians, offset, p, p, isserlisOmega, isserlisContractionsOmega, offset);
+			for (int c = 0; c < 2; c++) {
+				for (int d = 0; d < 2; d++) {
+					double sum = 0d;
+					for (int a = 0; a < 2; a++) {
+						for (int b = 0; b < 2; b++) {
+							sum += isserlisHessians[offset + a * p + b] * isserlisCombine.getValueAt(a * 2 + c, b * 2 + d);
+						}
+					}
+					isserlisContractionsZ[i * 4 + c * 2 + d] = sum;
+				}
+			}
+		}
+
+		double result;
+		for (int i = 0; i < n; i++) {
+			int offsetI = i * pp;
+			for (int j = i; j < n; j++) {
+				int offsetJ = j * pp;
+				double zSum = 0d;
+				for (int c = 0; c < 2; c++) {
+					for (int d = 0; d < 2; d++) {
+						zSum += isserlisContractionsZ[i * 4 + c * 2 + d] * isserlisHessians[offsetJ + c * p + d];
+					}
+				}
+				double xSum = 0d;
+				for (int k = 0; k < pp; k++) {
+					xSum += isserlisContractionsOmega[offsetI + k] * isserlisHessians[offsetJ + k];
+				}
+				// a .25 factor because the second order term is always multiplied by .5 (see the Kronecker implementation)
+				result = zSum * .25 + xSum * .25;
+				output.setValueAt(i, j, result);
+				if (i != j) {
+					output.setValueAt(j, i, result);		// to ensure the symmetry and not to have to calculate again
+				}
+			}
+		}
+		return output;
+	}
+
+	/*
+	 * The Isserlis matrix of the parameter estimates is computed only once as long as the variance
+	 * of the parameter estimates does not change.
+	 */
+	private void updateIsserlisOmegaIfNeeded() {
+		Matrix omega = getParameterEstimates().getVariance();
+		if (omega != isserlisOmegaSource) {
+			Matrix isserlis = getParameterEstimates().getVariance().getIsserlisMatrix();
+			isserlisOmegaDimension = omega.m_iRows;
+			isserlisOmega = new double[isserlis.m_iRows * isserlis.m_iCols];
+			for (int r = 0; r < isserlis.m_iRows; r++) {
+				for (int c = 0; c < isserlis.m_iCols; c++) {
+					isserlisOmega[r * isserlis.m_iCols + c] = isserlis.getValueAt(r, c);
+				}
+			}
+			isserlisOmegaSource = omega;
+		}
+	}
+
+	/*
+	 * Compute T[c,d] = sum_{a,b} H[a,b] * Isserlis[a*p+c, b*p+d] for a,b,c,d < dim, with H stored row-major with p columns
+	 * and the Isserlis matrix stored row-major with p*p columns.
+	 */
+	private static void contractWithIsserlis(double[] hessian, int hessianOffset, int p, int dim, double[] isserlis, double[] output, int outputOffset) {
+		int nbIsserlisCols = p * p;
+		for (int c = 0; c < dim; c++) {
+			for (int d = 0; d < dim; d++) {
+				double sum = 0d;
+				for (int a = 0; a < dim; a++) {
+					int rowOffset = (a * p + c) * nbIsserlisCols + d;
+					for (int b = 0; b < dim; b++) {
+						double h = hessian[hessianOffset + a * p + b];
+						if (h != 0d) {
+							sum += h * isserlis[rowOffset + b * p];
+						}
+					}
+				}
+				output[outputOffset + c * p + d] = sum;
+			}
+		}
+	}
+
+	/**
+	 * This method is the original implementation of the getIsserlisVarianceComponents method. It forms 
+	 * the Kronecker products explicitly and it is kept as a reference for testing.
 	 * @return a Matrix instance
-	 * @throws Exception 
 	 */
-	private Matrix getIsserlisVarianceComponents() {
+	Matrix getIsserlisVarianceComponentsWithKroneckerProducts() {
 		Matrix output = new Matrix(heights.m_iRows, heights.m_iRows);
 		Matrix hessians = linearExpressions.getHessians();
 		Matrix xPrimeI;
@@ -375,6 +738,11 @@ final class StemTaperSubModule extends AbstractStemTaperPredictor {
 	@Override
 	protected void init() {}
 
+	/*
+	 * For testing purposes.
+	 */
+	InternalStatisticalExpressions getLinearExpressions() {return linearExpressions;}
+
 	/**
 	 * This method returns the tree whose taper is being predicted.
 	 * @return a StemTaperTree instance
@@ -0,0 +1,266 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.treelogger.sybille;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import repicea.math.Matrix;
+import repicea.simulation.stemtaper.AbstractStemTaperEstimate;
+import repicea.simulation.treelogger.LoggableTree;
+
+/**
+ * The SybilleBuckingEngine class extracts the logs of a single tree in one pass along the stem.<p>
+ * The cross-section heights and the predicted squared diameters are copied once from the 
+ * stem taper estimate. The engine then keeps two prefix sums of the squared-diameter profile: one
+ * based on the trapezoidal rule and another one based on a three-point quadratic rule, which is
+ * Simpson's rule when the points are evenly spaced. The volume between any two cross sections is
+ * obtained in constant time. The cross sections are found through a binary search that starts at 
+ * a cursor, which moves up along the stem as the logs are extracted.<p>
+ * The volume of a log reproduces the segmentation of the StemTaperSegmentList.createStemTaperSegmentList 
+ * method: Simpson's rule over the successive pairs of intervals and the trapezoidal rule on the leftover 
+ * interval if the integration optimization is enabled, or the trapezoidal rule on all the intervals otherwise. 
+ * Both the greedy bucking and the optimal bucking, which is solved by dynamic programming over the cross 
+ * sections, rely on these constant-time volumes.
+ * @author Mathieu Fortin - October 2026
+ */
+class SybilleBuckingEngine {
+
+	/**
+	 * The scaling factor from the integral of the squared diameter (mm2 x m) to the volume (dm3).
+	 */
+	private static final double SCALING_FACTOR = Math.PI * .25 * 1E-3;
+
+	private final double[] heightsM;
+	private final double[] squaredDiametersMm2;
+	private final double[] trapezoidalPrefixSums;
+	private final double[] quadraticPrefixSums;
+	private final boolean optimize;
+	private final Map<Double, Integer> smallEndIndices;
+	private int cursor;
+	
+	/**
+	 * Constructor.
+	 * @param estimate an AbstractStemTaperEstimate instance 
+	 * @param optimize true to give priority to Simpson's rule over the trapezoidal rule
+	 */
+	SybilleBuckingEngine(AbstractStemTaperEstimate estimate, boolean optimize) {
+		List<Double> crossSectionHeights = estimate.getCrossSectionHeights();
+		Matrix mean = estimate.getMean();
+		int n = crossSectionHeights.size();
+		heightsM = new double[n];
+		squaredDiametersMm2 = new double[n];
+		for (int i = 0; i < n; i++) {
+			heightsM[i] = crossSectionHeights.get(i);
+			squaredDiametersMm2[i] = mean.getValueAt(i, 0);
+		}
+		this.optimize = optimize;
+		trapezoidalPrefixSums = new double[n];
+		quadraticPrefixSums = new double[n];
+		for (int i = 1; i < n; i++) {
+			trapezoidalPrefixSums[i] = trapezoidalPrefixSums[i - 1] + getTrapezoidalIntegral(i - 1);
+			if (i > 1) {
+				quadraticPrefixSums[i] = quadraticPrefixSums[i - 2] + getQuadraticIntegral(i - 2);
+			}
+		}
+		smallEndIndices = new HashMap<Double, Integer>();
+		cursor = 0;
+	}
+
+	private double getTrapezoidalIntegral(int i) {
+		return (heightsM[i + 1] - heightsM[i]) * (squaredDiametersMm2[i] + squaredDiametersMm2[i + 1]) * .5;
+	}
+
+	/*
+	 * Integral of the quadratic polynomial that goes through the points i, i + 1 and i + 2. 
+	 */
+	private double getQuadraticIntegral(int i) {
+		double h1 = heightsM[i + 1] - heightsM[i];
+		double h2 = heightsM[i + 2] - heightsM[i + 1];
+		if (h1 <= 0d || h2 <= 0d) {		// replicated heights: the quadratic rule is undefined
+			return getTrapezoidalIntegral(i) + getTrapezoidalIntegral(i + 1);
+		}
+		double h = h1 + h2;
+		return h / 6d * ((2d - h2 / h1) * squaredDiametersMm2[i] 
+				+ h * h / (h1 * h2) * squaredDiametersMm2[i + 1] 
+				+ (2d - h1 / h2) * squaredDiametersMm2[i + 2]);
+	}
+	
+	/**
+	 * Provide the number of cross sections.
+	 * @return an integer
+	 */
+	int getNumberOfCrossSections() {return heightsM.length;}
+	
+	/**
+	 * Provide the height of the last cross section.
+	 * @return the height (m)
+	 */
+	double getTopHeightM() {return heightsM[heightsM.length - 1];}
+	
+	/**
+	 * Provide the height of a particular cross section.
+	 * @param i the index of the cross section
+	 * @return the height (m)
+	 */
+	double getHeightM(int i) {return heightsM[i];}
+	
+	/**
+	 * Provide the predicted squared diameter at a particular cross section.
+	 * @param i the index of the cross section
+	 * @return the squared diameter (mm2)
+	 */
+	double getSquaredDiameterMm2(int i) {return squaredDiametersMm2[i];}
+	
+	/**
+	 * Find the index of the first cross section whose height is equal to or greater than the target height.<p>
+	 * The search starts at the cursor, which is moved to the index that is found. The cursor is reset 
+	 * if the target height is lower than the height of the cursor.
+	 * @param targetHeightM the height (m)
+	 * @return the index or -1 if the target height is above the top of the tree
+	 */
+	int findStartIndex(double targetHeightM) {
+		if (cursor > 0 && heightsM[cursor - 1] >= targetHeightM) {
+			cursor = 0;
+		}
+		int index = findCeilingIndex(targetHeightM, cursor);
+		if (index != -1) {
+			cursor = index;
+		}
+		return index;
+	}
+	
+	/**
+	 * Find the index of the first cross section whose height is equal to or greater than the target height.<p>
+	 * The cursor is not modified.
+	 * @param targetHeightM the height (m)
+	 * @param fromIndex the index from which the search starts
+	 * @return the index or -1 if the target height is above the top of the tree
+	 */
+	int findCeilingIndex(double targetHeightM, int fromIndex) {
+		int low = fromIndex;
+		int high = heightsM.length - 1;
+		if (low > high || heightsM[high] < targetHeightM) {
+			return -1;
+		}
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (heightsM[mid] >= targetHeightM) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Find the index of the last cross section before the squared diameter first falls 
+	 * below the small-end diameter. The index is computed only once for each small-end diameter.
+	 * @param smallEndDiameterCm the small-end diameter (cm)
+	 * @return the index or -1 if the first cross section is already too small
+	 */
+	int findSmallEndIndex(double smallEndDiameterCm) {
+		Integer index = smallEndIndices.get(smallEndDiameterCm);
+		if (index == null) {
+			double squaredSmallEndDiameter = smallEndDiameterCm * smallEndDiameterCm;
+			int i;
+			for (i = 0; i < squaredDiametersMm2.length; i++) {
+				if (squaredDiametersMm2[i] * .01 <= squaredSmallEndDiameter) {		// .01 to scale from mm2 to cm2
+					break;
+				}
+			}
+			index = i - 1;
+			smallEndIndices.put(smallEndDiameterCm, index);
+		}
+		return index;
+	}
+	
+	/**
+	 * Provide the underbark volume between two cross sections.<p>
+	 * If the integration optimization is enabled, the quadratic rule is applied to the successive 
+	 * pairs of intervals and the trapezoidal rule is applied to the last interval if the number
+	 * of intervals is odd, as in the StemTaperSegmentList.createStemTaperSegmentList method. Otherwise, 
+	 * the trapezoidal rule is applied to all the intervals.
+	 * @param startIndex the index of the lower cross section
+	 * @param endIndex the index of the upper cross section
+	 * @return the volume (dm3)
+	 */
+	double getVolumeDm3(int startIndex, int endIndex) {
+		double integral;
+		if (optimize && endIndex - startIndex >= 2) {
+			int lastEvenIndex = endIndex - ((endIndex - startIndex) & 1);
+			integral = quadraticPrefixSums[lastEvenIndex] - quadraticPrefixSums[startIndex]
+					+ trapezoidalPrefixSums[endIndex] - trapezoidalPrefixSums[lastEvenIndex];
+		} else {
+			integral = trapezoidalPrefixSums[endIndex] - trapezoidalPrefixSums[startIndex];
+		}
+		return integral * SCALING_FACTOR;
+	}
+	
+	/**
+	 * Provide the sequence of logs that maximizes the total value of the tree.<p>
+	 * The logs are contiguous and start at the stump height, as in the greedy bucking. The 
+	 * best value from each cross section to the top of the tree is computed from the top down. 
+	 * Each transition costs a search for the upper cross section of the log and a constant-time 
+	 * volume. Ties are broken in favour of the first log category in the list.
+	 * @param tree the LoggableTree instance
+	 * @param logCategories the log categories of this species
+	 * @param stumpHeightM the height at which the bucking begins (m)
+	 * @return a List of SybilleWoodPiece instances (empty if no log can be extracted)
+	 */
+	List<SybilleWoodPiece> getOptimalLogs(LoggableTree tree, List<SybilleTreeLogCategory> logCategories, double stumpHeightM) {
+		List<SybilleWoodPiece> pieces = new ArrayList<SybilleWoodPiece>();
+		int firstIndex = findCeilingIndex(stumpHeightM, 0);
+		if (firstIndex == -1) {
+			return pieces;
+		}
+		int n = heightsM.length;
+		double[] bestValues = new double[n];
+		int[] bestEndIndices = new int[n];
+		Arrays.fill(bestEndIndices, -1);
+		SybilleTreeLogCategory[] bestCategories = new SybilleTreeLogCategory[n];
+		for (int i = n - 2; i >= firstIndex; i--) {
+			double height = i == firstIndex ? stumpHeightM : heightsM[i];
+			for (SybilleTreeLogCategory logCategory : logCategories) {
+				int endIndex = logCategory.findEndIndex(this, i, height);
+				if (endIndex != -1) {
+					double value = logCategory.getValuePerM3() * getVolumeDm3(i, endIndex) * .001 + bestValues[endIndex];
+					if (bestEndIndices[i] == -1 || value > bestValues[i]) {
+						bestValues[i] = value;
+						bestEndIndices[i] = endIndex;
+						bestCategories[i] = logCategory;
+					}
+				}
+			}
+		}
+		int i = firstIndex;
+		while (bestEndIndices[i] != -1) {
+			int endIndex = bestEndIndices[i];
+			pieces.add(new SybilleWoodPiece(bestCategories[i], tree, getVolumeDm3(i, endIndex), heightsM[endIndex] - heightsM[i]));
+			i = endIndex;
+		}
+		return pieces;
+	}
+	
+}
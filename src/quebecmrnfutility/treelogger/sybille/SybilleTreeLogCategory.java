@@ -93,6 +93,8 @@ public class SybilleTreeLogCategory extends LogCategory {
 	
 	private LengthID lengthID = LengthID.FourFeetLong;
 	
+	private Double valuePerM3;		// null for the instances serialized before the value was introduced
+	
 	private transient SybilleTreeLogCategoryPanel guiInterface;
 
 
@@ -150,6 +152,26 @@ public class SybilleTreeLogCategory extends LogCategory {
 		this.smallEndDiameterCm = smallEndDiameterCm;
 	}
 	
+	/**
+	 * This method returns the value of one cubic meter of this tree log category. This value is 
+	 * only used by the optimal bucking. By default, it is set to 1, which means the optimal bucking 
+	 * maximizes the merchantable volume.
+	 * @return a double
+	 */
+	public double getValuePerM3() {return valuePerM3 == null ? 1d : valuePerM3;}
+	
+	/**
+	 * This method sets the value of one cubic meter of this tree log category.
+	 * @param valuePerM3 a positive double or 0
+	 * @see SybilleTreeLoggerParameters#setBuckingMode(SybilleTreeLoggerParameters.BuckingMode)
+	 */
+	public void setValuePerM3(double valuePerM3) {
+		if (valuePerM3 < 0d) {
+			throw new InvalidParameterException("The value per m3 cannot be negative!");
+		}
+		this.valuePerM3 = valuePerM3;
+	}
+	
 	@Override
 	public SybilleTreeLogCategoryPanel getUI() {
 		if (guiInterface == null) {
@@ -225,6 +247,64 @@ public class SybilleTreeLogCategory extends LogCategory {
 	}
 	
 	
+	/**
+	 * This method checks whether or not it is possible to extract this particular log grade from a given tree.<p>
+	 * It is the single-pass counterpart of the extractFromTree(LoggableTree, Object...) method. The cross sections
+	 * are found by a SybilleBuckingEngine instance, which also provides the volume in constant time with the 
+	 * same integration rules as the extractFromTree(LoggableTree, Object...) method.
+	 * @param tree a LoggableTree instance
+	 * @param engine the SybilleBuckingEngine instance of this tree
+	 * @param height the height at which the log is to be extracted (m)
+	 * @return a SybilleWoodPiece instance if the log can be extracted or null otherwise
+	 */
+	SybilleWoodPiece extractFromTree(LoggableTree tree, SybilleBuckingEngine engine, double height) {
+		int startIndex = engine.findStartIndex(height);
+		if (startIndex == -1) {
+			return null;
+		}
+		int endIndex = findEndIndex(engine, startIndex, height);
+		if (endIndex == -1) {
+			return null;
+		}
+		double trueLengthM = engine.getHeightM(endIndex) - engine.getHeightM(startIndex); 
+		return new SybilleWoodPiece(this, tree, engine.getVolumeDm3(startIndex, endIndex), trueLengthM);		// the small diameter is large enough
+	}
+	
+	/**
+	 * This method returns the index of the upper cross section of a log of this category.
+	 * @param engine the SybilleBuckingEngine instance of this tree
+	 * @param startIndex the index of the lower cross section
+	 * @param height the height at which the log is to be extracted (m)
+	 * @return the index or -1 if this log category cannot be extracted from this height
+	 */
+	int findEndIndex(SybilleBuckingEngine engine, int startIndex, double height) {
+		double topHeight = engine.getTopHeightM();
+		double heightLimit;
+		if (getLogLengthM() == 0) {
+			heightLimit = topHeight;
+		} else {
+			heightLimit = height + getLogLengthM();
+		}
+		
+		if (heightLimit > topHeight) {
+			return -1;	// the required length is too much for what is left of the tree
+		} 
+		int endIndex;
+		if (getLogLengthM() < StemTaperSegment.VERY_SMALL) {	//	no length specification
+			endIndex = engine.findSmallEndIndex(smallEndDiameterCm);
+		} else {		// length is specified
+			endIndex = engine.findCeilingIndex(height + getLogLengthM(), startIndex);
+		}
+		if (endIndex <= startIndex) {	// means the minimum diameter is already too large or there is no cross section left 
+			return -1;
+		}
+		if (engine.getSquaredDiameterMm2(endIndex) * .01 >= smallEndDiameterCm * smallEndDiameterCm) {	// .01 required to shift from mm2 to cm2
+			return endIndex;
+		} else {
+			return -1;
+		}
+	}
+	
 	private int findCloserCeilingCrossSectionIndex(List<Double> heights, double targetHeight) {
 		int i;
 		for (i = 0; i < heights.size(); i++) {
@@ -263,6 +343,10 @@ public class SybilleTreeLogCategory extends LogCategory {
 			return false;
 		}
 		
+		if (refCategory.getValuePerM3() != this.getValuePerM3()) {
+			return false;
+		}
+		
 		return true;
 	}
 
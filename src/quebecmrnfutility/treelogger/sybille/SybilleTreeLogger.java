@@ -19,9 +19,19 @@
 package quebecmrnfutility.treelogger.sybille;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor;
+import quebecmrnfutility.treelogger.sybille.SybilleTreeLoggerParameters.BuckingMode;
 import repicea.math.integral.CompositeSimpsonRule;
 import repicea.math.integral.TrapezoidalRule;
 import repicea.simulation.stemtaper.AbstractStemTaperEstimate;
@@ -38,9 +48,24 @@ import repicea.simulation.treelogger.TreeLoggerCompatibilityCheck;
  */
 public class SybilleTreeLogger extends TreeLogger<SybilleTreeLoggerParameters, SybilleLoggableTree> {
 
+	/**
+	 * The wood pieces extracted from a tree and the exception that interrupted the bucking, if any.
+	 */
+	private static final class BuckingResult {
+		private final List<SybilleWoodPiece> pieces;
+		private Exception failure;
+		
+		private BuckingResult() {
+			pieces = new ArrayList<SybilleWoodPiece>();
+		}
+	}
+	
 	private StemTaperPredictor stp;
 	private StemTaperSegmentList segments;
 	private final boolean isVariabilityEnabled;
+	private transient ForkJoinPool pool;
+	private transient Queue<StemTaperPredictor> idlePredictors;
+	private transient Map<SybilleLoggableTree, BuckingResult> parallelResults;
 	
 	/**
 	 * Official constructor for the extension
@@ -62,6 +87,133 @@ public class SybilleTreeLogger extends TreeLogger<SybilleTreeLoggerParameters, S
 	
 	@Override
 	protected void logThisTree(SybilleLoggableTree tree) {
+		BuckingResult result = parallelResults != null ? parallelResults.get(tree) : null;
+		if (result == null) {
+			result = buckThisTree(tree, stp, segments);
+		}
+		for (SybilleWoodPiece wp : result.pieces) {
+			addWoodPiece(tree, wp);
+		}
+		if (result.failure != null) {		// the failure is reported and the other trees are still logged
+			System.out.println(result.failure.getMessage());
+			result.failure.getCause().printStackTrace();
+		}
+	}
+
+	/**
+	 * Log these trees using several threads.<p>
+	 * The trees go through the init and run methods as in the sequential logger, so that the ineligible 
+	 * trees are discarded and the wood pieces of a previous call are cleared. Before the run, the eligible 
+	 * trees are bucked across a fork-join pool, which is kept by the logger and reused from one call to 
+	 * another. Each task borrows a StemTaperPredictor instance from a queue of idle predictors and returns 
+	 * it afterwards. The wood pieces are then added in the order of the trees, so that the results are identical 
+	 * to those of the sequential logger. A tree that cannot be bucked is reported and the other trees are logged 
+	 * as in the sequential logger. In stochastic mode, the trees are logged sequentially because the random 
+	 * deviates would otherwise depend on the scheduling of the threads. The threads of the pool are released 
+	 * through the shutdown method. 
+	 * @param trees a List of SybilleLoggableTree instances
+	 * @param nbThreads the number of threads
+	 */
+	public void logTheseTreesInParallel(List<? extends SybilleLoggableTree> trees, int nbThreads) {
+		init(trees);
+		if (!isVariabilityEnabled && nbThreads > 1 && trees.size() > 1) {
+			parallelResults = buckTheseTreesInParallel(trees, nbThreads);
+		}
+		try {
+			run();
+		} finally {
+			parallelResults = null;
+		}
+	}
+
+	private Map<SybilleLoggableTree, BuckingResult> buckTheseTreesInParallel(List<? extends SybilleLoggableTree> trees, int nbThreads) {
+		final List<SybilleLoggableTree> eligibleTrees = new ArrayList<SybilleLoggableTree>();
+		for (SybilleLoggableTree tree : trees) {
+			if (getEligible(tree) != null) {
+				eligibleTrees.add(tree);
+			}
+		}
+		final BuckingResult[] results = new BuckingResult[eligibleTrees.size()];
+		final Queue<StemTaperPredictor> predictors = getIdlePredictors();
+		int nbChunks = Math.min(eligibleTrees.size(), nbThreads * 4);		// more chunks than threads for load balancing
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int c = 0; c < nbChunks; c++) {
+			final int start = (int) ((long) eligibleTrees.size() * c / nbChunks);
+			final int end = (int) ((long) eligibleTrees.size() * (c + 1) / nbChunks);
+			tasks.add(() -> {
+				StemTaperPredictor predictor = predictors.poll();
+				if (predictor == null) {
+					predictor = new StemTaperPredictor(false);
+				}
+				StemTaperSegmentList segmentList = new StemTaperSegmentList();
+				try {
+					for (int i = start; i < end; i++) {
+						results[i] = buckThisTree(eligibleTrees.get(i), predictor, segmentList);
+					}
+				} finally {
+					predictors.offer(predictor);
+				}
+				return null;
+			});
+		}
+		try {
+			for (Future<Void> future : getPool(nbThreads).invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("The parallel logging was interrupted!", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("The parallel logging failed!", e.getCause());
+		}
+		Map<SybilleLoggableTree, BuckingResult> resultMap = new IdentityHashMap<SybilleLoggableTree, BuckingResult>();
+		for (int i = 0; i < results.length; i++) {
+			resultMap.put(eligibleTrees.get(i), results[i]);
+		}
+		return resultMap;
+	}
+
+	/*
+	 * The pool is shared by the successive calls to the logTheseTreesInParallel method. It is only replaced if the 
+	 * number of threads changes or if it has been shut down.
+	 */
+	private synchronized ForkJoinPool getPool(int nbThreads) {
+		if (pool == null || pool.getParallelism() != nbThreads) {
+			if (pool != null) {
+				pool.shutdown();
+			}
+			pool = new ForkJoinPool(nbThreads);
+		}
+		return pool;
+	}
+
+	/**
+	 * Release the threads of the pool used by the logTheseTreesInParallel method. The logger 
+	 * remains usable: a new pool is created on the next call to this method.
+	 */
+	public synchronized void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+			pool = null;
+		}
+	}
+
+	private synchronized Queue<StemTaperPredictor> getIdlePredictors() {
+		if (idlePredictors == null) {
+			idlePredictors = new ConcurrentLinkedQueue<StemTaperPredictor>();
+			idlePredictors.add(stp);
+		}
+		return idlePredictors;
+	}
+
+	/*
+	 * Buck a tree into wood pieces. The predictor and the segment list are provided by the caller so 
+	 * that this method does not depend on the state of the logger. An exception does not propagate: it 
+	 * is kept in the result along with the pieces extracted so far and it is reported when the tree is logged.
+	 */
+	private BuckingResult buckThisTree(SybilleLoggableTree tree, StemTaperPredictor stp, StemTaperSegmentList segments) {
+		BuckingResult result = new BuckingResult();
+		List<SybilleWoodPiece> extractedPieces = result.pieces;
 		boolean optimize = getTreeLoggerParameters().isIntegrationOptimizationEnabled();
 
 		SybilleLoggableTree t = (SybilleLoggableTree) tree;
@@ -103,23 +255,26 @@ public class SybilleTreeLogger extends TreeLogger<SybilleTreeLoggerParameters, S
 
 		try {
 			estimate = stp.getPredictedTaperForTheseSegments(t, segments, getTreeLoggerParameters().getEstimationMethod());
-			List<SybilleWoodPiece> pieces;
+			SybilleBuckingEngine engine = new SybilleBuckingEngine(estimate, optimize);
+			if (getTreeLoggerParameters().getBuckingMode() == BuckingMode.Optimal) {
+				extractedPieces.addAll(engine.getOptimalLogs(t, getTreeLoggerParameters().getLogCategories().get(speciesName), heightM));
+				return result;
+			}
+			SybilleWoodPiece wp;
 			do {
-				pieces = null;
+				wp = null;
 				for (SybilleTreeLogCategory logCategory : getTreeLoggerParameters().getLogCategories().get(speciesName)) {
-					pieces = logCategory.extractFromTree(t, estimate, heightM, optimize);
-					if (pieces != null) {
-						for (SybilleWoodPiece wp : pieces) {
-							heightM += wp.getLength();		// we add the length of the log to the heightM variable
-							addWoodPiece(t, wp);
-						}
+					wp = logCategory.extractFromTree(t, engine, heightM);
+					if (wp != null) {
+						heightM += wp.getLength();		// we add the length of the log to the heightM variable
+						extractedPieces.add(wp);
 						break;
 					}
 				}
 //				if (pieces != null) {				// if wp is null it means that no log grade could be extracted, i.e. the log grade requirements are not met
 //					addWoodPiece(t, wp);
 //				} 
-			} while (pieces != null);
+			} while (wp != null);
 //			if (getWoodPieces().get(t) == null) {
 //				System.out.println("Sybille could not extract any wood piece from tree : " + t.getSpeciesName() + t.getSubjectId());
 //				heightM = getTreeLoggerParameters().getStumpHeightM();
@@ -138,11 +293,11 @@ public class SybilleTreeLogger extends TreeLogger<SybilleTreeLoggerParameters, S
 //				} while (wp != null);
 //			}
 		} catch (Exception e) {
-			System.out.println("Sybille could not log tree : " + t.getSpeciesName() + t.getSubjectId());
-			e.printStackTrace();
+			result.failure = new RuntimeException("Sybille could not log tree : " + t.getSpeciesName() + t.getSubjectId(), e);
 //			heightM = getTreeLoggerParameters().getStumpHeightM();
 //			estimate = stp.getPredictedTaperForTheseSegments(t, segments, getTreeLoggerParameters().getEstimationMethod());
 		}
+		return result;
 	}
 
 	@Override
@@ -22,6 +22,7 @@ import java.awt.Container;
 import java.awt.Window;
 import java.io.IOException;
 import java.lang.reflect.Field;
+import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -69,6 +70,23 @@ public class SybilleTreeLoggerParameters extends TreeLoggerParameters<SybilleTre
 	
 	
 	
+	/**
+	 * The BuckingMode enum defines how the logs are extracted from the trees.
+	 * @author Mathieu Fortin - October 2026
+	 */
+	public static enum BuckingMode {
+		/**
+		 * At each height, the first log category that fits is extracted.
+		 */
+		Greedy,
+		/**
+		 * The sequence of logs that maximizes the total value of the tree is extracted. The
+		 * value of a log is its volume times the value per m3 of its log category. 
+		 * @see SybilleTreeLogCategory#setValuePerM3(double)
+		 */
+		Optimal
+	}
+	
 	/**
 	 * The stump height (m), ie. the height at which the bucking begins.
 	 */
@@ -78,6 +96,8 @@ public class SybilleTreeLoggerParameters extends TreeLoggerParameters<SybilleTre
 	
 	private boolean integrationOptimization = true;			// means CompositeSimpsonRule is given priority over TrapezoidalRule
 
+	private BuckingMode buckingMode = BuckingMode.Greedy;
+
 	private transient SybilleTreeLoggerParametersDialog guiInterface;
 	
 
@@ -151,6 +171,25 @@ public class SybilleTreeLoggerParameters extends TreeLoggerParameters<SybilleTre
 	 */
 	public boolean isIntegrationOptimizationEnabled() {return integrationOptimization;}
 
+	/**
+	 * This method sets the bucking mode. By default, the bucking is greedy.
+	 * @param buckingMode a BuckingMode enum
+	 */
+	public void setBuckingMode(BuckingMode buckingMode) {
+		if (buckingMode == null) {
+			throw new InvalidParameterException("The bucking mode cannot be null!");
+		}
+		this.buckingMode = buckingMode;
+	}
+	
+	/**
+	 * This method returns the bucking mode.
+	 * @return a BuckingMode enum
+	 */
+	public BuckingMode getBuckingMode() {
+		return buckingMode == null ? BuckingMode.Greedy : buckingMode;		// null for the instances serialized before the bucking mode was introduced
+	}
+	
 	@Override
 	public boolean isVisible() {
 		return guiInterface != null && guiInterface.isVisible();
@@ -44,6 +44,18 @@ public class SybilleWoodPiece extends WoodPiece {
 		this.trueLengthM = trueLengthM;
 	}
 	
+	/**
+	 * Constructor for the SybilleBuckingEngine class, which only computes the mean volume.
+	 * @param logCategory a LogCategory instance
+	 * @param tree a LoggableTree instance
+	 * @param underbarkVolumeDm3 the underbark volume (dm3)
+	 * @param trueLengthM the true length of the log (m)
+	 */
+	protected SybilleWoodPiece(LogCategory logCategory, LoggableTree tree, double underbarkVolumeDm3, double trueLengthM) {
+		super(logCategory, tree, false, underbarkVolumeDm3 * .001);		// with bark is false
+		this.trueLengthM = trueLengthM;
+	}
+	
 	@Override
 	public String toString() {
 		return "Log category = " + getLogCategory().getName() + "; Species = " + getTreeFromWhichComesThisPiece().getSpeciesName();
@@ -0,0 +1,172 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package canforservutility.occupancyindex;
+
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class OccupancyIndexRealizationCacheTest {
+
+	@Test
+	public void test01PutGetAndEviction() {
+		OccupancyIndexRealizationCache cache = new OccupancyIndexRealizationCache(2);
+		int nbPlots = 500;
+		int nbRealizations = 10;
+		for (int p = 0; p < nbPlots; p++) {
+			for (int r = 0; r < nbRealizations; r++) {
+				for (int dateYr = 2000; dateYr <= 2020; dateYr += 10) {
+					cache.put("plot" + p, r, dateYr, p + r * .001, dateYr);
+				}
+			}
+		}
+		Assert.assertEquals("Testing the size", nbPlots * nbRealizations * 3, cache.size());
+		cache.put("plot3", 2, 2010, -1d, -2d);		// replacement
+		Assert.assertEquals("Testing the size after a replacement", nbPlots * nbRealizations * 3, cache.size());
+		Assert.assertEquals("Testing the replaced value", -2d, cache.getValue("plot3", 2, 2010, 1), 0d);
+		Assert.assertEquals("Testing a value", 7.005, cache.getValue("plot7", 5, 2020, 0), 1E-12);
+		Assert.assertEquals("Testing a value", 2020d, cache.getValue("plot7", 5, 2020, 1), 0d);
+		Assert.assertTrue("Testing an unknown plot", Double.isNaN(cache.getValue("unknown", 5, 2020, 0)));
+		Assert.assertFalse("Testing an unknown date", cache.contains("plot7", 5, 2015));
+		
+		cache.evictRealization(5);
+		Assert.assertEquals("Testing the size after eviction", nbPlots * (nbRealizations - 1) * 3, cache.size());
+		Assert.assertFalse("Testing that the realization was evicted", cache.contains("plot7", 5, 2020));
+		Assert.assertEquals("Testing a value of another realization", 7.004, cache.getValue("plot7", 4, 2020, 0), 1E-12);
+		
+		cache.clear();
+		Assert.assertEquals("Testing the size after clearing", 0, cache.size());
+		Assert.assertFalse("Testing that the cache is empty", cache.contains("plot7", 4, 2020));
+	}
+	
+	@Test(expected = InvalidParameterException.class)
+	public void test02InvalidWidth() {
+		new OccupancyIndexRealizationCache(2).put("plot1", 0, 2000, 1d);
+	}
+
+	/*
+	 * Any date and any realization id can be stored. The entries that only differ by their realization 
+	 * id or their date must not overwrite each other.
+	 */
+	@Test
+	public void test03WideDatesAndRealizations() {
+		OccupancyIndexRealizationCache cache = new OccupancyIndexRealizationCache(1);
+		int[] dates = new int[] {-2000, 0, 4095, 4096, Integer.MIN_VALUE, Integer.MAX_VALUE};
+		int[] realizationIds = new int[] {0, 1, (1 << 20) - 1, 1 << 20, Integer.MAX_VALUE, -1};
+		double value = 0d;
+		for (int dateYr : dates) {
+			for (int realizationId : realizationIds) {
+				cache.put("plot1", realizationId, dateYr, value++);
+			}
+		}
+		Assert.assertEquals("Testing the size", dates.length * realizationIds.length, cache.size());
+		value = 0d;
+		for (int dateYr : dates) {
+			for (int realizationId : realizationIds) {
+				Assert.assertEquals("Testing the value for date " + dateYr + " and realization " + realizationId, 
+						value++, 
+						cache.getValue("plot1", realizationId, dateYr, 0), 
+						0d);
+			}
+		}
+		cache.evictRealization(-1);
+		Assert.assertEquals("Testing the size after eviction", dates.length * (realizationIds.length - 1), cache.size());
+		Assert.assertFalse("Testing that the realization was evicted", cache.contains("plot1", -1, 4096));
+		Assert.assertTrue("Testing another realization", cache.contains("plot1", Integer.MAX_VALUE, 4096));
+	}
+
+	@Test
+	public void test04PutIfAbsent() {
+		OccupancyIndexRealizationCache cache = new OccupancyIndexRealizationCache(1);
+		Assert.assertTrue("Testing the first put", cache.putIfAbsent("plot1", 0, 2000, 1d));
+		Assert.assertFalse("Testing the second put", cache.putIfAbsent("plot1", 0, 2000, 2d));
+		Assert.assertEquals("Testing that the first value is kept", 1d, cache.getValue("plot1", 0, 2000, 0), 0d);
+		Assert.assertEquals("Testing the size", 1, cache.size());
+	}
+
+	/*
+	 * The readers must never see an entry whose values are partially written, even if the table 
+	 * is rehashed, the entries are replaced or a realization is evicted.
+	 */
+	@Test
+	public void test05ConcurrentReadsAndWrites() throws Exception {
+		OccupancyIndexRealizationCache cache = new OccupancyIndexRealizationCache(2);
+		int nbPlots = 2000;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> readers = new ArrayList<Future<Integer>>();
+			for (int t = 0; t < 3; t++) {
+				readers.add(executor.submit(() -> {
+					int nbFound = 0;
+					for (int pass = 0; pass < 20; pass++) {
+						for (int p = 0; p < nbPlots; p++) {
+							double value0 = cache.getValue("plot" + p, 1, 2000, 0);
+							double value1 = cache.getValue("plot" + p, 1, 2000, 1);
+							if (!Double.isNaN(value0)) {
+								Assert.assertTrue("Testing that the values are consistent", value1 == p || value1 == -p);
+								nbFound++;
+							}
+						}
+					}
+					return nbFound;
+				}));
+			}
+			Future<?> writer = executor.submit(() -> {
+				for (int p = 0; p < nbPlots; p++) {
+					cache.put("plot" + p, 1, 2000, p, p);
+					cache.put("plot" + p, 0, 2000, p, p);
+					if (p % 100 == 0) {
+						cache.put("plot" + (p / 2), 1, 2000, -p / 2, -p / 2);
+						cache.evictRealization(0);
+					}
+				}
+			});
+			writer.get();
+			for (Future<Integer> reader : readers) {
+				reader.get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+		Assert.assertEquals("Testing the size", nbPlots + 99, cache.size());	// realization 0 only holds the plots stored after the last eviction
+	}
+
+	/*
+	 * A NaN value, typically the variance of an occupancy index that cannot be estimated, is a value 
+	 * like any other: the entry is in the cache and it is not replaced by putIfAbsent.
+	 */
+	@Test
+	public void test06NaNValues() {
+		OccupancyIndexRealizationCache cache = new OccupancyIndexRealizationCache(2);
+		Assert.assertFalse("Testing the absent entry", cache.contains("plot1", 0, 2000));
+		Assert.assertTrue("Testing the first put", cache.putIfAbsent("plot1", 0, 2000, 0.5, Double.NaN));
+		Assert.assertTrue("Testing the entry with a NaN value", cache.contains("plot1", 0, 2000));
+		Assert.assertFalse("Testing the second put", cache.putIfAbsent("plot1", 0, 2000, 0.7, 0.1));
+		Assert.assertEquals("Testing the mean", 0.5, cache.getValue("plot1", 0, 2000, 0), 0d);
+		Assert.assertTrue("Testing the variance", Double.isNaN(cache.getValue("plot1", 0, 2000, 1)));
+	}
+
+}
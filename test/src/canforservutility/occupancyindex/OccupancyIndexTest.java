@@ -19,9 +19,14 @@
  */
 package canforservutility.occupancyindex;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.junit.AfterClass;
@@ -31,7 +36,10 @@ import org.junit.Test;
 
 import canforservutility.predictor.iris.recruitment_v1.IrisTree.IrisSpecies;
 import repicea.io.javacsv.CSVReader;
+import repicea.math.Matrix;
+import repicea.simulation.geographic.GeographicDistanceCalculator;
 import repicea.stats.estimates.GaussianEstimate;
+import repicea.stats.sampling.PopulationMeanEstimate;
 import repicea.util.ObjectUtility;
 
 public class OccupancyIndexTest {
@@ -62,7 +70,7 @@ public class OccupancyIndexTest {
 		OccupancyIndexCalculator calculator = new OccupancyIndexCalculator(plots);
 		System.out.println(calculator.getMaximumDistanceNearestPlot());
 		Assert.assertEquals("Testing the size of the id list", 12267, calculator.plotsId.size());
-		Assert.assertEquals("Testing the size of the distance matrix", 12267, calculator.distances.m_iRows);
+		Assert.assertEquals("Testing the size of the spatial index", 12267, calculator.spatialIndex.size());
 		ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>> dateFilteredPlots = new ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>>();
 		GaussianEstimate proximityIndexEstimate = calculator.getOccupancyIndex(plots, plots.get(0), IrisSpecies.ERS, 15d, dateFilteredPlots);
 		double proximityIndexMean = proximityIndexEstimate.getMean().getValueAt(0, 0);
@@ -91,6 +99,171 @@ public class OccupancyIndexTest {
 	}
 
 	
+	@Test
+	public void test03SpatialIndexAgainstExhaustiveSearch() throws IOException {
+		OccupancyIndexCalculator calculator = new OccupancyIndexCalculator(plots);
+		SphericalKdTree index = calculator.spatialIndex;
+		int n = index.size();
+		for (int i = 0; i < n; i += 613) {
+			Set<Integer> expected = new HashSet<Integer>();
+			int expectedNearestNeighbor = -1;
+			double expectedNearestDistanceKm = Double.POSITIVE_INFINITY;
+			for (int j = 0; j < n; j++) {
+				double distanceKm = index.getDistanceKm(i, j);
+				if (distanceKm < 15d) {
+					expected.add(j);
+				}
+				if (j != i && distanceKm < expectedNearestDistanceKm) {
+					expectedNearestDistanceKm = distanceKm;
+					expectedNearestNeighbor = j;
+				}
+			}
+			List<Integer> actual = new ArrayList<Integer>();
+			index.addPointsWithinDistance(i, 15d, actual);
+			Set<Integer> actualWithinRadius = new HashSet<Integer>();
+			for (Integer j : actual) {
+				if (index.getDistanceKm(i, j) < 15d) {
+					actualWithinRadius.add(j);
+				}
+			}
+			Assert.assertEquals("Testing the plots within the radius of plot " + i, expected, actualWithinRadius);
+			int actualNearestNeighbor = index.findNearestNeighbor(i);
+			Assert.assertEquals("Testing the distance to the nearest neighbour of plot " + i, 
+					expectedNearestDistanceKm, 
+					index.getDistanceKm(i, actualNearestNeighbor), 
+					1E-9);
+			Assert.assertTrue("Testing that some nearest neighbour was found", expectedNearestNeighbor != -1);
+		}
+	}
+	
+	@Test
+	public void test04BatchEngineAgainstSinglePlotImplementation() throws IOException {
+		OccupancyIndexCalculator calculator = new OccupancyIndexCalculator(plots);
+		OccupancyIndexBatchEngine engine = new OccupancyIndexBatchEngine(calculator, plots);
+		List<IrisSpecies> speciesList = new ArrayList<IrisSpecies>();
+		speciesList.add(IrisSpecies.ERS);
+		OccupancyIndexBatchEngine.Result sequentialResult = engine.computeOccupancyIndices(speciesList, 15d, 1);
+		OccupancyIndexBatchEngine.Result parallelResult = engine.computeOccupancyIndices(speciesList, 15d, 4);
+		Assert.assertArrayEquals("Testing the means of the parallel implementation", sequentialResult.getMeans(0), parallelResult.getMeans(0), 0d);
+		Assert.assertArrayEquals("Testing the variances of the parallel implementation", sequentialResult.getVariances(0), parallelResult.getVariances(0), 0d);
+		ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>> dateFilteredPlots = new ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>>();
+		for (int i = 0; i < plots.size(); i += 97) {
+			GaussianEstimate expected = calculator.getOccupancyIndex(plots, plots.get(i), IrisSpecies.ERS, 15d, dateFilteredPlots);
+			Assert.assertEquals("Testing the mean of plot " + i, expected.getMean().getValueAt(0, 0), sequentialResult.getMeans(0)[i], 1E-12);
+			Assert.assertEquals("Testing the variance of plot " + i, expected.getVariance().getValueAt(0, 0), sequentialResult.getVariances(0)[i], 1E-12);
+		}
+	}
+	
+	@Test
+	public void test05OccupancyIndexCacheWriteAndLoad() throws IOException {
+		OccupancyIndexCalculator calculator = new OccupancyIndexCalculator(plots);
+		List<IrisSpecies> speciesList = new ArrayList<IrisSpecies>();
+		speciesList.add(IrisSpecies.ERS);
+		File file = File.createTempFile("occupancyIndexCache", ".bin");
+		file.deleteOnExit();
+		calculator.writeOccupancyIndexCache(file, plots, speciesList, 15d, 2);
+		OccupancyIndexCache cache = OccupancyIndexCache.load(file);
+		Assert.assertEquals("Testing the radius", 15d, cache.getRadiusKm(), 0d);
+		Assert.assertEquals("Testing the maximum year difference", calculator.getMaximumYearDifference(), cache.getMaximumYearDifference());
+		ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>> dateFilteredPlots = new ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>>();
+		for (int i = 0; i < plots.size(); i += 97) {
+			OccupancyIndexCalculablePlot plot = plots.get(i);
+			GaussianEstimate expected = calculator.getOccupancyIndex(plots, plot, IrisSpecies.ERS, 15d, dateFilteredPlots);
+			GaussianEstimate actual = cache.getOccupancyIndex(plot.getSubjectId(), plot.getDateYr(), IrisSpecies.ERS);
+			Assert.assertNotNull("Testing that plot " + i + " is in the cache", actual);
+			Assert.assertEquals("Testing the mean of plot " + i, expected.getMean().getValueAt(0, 0), actual.getMean().getValueAt(0, 0), 1E-12);
+			Assert.assertEquals("Testing the variance of plot " + i, expected.getVariance().getValueAt(0, 0), actual.getVariance().getValueAt(0, 0), 1E-12);
+		}
+		Assert.assertNull("Testing an unknown plot", cache.getOccupancyIndex("unknownPlot", plots.get(0).getDateYr(), IrisSpecies.ERS));
+		Assert.assertNull("Testing an unknown date", cache.getOccupancyIndex(plots.get(0).getSubjectId(), -1, IrisSpecies.ERS));
+		Assert.assertNull("Testing an unknown species", cache.getOccupancyIndex(plots.get(0).getSubjectId(), plots.get(0).getDateYr(), IrisSpecies.SAB));
+	}
+	
+	/*
+	 * Distance between two plots as in the original implementation, which computed the full distance matrix 
+	 * through the GeographicDistanceCalculator class.
+	 */
+	private static double getLegacyDistanceKm(OccupancyIndexCalculablePlot plot1, OccupancyIndexCalculablePlot plot2) {
+		Matrix latitudes = new Matrix(2, 1);
+		Matrix longitudes = new Matrix(2, 1);
+		latitudes.setValueAt(0, 0, plot1.getLatitudeDeg());
+		latitudes.setValueAt(1, 0, plot2.getLatitudeDeg());
+		longitudes.setValueAt(0, 0, plot1.getLongitudeDeg());
+		longitudes.setValueAt(1, 0, plot2.getLongitudeDeg());
+		return GeographicDistanceCalculator.getDistanceBetweenTheseCoordinates(latitudes, longitudes).getValueAt(0, 1);
+	}
+	
+	/*
+	 * Occupancy index as in the original implementation, that is with the plots filtered on the distances of the 
+	 * GeographicDistanceCalculator class.
+	 */
+	private static double[] getLegacyOccupancyIndex(OccupancyIndexCalculator calculator, 
+			Map<String, OccupancyIndexCalculablePlot> firstEntryPlots,
+			OccupancyIndexCalculablePlot thisPlot, 
+			double radiusKm) {
+		OccupancyIndexCalculablePlot thisFirstEntry = firstEntryPlots.get(thisPlot.getSubjectId());
+		Map<String, OccupancyIndexCalculablePlot> singletonMap = new HashMap<String, OccupancyIndexCalculablePlot>();
+		for (OccupancyIndexCalculablePlot p : plots) {
+			int yearDiff = thisPlot.getDateYr() - p.getDateYr();
+			if (yearDiff >= calculator.getMinimumYearDifference() && yearDiff <= calculator.getMaximumYearDifference() && 
+					getLegacyDistanceKm(thisFirstEntry, firstEntryPlots.get(p.getSubjectId())) < radiusKm) {
+				if (!singletonMap.containsKey(p.getSubjectId()) || 
+						(singletonMap.get(p.getSubjectId()).getBasalAreaM2HaForThisSpecies(IrisSpecies.ERS) == 0d && p.getBasalAreaM2HaForThisSpecies(IrisSpecies.ERS) > 0d)) {
+					singletonMap.put(p.getSubjectId(), p);
+				}
+			}
+		}
+		if (singletonMap.size() == 1) {
+			return new double[] {Double.NaN, Double.NaN};
+		}
+		PopulationMeanEstimate estimate = new PopulationMeanEstimate();
+		int i = 0;
+		for (OccupancyIndexCalculablePlot p : singletonMap.values()) {
+			estimate.addObservation(new Matrix(1, 1, p.getBasalAreaM2HaForThisSpecies(IrisSpecies.ERS) > 0 ? 1 : 0, 0), i++ + "");
+		}
+		return new double[] {estimate.getMean().getValueAt(0, 0), estimate.getVariance().getValueAt(0, 0)};
+	}
+	
+	/*
+	 * The neighbour sets and the occupancy indices obtained through the spatial index must be those of the original
+	 * implementation, which relied on the distance matrix of the GeographicDistanceCalculator class.
+	 */
+	@Test
+	public void test06SpatialIndexAgainstLegacyDistanceMatrix() throws IOException {
+		OccupancyIndexCalculator calculator = new OccupancyIndexCalculator(plots);
+		Map<String, OccupancyIndexCalculablePlot> firstEntryPlots = new HashMap<String, OccupancyIndexCalculablePlot>();
+		List<OccupancyIndexCalculablePlot> plotsByIndex = new ArrayList<OccupancyIndexCalculablePlot>();
+		for (OccupancyIndexCalculablePlot p : plots) {
+			if (!firstEntryPlots.containsKey(p.getSubjectId())) {
+				firstEntryPlots.put(p.getSubjectId(), p);
+				plotsByIndex.add(p);
+			}
+		}
+		double radiusKm = 15d;
+		int n = plotsByIndex.size();
+		for (int i = 0; i < n; i += 409) {
+			OccupancyIndexCalculablePlot thisPlot = plotsByIndex.get(i);
+			int index = calculator.plotsId.get(thisPlot.getSubjectId());
+			Set<Integer> expected = new HashSet<Integer>();
+			for (int j = 0; j < n; j++) {
+				OccupancyIndexCalculablePlot otherPlot = plotsByIndex.get(j);
+				if (getLegacyDistanceKm(thisPlot, otherPlot) < radiusKm) {
+					expected.add(calculator.plotsId.get(otherPlot.getSubjectId()));
+				}
+			}
+			Assert.assertEquals("Testing the neighbours of plot " + thisPlot.getSubjectId(), expected, calculator.getPlotIndicesWithinRadius(index, radiusKm));
+		}
+		
+		ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>> dateFilteredPlots = new ConcurrentHashMap<Integer, List<OccupancyIndexCalculablePlot>>();
+		for (int i = 0; i < plots.size(); i += 1201) {
+			OccupancyIndexCalculablePlot thisPlot = plots.get(i);
+			double[] expected = getLegacyOccupancyIndex(calculator, firstEntryPlots, thisPlot, radiusKm);
+			GaussianEstimate actual = calculator.getOccupancyIndex(plots, thisPlot, IrisSpecies.ERS, radiusKm, dateFilteredPlots);
+			Assert.assertEquals("Testing the mean of plot " + i, expected[0], actual.getMean().getValueAt(0, 0), 1E-12);
+			Assert.assertEquals("Testing the variance of plot " + i, expected[1], actual.getVariance().getValueAt(0, 0), 1E-12);
+		}
+	}
+	
 	@AfterClass
 	public static void cleanup() {
 		if (plots != null) {
@@ -98,4 +271,36 @@ public class OccupancyIndexTest {
 		}
 	}
 
+	@Test
+	public void test07OccupancyIndexCacheNetworkFingerprint() throws IOException {
+		OccupancyIndexCalculator calculator = new OccupancyIndexCalculator(plots);
+		List<IrisSpecies> speciesList = new ArrayList<IrisSpecies>();
+		speciesList.add(IrisSpecies.ERS);
+		File file = File.createTempFile("occupancyIndexCache", ".bin");
+		file.deleteOnExit();
+		calculator.writeOccupancyIndexCache(file, plots, speciesList, 15d, 2);
+		OccupancyIndexCache cache = OccupancyIndexCache.load(file);
+		Assert.assertTrue("Testing the network the cache was written from", cache.isCalculatedFrom(plots, IrisSpecies.class));
+		
+		List<OccupancyIndexCalculablePlot> simulatedPlots = new ArrayList<OccupancyIndexCalculablePlot>(plots);
+		OccupancyIndexCalculablePlot firstPlot = plots.get(0);
+		simulatedPlots.set(0, new SimpleOccupancyIndexCalculablePlot(firstPlot.getSubjectId(), 
+				firstPlot.getLatitudeDeg(), 
+				firstPlot.getLongitudeDeg(), 
+				firstPlot.getDateYr(), 
+				firstPlot.getBasalAreaM2HaForThisSpecies(IrisSpecies.ERS) + 1d));
+		Assert.assertFalse("Testing a network with a different basal area", cache.isCalculatedFrom(simulatedPlots, IrisSpecies.class));
+		Assert.assertFalse("Testing a network with a missing plot", cache.isCalculatedFrom(plots.subList(1, plots.size()), IrisSpecies.class));
+		
+		calculator.writeOccupancyIndexCache(file, simulatedPlots, speciesList, 15d, 2);		// replacing the file while the former one is mapped
+		OccupancyIndexCache newCache = OccupancyIndexCache.load(file);
+		Assert.assertTrue("Testing the new network", newCache.isCalculatedFrom(simulatedPlots, IrisSpecies.class));
+		Assert.assertFalse("Testing the former network", newCache.isCalculatedFrom(plots, IrisSpecies.class));
+		Assert.assertNotEquals("Testing the fingerprints", cache.getNetworkFingerprint(), newCache.getNetworkFingerprint());
+		Assert.assertNotNull("Testing that the former cache is still readable", 
+				cache.getOccupancyIndex(firstPlot.getSubjectId(), firstPlot.getDateYr(), IrisSpecies.ERS));
+		File[] tmpFiles = file.getAbsoluteFile().getParentFile().listFiles((dir, name) -> name.startsWith(file.getName()) && name.endsWith(".tmp"));
+		Assert.assertEquals("Testing that the temporary files were removed", 0, tmpFiles.length);
+	}
+
 }
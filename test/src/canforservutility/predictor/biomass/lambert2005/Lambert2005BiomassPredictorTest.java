@@ -361,6 +361,188 @@ public class Lambert2005BiomassPredictorTest {
 		double observed = pred.predictTotalBiomassMg("Abies lasiocarpa", 33.1);
 		Assert.assertEquals("Comparing fasttrack 2-parm model", 0.38409593131, observed, 1E-8);
 	}
+
+	@Test
+	public void test08DeterministicBlockPredictions() {
+		Lambert2005BiomassPredictor pred = new Lambert2005BiomassPredictor();
+		int nbCompartments = BiomassCompartment.values().length;
+		double[] dbhCm = new double[] {9.1, 15.4, 27.7, 42.3};
+		double[] heightM = new double[] {8.2, 12.5, 22.1, 25.6};
+		for (Species species : pred.getEligibleSpecies()) {
+			double[][] complete = pred.predictBiomassKg(species, dbhCm, heightM, 2);
+			double[][] reduced = pred.predictBiomassKg(species, dbhCm, null, 2);
+			Assert.assertEquals("Testing number of realizations", 2, complete.length);
+			for (int t = 0; t < dbhCm.length; t++) {
+				Matrix expectedComplete = pred.predictBiomassKg(new Lambert2005TreeCompleteImpl(species, dbhCm[t], heightM[t]));
+				Matrix expectedReduced = pred.predictBiomassKg(new Lambert2005TreeReducedImpl(species, dbhCm[t]));
+				for (int r = 0; r < complete.length; r++) {
+					for (int c = 0; c < nbCompartments; c++) {
+						Assert.assertEquals("Testing complete version for species " + species.name(), 
+								expectedComplete.getValueAt(c, 0), 
+								complete[r][t * nbCompartments + c], 
+								1E-10);
+						Assert.assertEquals("Testing reduced version for species " + species.name(), 
+								expectedReduced.getValueAt(c, 0), 
+								reduced[r][t * nbCompartments + c], 
+								1E-10);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test09StochasticBlockPredictions() {
+		Lambert2005BiomassPredictor deterministicPred = new Lambert2005BiomassPredictor();
+		Lambert2005BiomassPredictor stochasticPred = new Lambert2005BiomassPredictor(false, true);
+		Lambert2005Tree tree = new Lambert2005TreeCompleteImpl(Species.Abies_balsamea, 30, 20);
+		Matrix expected = deterministicPred.predictBiomassKg(tree);
+		int nbRealizations = 10000;
+		double[][] realizations = stochasticPred.predictBiomassKg(tree, nbRealizations);
+		Assert.assertEquals("Testing number of realizations", nbRealizations, realizations.length);
+		double[] mean = new double[BiomassCompartment.values().length];
+		for (double[] realization : realizations) {
+			Assert.assertEquals("Testing stem", 
+					realization[BiomassCompartment.WOOD.ordinal()] + realization[BiomassCompartment.BARK.ordinal()], 
+					realization[BiomassCompartment.STEM.ordinal()], 
+					1E-10);
+			Assert.assertEquals("Testing crown", 
+					realization[BiomassCompartment.BRANCHES.ordinal()] + realization[BiomassCompartment.FOLIAGE.ordinal()], 
+					realization[BiomassCompartment.CROWN.ordinal()], 
+					1E-10);
+			for (int c = 0; c < mean.length; c++) {
+				Assert.assertTrue("Testing non negative values", realization[c] >= 0d);
+				mean[c] += realization[c] / nbRealizations;
+			}
+		}
+		Assert.assertTrue("Testing residual variability", realizations[0][BiomassCompartment.TOTAL.ordinal()] != realizations[1][BiomassCompartment.TOTAL.ordinal()]);
+		double expectedTotal = expected.getValueAt(BiomassCompartment.TOTAL.ordinal(), 0);
+		Assert.assertEquals("Testing mean total biomass", expectedTotal, mean[BiomassCompartment.TOTAL.ordinal()], expectedTotal * 0.05);
+	}
+
+	@Test
+	public void test10AggregatedTotals() {
+		Lambert2005BiomassPredictor pred = new Lambert2005BiomassPredictor();
+		Lambert2005BiomassAggregator aggregator = new Lambert2005BiomassAggregator(pred);
+		List<Lambert2005Tree> trees = new ArrayList<Lambert2005Tree>();
+		trees.add(new Lambert2005TreeCompleteImpl(Species.Abies_balsamea, 12.3, 10.4));
+		trees.add(new Lambert2005TreeCompleteImpl(Species.Abies_balsamea, 27.7, 22.1));
+		trees.add(new Lambert2005TreeReducedImpl(Species.Abies_balsamea, 18.5));
+		trees.add(new Lambert2005TreeCompleteImpl(Species.Populus_tremuloides, 31.2, 24.3));
+		Matrix expected = new Matrix(BiomassCompartment.values().length, 1);
+		double expansionFactor = 25d;
+		for (Lambert2005Tree t : trees) {
+			aggregator.addTree(t, expansionFactor);
+			expected = expected.add(pred.predictBiomassKg(t).scalarMultiply(expansionFactor));
+		}
+		Assert.assertEquals("Testing number of trees", trees.size(), aggregator.getNumberOfTrees());
+		Matrix actual = aggregator.getTotalBiomassKg();
+		for (int c = 0; c < expected.m_iRows; c++) {
+			Assert.assertEquals("Testing total biomass", expected.getValueAt(c, 0), actual.getValueAt(c, 0), 1E-8);
+		}
+		Matrix variance = aggregator.getVarianceKg2();
+		double varianceOfBasicCompartments = 0d;
+		for (BiomassCompartment bc1 : BiomassCompartment.getBasicBiomassCompartments()) {
+			Assert.assertTrue("Testing positive variance", variance.getValueAt(bc1.ordinal(), bc1.ordinal()) > 0d);
+			for (BiomassCompartment bc2 : BiomassCompartment.getBasicBiomassCompartments()) {
+				varianceOfBasicCompartments += variance.getValueAt(bc1.ordinal(), bc2.ordinal());
+			}
+		}
+		Assert.assertEquals("Testing variance of total biomass", 
+				varianceOfBasicCompartments, 
+				variance.getValueAt(BiomassCompartment.TOTAL.ordinal(), BiomassCompartment.TOTAL.ordinal()), 
+				1E-6);
+	}
+
+	@Test
+	public void test11AggregatedVarianceAgainstMonteCarlo() {
+		double[] dbhCm = new double[] {15.4, 27.7, 42.3};
+		double[] heightM = new double[] {12.5, 22.1, 25.6};
+		int nbRealizations = 20000;
+		for (int source = 0; source < 2; source++) {
+			boolean isParameterUncertaintyIncluded = source == 0;
+			Lambert2005BiomassPredictor stochasticPred = new Lambert2005BiomassPredictor(isParameterUncertaintyIncluded, !isParameterUncertaintyIncluded);
+			Lambert2005BiomassAggregator aggregator = new Lambert2005BiomassAggregator(new Lambert2005BiomassPredictor(), 
+					isParameterUncertaintyIncluded, 
+					!isParameterUncertaintyIncluded);
+			for (int t = 0; t < dbhCm.length; t++) {
+				aggregator.addTree(Species.Abies_balsamea, dbhCm[t], heightM[t], 1d);
+			}
+			double[][] realizations = stochasticPred.predictBiomassKg(Species.Abies_balsamea, dbhCm, heightM, nbRealizations);
+			int nbCompartments = BiomassCompartment.values().length;
+			double sum = 0d;
+			double sumSquares = 0d;
+			for (double[] realization : realizations) {
+				double total = 0d;
+				for (int t = 0; t < dbhCm.length; t++) {
+					total += realization[t * nbCompartments + BiomassCompartment.TOTAL.ordinal()];
+				}
+				sum += total;
+				sumSquares += total * total;
+			}
+			double mcVariance = (sumSquares - sum * sum / nbRealizations) / (nbRealizations - 1);
+			double deltaVariance = aggregator.getVarianceKg2().getValueAt(BiomassCompartment.TOTAL.ordinal(), BiomassCompartment.TOTAL.ordinal());
+			Assert.assertEquals("Testing variance with parameter uncertainty = " + isParameterUncertaintyIncluded, 
+					mcVariance, 
+					deltaVariance, 
+					mcVariance * 0.1);
+		}
+	}
+	
+	static class RealizationTree extends Lambert2005TreeCompleteImpl {
+
+		final int monteCarloRealizationId;
+		
+		RealizationTree(Species species, double dbhCm, double heightM, int monteCarloRealizationId) {
+			super(species, dbhCm, heightM);
+			this.monteCarloRealizationId = monteCarloRealizationId;
+		}
+
+		@Override
+		public int getMonteCarloRealizationId() {return monteCarloRealizationId;}
+	}
+	
+	@Test
+	public void test12ParameterVariabilityInBlockPredictions() {
+		double[] dbhCm = new double[] {15.4, 27.7, 42.3};
+		double[] heightM = new double[] {12.5, 22.1, 25.6};
+		int nbRealizations = 2000;
+		int nbCompartments = BiomassCompartment.values().length;
+		Lambert2005BiomassPredictor stochasticPred = new Lambert2005BiomassPredictor(true, false);
+		double[][] realizations = stochasticPred.predictBiomassKg(Species.Abies_balsamea, dbhCm, heightM, nbRealizations);
+		double[][] secondCall = stochasticPred.predictBiomassKg(Species.Abies_balsamea, dbhCm, heightM, nbRealizations);
+		Matrix deterministic = new Lambert2005BiomassPredictor().predictBiomassKg(new Lambert2005TreeCompleteImpl(Species.Abies_balsamea, dbhCm[2], heightM[2]));
+		for (int t = 0; t < dbhCm.length; t++) {
+			double[] blockMean = new double[nbCompartments];
+			double[] blockSumSquares = new double[nbCompartments];
+			double[] perTreeMean = new double[nbCompartments];
+			double[] perTreeSumSquares = new double[nbCompartments];
+			for (int r = 0; r < nbRealizations; r++) {
+				Matrix perTree = stochasticPred.predictBiomassKg(new RealizationTree(Species.Abies_balsamea, dbhCm[t], heightM[t], r));
+				for (int c = 0; c < nbCompartments; c++) {
+					double blockValue = realizations[r][t * nbCompartments + c];
+					double perTreeValue = perTree.getValueAt(c, 0);
+					Assert.assertEquals("Testing the block against the per-tree path for realization " + r, perTreeValue, blockValue, 1E-8);
+					Assert.assertEquals("Testing the parameters are kept across calls", blockValue, secondCall[r][t * nbCompartments + c], 1E-10);
+					blockMean[c] += blockValue / nbRealizations;
+					blockSumSquares[c] += blockValue * blockValue;
+					perTreeMean[c] += perTreeValue / nbRealizations;
+					perTreeSumSquares[c] += perTreeValue * perTreeValue;
+				}
+			}
+			for (int c = 0; c < nbCompartments; c++) {
+				double blockVariance = (blockSumSquares[c] - nbRealizations * blockMean[c] * blockMean[c]) / (nbRealizations - 1);
+				double perTreeVariance = (perTreeSumSquares[c] - nbRealizations * perTreeMean[c] * perTreeMean[c]) / (nbRealizations - 1);
+				Assert.assertEquals("Comparing means", perTreeMean[c], blockMean[c], Math.abs(perTreeMean[c]) * 1E-10);
+				Assert.assertEquals("Comparing variances", perTreeVariance, blockVariance, perTreeVariance * 1E-6);
+				Assert.assertTrue("Testing parameter variability", blockVariance > 0d);
+			}
+			if (t == 2) {
+				double expectedTotal = deterministic.getValueAt(BiomassCompartment.TOTAL.ordinal(), 0);
+				Assert.assertEquals("Testing mean total biomass", expectedTotal, blockMean[BiomassCompartment.TOTAL.ordinal()], expectedTotal * 0.05);
+			}
+		}
+	}
 	
 	static class Tree extends VolumableTreeImpl implements Lambert2005Tree {
 
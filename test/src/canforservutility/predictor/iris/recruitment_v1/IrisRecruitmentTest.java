@@ -326,6 +326,97 @@ public class IrisRecruitmentTest {
 	
 	
 	
+	/*
+	 * Compares the scalar quadrature with the former implementation based on the GaussLegendreQuadrature class.
+	 */
+	@Test
+	public void test06ScalarQuadratureAgainstGaussLegendreQuadratureClass() throws IOException {
+		List<IrisRecruitmentPlotImpl> plots = StandardPlotList; 
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		IrisRecruitmentOccurrencePredictor predictor = new IrisRecruitmentOccurrencePredictor(false, false, false, (List) plots); // deterministic
+		int nbTested = 0;
+		for (int i = 0; i < plots.size(); i += 50) {
+			IrisRecruitmentPlotImpl plot = plots.get(i);
+			IrisSpecies species = plot.getTreeInstance().getSpecies();
+			double actual = predictor.predictEventProbability(plot, plot.getTreeInstance());
+			double expected = predictor.getInternalPredictor(species).calculateEventProbabilityWithGaussLegendreQuadrature(plot, species);
+			if (Double.isNaN(expected)) {
+				Assert.assertTrue("Testing that the probability is NaN for plot " + plot.getSubjectId(), Double.isNaN(actual));
+			} else {
+				Assert.assertEquals("Testing probability for plot " + plot.getSubjectId() + ", species " + species.name(), 
+						expected, 
+						actual, 
+						1E-12);
+				nbTested++;
+			}
+		}
+		Assert.assertTrue("Testing that some plots were tested", nbTested > 0);
+	}
+	
+	/*
+	 * Compares the predictions for all the species with the per-species predictions of the R validation 
+	 * datasets, which were produced by the original implementation that retrieved the covariates 
+	 * species by species.
+	 */
+	@Test
+	public void test07PredictionsForAllSpeciesAgainstPredictionsBySpecies() throws IOException {
+		IrisRecruitmentOccurrencePredictor occPredictor = new IrisRecruitmentOccurrencePredictor(false, null); // deterministic
+		IrisRecruitmentNumberPredictor nbPredictor = new IrisRecruitmentNumberPredictor(false, new IrisRecruitmentOccurrencePredictor(false, null)); // deterministic
+		int nbTested = 0;
+		for (IrisRecruitmentPlotImplWithKnownOccupancy plot : TestPlotListForOccurrences) {
+			IrisSpecies species = plot.getTreeInstance().getSpecies();
+			double[] probabilities = occPredictor.predictAllSpecies(plot);
+			Assert.assertEquals("Testing the length of the probability array", IrisSpecies.values().length, probabilities.length);
+			Assert.assertEquals("Testing probability for plot " + plot.getSubjectId() + ", species " + species.name(), 
+					plot.getPredProb(), 
+					probabilities[species.ordinal()], 
+					1E-8);
+			nbTested++;
+		}
+		for (IrisRecruitmentPlotImplWithKnownOccupancy plot : TestPlotListForNumbers) {
+			IrisSpecies species = plot.getTreeInstance().getSpecies();
+			double[] numbers = nbPredictor.predictAllSpecies(plot);
+			Assert.assertEquals("Testing the length of the number array", IrisSpecies.values().length, numbers.length);
+			Assert.assertEquals("Testing number for plot " + plot.getSubjectId() + ", species " + species.name(), 
+					plot.getPredProb() + 1d, 
+					numbers[species.ordinal()], 
+					1E-8);
+			nbTested++;
+		}
+		Assert.assertTrue("Testing that some plots were tested", nbTested > 0);
+	}
+	
+	/*
+	 * A mean occupancy index of exactly 0 or 1 comes with a null variance. The marginal probability must then be 
+	 * the probability at the mean, which is also the limit of the quadrature as the variance tends to 0.
+	 */
+	@Test
+	public void test08MarginalProbabilityWithNullOccupancyVariance() throws IOException {
+		List<IrisRecruitmentPlotImpl> plots = StandardPlotList; 
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		IrisRecruitmentOccurrencePredictor predictor = new IrisRecruitmentOccurrencePredictor(false, false, false, (List) plots); // deterministic
+		int nbTested = 0;
+		for (int i = 0; i < plots.size(); i += 50) {
+			IrisRecruitmentPlotImpl plot = plots.get(i);
+			IrisSpecies species = plot.getTreeInstance().getSpecies();
+			IrisRecruitmentOccurrenceInternalPredictor internalPredictor = predictor.getInternalPredictor(species);
+			for (double meanOccIndex : new double[] {0d, 1d}) {
+				double expected = internalPredictor.calculateMarginalEventProbability(plot, species, meanOccIndex, 1E-12);
+				if (Double.isNaN(expected)) {		// some covariates of the plot are missing
+					continue;
+				}
+				double actual = internalPredictor.calculateMarginalEventProbability(plot, species, meanOccIndex, 0d);
+				Assert.assertFalse("Testing that the probability is not NaN for plot " + plot.getSubjectId(), Double.isNaN(actual));
+				Assert.assertEquals("Testing probability for plot " + plot.getSubjectId() + ", species " + species.name() + " and mean " + meanOccIndex, 
+						expected, 
+						actual, 
+						1E-6);
+				nbTested++;
+			}
+		}
+		Assert.assertTrue("Testing that some plots were tested", nbTested > 0);
+	}
+
 	@AfterClass
 	public static void cleanup() {
 		if (TestPlotListForOccurrences != null) {
@@ -0,0 +1,275 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package ontariomnrf.predictor.trillium2026;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import canforservutility.occupancyindex.OccupancyIndexCalculablePlot;
+import repicea.simulation.HierarchicalLevel;
+import repicea.simulation.climate.REpiceaClimateManager.ClimateVariableTemporalResolution;
+import repicea.simulation.covariateproviders.treelevel.SpeciesTypeProvider.SpeciesType;
+import repicea.simulation.species.REpiceaSpecies.Species;
+
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class Trillium2026PlotStepEvaluatorTest {
+
+	/*
+	 * A plot whose climate variables differ from one temporal resolution to another and which
+	 * counts the requests for each variable.
+	 */
+	static final class Trillium2026PlotImpl implements Trillium2026Plot, Trillium2026RecruitmentPlotWithKnownOccupancy {
+
+		final Map<String, Integer> requests = new HashMap<String, Integer>();
+
+		private double getValue(String variable, double baseValue, ClimateVariableTemporalResolution resolution) {
+			String key = resolution == null ? variable : variable + ":" + resolution.name();
+			requests.put(key, requests.containsKey(key) ? requests.get(key) + 1 : 1);
+			return resolution == null ? baseValue : baseValue + resolution.ordinal() * 0.1;
+		}
+
+		@Override
+		public String getSubjectId() {return "plot1";}
+
+		@Override
+		public int getMonteCarloRealizationId() {return 0;}
+
+		@Override
+		public double getGrowthStepLengthYr() {return 5d;}
+
+		@Override
+		public int getDateYr() {return 2010;}
+
+		@Override
+		public boolean isGoingToBeHarvested() {return false;}
+
+		@Override
+		public double getTotalAnnualPrecipitationMm(ClimateVariableTemporalResolution resolution) {return getValue("TotalPrcp", 850d, resolution);}
+
+		@Override
+		public double getMeanAnnualTemperatureCelsius(ClimateVariableTemporalResolution resolution) {return getValue("MeanTair", 2.5, resolution);}
+
+		@Override
+		public double getMeanMinimumJanuaryTemperatureCelsius(ClimateVariableTemporalResolution resolution) {return getValue("MeanTminJanuary", -22d, resolution);}
+
+		@Override
+		public double getTotalPrecipitationFromMarchToMayMm(ClimateVariableTemporalResolution resolution) {return getValue("TotalPrecMarchToMay", 180d, resolution);}
+
+		@Override
+		public double getTotalPrecipitationFromJuneToAugustMm(ClimateVariableTemporalResolution resolution) {return getValue("TotalPrecJuneToAugust", 270d, resolution);}
+
+		@Override
+		public double getLowestAnnualTemperatureCelsius(ClimateVariableTemporalResolution resolution) {return getValue("LowestTmin", -38d, resolution);}
+
+		@Override
+		public double getAnnualNbFrostFreeDays(ClimateVariableTemporalResolution resolution) {return getValue("FrostFreeDays", 110d, resolution);}
+
+		@Override
+		public double getGrowingDegreeDaysCelsius(ClimateVariableTemporalResolution resolution) {return getValue("DD", 1400d, resolution);}
+
+		@Override
+		public double getMeanTemperatureFromJuneToAugustCelsius(ClimateVariableTemporalResolution resolution) {return getValue("MeanTempJuneToAugust", 16d, resolution);}
+
+		@Override
+		public double getMeanMaximumJulyTemperatureCelsius(ClimateVariableTemporalResolution resolution) {return getValue("MeanTmaxJuly", 24d, resolution);}
+
+		@Override
+		public double getMeanTempAnomalyCelsius() {return getValue("MeanTempAnomaly", 0.4, null);}
+
+		@Override
+		public double getTotalRadiation() {return getValue("TotalRadiation", 4800d, null);}
+
+		@Override
+		public double getMeanSummerVPD() {return getValue("MeanSummerVPD", 0.6, null);}
+
+		@Override
+		public double getSMImean() {return getValue("SMImean", 0.8, null);}
+
+		@Override
+		public double getMaxTempAnomalyCelsius() {return getValue("MaxTempAnomaly", 0.5, null);}
+
+		@Override
+		public double getMeanSummerVPDDaylight() {return getValue("MeanSummerVPDDaylight", 0.9, null);}
+
+		@Override
+		public double getTotalPrecipitationAnomalyMm() {return getValue("PrecAnomaly", 12d, null);}
+
+		@Override
+		public double getCMI() {return getValue("CMI", 25d, null);}
+
+		@Override
+		public double getHighestTmaxCelsius() {return getValue("HighestTmax", 33d, null);}
+
+		@Override
+		public double getBasalAreaM2HaForThisSpeciesType(SpeciesType type) {
+			return type == SpeciesType.ConiferousSpecies ? 14d : 9d;
+		}
+
+		@Override
+		public double getBasalAreaM2HaForThisSpecies(Enum<?> species) {
+			return 1d + Trillium2026RecruitmentOccurrencePredictor.SpeciesList.indexOf(species) * 0.25;
+		}
+
+		@Override
+		public double getOccupancyIndex25km(Species species) {
+			return 0.05 + Trillium2026RecruitmentOccurrencePredictor.SpeciesList.indexOf(species) * 0.01;
+		}
+
+		@Override
+		public double getLatitudeDeg() {return 48d;}
+
+		@Override
+		public double getLongitudeDeg() {return -80d;}
+
+		@Override
+		public double getElevationM() {return 300d;}
+
+		@Override
+		public double getAreaHa() {return 0.04;}
+
+		@Override
+		public List<OccupancyIndexCalculablePlot> getPlotsForOccupancyIndexCalculation() {return null;}
+	}
+
+	static final class Trillium2026TreeImpl implements Trillium2026Tree {
+
+		final Species species;
+		final double dbhCm;
+		final double BAL;
+
+		Trillium2026TreeImpl(Species species, double dbhCm, double BAL) {
+			this.species = species;
+			this.dbhCm = dbhCm;
+			this.BAL = BAL;
+		}
+
+		@Override
+		public String getSubjectId() {return null;}
+
+		@Override
+		public int getMonteCarloRealizationId() {return 0;}
+
+		@Override
+		public HierarchicalLevel getHierarchicalLevel() {return HierarchicalLevel.TREE;}
+
+		@Override
+		public double getDbhCm() {return dbhCm;}
+
+		@Override
+		public double getLnDbhCm() {return Math.log(dbhCm);}
+
+		@Override
+		public double getSquaredDbhCm() {return dbhCm * dbhCm;}
+
+		@Override
+		public double getBasalAreaLargerThanSubjectM2Ha() {return BAL;}
+
+		@Override
+		public Species getTrillium2026TreeSpecies() {return species;}
+	}
+
+	/*
+	 * Three trees per species eligible to both the diameter increment and the mortality modules. The trees
+	 * of the different species are interleaved to check the order of the predictions.
+	 */
+	private static List<Trillium2026TreeImpl> createTrees(Trillium2026DiameterIncrementPredictor diPredictor,
+			Trillium2026MortalityPredictor mortPredictor) {
+		List<Species> species = new ArrayList<Species>(diPredictor.getEligibleSpecies());
+		species.retainAll(mortPredictor.getEligibleSpecies());
+		List<Trillium2026TreeImpl> trees = new ArrayList<Trillium2026TreeImpl>();
+		for (int j = 0; j < 3; j++) {
+			for (int i = 0; i < species.size(); i++) {
+				trees.add(new Trillium2026TreeImpl(species.get(i), 10d + 7d * j + i * 0.5, 25d - 8d * j));
+			}
+		}
+		return trees;
+	}
+
+	@Test
+	public void test01EvaluateAgainstPerTreePredictions() {
+		Trillium2026DiameterIncrementPredictor diPredictor = new Trillium2026DiameterIncrementPredictor(false);
+		Trillium2026MortalityPredictor mortPredictor = new Trillium2026MortalityPredictor(false);
+		Trillium2026RecruitmentOccurrencePredictor recPredictor = new Trillium2026RecruitmentOccurrencePredictor(false, null);
+		Trillium2026PlotStepEvaluator evaluator = new Trillium2026PlotStepEvaluator(diPredictor, mortPredictor, recPredictor);
+		Trillium2026PlotImpl plot = new Trillium2026PlotImpl();
+		List<Trillium2026TreeImpl> trees = createTrees(diPredictor, mortPredictor);
+		Assert.assertTrue("Testing there are trees", !trees.isEmpty());
+
+		Trillium2026PlotStepEvaluator.Result result = evaluator.evaluate(plot, trees);
+		Assert.assertEquals("Testing the number of diameter increments", trees.size(), result.getDiameterIncrements().length);
+		Assert.assertEquals("Testing the number of mortality probabilities", trees.size(), result.getMortalityProbabilities().length);
+		for (int i = 0; i < trees.size(); i++) {
+			Trillium2026TreeImpl tree = trees.get(i);
+			Assert.assertEquals("Testing diameter increment of tree " + i,
+					diPredictor.predictGrowth(plot, tree),
+					result.getDiameterIncrements()[i],
+					1E-8);
+			Assert.assertEquals("Testing mortality probability of tree " + i,
+					mortPredictor.predictEventProbability(plot, tree, null),
+					result.getMortalityProbabilities()[i],
+					1E-8);
+		}
+
+		Assert.assertEquals("Testing the recruitment species", recPredictor.getEligibleSpecies(), result.getRecruitmentSpecies());
+		for (int i = 0; i < result.getRecruitmentSpecies().size(); i++) {
+			Species species = result.getRecruitmentSpecies().get(i);
+			Assert.assertEquals("Testing recruitment probability of species " + species.name(),
+					recPredictor.predictEventProbability(plot, new Trillium2026TreeImpl(species, 0d, 0d), null),
+					result.getRecruitmentProbabilities()[i],
+					1E-8);
+		}
+	}
+
+	@Test
+	public void test02EvaluateRetrievesClimateOncePerPlotStep() {
+		Trillium2026DiameterIncrementPredictor diPredictor = new Trillium2026DiameterIncrementPredictor(false);
+		Trillium2026MortalityPredictor mortPredictor = new Trillium2026MortalityPredictor(false);
+		Trillium2026RecruitmentOccurrencePredictor recPredictor = new Trillium2026RecruitmentOccurrencePredictor(false, null);
+		Trillium2026PlotStepEvaluator evaluator = new Trillium2026PlotStepEvaluator(diPredictor, mortPredictor, recPredictor);
+		Trillium2026PlotImpl plot = new Trillium2026PlotImpl();
+		evaluator.evaluate(plot, createTrees(diPredictor, mortPredictor));
+		Assert.assertTrue("Testing the climate has been retrieved", !plot.requests.isEmpty());
+		for (String key : plot.requests.keySet()) {
+			Assert.assertEquals("Testing the number of requests for " + key, 1, plot.requests.get(key).intValue());
+		}
+	}
+
+	@Test
+	public void test03PredictAllSpeciesAgainstPerTreePredictions() {
+		Trillium2026RecruitmentOccurrencePredictor recPredictor = new Trillium2026RecruitmentOccurrencePredictor(false, null);
+		Trillium2026PlotImpl plot = new Trillium2026PlotImpl();
+		double[] probabilities = recPredictor.predictAllSpecies(plot);
+		Assert.assertEquals("Testing the number of probabilities", recPredictor.getEligibleSpecies().size(), probabilities.length);
+		for (int i = 0; i < probabilities.length; i++) {
+			Species species = recPredictor.getEligibleSpecies().get(i);
+			Assert.assertEquals("Testing recruitment probability of species " + species.name(),
+					recPredictor.predictEventProbability(plot, new Trillium2026TreeImpl(species, 0d, 0d), null),
+					probabilities[i],
+					1E-8);
+		}
+	}
+}
@@ -353,4 +353,24 @@ public class TrilliumDiameterIncrementTest {
 		
 	}
 	
+	/*
+	 * Compares the plot-level batch predictions with the tree-level predictions. All the trees 
+	 * are assigned to the plot of the first tree.
+	 */
+	@Test
+	public void test04BatchPredictions() {
+		Trillium2026DiameterIncrementPredictor diamIncPredictor = new Trillium2026DiameterIncrementPredictor(false); // deterministic
+		List<Trillium2026TreeImpl> trees = new ArrayList<Trillium2026TreeImpl>();
+		for (List<Trillium2026TreeImpl> l : TreeMap.values()) {
+			trees.addAll(l);
+		}
+		Trillium2026TreeImpl plot = trees.get(0);
+		double[] observed = diamIncPredictor.predictGrowth(plot, trees);
+		Assert.assertEquals("Testing array length", trees.size(), observed.length);
+		for (int i = 0; i < trees.size(); i++) {
+			double expected = diamIncPredictor.predictGrowth(plot, trees.get(i));
+			Assert.assertEquals("Comparing batch and tree-level predictions", expected, observed[i], 1E-10);
+		}
+	}
+	
 }
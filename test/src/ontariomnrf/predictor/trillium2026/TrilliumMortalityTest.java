@@ -24,6 +24,9 @@ import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -225,5 +228,83 @@ public class TrilliumMortalityTest {
 		Assert.assertEquals("Comparing stochastic and deterministic predictions", expected, observed, 1E-2);
 		
 	}
+
+	/*
+	 * Compares the scalar quadrature with the former implementation based on the GaussHermiteQuadrature class.
+	 */
+	@Test
+	public void test04ScalarQuadratureAgainstGaussHermiteQuadratureClass() {
+		Trillium2026MortalityPredictor mortPredictor = new Trillium2026MortalityPredictor(false); // deterministic
+		for (Species species : TreeMap.keySet()) {
+			Trillium2026MortalityInternalPredictor internalPredictor = mortPredictor.getInternalPredictor(species);
+			for (Trillium2026TreeImpl t : TreeMap.get(species)) {
+				double expected = internalPredictor.predictEventProbabilityWithGaussHermiteQuadrature(t, t);
+				double observed = mortPredictor.predictEventProbability(t, t);
+				Assert.assertEquals("Comparing scalar and class-based quadratures for species " + species.name(), expected, observed, 1E-12);
+			}
+		}
+	}
+
+	/*
+	 * Compares the predictions obtained from concurrent threads with those obtained sequentially.
+	 */
+	@Test
+	public void test05ConcurrentPredictions() throws Exception {
+		final Trillium2026MortalityPredictor mortPredictor = new Trillium2026MortalityPredictor(false); // deterministic
+		final List<Trillium2026TreeImpl> trees = new ArrayList<Trillium2026TreeImpl>();
+		for (List<Trillium2026TreeImpl> l : TreeMap.values()) {
+			trees.addAll(l);
+		}
+		double[] expected = new double[trees.size()];
+		for (int i = 0; i < trees.size(); i++) {
+			expected[i] = mortPredictor.predictEventProbability(trees.get(i), trees.get(i));
+		}
+		final double[] observed = new double[trees.size()];
+		int nbThreads = 4;
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < nbThreads; t++) {
+			final int firstIndex = t;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = firstIndex; i < trees.size(); i += nbThreads) {
+						observed[i] = mortPredictor.predictEventProbability(trees.get(i), trees.get(i));
+					}
+					return null;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(nbThreads);
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks)) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		for (int i = 0; i < trees.size(); i++) {
+			Assert.assertEquals("Comparing concurrent and sequential predictions", expected[i], observed[i], 0d);
+		}
+	}
+
+	/*
+	 * Compares the plot-level batch predictions with the tree-level predictions. All the trees 
+	 * are assigned to the plot of the first tree.
+	 */
+	@Test
+	public void test06BatchPredictions() {
+		Trillium2026MortalityPredictor mortPredictor = new Trillium2026MortalityPredictor(false); // deterministic
+		List<Trillium2026TreeImpl> trees = new ArrayList<Trillium2026TreeImpl>();
+		for (List<Trillium2026TreeImpl> l : TreeMap.values()) {
+			trees.addAll(l);
+		}
+		Trillium2026TreeImpl plot = trees.get(0);
+		double[] observed = mortPredictor.predictEventProbabilities(plot, trees);
+		Assert.assertEquals("Testing array length", trees.size(), observed.length);
+		for (int i = 0; i < trees.size(); i++) {
+			double expected = mortPredictor.predictEventProbability(plot, trees.get(i));
+			Assert.assertEquals("Comparing batch and tree-level predictions", expected, observed[i], 1E-10);
+		}
+	}
 	
 }
@@ -0,0 +1,217 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import repicea.math.Matrix;
+import repicea.simulation.climate.REpiceaClimateManager.ClimateVariableTemporalResolution;
+import repicea.simulation.covariateproviders.plotlevel.DrainageGroupProvider.DrainageGroup;
+
+class Artemis2014CompatibleStandImpl implements Artemis2014CompatibleStand {
+
+	/*
+	 * A stand that opts in to the caching of the stand-level products.
+	 */
+	static class CacheableStandImpl extends Artemis2014CompatibleStandImpl implements Artemis2014CacheableStand {
+
+		protected CacheableStandImpl(String idString, String potentialVegetation) {
+			super(idString, potentialVegetation);
+		}
+
+		@Override
+		public int getModificationCount() {return modificationCount;}
+	}
+
+	private final String idString;
+	private final String potentialVegetation;
+	private final List<Artemis2014CompatibleTree> trees = new ArrayList<Artemis2014CompatibleTree>();
+
+	private int monteCarloRealizationId = 0;
+	private int dateYr = 2000;
+	private double totalAnnualPrecipitationMm = 1000d;
+	private double meanAnnualTemperatureC = 2d;
+	private double elevationM = 350d;
+	private double latitude = 47d;
+	private double longitude = -72d;
+	private double seasonalPrecipitationMm = 450d;
+	private double vaporPressureDeficit = 0.6;
+	private double utilPrecipitationMm = 400d;
+	private String ecoRegion = "4f";
+	private DrainageGroup drainageGroup = DrainageGroup.Mesic;
+
+	private boolean isInterventionResult;
+	private boolean isInitialStand;
+	private boolean isGoingToBeDefoliated;
+	private boolean wasHarvestedInPreviousStep;
+	private boolean wasHarvestedTwoStepsAgo;
+	private boolean wasDefoliatedInPreviousStep;
+	private boolean wasDefoliatedTwoStepsAgo;
+
+	private double basalAreaM2Ha;
+	private double meanQuadraticDiameterCm;
+	private double numberOfStemsHa;
+	private Matrix numberOfStemsBySpeciesGroups;
+	private Matrix basalAreaBySpeciesGroups;
+	int modificationCount;
+
+	protected Artemis2014CompatibleStandImpl(String idString, String potentialVegetation) {
+		this.idString = idString;
+		this.potentialVegetation = potentialVegetation;
+	}
+
+	protected List<Artemis2014CompatibleTree> getTrees() {return trees;}
+
+	protected void updatePlotVariables() {
+		double basalArea = 0d;
+		double sumSquaredDbh = 0d;
+		double number = 0d;
+		for (Artemis2014CompatibleTree t : trees) {
+			basalArea += t.getStemBasalAreaM2() * t.getNumber();
+			sumSquaredDbh += t.getSquaredDbhCm() * t.getNumber();
+			number += t.getNumber();
+		}
+		basalAreaM2Ha = basalArea / getAreaHa();
+		numberOfStemsHa = number / getAreaHa();
+		meanQuadraticDiameterCm = number > 0 ? Math.sqrt(sumSquaredDbh / number) : 0d;
+		for (Artemis2014CompatibleTree t : trees) {
+			double bal = 0d;
+			for (Artemis2014CompatibleTree t2 : trees) {
+				if (t2.getDbhCm() > t.getDbhCm()) {
+					bal += t2.getStemBasalAreaM2() * t2.getNumber();
+				}
+			}
+			((Artemis2014CompatibleTreeImpl) t).setBAL(bal / getAreaHa());
+		}
+		numberOfStemsBySpeciesGroups = ParameterDispatcher.getGroupEssGorN(this, trees, false); // false for the number of stems
+		basalAreaBySpeciesGroups = ParameterDispatcher.getGroupEssGorN(this, trees, true); // true for the basal area
+		modificationCount++;
+	}
+
+	protected void setDateYr(int dateYr) {this.dateYr = dateYr;}
+	protected void setEcoRegion(String ecoRegion) {this.ecoRegion = ecoRegion;}
+	protected void setDrainageGroup(DrainageGroup drainageGroup) {this.drainageGroup = drainageGroup;}
+	protected void setMonteCarloRealization(int i) {monteCarloRealizationId = i;}
+
+	protected void setHistory(boolean isInterventionResult, 
+			boolean isInitialStand, 
+			boolean isGoingToBeDefoliated, 
+			boolean wasHarvestedInPreviousStep,
+			boolean wasHarvestedTwoStepsAgo,
+			boolean wasDefoliatedInPreviousStep,
+			boolean wasDefoliatedTwoStepsAgo) {
+		this.isInterventionResult = isInterventionResult;
+		this.isInitialStand = isInitialStand;
+		this.isGoingToBeDefoliated = isGoingToBeDefoliated;
+		this.wasHarvestedInPreviousStep = wasHarvestedInPreviousStep;
+		this.wasHarvestedTwoStepsAgo = wasHarvestedTwoStepsAgo;
+		this.wasDefoliatedInPreviousStep = wasDefoliatedInPreviousStep;
+		this.wasDefoliatedTwoStepsAgo = wasDefoliatedTwoStepsAgo;
+	}
+	
+	@Override
+	public String getPotentialVegetation() {return potentialVegetation;}
+
+	@Override
+	public boolean isInterventionResult() {return isInterventionResult;}
+
+	@Override
+	public double getBasalAreaM2Ha() {return basalAreaM2Ha;}
+
+	@Override
+	public double getMeanQuadraticDiameterCm() {return meanQuadraticDiameterCm;}
+
+	@Override
+	public int getDateYr() {return dateYr;}
+
+	@Override
+	public double getTotalAnnualPrecipitationMm(ClimateVariableTemporalResolution resolution) {return totalAnnualPrecipitationMm;}
+
+	@Override
+	public double getMeanAnnualTemperatureCelsius(ClimateVariableTemporalResolution resolution) {return meanAnnualTemperatureC;}
+
+	@Override
+	public double getElevationM() {return elevationM;}
+
+	@Override
+	public double getLatitudeDeg() {return latitude;}
+
+	@Override
+	public double getLongitudeDeg() {return longitude;}
+
+	@Override
+	public double getNumberOfStemsHa() {return numberOfStemsHa;}
+
+	@Override
+	public double getAreaHa() {return 0.04;}
+
+	@Override
+	public String getSubjectId() {return idString;}
+
+	@Override
+	public int getMonteCarloRealizationId() {return monteCarloRealizationId;}
+
+	@Override
+	public double getGrowthStepLengthYr() {return 10;}
+
+	@Override
+	public boolean isGoingToBeHarvested() {return false;}
+
+	@Override
+	public DrainageGroup getDrainageGroup() {return drainageGroup;}
+
+	@Override
+	public String getEcoRegion() {return ecoRegion;}
+
+	@Override
+	public boolean isGoingToBeDefoliated() {return isGoingToBeDefoliated;}
+
+	@Override
+	public boolean isInitialStand() {return isInitialStand;}
+
+	@Override
+	public Matrix getNumberOfStemsBySpeciesGroup() {return numberOfStemsBySpeciesGroups;}
+
+	@Override
+	public Matrix getBasalAreaBySpeciesGroup() {return basalAreaBySpeciesGroups;}
+
+	@Override
+	public boolean wasHarvestedInPreviousStep() {return wasHarvestedInPreviousStep;}
+
+	@Override
+	public boolean wasHarvestedTwoStepsAgo() {return wasHarvestedTwoStepsAgo;}
+
+	@Override
+	public boolean wasSpruceBudwormDefoliatedInPreviousStep() {return wasDefoliatedInPreviousStep;}
+
+	@Override
+	public boolean wasSpruceBudwormDefoliatedTwoStepsAgo() {return wasDefoliatedTwoStepsAgo;}
+
+	@Override
+	public double getSeasonalPrecipitationMm() {return seasonalPrecipitationMm;}
+
+	@Override
+	public double getVaporPressureDeficit() {return vaporPressureDeficit;}
+
+	@Override
+	public double getUtilPrecipitation() {return utilPrecipitationMm;}
+
+}
@@ -0,0 +1,79 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import quebecmrnfutility.simulation.covariateproviders.treelevel.QcTreeQualityProvider.QcTreeQuality;
+
+class Artemis2014CompatibleTreeImpl implements Artemis2014CompatibleTree {
+
+	private final Artemis2014CompatibleStandImpl stand;
+	private final int id;
+	private final double dbhCm;
+	private final double number;
+	private final String speciesGroupName;
+	private final QcTreeQuality quality;
+	private double bal;
+
+	protected Artemis2014CompatibleTreeImpl(Artemis2014CompatibleStandImpl stand, double dbhCm, String speciesGroupName, double number, QcTreeQuality quality) {
+		this.stand = stand;
+		this.dbhCm = dbhCm;
+		this.speciesGroupName = speciesGroupName;
+		this.number = number;
+		this.quality = quality;
+		id = stand.getTrees().size();
+		stand.getTrees().add(this);
+	}
+
+	protected void setBAL(double bal) {this.bal = bal;}
+
+	@Override
+	public double getBasalAreaLargerThanSubjectM2Ha() {return bal;}
+
+	@Override
+	public double getDbhCm() {return dbhCm;}
+
+	@Override
+	public double getLnDbhCm() {return Math.log(dbhCm);}
+
+	@Override
+	public double getSquaredDbhCm() {return dbhCm * dbhCm;}
+
+	@Override
+	public String getSpeciesGroupName() {return speciesGroupName;}
+
+	@Override
+	public String getSubjectId() {return ((Integer) id).toString();}
+
+	@Override
+	public int getMonteCarloRealizationId() {return stand.getMonteCarloRealizationId();}
+
+	@Override
+	public double getNumber() {return number;}
+
+	@Override
+	public double getStemBasalAreaM2() {return Math.PI * getSquaredDbhCm() * 0.000025;}
+
+	@Override
+	public int getErrorTermIndex() {return id;}
+
+	@Override
+	public QcTreeQuality getTreeQuality() {return quality;}
+
+}
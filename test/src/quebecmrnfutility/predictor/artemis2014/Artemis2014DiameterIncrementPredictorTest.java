@@ -0,0 +1,238 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.io.File;
+import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import repicea.serial.xml.XmlDeserializer;
+import repicea.serial.xml.XmlSerializer;
+
+public class Artemis2014DiameterIncrementPredictorTest {
+
+	private static final String[] SPECIES = new String[] {"BOG", "BOJ", "BOP", "CAC", "CAF", "CAR", "CEO", "CET", "CHX", "CRA", 
+			"EPX", "ERA", "ERG", "ERN", "ERP", "ERR", "ERS", "FRA", "FRN", "FRP", "HEG", "JUV", "MAS", "MEJ", "MEL", "MEU", "NOC", 
+			"ORA", "ORR", "ORT", "OSV", "PEU", "PID", "PIG", "PIN", "PIS", "PRP", "PRU", "SAB", "SAL", "SOA", "SOD", "THO", "TIL", "MEO"};
+	
+	/*
+	 * The species group of each tree is derived from its own species. The name is copied so that 
+	 * it is not the instance held by the ParameterDispatcher, as it would be in a simulator.
+	 */
+	private static Artemis2014CompatibleStandImpl createStandFromSpecies(String vegpotName, int nbTreesPerSpecies, Random random) {
+		Artemis2014CompatibleStandImpl stand = new Artemis2014CompatibleStandImpl(vegpotName, vegpotName);
+		ParameterDispatcher pd = ParameterDispatcher.getInstance();
+		for (String species : SPECIES) {
+			String speciesGroupName = pd.getSpeciesGroupName(stand, species);
+			if (speciesGroupName != null) {
+				for (int i = 0; i < nbTreesPerSpecies; i++) {
+					new Artemis2014CompatibleTreeImpl(stand, 9.1 + random.nextDouble() * 40, new String(speciesGroupName), 1d, null);
+				}
+			}
+		}
+		stand.updatePlotVariables();
+		return stand;
+	}
+
+	/*
+	 * The batch implementation must match the tree-by-tree implementation in both deterministic and stochastic modes.
+	 */
+	@Test
+	public void batchPredictionsMatchTreeByTreePredictions() {
+		ParameterDispatcher pd = ParameterDispatcher.getInstance();
+		for (boolean isStochastic : new boolean[] {false, true}) {
+			Artemis2014DiameterIncrementPredictor predictor = new Artemis2014DiameterIncrementPredictor(isStochastic);
+			Random random = new Random(2026L);
+			int nbComparisons = 0;
+			for (Integer vegpotID : pd.getVegpotIndex().keySet()) {
+				String vegpotName = pd.getVegpotIndex().get(vegpotID);
+				Artemis2014CompatibleStandImpl stand = createStandFromSpecies(vegpotName, 2, random);
+				List<String> speciesGroups = pd.getSpeciesGroups(stand);
+				List<Artemis2014CompatibleTree> trees = stand.getTrees();
+				int nbTrees = trees.size();
+				double[] dbhCm = new double[nbTrees];
+				double[] squaredDbhCm = new double[nbTrees];
+				double[] balM2Ha = new double[nbTrees];
+				int[] speciesGroupIndices = new int[nbTrees];
+				for (int i = 0; i < nbTrees; i++) {
+					Artemis2014CompatibleTree tree = trees.get(i);
+					dbhCm[i] = tree.getDbhCm();
+					squaredDbhCm[i] = tree.getSquaredDbhCm();
+					balM2Ha[i] = tree.getBasalAreaLargerThanSubjectM2Ha();
+					speciesGroupIndices[i] = speciesGroups.indexOf(tree.getSpeciesGroupName());
+				}
+				double[] growth = new double[nbTrees];
+				double[] variance = new double[nbTrees];
+				try {
+					predictor.predictGrowth(stand, trees, dbhCm, squaredDbhCm, balM2Ha, speciesGroupIndices, nbTrees, growth, variance);
+				} catch (InvalidParameterException e) {
+					continue;	// this potential vegetation is not considered in the diameter increment submodel
+				}
+				for (int i = 0; i < nbTrees; i++) {
+					double[] expected = predictor.predictGrowth(stand, trees.get(i));	// the random deviates are those drawn by the batch call
+					Assert.assertEquals("Testing growth in vegpot " + vegpotName + " stochastic = " + isStochastic, expected[0], growth[i], 1E-12);
+					Assert.assertEquals("Testing variance in vegpot " + vegpotName + " stochastic = " + isStochastic, expected[1], variance[i], 1E-12);
+					nbComparisons++;
+				}
+			}
+			System.out.println("Number of batch predictions compared (stochastic = " + isStochastic + ") = " + nbComparisons);
+			Assert.assertTrue(nbComparisons > 0);
+		}
+	}
+
+	/*
+	 * Concurrent calls on the same potential vegetation must produce the same predictions as sequential calls.
+	 */
+	@Test
+	public void concurrentPredictionsMatchSequentialPredictions() throws Exception {
+		final Artemis2014DiameterIncrementPredictor growthPredictor = new Artemis2014DiameterIncrementPredictor(false);
+		final Artemis2014MortalityPredictor mortalityPredictor = new Artemis2014MortalityPredictor(false);
+		Random random = new Random(7L);
+		final List<Artemis2014CompatibleStandImpl> stands = new ArrayList<Artemis2014CompatibleStandImpl>();
+		for (int i = 0; i < 8; i++) {
+			stands.add(ParameterDispatcherTest.createStand("MS2", 25, random));
+		}
+		List<double[]> expected = new ArrayList<double[]>();
+		for (Artemis2014CompatibleStandImpl stand : stands) {
+			for (Artemis2014CompatibleTree tree : stand.getTrees()) {
+				expected.add(new double[] {growthPredictor.predictGrowth(stand, tree)[0], 
+						mortalityPredictor.predictEventProbability(stand, tree, null)});
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<double[]>>> futures = new ArrayList<Future<List<double[]>>>();
+			for (int rep = 0; rep < 4; rep++) {
+				futures.add(executor.submit(() -> {
+					List<double[]> predictions = new ArrayList<double[]>();
+					for (Artemis2014CompatibleStandImpl stand : stands) {
+						for (Artemis2014CompatibleTree tree : stand.getTrees()) {
+							predictions.add(new double[] {growthPredictor.predictGrowth(stand, tree)[0], 
+									mortalityPredictor.predictEventProbability(stand, tree, null)});
+						}
+					}
+					return predictions;
+				}));
+			}
+			for (Future<List<double[]>> future : futures) {
+				List<double[]> actual = future.get();
+				Assert.assertEquals("Testing the number of predictions", expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i++) {
+					Assert.assertEquals("Testing growth", expected.get(i)[0], actual.get(i)[0], 0d);
+					Assert.assertEquals("Testing mortality", expected.get(i)[1], actual.get(i)[1], 0d);
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	/*
+	 * The execution contexts are transient and must be recreated after deserialization.
+	 */
+	@Test
+	public void predictionsAfterDeserialization() throws Exception {
+		Artemis2014DiameterIncrementPredictor predictor = new Artemis2014DiameterIncrementPredictor(false);
+		Artemis2014CompatibleStandImpl stand = ParameterDispatcherTest.createStand("MS2", 5, new Random(11L));
+		List<Double> expected = new ArrayList<Double>();
+		for (Artemis2014CompatibleTree tree : stand.getTrees()) {
+			expected.add(predictor.predictGrowth(stand, tree)[0]);
+		}
+		File file = File.createTempFile("artemis2014", ".xml");
+		file.deleteOnExit();
+		XmlSerializer serializer = new XmlSerializer(file.getAbsolutePath());
+		serializer.writeObject(predictor);
+		XmlDeserializer deserializer = new XmlDeserializer(file.getAbsolutePath());
+		Artemis2014DiameterIncrementPredictor deserializedPredictor = (Artemis2014DiameterIncrementPredictor) deserializer.readObject();
+		int i = 0;
+		for (Artemis2014CompatibleTree tree : stand.getTrees()) {
+			Assert.assertEquals("Testing growth after deserialization", expected.get(i++), deserializedPredictor.predictGrowth(stand, tree)[0], 1E-12);
+		}
+	}
+
+	/*
+	 * The stands that do not opt in to the cache are modified in place without any invalidation.
+	 */
+	@Test
+	public void uncachedStandFollowsStandModifications() {
+		Artemis2014DiameterIncrementPredictor predictor = new Artemis2014DiameterIncrementPredictor(false);
+		Artemis2014CompatibleStandImpl stand = ParameterDispatcherTest.createStand("MS2", 10, new Random(3L), false);
+		Assert.assertFalse("Testing the stand is not cacheable", stand instanceof Artemis2014CacheableStand);
+		Artemis2014CompatibleTree subject = stand.getTrees().get(0);
+		double growthBeforeHarvest = predictor.predictGrowth(stand, subject)[0];
+		
+		List<Artemis2014CompatibleTree> trees = stand.getTrees();
+		for (int i = trees.size() - 1; i > 0; i -= 2) {	// harvest every other tree within the same growth step
+			trees.remove(i);
+		}
+		stand.updatePlotVariables();
+		double growthAfterHarvest = predictor.predictGrowth(stand, subject)[0];
+		Assert.assertTrue("Testing that the harvest changes the prediction", growthBeforeHarvest != growthAfterHarvest);
+		Assert.assertEquals("Testing against a fresh predictor", 
+				new Artemis2014DiameterIncrementPredictor(false).predictGrowth(stand, subject)[0], 
+				growthAfterHarvest, 
+				1E-12);
+		
+		stand.setHistory(true, false, false, true, false, false, false);
+		Assert.assertEquals("Testing after a change of history", 
+				new Artemis2014DiameterIncrementPredictor(false).predictGrowth(stand, subject)[0], 
+				predictor.predictGrowth(stand, subject)[0], 
+				1E-12);
+	}
+
+	/*
+	 * The cached stand-level part of the linear predictor must follow the modifications of the stand.
+	 */
+	@Test
+	public void standLevelCacheFollowsStandModifications() {
+		Artemis2014DiameterIncrementPredictor predictor = new Artemis2014DiameterIncrementPredictor(false);
+		Artemis2014CompatibleStandImpl stand = ParameterDispatcherTest.createStand("MS2", 10, new Random(3L), true);
+		Artemis2014CompatibleTree subject = stand.getTrees().get(0);
+		double growthBeforeHarvest = predictor.predictGrowth(stand, subject)[0];
+		
+		List<Artemis2014CompatibleTree> trees = stand.getTrees();
+		for (int i = trees.size() - 1; i > 0; i -= 2) {	// harvest every other tree within the same growth step
+			trees.remove(i);
+		}
+		stand.updatePlotVariables();	// increments the modification count
+		double growthAfterHarvest = predictor.predictGrowth(stand, subject)[0];
+		Assert.assertTrue("Testing that the harvest changes the prediction", growthBeforeHarvest != growthAfterHarvest);
+		Assert.assertEquals("Testing against a fresh predictor", 
+				new Artemis2014DiameterIncrementPredictor(false).predictGrowth(stand, subject)[0], 
+				growthAfterHarvest, 
+				1E-12);
+		
+		stand.setHistory(true, false, false, true, false, false, false);	// the modification count is not incremented
+		ParameterDispatcher.getInstance().invalidateStandLevelProducts();
+		Assert.assertEquals("Testing after an explicit invalidation", 
+				new Artemis2014DiameterIncrementPredictor(false).predictGrowth(stand, subject)[0], 
+				predictor.predictGrowth(stand, subject)[0], 
+				1E-12);
+	}
+}
@@ -0,0 +1,199 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.artemis2014;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import quebecmrnfutility.simulation.covariateproviders.treelevel.QcTreeQualityProvider.QcTreeQuality;
+import repicea.math.Matrix;
+import repicea.simulation.covariateproviders.plotlevel.DrainageGroupProvider.DrainageGroup;
+
+public class ParameterDispatcherTest {
+
+	private static List<Integer> getEffectList(Matrix effects) {
+		List<Integer> effectList = new ArrayList<Integer>();
+		for (int i = 0; i < effects.m_iRows; i++) {
+			effectList.add((int) effects.getValueAt(i, 0));
+		}
+		return effectList;
+	}
+	
+	static Artemis2014CompatibleStandImpl createStand(String vegpotName, int nbTreesPerGroup, Random random) {
+		return createStand(vegpotName, nbTreesPerGroup, random, false);
+	}
+	
+	static Artemis2014CompatibleStandImpl createStand(String vegpotName, int nbTreesPerGroup, Random random, boolean isCacheable) {
+		Artemis2014CompatibleStandImpl stand = isCacheable ? 
+				new Artemis2014CompatibleStandImpl.CacheableStandImpl(vegpotName, vegpotName) :
+					new Artemis2014CompatibleStandImpl(vegpotName, vegpotName);
+		QcTreeQuality[] qualities = QcTreeQuality.values();
+		for (String speciesGroupName : ParameterDispatcher.getInstance().getSpeciesGroups(stand)) {
+			for (int i = 0; i < nbTreesPerGroup; i++) {
+				QcTreeQuality quality = random.nextDouble() < .2 ? null : qualities[random.nextInt(qualities.length)];
+				new Artemis2014CompatibleTreeImpl(stand, 9.1 + random.nextDouble() * 40, speciesGroupName, 1d, quality);
+			}
+		}
+		stand.updatePlotVariables();
+		return stand;
+	}
+	
+	/*
+	 * The compiled effect plans must produce exactly the same x-vectors as the legacy implementation.
+	 */
+	@Test
+	public void compiledEffectPlansMatchLegacyXVectors() {
+		ParameterDispatcher pd = ParameterDispatcher.getInstance();
+		Random random = new Random(20261017L);
+		int nbComparisons = 0;
+		for (Integer vegpotID : pd.getVegpotIndex().keySet()) {
+			String vegpotName = pd.getVegpotIndex().get(vegpotID);
+			for (Integer moduleID : pd.getModuleIndex().keySet()) {
+				String moduleName = pd.getModuleIndex().get(moduleID);
+				Matrix beta = pd.getParameters().get(vegpotID, moduleID);
+				Matrix effects = pd.getEffectID().get(vegpotID, moduleID);
+				if (beta == null || effects == null) {
+					continue;
+				}
+				List<Integer> effectList = getEffectList(effects);
+				EffectPlan plan = pd.compileEffectPlan(moduleName, vegpotName, effectList);
+				Matrix legacyXVector = new Matrix(1, beta.m_iRows);
+				double[] xVector = new double[beta.m_iRows];
+				for (int scenario = 0; scenario < 8; scenario++) {
+					Artemis2014CompatibleStandImpl stand = createStand(vegpotName, 3, random);
+					stand.setDateYr(1990 + 5 * scenario);
+					stand.setEcoRegion(scenario % 2 == 0 ? "4f" : "2a");
+					stand.setDrainageGroup(DrainageGroup.values()[scenario % DrainageGroup.values().length]);
+					stand.setHistory(random.nextBoolean(), random.nextBoolean(), random.nextBoolean(), 
+							random.nextBoolean(), random.nextBoolean(), random.nextBoolean(), random.nextBoolean());
+					for (Artemis2014CompatibleTree tree : stand.getTrees()) {
+						pd.constructXVector(legacyXVector, stand, tree, moduleName, effectList);
+						pd.constructXVector(xVector, plan, stand, tree);
+						for (int i = 0; i < xVector.length; i++) {
+							Assert.assertEquals("Testing vegpot " + vegpotName + " module " + moduleName + " column " + i, 
+									legacyXVector.getValueAt(0, i), 
+									xVector[i], 
+									0d);
+						}
+						nbComparisons++;
+					}
+				}
+			}
+		}
+		System.out.println("Number of x-vectors compared = " + nbComparisons);
+		Assert.assertTrue(nbComparisons > 0);
+	}
+
+	/*
+	 * The sum of the stand-level and tree-level products must match the complete linear predictor.
+	 */
+	@Test
+	public void standLevelProductsPlusTreeLevelProductsMatchCompleteLinearPredictor() {
+		ParameterDispatcher pd = ParameterDispatcher.getInstance();
+		Random random = new Random(12345L);
+		int nbComparisons = 0;
+		for (Integer vegpotID : pd.getVegpotIndex().keySet()) {
+			String vegpotName = pd.getVegpotIndex().get(vegpotID);
+			for (Integer moduleID : pd.getModuleIndex().keySet()) {
+				String moduleName = pd.getModuleIndex().get(moduleID);
+				Matrix betaMatrix = pd.getParameters().get(vegpotID, moduleID);
+				Matrix effects = pd.getEffectID().get(vegpotID, moduleID);
+				if (betaMatrix == null || effects == null) {
+					continue;
+				}
+				double[] beta = new double[betaMatrix.m_iRows];
+				for (int i = 0; i < beta.length; i++) {
+					beta[i] = betaMatrix.getValueAt(i, 0);
+				}
+				EffectPlan plan = pd.compileEffectPlan(moduleName, vegpotName, getEffectList(effects));
+				double[] xVector = new double[beta.length];
+				double[] standLevelProducts = new double[plan.getNumberOfSpeciesGroups()];
+				for (int scenario = 0; scenario < 4; scenario++) {
+					Artemis2014CompatibleStandImpl stand = createStand(vegpotName, 3, random);
+					stand.setHistory(random.nextBoolean(), random.nextBoolean(), random.nextBoolean(), 
+							random.nextBoolean(), random.nextBoolean(), random.nextBoolean(), random.nextBoolean());
+					pd.computeStandLevelProducts(standLevelProducts, xVector, plan, beta, beta.length, stand);
+					for (Artemis2014CompatibleTree tree : stand.getTrees()) {
+						int g = plan.getSpeciesGroupIndex(tree.getSpeciesGroupName());
+						double actual = standLevelProducts[g] + pd.getTreeLevelProduct(plan, beta, beta.length, stand, tree, g);
+						pd.constructXVector(xVector, plan, stand, tree);
+						double expected = ParameterDispatcher.getProduct(xVector, beta, beta.length);
+						Assert.assertEquals("Testing vegpot " + vegpotName + " module " + moduleName, expected, actual, 1E-10);
+						nbComparisons++;
+					}
+				}
+			}
+		}
+		System.out.println("Number of linear predictors compared = " + nbComparisons);
+		Assert.assertTrue(nbComparisons > 0);
+	}
+
+	/*
+	 * Benchmark of the per-tree cost of the x-vector construction and the product with beta.
+	 */
+	@Test
+	public void benchmarkLegacyAgainstCompiledEffectPlans() {
+		ParameterDispatcher pd = ParameterDispatcher.getInstance();
+		String vegpotName = "MS2";
+		int vegpotID = pd.getVegpotIndex().getKeyForThisValue(vegpotName);
+		int moduleID = pd.getModuleIndex().getKeyForThisValue(Artemis2014DiameterIncrementPredictor.ModuleName);
+		Matrix betaMatrix = pd.getParameters().get(vegpotID, moduleID);
+		double[] beta = new double[betaMatrix.m_iRows];
+		for (int i = 0; i < beta.length; i++) {
+			beta[i] = betaMatrix.getValueAt(i, 0);
+		}
+		List<Integer> effectList = getEffectList(pd.getEffectID().get(vegpotID, moduleID));
+		EffectPlan plan = pd.compileEffectPlan(Artemis2014DiameterIncrementPredictor.ModuleName, vegpotName, effectList);
+		Artemis2014CompatibleStandImpl stand = createStand(vegpotName, 20, new Random(1L));
+		List<Artemis2014CompatibleTree> trees = stand.getTrees();
+		
+		Matrix legacyXVector = new Matrix(1, beta.length);
+		double[] xVector = new double[beta.length];
+		int nbRepetitions = 2000;
+		double legacySum = 0d;
+		double planSum = 0d;
+		for (int warmUp = 0; warmUp < 2; warmUp++) {
+			long start = System.nanoTime();
+			for (int rep = 0; rep < nbRepetitions; rep++) {
+				for (Artemis2014CompatibleTree tree : trees) {
+					pd.constructXVector(legacyXVector, stand, tree, Artemis2014DiameterIncrementPredictor.ModuleName, effectList);
+					legacySum += pd.getProduct(legacyXVector, betaMatrix);
+				}
+			}
+			long legacyNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (int rep = 0; rep < nbRepetitions; rep++) {
+				for (Artemis2014CompatibleTree tree : trees) {
+					pd.constructXVector(xVector, plan, stand, tree);
+					planSum += ParameterDispatcher.getProduct(xVector, beta, beta.length);
+				}
+			}
+			long planNanos = System.nanoTime() - start;
+			double nbCalls = (double) nbRepetitions * trees.size();
+			System.out.println("Per-tree cost (ns): legacy = " + legacyNanos / nbCalls + "; compiled plan = " + planNanos / nbCalls);
+		}
+		Assert.assertEquals("Comparing the sums of linear predictors", legacySum, planSum, 0d);
+	}
+	
+}
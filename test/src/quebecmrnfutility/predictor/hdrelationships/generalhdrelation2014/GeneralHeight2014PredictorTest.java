@@ -24,6 +24,9 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -40,8 +43,12 @@ public class GeneralHeight2014PredictorTest {
 
 	
 	static void ReadStands() {
+		standMap = readStands();
+	}
+	
+	private static Map<String, Heightable2014Stand> readStands() {
 		String filename = ObjectUtility.getPackagePath(GeneralHeight2014PredictorTest.class) + "fichier_test_unitaire_smaller.csv";
-		standMap = new HashMap<String, Heightable2014Stand>();
+		Map<String, Heightable2014Stand> stands = new HashMap<String, Heightable2014Stand>();
 		CSVReader reader;
 		try {
 			reader = new CSVReader(filename);
@@ -61,8 +68,8 @@ public class GeneralHeight2014PredictorTest {
 				String species = record[5].toString();
 				double predictedHeight = Double.parseDouble(record[29].toString());
 				
-				if (!standMap.containsKey(placetteID)) {
-					standMap.put(placetteID, new Heightable2014StandImpl(placetteID,
+				if (!stands.containsKey(placetteID)) {
+					stands.put(placetteID, new Heightable2014StandImpl(placetteID,
 							basalAreaM2Ha,
 							meanQuadraticDiameterCm,
 							regEco,
@@ -71,12 +78,13 @@ public class GeneralHeight2014PredictorTest {
 							meanAnnualTemperatureC,
 							meanAnnualPrecipitationMm));
 				}
-				Heightable2014StandImpl stand = (Heightable2014StandImpl) standMap.get(placetteID);
+				Heightable2014StandImpl stand = (Heightable2014StandImpl) stands.get(placetteID);
 				new Heightable2014TreeImpl(stand, dbhCm, predictedHeight, treeID++, species);
 			}
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
+		return stands;
 	}
 	
 
@@ -128,5 +136,141 @@ public class GeneralHeight2014PredictorTest {
 		double heightM = predictor.predictHeightM(stand, tree);
 		Assert.assertEquals("Testing dead tree height", 3d, heightM, 1E-8);
 	}
+
+	/*
+	 * Compares the predictions obtained from concurrent threads with those obtained sequentially.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void concurrentPredictions() throws Exception {
+		if (standMap == null) {
+			GeneralHeight2014PredictorTest.ReadStands();
+		}
+		final List<Heightable2014Stand> stands = new ArrayList<Heightable2014Stand>();
+		final List<Heightable2014Tree> trees = new ArrayList<Heightable2014Tree>();
+		for (Heightable2014Stand stand : standMap.values()) {
+			for (Heightable2014Tree t : (Collection<Heightable2014Tree>) stand.getTrees()) {
+				stands.add(stand);
+				trees.add(t);
+			}
+		}
+		final GeneralHeight2014Predictor predictor = new GeneralHeight2014Predictor();
+		final double[] observed = new double[trees.size()];
+		int nbThreads = 4;
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int t = 0; t < nbThreads; t++) {
+			final int firstIndex = t;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = firstIndex; i < trees.size(); i += nbThreads) {
+						observed[i] = predictor.predictHeightM(stands.get(i), trees.get(i));
+					}
+					return null;
+				}
+			});
+		}
+		ForkJoinPool pool = new ForkJoinPool(nbThreads);
+		try {
+			for (Future<Void> f : pool.invokeAll(tasks)) {
+				f.get();
+			}
+		} finally {
+			pool.shutdown();
+		}
+		for (int i = 0; i < trees.size(); i++) {
+			double expected = ((Heightable2014TreeImpl) trees.get(i)).getPredictedHeight();
+			Assert.assertEquals("Comparing concurrent predictions with SAS", expected, observed[i], 1E-8);
+		}
+	}
+
+	/*
+	 * Sets the height of one tree out of three so that the BLUPs can be estimated.
+	 */
+	@SuppressWarnings("unchecked")
+	private static Map<String, Heightable2014Stand> readStandsWithMeasuredHeights() {
+		Map<String, Heightable2014Stand> stands = readStands();
+		for (Heightable2014Stand stand : stands.values()) {
+			int i = 0;
+			for (Heightable2014Tree t : (Collection<Heightable2014Tree>) stand.getTrees()) {
+				Heightable2014TreeImpl tree = (Heightable2014TreeImpl) t;
+				if (i++ % 3 == 0) {
+					tree.heightM = tree.getPredictedHeight() + (i % 2 == 0 ? 1.5 : -0.8); 
+				}
+			}
+		}
+		return stands;
+	}
+	
+	/*
+	 * Compares the closed-form BLUPs of the batch engine with those of the HDRelationshipPredictor class.
+	 */
+	@SuppressWarnings("unchecked")
+	@Test
+	public void closedFormBlupsAgainstMatrixBlups() {
+		Map<String, Heightable2014Stand> stands = readStandsWithMeasuredHeights();
+		List<Heightable2014Stand> standList = new ArrayList<Heightable2014Stand>(stands.values());
+		GeneralHeight2014Predictor predictor = new GeneralHeight2014Predictor();
+		GeneralHeight2014BlupEngine engine = new GeneralHeight2014BlupEngine(predictor);
+		List<GeneralHeight2014BlupEngine.PlotBlups> blupList = engine.getBlups(standList);
+		Assert.assertEquals("Testing list size", standList.size(), blupList.size());
+		int nbComparisons = 0;
+		for (int j = 0; j < standList.size(); j++) {
+			Heightable2014Stand stand = standList.get(j);
+			GeneralHeight2014BlupEngine.PlotBlups blups = blupList.get(j);
+			for (Heightable2014Tree t : (Collection<Heightable2014Tree>) stand.getTrees()) {
+				predictor.predictHeightM(stand, t);	// triggers the estimation of the BLUPs
+			}
+			for (Hd2014Species species : Hd2014Species.values()) {
+				double[] expected = predictor.getInternalPredictor(species).getBlups(stand);
+				if (blups.hasBlup(species)) {
+					Assert.assertNotNull("Testing that the BLUPs exist for species " + species.name(), expected);
+					Assert.assertEquals("Comparing BLUPs", expected[0], blups.getMean(species), 1E-10);
+					Assert.assertEquals("Comparing BLUP variances", expected[1], blups.getVariance(species), 1E-10);
+					nbComparisons++;
+				}
+			}
+			Assert.assertSame("Testing the cache", blups, engine.getBlups(stand));
+		}
+		Assert.assertTrue("Testing that some BLUPs were compared", nbComparisons > 0);
+	}
+
+	/*
+	 * Checks that the cache of the batch engine is keyed by Monte Carlo realization, that it is invalidated 
+	 * when a stand covariate changes and that its size is bounded.
+	 */
+	@Test
+	public void blupCacheInvalidationAndBound() {
+		Map<String, Heightable2014Stand> stands = readStandsWithMeasuredHeights();
+		Heightable2014StandImpl stand = (Heightable2014StandImpl) stands.values().iterator().next();
+		GeneralHeight2014BlupEngine engine = new GeneralHeight2014BlupEngine(new GeneralHeight2014Predictor(), 2);
+		GeneralHeight2014BlupEngine.PlotBlups blups = engine.getBlups(stand);
+		Assert.assertSame("Testing the cache", blups, engine.getBlups(stand));
+		
+		stand.isDefoliated = !stand.isDefoliated;
+		GeneralHeight2014BlupEngine.PlotBlups blupsAfterChange = engine.getBlups(stand);
+		Assert.assertNotSame("Testing the cache is invalidated by a stand covariate", blups, blupsAfterChange);
+		Assert.assertSame("Testing the cache after the change", blupsAfterChange, engine.getBlups(stand));
+		stand.isDefoliated = !stand.isDefoliated;
+		GeneralHeight2014BlupEngine.PlotBlups blupsAfterReset = engine.getBlups(stand);
+		for (Hd2014Species species : Hd2014Species.values()) {
+			Assert.assertEquals("Comparing BLUPs after reset", blups.getMean(species), blupsAfterReset.getMean(species), 1E-12);
+		}
+		Assert.assertEquals("Testing the cache size", 1, engine.getCacheSize());
+		
+		stand.monteCarloRealizationID = 1;
+		GeneralHeight2014BlupEngine.PlotBlups blupsRealization1 = engine.getBlups(stand);
+		Assert.assertNotSame("Testing the cache is keyed by realization", blupsAfterReset, blupsRealization1);
+		Assert.assertEquals("Testing the cache size", 2, engine.getCacheSize());
+		stand.monteCarloRealizationID = 2;
+		engine.getBlups(stand);
+		Assert.assertEquals("Testing the cache is bounded", 2, engine.getCacheSize());
+		stand.monteCarloRealizationID = 1;
+		Assert.assertSame("Testing the most recent entries are kept", blupsRealization1, engine.getBlups(stand));
+		
+		engine.clearCache();
+		Assert.assertEquals("Testing the cache is cleared", 0, engine.getCacheSize());
+		stand.monteCarloRealizationID = 0;
+	}
 	
 }
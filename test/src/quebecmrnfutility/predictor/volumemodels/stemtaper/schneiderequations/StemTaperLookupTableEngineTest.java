@@ -0,0 +1,187 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.security.InvalidParameterException;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperEquationSettings.ModelType;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor.EstimationMethodInDeterministicMode;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperTree.StemTaperTreeSpecies;
+
+public class StemTaperLookupTableEngineTest {
+
+	private static final double TOLERANCE = .001;
+
+	private static StemTaperLookupTableEngine createSmallEngine(File directory) {
+		return createSmallEngine(directory, TOLERANCE);
+	}
+
+	private static StemTaperLookupTableEngine createSmallEngine(File directory, double tolerance) {
+		return new StemTaperLookupTableEngine(directory, 
+				EstimationMethodInDeterministicMode.SecondOrderMeanOnly,
+				tolerance,
+				10d, 2d, 16,		// 10 to 40 cm
+				8d, 1d, 17,			// 8 to 24 m
+				.02, 50);
+	}
+	
+	/*
+	 * The interpolated taper must be close to the exact taper. The cells whose sampled error exceeds the tolerance 
+	 * are computed exactly. The error is sampled at the centre of the cells, which is why the delta is a multiple 
+	 * of the smaller of the sampled error and the tolerance.
+	 */
+	@Test
+	public void interpolatedTaperIsCloseToTheExactTaper() {
+		StemTaperLookupTableEngine engine = createSmallEngine(null);
+		StemTaperPredictor predictor = new StemTaperPredictor();
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		Random random = new Random(2026L);
+		double[] heights = new double[40];
+		double[] expected = null;
+		double[] actual = null;
+		for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+			double sampledError = engine.getSampledInterpolationError(species);
+			System.out.println("Sampled interpolation error for species " + species.name() + " = " + sampledError);
+			for (int t = 0; t < 20; t++) {
+				StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 10 + random.nextDouble() * 30, 8 + random.nextDouble() * 16);
+				int nbHeights = 0;
+				for (double h = 1d; h < tree.getHeightM() && nbHeights < heights.length; h += .5) {
+					heights[nbHeights++] = h;
+				}
+				expected = predictor.getPredictedMeanTaperForTheseHeights(tree, heights, nbHeights, EstimationMethodInDeterministicMode.SecondOrderMeanOnly, expected);
+				actual = engine.getPredictedMeanTaperForTheseHeights(tree, heights, nbHeights, actual);
+				double tolerance = (3 * Math.min(sampledError, TOLERANCE) + 1E-8) * tree.getSquaredDbhCm() * 100;
+				for (int i = 0; i < nbHeights; i++) {
+					Assert.assertEquals("Testing species " + species.name() + " at height " + heights[i], expected[i], actual[i], tolerance);
+				}
+			}
+		}
+	}
+
+	/*
+	 * With a tolerance of 0, the cells whose sampled error is not null are never interpolated. A negative 
+	 * tolerance must be rejected.
+	 */
+	@Test
+	public void toleranceFallsBackOnTheExactTaper() {
+		StemTaperLookupTableEngine engine = createSmallEngine(null, 0d);
+		StemTaperPredictor predictor = new StemTaperPredictor();
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		Random random = new Random(2027L);
+		double[] heights = new double[40];
+		double[] expected = null;
+		double[] actual = null;
+		for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+			Assert.assertTrue("Testing the sampled error of species " + species.name(), engine.getSampledInterpolationError(species) > 0d);
+			for (int t = 0; t < 10; t++) {
+				StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 10 + random.nextDouble() * 30, 8 + random.nextDouble() * 16);
+				int nbHeights = 0;
+				for (double h = 1d; h < tree.getHeightM() && nbHeights < heights.length; h += .5) {
+					heights[nbHeights++] = h;
+				}
+				expected = predictor.getPredictedMeanTaperForTheseHeights(tree, heights, nbHeights, EstimationMethodInDeterministicMode.SecondOrderMeanOnly, expected);
+				actual = engine.getPredictedMeanTaperForTheseHeights(tree, heights, nbHeights, actual);
+				for (int i = 0; i < nbHeights; i++) {
+					Assert.assertEquals("Testing species " + species.name() + " at height " + heights[i], expected[i], actual[i], 1E-8);
+				}
+			}
+		}
+		try {
+			createSmallEngine(null, -1E-3);
+			Assert.fail("Testing a negative tolerance");
+		} catch (InvalidParameterException e) {}
+	}
+
+	/*
+	 * A table written to disk must be mapped back with the same values.
+	 */
+	@Test
+	public void tablesAreMappedFromDisk() throws Exception {
+		File directory = Files.createTempDirectory("taperTables").toFile();
+		StemTaperLookupTableEngine engine = createSmallEngine(directory);
+		StemTaperLookupTable table = engine.getTable(StemTaperTreeSpecies.EPN);
+		File file = new File(directory, table.getFilename());
+		Assert.assertTrue("Testing if the table was written", file.exists());
+		
+		StemTaperLookupTableEngine newEngine = createSmallEngine(directory);
+		StemTaperLookupTable mappedTable = newEngine.getTable(StemTaperTreeSpecies.EPN);
+		Assert.assertEquals("Testing the interpolation error", table.getSampledInterpolationError(), mappedTable.getSampledInterpolationError(), 0d);
+		Random random = new Random(1L);
+		for (int i = 0; i < 1000; i++) {
+			double dbhCm = 10 + random.nextDouble() * 30;
+			double heightM = 8 + random.nextDouble() * 16;
+			double relativeHeight = .02 + random.nextDouble() * .98;
+			Assert.assertEquals("Testing interpolated ratio", 
+					table.getRatio(dbhCm, heightM, relativeHeight), 
+					mappedTable.getRatio(dbhCm, heightM, relativeHeight), 
+					0d);
+			Assert.assertEquals("Testing the tolerance of the cell", 
+					table.isWithinTolerance(dbhCm, heightM, relativeHeight, TOLERANCE), 
+					mappedTable.isWithinTolerance(dbhCm, heightM, relativeHeight, TOLERANCE));
+		}
+		file.deleteOnExit();
+		directory.deleteOnExit();
+	}
+
+	/*
+	 * A table file whose first relative height or model fingerprint does not match must be rejected. Saving again 
+	 * must replace the file without leaving temporary files in the directory.
+	 */
+	@Test
+	public void incompatibleTablesAreRejected() throws Exception {
+		File directory = Files.createTempDirectory("taperTables").toFile();
+		StemTaperPredictor predictor = new StemTaperPredictor();
+		long fingerprint = predictor.getFingerprint(ModelType.TREEMODEL, StemTaperTreeSpecies.EPN);
+		StemTaperLookupTable table = new StemTaperLookupTable(StemTaperTreeSpecies.EPN, EstimationMethodInDeterministicMode.SecondOrderMeanOnly, 
+				10d, 2d, 4, 8d, 1d, 4, .02, 10, fingerprint);
+		table.build(predictor);
+		File file = new File(directory, table.getFilename());
+		table.save(file);
+		
+		StemTaperLookupTable sameTable = new StemTaperLookupTable(StemTaperTreeSpecies.EPN, EstimationMethodInDeterministicMode.SecondOrderMeanOnly, 
+				10d, 2d, 4, 8d, 1d, 4, .02, 10, fingerprint);
+		Assert.assertTrue("Testing the compatible table", sameTable.load(file));
+
+		StemTaperLookupTable otherRelativeHeight = new StemTaperLookupTable(StemTaperTreeSpecies.EPN, EstimationMethodInDeterministicMode.SecondOrderMeanOnly, 
+				10d, 2d, 4, 8d, 1d, 4, .05, 10, fingerprint);
+		Assert.assertFalse("Testing a different first relative height", otherRelativeHeight.load(file));
+		
+		StemTaperLookupTable otherFingerprint = new StemTaperLookupTable(StemTaperTreeSpecies.EPN, EstimationMethodInDeterministicMode.SecondOrderMeanOnly, 
+				10d, 2d, 4, 8d, 1d, 4, .02, 10, fingerprint + 1);
+		Assert.assertFalse("Testing a different fingerprint", otherFingerprint.load(file));
+		
+		Assert.assertTrue("Testing the fingerprints of two species", 
+				fingerprint != predictor.getFingerprint(ModelType.TREEMODEL, StemTaperTreeSpecies.SAB));
+		
+		otherFingerprint.build(predictor);
+		otherFingerprint.save(file);
+		Assert.assertTrue("Testing the replaced table", otherFingerprint.load(file));
+		Assert.assertFalse("Testing the former table", sameTable.load(file));
+		Assert.assertEquals("Testing the content of the directory", 1, directory.listFiles().length);
+		file.deleteOnExit();
+		directory.deleteOnExit();
+	}
+}
@@ -20,12 +20,15 @@ package quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations;
 
 import static org.junit.Assert.assertEquals;
 
+import java.lang.management.ManagementFactory;
 import java.text.NumberFormat;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor.EstimationMethodInDeterministicMode;
@@ -445,4 +448,226 @@ public class StemTaperPredictorTest {
 	} 
 
 		
+	/**
+	 * This test checks whether the primitive mean-only path provides the same predictions as the 
+	 * Matrix-based implementation for all species.
+	 */
+	@Test
+	public void TestPrimitiveMeanOnlyPathAgainstMatrixImplementation() throws Exception {
+		StemTaperPredictor ste = new StemTaperPredictor();
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		double[] output = null;
+		for (EstimationMethodInDeterministicMode method : new EstimationMethodInDeterministicMode[] {EstimationMethodInDeterministicMode.FirstOrderMeanOnly, 
+				EstimationMethodInDeterministicMode.SecondOrderMeanOnly}) {
+			for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+				StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 30, 20);
+				List<Double> heightList = tree.getSegments().getHeightsWithoutReplicates();
+				double[] heights = new double[heightList.size()];
+				for (int i = 0; i < heights.length; i++) {
+					heights[i] = heightList.get(i);
+				}
+				Matrix expected = ste.getPredictedTaperForTheseHeights(tree, heightList, method).getMean();
+				output = ste.getPredictedMeanTaperForTheseHeights(tree, heights, heights.length, method, output);
+				for (int i = 0; i < heights.length; i++) {
+					double ref = expected.getValueAt(i, 0);
+					assertEquals("Testing species " + species.name() + " with method " + method.name(), 
+							ref, 
+							output[i],
+							Math.abs(ref) * 1E-10 + 1E-10);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This test checks that the primitive mean-only path falls back on the Matrix implementation in stochastic 
+	 * mode instead of throwing an exception.
+	 */
+	@Test
+	public void TestPrimitiveMeanOnlyPathInStochasticMode() throws Exception {
+		StemTaperPredictor ste = new StemTaperPredictor(true);
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		double[] output = null;
+		for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+			StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 30, 20);
+			double[] heights = getHeights(tree);
+			output = ste.getPredictedMeanTaperForTheseHeights(tree, heights, heights.length, EstimationMethodInDeterministicMode.FirstOrderMeanOnly, output);
+			for (int i = 0; i < heights.length; i++) {
+				Assert.assertTrue("Testing species " + species.name(), !Double.isNaN(output[i]) && !Double.isInfinite(output[i]));
+			}
+		}
+	}
+
+	/**
+	 * This test checks that the primitive mean-only path allocates at least ten times fewer bytes than 
+	 * the Matrix implementation. The test is skipped if the JVM does not measure thread allocations.
+	 */
+	@Test
+	public void TestPrimitiveMeanOnlyPathAllocations() throws Exception {
+		checkPrimitiveMeanOnlyPathAllocations(EstimationMethodInDeterministicMode.FirstOrderMeanOnly);
+	}
+
+	/**
+	 * This test checks that the primitive second-order mean-only path, which includes the correction for the 
+	 * variances of the random effects and the parameter estimates, allocates at least ten times fewer bytes 
+	 * than the Matrix implementation.
+	 */
+	@Test
+	public void TestPrimitiveSecondOrderMeanOnlyPathAllocations() throws Exception {
+		checkPrimitiveMeanOnlyPathAllocations(EstimationMethodInDeterministicMode.SecondOrderMeanOnly);
+	}
+
+	private static void checkPrimitiveMeanOnlyPathAllocations(EstimationMethodInDeterministicMode method) throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		Assume.assumeTrue(sunBean.isThreadAllocatedMemorySupported());
+		sunBean.setThreadAllocatedMemoryEnabled(true);
+		long threadId = Thread.currentThread().getId();
+
+		StemTaperPredictor ste = new StemTaperPredictor();
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		StemTaperTreeImpl tree = new StemTaperTreeImpl(StemTaperTreeSpecies.BOP, stand, 30, 20);
+		List<Double> heightList = tree.getSegments().getHeightsWithoutReplicates();
+		double[] heights = getHeights(tree);
+		double[] output = new double[heights.length];
+		int nbCalls = 200;
+		for (int i = 0; i < nbCalls; i++) {		// warm up
+			ste.getPredictedTaperForTheseHeights(tree, heightList, method);
+			ste.getPredictedMeanTaperForTheseHeights(tree, heights, heights.length, method, output);
+		}
+
+		long start = sunBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < nbCalls; i++) {
+			ste.getPredictedTaperForTheseHeights(tree, heightList, method);
+		}
+		long legacyBytes = sunBean.getThreadAllocatedBytes(threadId) - start;
+
+		start = sunBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < nbCalls; i++) {
+			ste.getPredictedMeanTaperForTheseHeights(tree, heights, heights.length, method, output);
+		}
+		long primitiveBytes = sunBean.getThreadAllocatedBytes(threadId) - start;
+
+		System.out.println("Allocated bytes with " + method.name() + ": Matrix path = " + legacyBytes + "; primitive path = " + primitiveBytes);
+		Assert.assertTrue("Testing the allocation ratio with " + method.name(), primitiveBytes * 10 <= legacyBytes);
+	}
+
+	/**
+	 * This test checks that the closed-form factor of the R matrix is the lower Cholesky triangle 
+	 * when the heights are sorted and distinct, and that it remains a valid square root of the R 
+	 * matrix when the heights are unsorted or duplicated.
+	 */
+	@Test
+	public void TestClosedFormCholeskyFactorOfRMatrix() throws Exception {
+		StemTaperPredictor ste = new StemTaperPredictor(true);
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+			StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 30, 20);
+			List<Double> sortedHeights = tree.getSegments().getHeightsWithoutReplicates();
+			ste.getPredictedTaperForTheseHeights(tree, new ArrayList<Double>(sortedHeights));
+			StemTaperSubModule subModule = ste.getSubModule(StemTaperEquationSettings.getModelTypeEquation(tree), species);
+			assertMatrixEquals("Sorted heights for species " + species.name(), subModule.getRMatrix().getLowerCholTriangle(), subModule.getRMatrixFactor());
+			assertFactorProductEquals("Sorted heights for species " + species.name(), subModule);
+
+			List<Double> unsortedHeights = new ArrayList<Double>(sortedHeights);
+			java.util.Collections.reverse(unsortedHeights);
+			ste.getPredictedTaperForTheseHeights(tree, unsortedHeights);
+			assertFactorProductEquals("Unsorted heights for species " + species.name(), subModule);
+			
+			List<Double> duplicatedHeights = new ArrayList<Double>(sortedHeights);
+			duplicatedHeights.add(2, duplicatedHeights.get(2));
+			ste.getPredictedTaperForTheseHeights(tree, duplicatedHeights);
+			Matrix factor = subModule.getRMatrixFactor();
+			for (int i = 0; i < factor.m_iRows; i++) {
+				for (int j = 0; j < factor.m_iCols; j++) {
+					Assert.assertTrue("Duplicated heights for species " + species.name(), 
+							!Double.isNaN(factor.getValueAt(i, j)) && !Double.isInfinite(factor.getValueAt(i, j)));
+				}
+			}
+			assertFactorProductEquals("Duplicated heights for species " + species.name(), subModule);
+		}
+	}
+	
+	private static void assertFactorProductEquals(String message, StemTaperSubModule subModule) {
+		Matrix factor = subModule.getRMatrixFactor();
+		assertMatrixEquals(message, subModule.getRMatrix(), factor.multiply(factor.transpose()));
+	}
+	
+	private static void assertMatrixEquals(String message, Matrix expected, Matrix actual) {
+		Assert.assertEquals(message + " - number of rows", expected.m_iRows, actual.m_iRows);
+		for (int i = 0; i < expected.m_iRows; i++) {
+			for (int j = 0; j < expected.m_iCols; j++) {
+				double ref = expected.getValueAt(i, j);
+				assertEquals(message, ref, actual.getValueAt(i, j), Math.abs(ref) * 1E-8 + 1E-12);
+			}
+		}
+	}
+
+	private static double[] getHeights(StemTaperTreeImpl tree) {
+		List<Double> heightList = tree.getSegments().getHeightsWithoutReplicates();
+		double[] heights = new double[heightList.size()];
+		for (int i = 0; i < heights.length; i++) {
+			heights[i] = heightList.get(i);
+		}
+		return heights;
+	}
+
+	/**
+	 * This test checks whether the contraction of the hessians against the Isserlis matrices provides the same
+	 * second-order variance component as the explicit Kronecker products.
+	 */
+	@Test
+	public void TestIsserlisVarianceComponentsAgainstKroneckerImplementation() throws Exception {
+		StemTaperPredictor ste = new StemTaperPredictor();
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+			StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 30, 20);
+			ste.getPredictedTaperForTheseSegments(tree, tree.getSegments(), EstimationMethodInDeterministicMode.SecondOrder);
+			StemTaperSubModule subModule = ste.getSubModule(StemTaperEquationSettings.getModelTypeEquation(tree), species);
+			Matrix expected = subModule.getIsserlisVarianceComponentsWithKroneckerProducts();
+			Matrix actual = subModule.getIsserlisVarianceComponents();
+			Assert.assertEquals("Testing the number of rows", expected.m_iRows, actual.m_iRows);
+			for (int i = 0; i < expected.m_iRows; i++) {
+				for (int j = 0; j < expected.m_iCols; j++) {
+					double ref = expected.getValueAt(i, j);
+					assertEquals("Testing species " + species.name(), ref, actual.getValueAt(i, j), Math.abs(ref) * 1E-10 + 1E-10);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This test checks whether the columnar derivatives are consistent with the gradients and the hessians
+	 * obtained through the LinearStatisticalExpression instances.
+	 */
+	@Test
+	public void TestColumnarDerivativesAgainstMatrixImplementation() throws Exception {
+		StemTaperPredictor ste = new StemTaperPredictor();
+		StemTaperStandImpl stand = new StemTaperStandImpl(20, 700);
+		for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+			StemTaperTreeImpl tree = new StemTaperTreeImpl(species, stand, 30, 20);
+			ste.getPredictedTaperForTheseSegments(tree, tree.getSegments(), EstimationMethodInDeterministicMode.FirstOrder);
+			InternalStatisticalExpressions expressions = ste.getSubModule(StemTaperEquationSettings.getModelTypeEquation(tree), species).getLinearExpressions();
+			int nbParms = expressions.getTotalNumberOfParameters();
+			Matrix expectedGradients = expressions.getGradients();
+			Matrix expectedHessians = expressions.getHessians();
+			double[] gradients = expressions.getColumnarGradients();
+			double[] hessians = expressions.getColumnarHessians();
+			for (int i = 0; i < expectedGradients.m_iRows; i++) {
+				for (int j = 0; j < nbParms; j++) {
+					double ref = expectedGradients.getValueAt(i, j);
+					assertEquals("Testing gradients of species " + species.name(), ref, gradients[i * nbParms + j], Math.abs(ref) * 1E-10 + 1E-10);
+				}
+				Matrix expectedHessian = expectedHessians.getSubMatrix(i, i, 0, expectedHessians.m_iCols - 1).transpose().squareSym();
+				for (int j = 0; j < nbParms; j++) {
+					for (int k = 0; k < nbParms; k++) {
+						double ref = expectedHessian.getValueAt(j, k);
+						assertEquals("Testing hessians of species " + species.name(), ref, hessians[i * nbParms * nbParms + j * nbParms + k], Math.abs(ref) * 1E-10 + 1E-10);
+					}
+				}
+			}
+		}
+	}
+
 }
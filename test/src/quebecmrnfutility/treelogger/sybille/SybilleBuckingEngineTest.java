@@ -0,0 +1,227 @@
+/*
+ * This file is part of the CFSForesttools library.
+ *
+ * Copyright (C) 2026 His Majesty the King in Right of Canada
+ * Author: Mathieu Fortin, Canadian Forest Service
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed with the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public
+ * License for more details.
+ *
+ * Please see the license at http://www.gnu.org/copyleft/lesser.html.
+ */
+package quebecmrnfutility.treelogger.sybille;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperPredictor.EstimationMethodInDeterministicMode;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperStand;
+import quebecmrnfutility.predictor.volumemodels.stemtaper.schneiderequations.StemTaperTree.StemTaperTreeSpecies;
+import quebecmrnfutility.treelogger.sybille.SybilleTreeLogCategory.LengthID;
+import repicea.math.integral.TrapezoidalRule;
+import repicea.simulation.stemtaper.AbstractStemTaperEstimate;
+import repicea.simulation.stemtaper.StemTaperSegment;
+import repicea.simulation.stemtaper.StemTaperSegmentList;
+
+public class SybilleBuckingEngineTest {
+
+	private static AbstractStemTaperEstimate getEstimate(LoggableTreeImpl tree) {
+		StemTaperSegmentList segments = new StemTaperSegmentList();
+		segments.add(new StemTaperSegment(0.15, tree.getHeightM() - StemTaperSegment.VERY_SMALL, new TrapezoidalRule(0.25)));
+		StemTaperPredictor stp = new StemTaperPredictor();
+		return stp.getPredictedTaperForTheseSegments(tree, segments, EstimationMethodInDeterministicMode.SecondOrderMeanOnly);
+	}
+	
+	/*
+	 * Compares the binary search of the engine with a linear scan of the cross-section heights.
+	 */
+	@Test
+	public void BinarySearchAgainstLinearScan() {
+		StemTaperStand stand = new StemTaperStandImpl();
+		LoggableTreeImpl tree = new LoggableTreeImpl(stand, StemTaperTreeSpecies.SAB, 25, 18);
+		AbstractStemTaperEstimate estimate = getEstimate(tree);
+		SybilleBuckingEngine engine = new SybilleBuckingEngine(estimate, false);
+		List<Double> heights = estimate.getCrossSectionHeights();
+		for (double target = 0; target < 19; target += 0.137) {
+			int expected = -1;
+			for (int i = 0; i < heights.size(); i++) {
+				if (heights.get(i) >= target) {
+					expected = i;
+					break;
+				}
+			}
+			Assert.assertEquals("Testing the ceiling index for height " + target, expected, engine.findCeilingIndex(target, 0));
+			Assert.assertEquals("Testing the start index for height " + target, expected, engine.findStartIndex(target));
+		}
+		Assert.assertEquals("Testing the start index after the cursor has been reset", 0, engine.findStartIndex(0d));
+	}
+	
+	/*
+	 * Compares the volume of the prefix sums with the volume of the stem taper estimate. The trapezoidal prefix sums must 
+	 * match the trapezoidal rule of the estimate and the quadratic prefix sums must match Simpson's rule of the estimate.
+	 */
+	@Test
+	public void PrefixSumVolumesAgainstStemTaperEstimate() {
+		StemTaperStand stand = new StemTaperStandImpl();
+		LoggableTreeImpl tree = new LoggableTreeImpl(stand, StemTaperTreeSpecies.EPN, 22, 17);
+		AbstractStemTaperEstimate estimate = getEstimate(tree);
+		SybilleBuckingEngine trapezoidalEngine = new SybilleBuckingEngine(estimate, false);
+		SybilleBuckingEngine quadraticEngine = new SybilleBuckingEngine(estimate, true);
+		List<Double> heights = estimate.getCrossSectionHeights();
+		int n = trapezoidalEngine.getNumberOfCrossSections();
+		for (int start = 0; start < n - 1; start += 7) {
+			for (int end = start + 1; end < n; end += 5) {
+				List<Double> heightsForTheseSegments = new ArrayList<Double>();
+				for (int i = start; i <= end; i++) {
+					heightsForTheseSegments.add(heights.get(i));
+				}
+				double expected = estimate.getVolumeEstimate(StemTaperSegmentList.createStemTaperSegmentList(heightsForTheseSegments, false)).getMean().getSumOfElements();
+				double expectedSimpson = estimate.getVolumeEstimate(StemTaperSegmentList.createStemTaperSegmentList(heightsForTheseSegments, true)).getMean().getSumOfElements();
+				double actualTrapezoidal = trapezoidalEngine.getVolumeDm3(start, end);
+				double actualQuadratic = quadraticEngine.getVolumeDm3(start, end);
+				Assert.assertEquals("Testing the trapezoidal volume between " + start + " and " + end, expected, actualTrapezoidal, 1E-4);
+				Assert.assertEquals("Testing the quadratic volume between " + start + " and " + end, expectedSimpson, actualQuadratic, 1E-4);
+				if (end - start > 1) {
+					int middle = (start + end) / 2;
+					Assert.assertEquals("Testing the additivity of the trapezoidal volume", 
+							actualTrapezoidal, 
+							trapezoidalEngine.getVolumeDm3(start, middle) + trapezoidalEngine.getVolumeDm3(middle, end), 
+							1E-9);
+				}
+			}
+		}
+	}
+	
+	private static double getBruteForceBestValue(SybilleBuckingEngine engine, List<SybilleTreeLogCategory> logCategories, int startIndex, double height) {
+		double bestValue = 0d;
+		for (SybilleTreeLogCategory logCategory : logCategories) {
+			int endIndex = logCategory.findEndIndex(engine, startIndex, height);
+			if (endIndex != -1) {
+				double value = logCategory.getValuePerM3() * engine.getVolumeDm3(startIndex, endIndex) * .001 
+						+ getBruteForceBestValue(engine, logCategories, endIndex, engine.getHeightM(endIndex));
+				bestValue = Math.max(bestValue, value);
+			}
+		}
+		return bestValue;
+	}
+	
+	/*
+	 * Compares the dynamic programming solution with an exhaustive search and with the greedy bucking.
+	 */
+	@Test
+	public void OptimalBuckingAgainstExhaustiveSearchAndGreedyBucking() {
+		StemTaperStand stand = new StemTaperStandImpl();
+		List<SybilleTreeLogCategory> logCategories = new ArrayList<SybilleTreeLogCategory>();
+		SybilleTreeLogCategory sawlog = new SybilleTreeLogCategory("sawlog", StemTaperTreeSpecies.SAB.name(), LengthID.EightFeetLong, 18);
+		sawlog.setValuePerM3(3d);
+		logCategories.add(sawlog);
+		SybilleTreeLogCategory studlog = new SybilleTreeLogCategory("studlog", StemTaperTreeSpecies.SAB.name(), LengthID.TwelveFeetLong, 12);
+		studlog.setValuePerM3(2d);
+		logCategories.add(studlog);
+		logCategories.add(new SybilleTreeLogCategory("pulp", StemTaperTreeSpecies.SAB.name(), LengthID.FourFeetLong, 8));
+		double stumpHeightM = 0.15;
+		
+		for (double dbhCm = 14; dbhCm <= 34; dbhCm += 4) {
+			LoggableTreeImpl tree = new LoggableTreeImpl(stand, StemTaperTreeSpecies.SAB, dbhCm, 6 + dbhCm * .2);	// short trees to keep the exhaustive search tractable
+			SybilleBuckingEngine engine = new SybilleBuckingEngine(getEstimate(tree), true);
+			
+			double optimalValue = 0d;
+			double optimalLength = stumpHeightM;
+			for (SybilleWoodPiece piece : engine.getOptimalLogs(tree, logCategories, stumpHeightM)) {
+				optimalValue += ((SybilleTreeLogCategory) piece.getLogCategory()).getValuePerM3() * piece.getWoodVolumeM3();
+				optimalLength += piece.getLength();
+			}
+			Assert.assertTrue("Testing that the logs do not exceed the tree", optimalLength <= engine.getTopHeightM() + 1E-9);
+			
+			int firstIndex = engine.findCeilingIndex(stumpHeightM, 0);
+			double bruteForceValue = getBruteForceBestValue(engine, logCategories, firstIndex, stumpHeightM);
+			Assert.assertEquals("Testing the optimal value for dbh " + dbhCm, bruteForceValue, optimalValue, 1E-9);
+
+			double greedyValue = 0d;		// greedy bucking with the same volumes as the optimal bucking
+			double height = stumpHeightM;
+			int startIndex = firstIndex;
+			boolean extracted;
+			do {
+				extracted = false;
+				for (SybilleTreeLogCategory logCategory : logCategories) {
+					int endIndex = logCategory.findEndIndex(engine, startIndex, height);
+					if (endIndex != -1) {
+						greedyValue += logCategory.getValuePerM3() * engine.getVolumeDm3(startIndex, endIndex) * .001;
+						startIndex = endIndex;
+						height = engine.getHeightM(endIndex);
+						extracted = true;
+						break;
+					}
+				}
+			} while (extracted);
+			Assert.assertTrue("Testing that the optimal value is at least the greedy value for dbh " + dbhCm, optimalValue >= greedyValue - 1E-9);
+		}
+	}
+
+	/*
+	 * The greedy bucking through the engine must extract the same logs with the same volumes as the original 
+	 * implementation, with both the trapezoidal rule and Simpson's rule.
+	 */
+	@Test
+	public void GreedyBuckingAgainstLegacyImplementation() {
+		SybilleTreeLoggerParameters parameters = new SybilleTreeLogger().createDefaultTreeLoggerParameters();
+		double stumpHeightM = parameters.getStumpHeightM();
+		StemTaperStand stand = new StemTaperStandImpl();
+		int nbPieces = 0;
+		for (boolean optimize : new boolean[] {false, true}) {
+			for (StemTaperTreeSpecies species : StemTaperTreeSpecies.values()) {
+				List<SybilleTreeLogCategory> logCategories = parameters.getLogCategories().get(species.name());
+				for (double dbhCm = 12; dbhCm <= 42; dbhCm += 6) {
+					LoggableTreeImpl tree = new LoggableTreeImpl(stand, species, dbhCm, 8 + dbhCm * .3);
+					AbstractStemTaperEstimate estimate = getEstimate(tree);
+					SybilleBuckingEngine engine = new SybilleBuckingEngine(estimate, optimize);
+					double legacyHeight = stumpHeightM;
+					double engineHeight = stumpHeightM;
+					while (true) {
+						SybilleWoodPiece expected = null;
+						for (SybilleTreeLogCategory logCategory : logCategories) {
+							List<SybilleWoodPiece> pieces = logCategory.extractFromTree(tree, estimate, legacyHeight, optimize);
+							if (pieces != null) {
+								expected = pieces.get(0);
+								break;
+							}
+						}
+						SybilleWoodPiece actual = null;
+						for (SybilleTreeLogCategory logCategory : logCategories) {
+							actual = logCategory.extractFromTree(tree, engine, engineHeight);
+							if (actual != null) {
+								break;
+							}
+						}
+						String message = "Testing species " + species.name() + " with dbh " + dbhCm + " and optimize = " + optimize;
+						if (expected == null) {
+							Assert.assertNull(message, actual);
+							break;
+						}
+						Assert.assertNotNull(message, actual);
+						Assert.assertEquals(message, expected.getLogCategory().getName(), actual.getLogCategory().getName());
+						Assert.assertEquals(message, expected.getWoodVolumeM3(), actual.getWoodVolumeM3(), 1E-4);
+						Assert.assertEquals(message, expected.getLength(), actual.getLength(), 1E-4);
+						legacyHeight += expected.getLength();
+						engineHeight += actual.getLength();
+						nbPieces++;
+					}
+				}
+			}
+		}
+		Assert.assertTrue("Testing that some pieces were extracted", nbPieces > 0);
+	}
+
+}
@@ -26,7 +26,10 @@ import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -577,4 +580,65 @@ public class SybilleTreeLoggerTest {
 		return obsMap;
 	}
 	
+	/*
+	 * The parallel logger must produce exactly the same wood pieces as the sequential logger. It must also 
+	 * discard the ineligible trees and clear the wood pieces of a previous call. Once its pool is shut down, 
+	 * the logger must still be usable.
+	 */
+	@Test
+	public void ParallelLoggingMatchesSequentialLogging() {
+		StemTaperStand stand = new StemTaperStandImpl();
+		List<SybilleLoggableTree> trees = new ArrayList<SybilleLoggableTree>();
+		Random random = new Random(2026L);
+		StemTaperTreeSpecies[] species = StemTaperTreeSpecies.values();
+		for (int i = 0; i < 200; i++) {
+			trees.add(new LoggableTreeImpl(stand, species[random.nextInt(species.length)], 10 + random.nextDouble() * 40, 8 + random.nextDouble() * 17));
+		}
+		SybilleLoggableTree ineligibleTree = new LoggableTreeImpl(stand, null, 30, 20);
+		trees.add(100, ineligibleTree);
+		
+		SybilleTreeLogger sequentialLogger = new SybilleTreeLogger();
+		sequentialLogger.setTreeLoggerParameters(sequentialLogger.createDefaultTreeLoggerParameters());
+		sequentialLogger.init(trees);
+		sequentialLogger.run();
+
+		SybilleTreeLogger parallelLogger = new SybilleTreeLogger();
+		parallelLogger.setTreeLoggerParameters(parallelLogger.createDefaultTreeLoggerParameters());
+		List<SybilleLoggableTree> otherTrees = new ArrayList<SybilleLoggableTree>();
+		for (int i = 0; i < 20; i++) {
+			otherTrees.add(new LoggableTreeImpl(stand, StemTaperTreeSpecies.SAB, 30, 20));
+		}
+		parallelLogger.logTheseTreesInParallel(otherTrees, 4);
+		parallelLogger.logTheseTreesInParallel(trees, 4);
+		
+		Assert.assertFalse("Testing that the ineligible tree was discarded", parallelLogger.getWoodPieces().containsKey(ineligibleTree));
+		for (SybilleLoggableTree tree : otherTrees) {
+			Assert.assertFalse("Testing that the pieces of the previous call were cleared", parallelLogger.getWoodPieces().containsKey(tree));
+		}
+		Assert.assertEquals("Testing the number of logged trees", sequentialLogger.getWoodPieces().size(), parallelLogger.getWoodPieces().size());
+		int nbPieces = 0;
+		for (SybilleLoggableTree tree : trees) {
+			Collection<WoodPiece> expectedPieces = sequentialLogger.getWoodPieces().get(tree);
+			Collection<WoodPiece> actualPieces = parallelLogger.getWoodPieces().get(tree);
+			if (expectedPieces == null) {
+				Assert.assertTrue("Testing that no piece was extracted", actualPieces == null || actualPieces.isEmpty());
+			} else {
+				Assert.assertEquals("Testing the number of pieces", expectedPieces.size(), actualPieces.size());
+				Iterator<WoodPiece> iter = actualPieces.iterator();
+				for (WoodPiece expectedPiece : expectedPieces) {
+					WoodPiece actualPiece = iter.next();
+					Assert.assertEquals("Testing the log category", expectedPiece.getLogCategory().getName(), actualPiece.getLogCategory().getName());
+					Assert.assertEquals("Testing the volume", expectedPiece.getWoodVolumeM3(), actualPiece.getWoodVolumeM3(), 0d);
+					nbPieces++;
+				}
+			}
+		}
+		Assert.assertTrue("Testing that some pieces were extracted", nbPieces > 0);
+		
+		parallelLogger.shutdown();
+		parallelLogger.logTheseTreesInParallel(trees, 4);
+		Assert.assertEquals("Testing the number of logged trees after the shutdown", sequentialLogger.getWoodPieces().size(), parallelLogger.getWoodPieces().size());
+		parallelLogger.shutdown();
+	}
+	
 }